@@ -5,17 +5,31 @@
 # For more details, see
 #   http://developer.android.com/guide/developing/tools/proguard.html
 
-# If your project uses WebView with JS, uncomment the following
-# and specify the fully qualified class name to the JavaScript interface
-# class:
-#-keepclassmembers class fqcn.of.javascript.interface.for.webview {
-#   public *;
-#}
+# Keep line numbers so release crash reports stay readable
+-keepattributes SourceFile,LineNumberTable
+-renamesourcefileattribute SourceFile
 
-# Uncomment this to preserve the line number information for
-# debugging stack traces.
-#-keepattributes SourceFile,LineNumberTable
+# Capacitor plugins are found and called through reflection: the bridge reads
+# @CapacitorPlugin, instantiates the class and looks up @PluginMethod,
+# @ActivityCallback and @PermissionCallback methods by name (for example
+# ScreenCapturePlugin.handleScreenCaptureResult, passed as a string to
+# startActivityForResult). Capacitor's consumer rules only cover public
+# classes; PipPlugin, CallServicePlugin and StartupPlugin in MainActivity.java
+# are package-private.
+-keepattributes RuntimeVisibleAnnotations,RuntimeVisibleParameterAnnotations,AnnotationDefault
+-keep @interface com.getcapacitor.annotation.CapacitorPlugin
+-keep @interface com.getcapacitor.annotation.ActivityCallback
+-keep @interface com.getcapacitor.annotation.PermissionCallback
+-keep @interface com.getcapacitor.annotation.Permission
+-keep @interface com.getcapacitor.PluginMethod
+-keep @com.getcapacitor.annotation.CapacitorPlugin class * extends com.getcapacitor.Plugin {
+    <init>();
+    @com.getcapacitor.PluginMethod <methods>;
+    @com.getcapacitor.annotation.ActivityCallback <methods>;
+    @com.getcapacitor.annotation.PermissionCallback <methods>;
+}
 
-# If you keep the line number information, uncomment this to
-# hide the original source file name.
-#-renamesourcefileattribute SourceFile
+# Cordova plugins are instantiated by class name from res/xml/config.xml
+-keep class * extends org.apache.cordova.CordovaPlugin {
+    <init>();
+}
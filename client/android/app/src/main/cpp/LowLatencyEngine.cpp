@@ -0,0 +1,225 @@
+#include "LowLatencyEngine.h"
+
+#include <algorithm>
+#include <cstring>
+
+#include <android/log.h>
+
+#define TAG "LowLatencyEngine"
+#define LOGD(...) __android_log_print(ANDROID_LOG_DEBUG, TAG, __VA_ARGS__)
+#define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, TAG, __VA_ARGS__)
+
+// Two bursts is the smallest buffer that rides out ordinary scheduling jitter
+static constexpr int32_t kBurstsPerBuffer = 2;
+
+LowLatencyEngine::~LowLatencyEngine() {
+    close();
+}
+
+oboe::Result LowLatencyEngine::open(int32_t deviceId, bool withInput) {
+    std::lock_guard<std::mutex> guard(lock_);
+
+    oboe::AudioStreamBuilder outputBuilder;
+    outputBuilder.setDirection(oboe::Direction::Output)
+        ->setPerformanceMode(oboe::PerformanceMode::LowLatency)
+        ->setSharingMode(oboe::SharingMode::Exclusive)
+        ->setFormat(oboe::AudioFormat::Float)
+        ->setChannelCount(oboe::ChannelCount::Mono)
+        ->setUsage(oboe::Usage::VoiceCommunication)
+        ->setContentType(oboe::ContentType::Speech)
+        ->setDeviceId(deviceId)
+        ->setDataCallback(this)
+        ->setErrorCallback(this);
+
+    oboe::Result result = outputBuilder.openStream(output_);
+    if (result != oboe::Result::OK) {
+        LOGE("Output open failed: %s", oboe::convertToText(result));
+        return result;
+    }
+    output_->setBufferSizeInFrames(output_->getFramesPerBurst() * kBurstsPerBuffer);
+
+    if (withInput) {
+        // VoiceRecognition skips echo cancellation, which would otherwise
+        // remove the very pulse the loopback test is listening for
+        oboe::AudioStreamBuilder inputBuilder;
+        inputBuilder.setDirection(oboe::Direction::Input)
+            ->setPerformanceMode(oboe::PerformanceMode::LowLatency)
+            ->setSharingMode(oboe::SharingMode::Exclusive)
+            ->setFormat(oboe::AudioFormat::Float)
+            ->setChannelCount(oboe::ChannelCount::Mono)
+            ->setSampleRate(output_->getSampleRate())
+            ->setInputPreset(oboe::InputPreset::VoiceRecognition)
+            ->setErrorCallback(this);
+
+        result = inputBuilder.openStream(input_);
+        if (result != oboe::Result::OK) {
+            LOGE("Input open failed: %s", oboe::convertToText(result));
+            output_->close();
+            output_.reset();
+            return result;
+        }
+        inputBuffer_.assign(std::max(output_->getBufferCapacityInFrames(),
+                                     input_->getBufferCapacityInFrames()), 0.0f);
+    }
+
+    LOGD("Opened output: %d Hz, burst %d, buffer %d/%d, mmap %d",
+         output_->getSampleRate(), output_->getFramesPerBurst(),
+         output_->getBufferSizeInFrames(), output_->getBufferCapacityInFrames(),
+         oboe::OboeExtensions::isMMapUsed(output_.get()));
+    return oboe::Result::OK;
+}
+
+oboe::Result LowLatencyEngine::start(const float *pulse, int32_t pulseLength,
+                                     int32_t intervalFrames, int32_t pulseCount) {
+    std::lock_guard<std::mutex> guard(lock_);
+    if (!output_) {
+        return oboe::Result::ErrorClosed;
+    }
+
+    pulse_.assign(pulse, pulse + pulseLength);
+    intervalFrames_ = intervalFrames;
+    totalFrames_ = static_cast<int64_t>(intervalFrames) * pulseCount;
+    recording_.assign(input_ ? totalFrames_ : 0, 0.0f);
+    framePosition_ = 0;
+    inputDrained_ = false;
+    done_.store(false, std::memory_order_release);
+
+    // Input first, so it is already flowing when the first output callback reads it
+    if (input_) {
+        oboe::Result result = input_->requestStart();
+        if (result != oboe::Result::OK) {
+            LOGE("Input start failed: %s", oboe::convertToText(result));
+            return result;
+        }
+    }
+    oboe::Result result = output_->requestStart();
+    if (result != oboe::Result::OK) {
+        LOGE("Output start failed: %s", oboe::convertToText(result));
+    }
+    return result;
+}
+
+void LowLatencyEngine::stop() {
+    std::lock_guard<std::mutex> guard(lock_);
+    if (output_) {
+        output_->requestStop();
+    }
+    if (input_) {
+        input_->requestStop();
+    }
+}
+
+void LowLatencyEngine::close() {
+    std::lock_guard<std::mutex> guard(lock_);
+    if (output_) {
+        output_->close();
+        output_.reset();
+    }
+    if (input_) {
+        input_->close();
+        input_.reset();
+    }
+}
+
+int32_t LowLatencyEngine::copyRecording(float *out, int32_t capacity) const {
+    if (!isDone()) {
+        return 0;
+    }
+    auto frames = static_cast<int32_t>(std::min<size_t>(recording_.size(), capacity));
+    std::memcpy(out, recording_.data(), frames * sizeof(float));
+    return frames;
+}
+
+void LowLatencyEngine::fillStreamStats(oboe::AudioStream *stream, int64_t *out) {
+    std::fill(out, out + kStreamStats, 0);
+    if (stream == nullptr) {
+        return;
+    }
+    out[kStatSampleRate] = stream->getSampleRate();
+    out[kStatFramesPerBurst] = stream->getFramesPerBurst();
+    out[kStatBufferSize] = stream->getBufferSizeInFrames();
+    out[kStatBufferCapacity] = stream->getBufferCapacityInFrames();
+    out[kStatPerformanceMode] = static_cast<int64_t>(stream->getPerformanceMode());
+    out[kStatSharingMode] = static_cast<int64_t>(stream->getSharingMode());
+    out[kStatAudioApi] = static_cast<int64_t>(stream->getAudioApi());
+    out[kStatDeviceId] = stream->getDeviceId();
+
+    auto xRuns = stream->getXRunCount();
+    out[kStatXRuns] = xRuns ? xRuns.value() : -1;
+    // Only available while the stream is running, and not on every device
+    auto latency = stream->calculateLatencyMillis();
+    out[kStatLatencyMicros] = latency ? static_cast<int64_t>(latency.value() * 1000.0) : -1;
+    out[kStatMMap] = oboe::OboeExtensions::isMMapUsed(stream) ? 1 : 0;
+}
+
+void LowLatencyEngine::getStats(int64_t *out) const {
+    std::lock_guard<std::mutex> guard(lock_);
+    fillStreamStats(output_.get(), out);
+    fillStreamStats(input_.get(), out + kStreamStats);
+    out[kStatCallbacks] = callbacks_.load(std::memory_order_relaxed);
+    out[kStatInputUnderflows] = inputUnderflows_.load(std::memory_order_relaxed);
+}
+
+oboe::DataCallbackResult LowLatencyEngine::onAudioReady(oboe::AudioStream *stream,
+                                                        void *audioData, int32_t numFrames) {
+    callbacks_.fetch_add(1, std::memory_order_relaxed);
+    auto *out = static_cast<float *>(audioData);
+    const auto pulseLength = static_cast<int64_t>(pulse_.size());
+
+    for (int32_t i = 0; i < numFrames; i++) {
+        int64_t frame = framePosition_ + i;
+        float sample = 0.0f;
+        if (pulseLength > 0 && frame < totalFrames_) {
+            int64_t offset = frame % intervalFrames_;
+            if (offset < pulseLength) {
+                sample = pulse_[offset];
+            }
+        }
+        out[i] = sample;
+    }
+
+    if (input_) {
+        if (!inputDrained_) {
+            // Discard whatever the input buffered before output started, so
+            // both streams begin on the same frame
+            int32_t drained;
+            do {
+                auto read = input_->read(inputBuffer_.data(),
+                                         static_cast<int32_t>(inputBuffer_.size()), 0);
+                drained = read ? read.value() : 0;
+            } while (drained > 0);
+            inputDrained_ = true;
+        }
+
+        int32_t wanted = std::min(numFrames, static_cast<int32_t>(inputBuffer_.size()));
+        auto read = input_->read(inputBuffer_.data(), wanted, 0);
+        int32_t got = read ? read.value() : 0;
+        if (got < wanted) {
+            // Keep the timelines aligned by padding the shortfall with silence
+            inputUnderflows_.fetch_add(1, std::memory_order_relaxed);
+            std::fill(inputBuffer_.begin() + got, inputBuffer_.begin() + wanted, 0.0f);
+        }
+
+        for (int32_t i = 0; i < wanted; i++) {
+            int64_t frame = framePosition_ + i;
+            if (frame < totalFrames_) {
+                recording_[frame] = inputBuffer_[i];
+            }
+        }
+    }
+
+    framePosition_ += numFrames;
+    if (framePosition_ >= totalFrames_ && !isDone()) {
+        done_.store(true, std::memory_order_release);
+    }
+    return oboe::DataCallbackResult::Continue;
+}
+
+void LowLatencyEngine::onErrorAfterClose(oboe::AudioStream *stream, oboe::Result error) {
+    // Typically ErrorDisconnected after a route change; the owner reopens if it needs to
+    LOGE("Stream %s closed: %s",
+         stream->getDirection() == oboe::Direction::Input ? "input" : "output",
+         oboe::convertToText(error));
+    disconnected_.store(true, std::memory_order_release);
+    done_.store(true, std::memory_order_release);
+}
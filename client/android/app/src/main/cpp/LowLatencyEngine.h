@@ -0,0 +1,98 @@
+#ifndef P2PVIDEO_LOW_LATENCY_ENGINE_H
+#define P2PVIDEO_LOW_LATENCY_ENGINE_H
+
+#include <atomic>
+#include <cstdint>
+#include <memory>
+#include <mutex>
+#include <vector>
+
+#include <oboe/Oboe.h>
+
+/**
+ * Output stream in low-latency mode for voice communication, optionally paired
+ * with an input stream that is read from the output callback.
+ *
+ * The output plays a pulse at the start of every interval and the input is
+ * recorded on the same callback timeline, so input frame N lines up with
+ * output frame N and the pulse's offset in the recording is the round-trip
+ * latency. Without a pulse the engine plays silence, which is enough to read
+ * back the buffer sizes and xruns the device actually granted.
+ *
+ * Layout of getStats() must match NativeAudioEngine.java.
+ */
+class LowLatencyEngine : public oboe::AudioStreamDataCallback,
+                         public oboe::AudioStreamErrorCallback {
+public:
+    // Per stream, output block first, then input
+    static constexpr int kStatSampleRate = 0;
+    static constexpr int kStatFramesPerBurst = 1;
+    static constexpr int kStatBufferSize = 2;
+    static constexpr int kStatBufferCapacity = 3;
+    static constexpr int kStatPerformanceMode = 4;
+    static constexpr int kStatSharingMode = 5;
+    static constexpr int kStatAudioApi = 6;
+    static constexpr int kStatDeviceId = 7;
+    static constexpr int kStatXRuns = 8;
+    static constexpr int kStatLatencyMicros = 9;
+    static constexpr int kStatMMap = 10;
+    static constexpr int kStreamStats = 11;
+    // Engine-wide, after both blocks
+    static constexpr int kStatCallbacks = 2 * kStreamStats;
+    static constexpr int kStatInputUnderflows = kStatCallbacks + 1;
+    static constexpr int kStatCount = kStatInputUnderflows + 1;
+
+    ~LowLatencyEngine() override;
+
+    oboe::Result open(int32_t deviceId, bool withInput);
+
+    /**
+     * Plays pulseCount intervals. An empty pulse plays silence.
+     */
+    oboe::Result start(const float *pulse, int32_t pulseLength, int32_t intervalFrames,
+                       int32_t pulseCount);
+
+    void stop();
+    void close();
+
+    bool isDone() const { return done_.load(std::memory_order_acquire); }
+    bool isDisconnected() const { return disconnected_.load(std::memory_order_acquire); }
+
+    /**
+     * Copies the recording once isDone(); returns the number of frames copied.
+     */
+    int32_t copyRecording(float *out, int32_t capacity) const;
+
+    void getStats(int64_t *out) const;
+
+    oboe::DataCallbackResult onAudioReady(oboe::AudioStream *stream, void *audioData,
+                                          int32_t numFrames) override;
+
+    void onErrorAfterClose(oboe::AudioStream *stream, oboe::Result error) override;
+
+private:
+    static void fillStreamStats(oboe::AudioStream *stream, int64_t *out);
+
+    std::shared_ptr<oboe::AudioStream> output_;
+    std::shared_ptr<oboe::AudioStream> input_;
+    // Guards opening and closing against the error callback
+    mutable std::mutex lock_;
+
+    // Written before start, read only by the callback while running
+    std::vector<float> pulse_;
+    std::vector<float> inputBuffer_;
+    std::vector<float> recording_;
+    int64_t intervalFrames_ = 0;
+    int64_t totalFrames_ = 0;
+
+    // Callback state
+    int64_t framePosition_ = 0;
+    bool inputDrained_ = false;
+
+    std::atomic<bool> done_{false};
+    std::atomic<bool> disconnected_{false};
+    std::atomic<int64_t> callbacks_{0};
+    std::atomic<int64_t> inputUnderflows_{0};
+};
+
+#endif // P2PVIDEO_LOW_LATENCY_ENGINE_H
@@ -0,0 +1,85 @@
+// JNI bindings for com.p2pvideo.app.NativeAudioEngine. The handle is a
+// LowLatencyEngine pointer owned by the Java object until nativeDelete.
+
+#include <jni.h>
+
+#include "LowLatencyEngine.h"
+
+static LowLatencyEngine *engine(jlong handle) {
+    return reinterpret_cast<LowLatencyEngine *>(handle);
+}
+
+extern "C" {
+
+JNIEXPORT jlong JNICALL
+Java_com_p2pvideo_app_NativeAudioEngine_nativeCreate(JNIEnv *, jclass) {
+    return reinterpret_cast<jlong>(new LowLatencyEngine());
+}
+
+JNIEXPORT void JNICALL
+Java_com_p2pvideo_app_NativeAudioEngine_nativeDelete(JNIEnv *, jclass, jlong handle) {
+    delete engine(handle);
+}
+
+JNIEXPORT jint JNICALL
+Java_com_p2pvideo_app_NativeAudioEngine_nativeOpen(JNIEnv *, jclass, jlong handle,
+                                                   jint deviceId, jboolean withInput) {
+    return static_cast<jint>(engine(handle)->open(deviceId, withInput == JNI_TRUE));
+}
+
+JNIEXPORT jint JNICALL
+Java_com_p2pvideo_app_NativeAudioEngine_nativeStart(JNIEnv *env, jclass, jlong handle,
+                                                    jfloatArray pulse, jint intervalFrames,
+                                                    jint pulseCount) {
+    if (pulse == nullptr) {
+        return static_cast<jint>(engine(handle)->start(nullptr, 0, intervalFrames, pulseCount));
+    }
+    jsize length = env->GetArrayLength(pulse);
+    jfloat *samples = env->GetFloatArrayElements(pulse, nullptr);
+    oboe::Result result = engine(handle)->start(samples, length, intervalFrames, pulseCount);
+    env->ReleaseFloatArrayElements(pulse, samples, JNI_ABORT);
+    return static_cast<jint>(result);
+}
+
+JNIEXPORT void JNICALL
+Java_com_p2pvideo_app_NativeAudioEngine_nativeStop(JNIEnv *, jclass, jlong handle) {
+    engine(handle)->stop();
+}
+
+JNIEXPORT void JNICALL
+Java_com_p2pvideo_app_NativeAudioEngine_nativeClose(JNIEnv *, jclass, jlong handle) {
+    engine(handle)->close();
+}
+
+JNIEXPORT jboolean JNICALL
+Java_com_p2pvideo_app_NativeAudioEngine_nativeIsDone(JNIEnv *, jclass, jlong handle) {
+    return engine(handle)->isDone() ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jboolean JNICALL
+Java_com_p2pvideo_app_NativeAudioEngine_nativeIsDisconnected(JNIEnv *, jclass, jlong handle) {
+    return engine(handle)->isDisconnected() ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jint JNICALL
+Java_com_p2pvideo_app_NativeAudioEngine_nativeCopyRecording(JNIEnv *env, jclass, jlong handle,
+                                                            jfloatArray out) {
+    jsize capacity = env->GetArrayLength(out);
+    jfloat *samples = env->GetFloatArrayElements(out, nullptr);
+    jint frames = engine(handle)->copyRecording(samples, capacity);
+    env->ReleaseFloatArrayElements(out, samples, 0);
+    return frames;
+}
+
+JNIEXPORT void JNICALL
+Java_com_p2pvideo_app_NativeAudioEngine_nativeGetStats(JNIEnv *env, jclass, jlong handle,
+                                                       jlongArray out) {
+    int64_t stats[LowLatencyEngine::kStatCount];
+    engine(handle)->getStats(stats);
+    jsize length = env->GetArrayLength(out);
+    env->SetLongArrayRegion(out, 0, length < LowLatencyEngine::kStatCount
+                                        ? length : LowLatencyEngine::kStatCount,
+                            reinterpret_cast<const jlong *>(stats));
+}
+
+}
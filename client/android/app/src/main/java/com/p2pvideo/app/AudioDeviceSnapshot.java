@@ -0,0 +1,229 @@
+package com.p2pvideo.app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable, versioned view of the audio output devices.
+ *
+ * Kept free of android.* types so snapshot building and diffing can run in
+ * plain JVM tests and benchmarks; the type constants mirror AudioDeviceInfo.
+ */
+public final class AudioDeviceSnapshot {
+    static final int TYPE_BUILTIN_EARPIECE = 1;
+    static final int TYPE_BUILTIN_SPEAKER = 2;
+    static final int TYPE_WIRED_HEADSET = 3;
+    static final int TYPE_WIRED_HEADPHONES = 4;
+    static final int TYPE_BLUETOOTH_SCO = 7;
+    static final int TYPE_BLUETOOTH_A2DP = 8;
+    static final int TYPE_USB_HEADSET = 22;
+    static final int TYPE_BLE_HEADSET = 26;
+
+    public static final AudioDeviceSnapshot EMPTY =
+        new AudioDeviceSnapshot(0, Collections.<Device>emptyList(), false);
+
+    public final long version;
+    public final List<Device> devices;
+    public final boolean hasBluetooth;
+    public final boolean hasWiredHeadset;
+
+    private AudioDeviceSnapshot(long version, List<Device> devices, boolean bluetoothHeadsetConnected) {
+        this.version = version;
+        this.devices = devices;
+
+        boolean bluetooth = bluetoothHeadsetConnected;
+        boolean wired = false;
+        for (int i = 0; i < devices.size(); i++) {
+            Device device = devices.get(i);
+            bluetooth |= isCallBluetooth(device.type);
+            wired |= device.isHeadphone;
+        }
+        this.hasBluetooth = bluetooth;
+        this.hasWiredHeadset = wired;
+    }
+
+    public Device findById(int id) {
+        for (int i = 0; i < devices.size(); i++) {
+            if (devices.get(i).id == id) {
+                return devices.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * First device that carries the given route ("bluetooth", "speaker",
+     * "earpiece" or "headphones"), or null.
+     */
+    public Device findForRoute(String route) {
+        for (int i = 0; i < devices.size(); i++) {
+            Device device = devices.get(i);
+            if (carriesRoute(device.type, route)) {
+                return device;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Bluetooth outputs that can carry call audio. A2DP is output-only media
+     * and does not count.
+     */
+    private static boolean isCallBluetooth(int type) {
+        return type == TYPE_BLUETOOTH_SCO || type == TYPE_BLE_HEADSET;
+    }
+
+    private static boolean carriesRoute(int type, String route) {
+        switch (route) {
+            case "bluetooth":
+                return isCallBluetooth(type);
+            case "speaker":
+                return type == TYPE_BUILTIN_SPEAKER;
+            case "earpiece":
+                return type == TYPE_BUILTIN_EARPIECE;
+            case "headphones":
+                return type == TYPE_WIRED_HEADSET
+                    || type == TYPE_WIRED_HEADPHONES
+                    || type == TYPE_USB_HEADSET;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Devices present here but not in the older snapshot.
+     */
+    public List<Device> addedSince(AudioDeviceSnapshot older) {
+        List<Device> added = new ArrayList<>();
+        for (int i = 0; i < devices.size(); i++) {
+            Device device = devices.get(i);
+            if (!device.equals(older.findById(device.id))) {
+                added.add(device);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Ids of devices in the older snapshot that are gone or changed here.
+     */
+    public List<Integer> removedSince(AudioDeviceSnapshot older) {
+        List<Integer> removed = new ArrayList<>();
+        for (int i = 0; i < older.devices.size(); i++) {
+            Device device = older.devices.get(i);
+            if (!device.equals(findById(device.id))) {
+                removed.add(device.id);
+            }
+        }
+        return removed;
+    }
+
+    public static String typeName(int type) {
+        switch (type) {
+            case TYPE_BUILTIN_EARPIECE:
+                return "Earpiece";
+            case TYPE_BUILTIN_SPEAKER:
+                return "Speaker";
+            case TYPE_WIRED_HEADSET:
+                return "Wired Headset";
+            case TYPE_WIRED_HEADPHONES:
+                return "Wired Headphones";
+            case TYPE_BLUETOOTH_SCO:
+                return "Bluetooth SCO";
+            case TYPE_BLUETOOTH_A2DP:
+                return "Bluetooth A2DP";
+            case TYPE_USB_HEADSET:
+                return "USB Headset";
+            case TYPE_BLE_HEADSET:
+                return "Bluetooth LE Headset";
+            default:
+                return "Unknown (" + type + ")";
+        }
+    }
+
+    public static final class Device {
+        public final int id;
+        public final int type;
+        public final String productName;
+        public final String typeName;
+        public final boolean isBluetooth;
+        public final boolean isHeadphone;
+
+        public Device(int id, int type, CharSequence productName) {
+            this.id = id;
+            this.type = type;
+            this.productName = productName != null ? productName.toString() : "";
+            this.typeName = typeName(type);
+            this.isBluetooth = isCallBluetooth(type) || type == TYPE_BLUETOOTH_A2DP;
+            this.isHeadphone = type == TYPE_WIRED_HEADPHONES
+                || type == TYPE_WIRED_HEADSET
+                || type == TYPE_USB_HEADSET;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Device)) {
+                return false;
+            }
+            Device device = (Device) other;
+            return id == device.id && type == device.type && productName.equals(device.productName);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * id + type) + productName.hashCode();
+        }
+    }
+
+    /**
+     * Collects devices for the next snapshot. Reusable between rebuilds.
+     */
+    public static final class Builder {
+        private final List<Device> devices = new ArrayList<>();
+        private boolean bluetoothHeadsetConnected;
+
+        public Builder reset() {
+            devices.clear();
+            bluetoothHeadsetConnected = false;
+            return this;
+        }
+
+        public Builder addDevice(int id, int type, CharSequence productName) {
+            devices.add(new Device(id, type, productName));
+            return this;
+        }
+
+        public Builder setBluetoothHeadsetConnected(boolean connected) {
+            bluetoothHeadsetConnected = connected;
+            return this;
+        }
+
+        /**
+         * Returns the previous snapshot untouched when nothing changed, otherwise
+         * a new snapshot with the next version number.
+         */
+        public AudioDeviceSnapshot build(AudioDeviceSnapshot previous) {
+            if (devices.equals(previous.devices)
+                && sameBluetoothState(previous)) {
+                return previous;
+            }
+            return new AudioDeviceSnapshot(
+                previous.version + 1,
+                Collections.unmodifiableList(new ArrayList<>(devices)),
+                bluetoothHeadsetConnected
+            );
+        }
+
+        private boolean sameBluetoothState(AudioDeviceSnapshot previous) {
+            boolean hasCallBluetooth = false;
+            for (int i = 0; i < devices.size(); i++) {
+                hasCallBluetooth |= isCallBluetooth(devices.get(i).type);
+            }
+            return (bluetoothHeadsetConnected || hasCallBluetooth) == previous.hasBluetooth;
+        }
+    }
+}
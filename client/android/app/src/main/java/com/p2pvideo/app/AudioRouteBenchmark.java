@@ -0,0 +1,139 @@
+package com.p2pvideo.app;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures route switch latency of one or more AudioRouteEngines by cycling
+ * through a list of routes. Switching is audible, so this is meant to be run
+ * from a debug screen and not during a call.
+ *
+ * Runs on the audio handler thread, one switch at a time.
+ */
+public class AudioRouteBenchmark {
+    private static final String TAG = "AudioRouteBenchmark";
+    private static final long SWITCH_TIMEOUT_MS = 4000;
+
+    /**
+     * Receives the results once every engine has been measured.
+     */
+    public interface Listener {
+        void onComplete(JSObject results);
+    }
+
+    private final Handler handler;
+    private final List<AudioRouteEngine> engines;
+    private final String[] routes;
+    private final int iterations;
+    private final Listener listener;
+
+    private final JSObject results = new JSObject();
+    private final long[] samples;
+    private int engineIndex = 0;
+    private int step = 0;
+    private int sampleCount = 0;
+    private int failures = 0;
+    private long switchStartedAt;
+    private boolean awaiting = false;
+
+    private final Runnable timeoutRunnable = () -> onSwitched(false);
+
+    public AudioRouteBenchmark(Handler handler, List<AudioRouteEngine> engines, String[] routes,
+                               int iterations, Listener listener) {
+        this.handler = handler;
+        this.engines = new ArrayList<>(engines);
+        this.routes = routes;
+        this.iterations = iterations;
+        this.listener = listener;
+        this.samples = new long[routes.length * iterations];
+    }
+
+    public void start() {
+        handler.post(this::nextStep);
+    }
+
+    private void nextStep() {
+        if (engineIndex >= engines.size()) {
+            listener.onComplete(results);
+            return;
+        }
+
+        if (step >= samples.length) {
+            finishEngine();
+            return;
+        }
+
+        AudioRouteEngine engine = engines.get(engineIndex);
+        String route = routes[step % routes.length];
+        switchStartedAt = SystemClock.elapsedRealtimeNanos();
+        try {
+            if (engine.apply(route, (success, error) -> onSwitched(success))) {
+                onSwitched(true);
+            } else {
+                awaiting = true;
+                handler.postDelayed(timeoutRunnable, SWITCH_TIMEOUT_MS);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, engine.getName() + " could not switch to " + route + ": " + e.getMessage());
+            onSwitched(false);
+        }
+    }
+
+    private void onSwitched(boolean success) {
+        long elapsed = SystemClock.elapsedRealtimeNanos() - switchStartedAt;
+        if (awaiting) {
+            awaiting = false;
+            handler.removeCallbacks(timeoutRunnable);
+            if (!success) {
+                engines.get(engineIndex).cancel();
+            }
+        }
+
+        if (success) {
+            samples[sampleCount++] = elapsed;
+        } else {
+            failures++;
+        }
+        step++;
+        handler.post(this::nextStep);
+    }
+
+    private void finishEngine() {
+        AudioRouteEngine engine = engines.get(engineIndex);
+        long[] sorted = Arrays.copyOf(samples, sampleCount);
+        Arrays.sort(sorted);
+
+        long total = 0;
+        for (long sample : sorted) {
+            total += sample;
+        }
+
+        JSObject ret = new JSObject();
+        ret.put("switches", sampleCount);
+        ret.put("failures", failures);
+        if (sampleCount > 0) {
+            ret.put("avgMs", total / sampleCount / 1e6);
+            ret.put("minMs", sorted[0] / 1e6);
+            ret.put("p50Ms", sorted[sampleCount / 2] / 1e6);
+            ret.put("p90Ms", sorted[Math.min(sampleCount - 1, sampleCount * 9 / 10)] / 1e6);
+            ret.put("maxMs", sorted[sampleCount - 1] / 1e6);
+        }
+        ret.put("routes", new JSArray(Arrays.asList(routes)));
+        results.put(engine.getName(), ret);
+        Log.d(TAG, engine.getName() + ": " + ret);
+
+        engineIndex++;
+        step = 0;
+        sampleCount = 0;
+        failures = 0;
+        handler.post(this::nextStep);
+    }
+}
@@ -0,0 +1,452 @@
+package com.p2pvideo.app;
+
+import android.media.AudioManager;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Audio route state machine used by AudioRoutingPlugin.
+ *
+ * Route requests are collected for a short window and only the last one is
+ * applied. A request for the route that is already active resolves without
+ * touching AudioManager. The switch itself is delegated to an
+ * AudioRouteEngine and the call resolves only once the engine confirms the
+ * route, e.g. when Bluetooth SCO reports connected on the legacy engine.
+ * Requests arriving mid-switch are applied after it settles.
+ *
+ * Each route is applied with its AudioRouteProfile. While a call is active
+ * and a Bluetooth headset is around, the engine is asked to prewarm the
+ * Bluetooth route so that switching to it does not wait on SCO setup. Every
+ * switch is followed by a RouteAudioProbe measurement of time to audio.
+ *
+ * Every method runs on the handler passed to the constructor.
+ */
+public class AudioRouteController {
+    private static final String TAG = "AudioRouteController";
+    // Requests inside this window collapse into one transition
+    private static final long COALESCE_MS = 120;
+    // Give up waiting for the engine to confirm a switch after this long
+    private static final long SWITCH_TIMEOUT_MS = 4000;
+    private static final int HISTORY_SIZE = 16;
+    private static final double[] TIME_TO_AUDIO_BOUNDS_MS = { 100, 200, 400, 800, 1600, 3200 };
+
+    public static final String ROUTE_NONE = "none";
+
+    private enum State {
+        IDLE,
+        PENDING,
+        SWITCHING
+    }
+
+    /**
+     * Receives route change events for forwarding to JS.
+     */
+    public interface Listener {
+        void onRouteChanged(JSObject event);
+
+        /**
+         * Time to audio for a completed switch, once measured.
+         */
+        default void onRouteAudible(JSObject event) {
+        }
+    }
+
+    private final AudioManager audioManager;
+    private final AudioRouteEngine engine;
+    private final Handler handler;
+    private final Listener listener;
+    private final RouteAudioProbe probe;
+
+    // Written from the bridge through setProfile, read on the handler
+    private final Map<String, AudioRouteProfile> profiles = new ConcurrentHashMap<>();
+    private final Map<String, MetricHistogram> timeToAudio = new HashMap<>();
+
+    private boolean callActive;
+    private boolean bluetoothAvailable;
+    private boolean prewarmed;
+    private int prewarmCount;
+
+    private State state = State.IDLE;
+    private volatile String currentRoute = ROUTE_NONE;
+
+    // Requests waiting for the coalescing window to close
+    private String pendingRoute;
+    private long pendingSince;
+    private final List<PluginCall> pendingCalls = new ArrayList<>();
+
+    // The transition in flight
+    private Transition transition;
+
+    private final Runnable applyPendingRunnable = this::applyPending;
+    private final Runnable switchTimeoutRunnable = this::onSwitchTimeout;
+
+    private final JSObject[] history = new JSObject[HISTORY_SIZE];
+    private int historyCount = 0;
+    private int skippedTransitions = 0;
+
+    private volatile int audioMode;
+
+    private static final class Transition {
+        final String from;
+        final String to;
+        final long requestedAt;
+        final long startedAt;
+        final List<PluginCall> calls;
+        // The route was ready before the switch, e.g. a warm SCO link
+        boolean warmStart;
+
+        Transition(String from, String to, long requestedAt, List<PluginCall> calls) {
+            this.from = from;
+            this.to = to;
+            this.requestedAt = requestedAt;
+            this.startedAt = SystemClock.elapsedRealtime();
+            this.calls = calls;
+        }
+    }
+
+    public AudioRouteController(AudioManager audioManager, AudioRouteEngine engine,
+                                Handler handler, Listener listener) {
+        this.audioManager = audioManager;
+        this.engine = engine;
+        this.handler = handler;
+        this.listener = listener;
+        this.probe = new RouteAudioProbe(audioManager, handler);
+        handler.post(() -> audioMode = audioManager.getMode());
+    }
+
+    public String getEngineName() {
+        return engine.getName();
+    }
+
+    public boolean isSpeakerphoneOn() {
+        return engine.isSpeakerphoneOn();
+    }
+
+    public boolean isBluetoothScoOn() {
+        return engine.isBluetoothScoOn();
+    }
+
+    /**
+     * True while no request is queued or being applied.
+     */
+    public boolean isIdle() {
+        return state == State.IDLE;
+    }
+
+    public String getCurrentRoute() {
+        return currentRoute;
+    }
+
+    public int getAudioMode() {
+        return audioMode;
+    }
+
+    /**
+     * Queues a route request. The call, if any, is settled once the route is in effect.
+     */
+    public void request(String route, PluginCall call) {
+        handler.post(() -> {
+            if (pendingRoute == null) {
+                pendingSince = SystemClock.elapsedRealtime();
+            }
+            pendingRoute = route;
+            if (call != null) {
+                pendingCalls.add(call);
+            }
+
+            if (state != State.SWITCHING) {
+                state = State.PENDING;
+                handler.removeCallbacks(applyPendingRunnable);
+                handler.postDelayed(applyPendingRunnable, COALESCE_MS);
+            }
+        });
+    }
+
+    /**
+     * Applies the current route again, e.g. after something else changed it behind our back.
+     */
+    public void reapply() {
+        handler.post(() -> {
+            String route = currentRoute;
+            currentRoute = ROUTE_NONE;
+            if (!ROUTE_NONE.equals(route)) {
+                request(route, null);
+            }
+        });
+    }
+
+    public AudioRouteProfile getProfile(String route) {
+        AudioRouteProfile profile = profiles.get(route);
+        return profile != null ? profile : AudioRouteProfile.defaultFor(route);
+    }
+
+    /**
+     * Replaces a route's profile; the audio mode changes at once if the route is active.
+     */
+    public void setProfile(AudioRouteProfile profile) {
+        profiles.put(profile.route, profile);
+        handler.post(() -> {
+            if (profile.route.equals(currentRoute) && state == State.IDLE && audioMode != profile.mode) {
+                audioManager.setMode(profile.mode);
+                audioMode = profile.mode;
+            }
+        });
+    }
+
+    /**
+     * Prewarming only happens during a call.
+     */
+    public void setCallActive(boolean active) {
+        handler.post(() -> {
+            callActive = active;
+            updatePrewarm();
+        });
+    }
+
+    /**
+     * Fed from device inventory updates, including the Bluetooth connection receiver.
+     */
+    public void setBluetoothAvailable(boolean available) {
+        handler.post(() -> {
+            bluetoothAvailable = available;
+            updatePrewarm();
+        });
+    }
+
+    /**
+     * Fed from the ACTION_SCO_AUDIO_STATE_UPDATED broadcast.
+     */
+    public void onScoAudioStateChanged(int scoState) {
+        engine.onScoAudioStateChanged(scoState);
+    }
+
+    /**
+     * Recent transitions with their timings, newest last.
+     */
+    public JSObject getMetrics() {
+        JSArray transitions = new JSArray();
+        int start = Math.max(0, historyCount - HISTORY_SIZE);
+        for (int i = start; i < historyCount; i++) {
+            transitions.put(history[i % HISTORY_SIZE]);
+        }
+
+        JSObject timeToAudioByRoute = new JSObject();
+        for (Map.Entry<String, MetricHistogram> entry : timeToAudio.entrySet()) {
+            timeToAudioByRoute.put(entry.getKey(), entry.getValue().toJSObject());
+        }
+
+        JSObject ret = new JSObject();
+        ret.put("engine", engine.getName());
+        ret.put("currentRoute", currentRoute);
+        ret.put("state", state.name());
+        ret.put("transitionCount", historyCount);
+        ret.put("skippedTransitions", skippedTransitions);
+        ret.put("transitions", transitions);
+        ret.put("bluetoothPrewarmed", prewarmed);
+        ret.put("prewarmCount", prewarmCount);
+        ret.put("timeToAudioMs", timeToAudioByRoute);
+        return ret;
+    }
+
+    /**
+     * Stops the controller and its engine. Like everything else, must run on
+     * the handler, so it cannot race a switch in progress.
+     */
+    public void release() {
+        handler.removeCallbacks(applyPendingRunnable);
+        handler.removeCallbacks(switchTimeoutRunnable);
+        probe.release();
+        engine.release();
+    }
+
+    private void updatePrewarm() {
+        if (state == State.SWITCHING) {
+            // Re-evaluated once the switch completes
+            return;
+        }
+        boolean wanted = callActive && bluetoothAvailable;
+        if (wanted && !prewarmed) {
+            prewarmed = engine.prewarm("bluetooth");
+            if (prewarmed) {
+                prewarmCount++;
+                Log.d(TAG, "Bluetooth route prewarmed on " + engine.getName() + " engine");
+            }
+        } else if (!wanted && prewarmed) {
+            engine.releasePrewarm();
+            prewarmed = false;
+        }
+    }
+
+    private void applyPending() {
+        if (pendingRoute == null || state == State.SWITCHING) {
+            return;
+        }
+
+        String route = pendingRoute;
+        long requestedAt = pendingSince;
+        List<PluginCall> calls = new ArrayList<>(pendingCalls);
+        pendingRoute = null;
+        pendingCalls.clear();
+
+        AudioRouteProfile profile = getProfile(route);
+        if (route.equals(currentRoute) && audioMode == profile.mode
+                && engine.isRouteInEffect(route)) {
+            // Nothing to do; answer every coalesced request straight away
+            skippedTransitions++;
+            state = State.IDLE;
+            JSObject ret = result(route, false, SystemClock.elapsedRealtime() - requestedAt, 0, profile);
+            for (PluginCall call : calls) {
+                call.resolve(ret);
+            }
+            return;
+        }
+
+        state = State.SWITCHING;
+        transition = new Transition(currentRoute, route, requestedAt, calls);
+        transition.warmStart = engine.isRouteWarm(route);
+        probe.begin(route, transition.startedAt);
+        Log.d(TAG, "Switching audio route " + transition.from + " -> " + route
+            + (transition.warmStart ? " (warm)" : ""));
+
+        boolean applied;
+        try {
+            if (audioMode != profile.mode) {
+                audioManager.setMode(profile.mode);
+                audioMode = profile.mode;
+            }
+            applied = engine.apply(route, this::onEngineApplied);
+        } catch (Exception e) {
+            Log.e(TAG, "Error setting audio route", e);
+            completeTransition(false, e.getMessage());
+            return;
+        }
+
+        if (applied) {
+            completeTransition(true, null);
+        } else {
+            handler.postDelayed(switchTimeoutRunnable, SWITCH_TIMEOUT_MS);
+        }
+    }
+
+    private void onEngineApplied(boolean success, String error) {
+        if (transition == null) {
+            return;
+        }
+        handler.removeCallbacks(switchTimeoutRunnable);
+        completeTransition(success, error);
+    }
+
+    private void onSwitchTimeout() {
+        if (transition != null) {
+            Log.w(TAG, engine.getName() + " engine did not confirm route " + transition.to);
+            engine.cancel();
+            completeTransition(false, "Timed out waiting for audio route " + transition.to);
+        }
+    }
+
+    private void completeTransition(boolean success, String error) {
+        Transition done = transition;
+        transition = null;
+        state = State.IDLE;
+
+        long now = SystemClock.elapsedRealtime();
+        long latencyMs = now - done.requestedAt;
+        long switchMs = now - done.startedAt;
+        if (success) {
+            currentRoute = done.to;
+        }
+
+        JSObject record = new JSObject();
+        record.put("engine", engine.getName());
+        record.put("from", done.from);
+        record.put("to", done.to);
+        record.put("success", success);
+        record.put("latencyMs", latencyMs);
+        record.put("switchMs", switchMs);
+        record.put("coalescedRequests", done.calls.size());
+        record.put("warmStart", done.warmStart);
+        history[historyCount % HISTORY_SIZE] = record;
+        historyCount++;
+
+        Log.d(TAG, "Route " + done.from + " -> " + done.to + (success ? " done" : " failed")
+            + " in " + switchMs + " ms (" + latencyMs + " ms since request)");
+
+        if (success) {
+            probe.onRouteConfirmed((route, timeToAudioMs) -> onTimeToAudio(record, route, timeToAudioMs));
+            JSObject ret = result(done.to, true, latencyMs, switchMs, getProfile(done.to));
+            for (PluginCall call : done.calls) {
+                call.resolve(ret);
+            }
+        } else {
+            probe.cancel();
+            for (PluginCall call : done.calls) {
+                call.reject("Error: " + error);
+            }
+        }
+        listener.onRouteChanged(record);
+
+        if (pendingRoute != null) {
+            state = State.PENDING;
+            handler.post(applyPendingRunnable);
+        } else {
+            updatePrewarm();
+        }
+    }
+
+    private void onTimeToAudio(JSObject record, String route, long timeToAudioMs) {
+        if (timeToAudioMs >= 0) {
+            MetricHistogram histogram = timeToAudio.get(route);
+            if (histogram == null) {
+                histogram = new MetricHistogram("timeToAudio." + route, TIME_TO_AUDIO_BOUNDS_MS, HISTORY_SIZE);
+                timeToAudio.put(route, histogram);
+            }
+            histogram.record(timeToAudioMs);
+        }
+        Object value = timeToAudioMs >= 0 ? (Object) timeToAudioMs : JSONObject.NULL;
+        record.put("timeToAudioMs", value);
+        Log.d(TAG, "Time to audio on " + route + ": " + timeToAudioMs + " ms");
+
+        JSObject event = new JSObject();
+        event.put("engine", engine.getName());
+        event.put("route", route);
+        event.put("timeToAudioMs", value);
+        event.put("warmStart", record.getBoolean("warmStart", false));
+        listener.onRouteAudible(event);
+    }
+
+    static JSObject toJSObject(AudioRouteProfile profile) {
+        JSObject ret = new JSObject();
+        ret.put("route", profile.route);
+        ret.put("mode", AudioRouteProfile.modeName(profile.mode));
+        ret.put("volumeStream", AudioRouteProfile.streamName(profile.volumeStream));
+        ret.put("echoCancellation", profile.echoCancellation);
+        ret.put("noiseSuppression", profile.noiseSuppression);
+        ret.put("autoGainControl", profile.autoGainControl);
+        return ret;
+    }
+
+    private static JSObject result(String route, boolean changed, long latencyMs, long switchMs,
+                                   AudioRouteProfile profile) {
+        JSObject ret = new JSObject();
+        ret.put("success", true);
+        ret.put("route", route);
+        ret.put("changed", changed);
+        ret.put("latencyMs", latencyMs);
+        ret.put("switchMs", switchMs);
+        ret.put("profile", toJSObject(profile));
+        return ret;
+    }
+}
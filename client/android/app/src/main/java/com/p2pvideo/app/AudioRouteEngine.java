@@ -0,0 +1,69 @@
+package com.p2pvideo.app;
+
+import android.media.AudioManager;
+import android.os.Build;
+import android.os.Handler;
+
+/**
+ * Applies an audio route on behalf of AudioRouteController.
+ *
+ * Implementations are driven from the controller's handler thread only.
+ */
+public interface AudioRouteEngine {
+
+    /**
+     * Reports the outcome of a route switch that did not finish inside apply().
+     */
+    interface Callback {
+        void onRouteApplied(boolean success, String error);
+    }
+
+    String getName();
+
+    /**
+     * Starts switching to the route. Returns true when the route is already in
+     * effect on return; otherwise the callback fires once the switch settles.
+     */
+    boolean apply(String route, Callback callback) throws Exception;
+
+    boolean isRouteInEffect(String route);
+
+    /**
+     * Drops a pending callback, e.g. after the controller timed the switch out.
+     */
+    void cancel();
+
+    void onScoAudioStateChanged(int scoState);
+
+    /**
+     * Sets the route up ahead of a switch where that can be done without
+     * moving audio, such as bringing up the SCO link for a headset, and keeps
+     * it up until releasePrewarm(). Returns false when the engine has nothing
+     * to prepare.
+     */
+    boolean prewarm(String route);
+
+    void releasePrewarm();
+
+    /**
+     * Whether a switch to the route can complete without waiting on a link.
+     */
+    boolean isRouteWarm(String route);
+
+    boolean isSpeakerphoneOn();
+
+    boolean isBluetoothScoOn();
+
+    void release();
+
+    /**
+     * Picks the communication-device engine on API 31+ and the legacy
+     * speakerphone/SCO engine below that.
+     */
+    static AudioRouteEngine create(AudioManager audioManager, Handler handler) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            return new CommunicationDeviceRouteEngine(audioManager, handler);
+        }
+        return new LegacyAudioRouteEngine(audioManager);
+    }
+}
@@ -0,0 +1,118 @@
+package com.p2pvideo.app;
+
+/**
+ * Audio session settings for one route: the audio mode and volume stream the
+ * route runs with, and the capture processing the page should ask
+ * getUserMedia for while it is active.
+ *
+ * Defaults follow each route's acoustics. Earpiece and speaker need echo
+ * cancellation because the mic hears the output. Wired headphones don't
+ * leak into the mic. Bluetooth headsets run their own echo cancellation and
+ * noise suppression, and a second pass in WebRTC only degrades speech.
+ * Kept free of android.* types (the constants mirror AudioManager) so it can
+ * be unit tested.
+ */
+public final class AudioRouteProfile {
+    static final int MODE_NORMAL = 0;
+    static final int MODE_IN_COMMUNICATION = 3;
+    static final int STREAM_VOICE_CALL = 0;
+    static final int STREAM_MUSIC = 3;
+
+    public final String route;
+    public final int mode;
+    public final int volumeStream;
+    public final boolean echoCancellation;
+    public final boolean noiseSuppression;
+    public final boolean autoGainControl;
+
+    AudioRouteProfile(String route, int mode, int volumeStream, boolean echoCancellation,
+                      boolean noiseSuppression, boolean autoGainControl) {
+        this.route = route;
+        this.mode = mode;
+        this.volumeStream = volumeStream;
+        this.echoCancellation = echoCancellation;
+        this.noiseSuppression = noiseSuppression;
+        this.autoGainControl = autoGainControl;
+    }
+
+    public static AudioRouteProfile defaultFor(String route) {
+        switch (route) {
+            case "headphones":
+                return new AudioRouteProfile(route, MODE_IN_COMMUNICATION, STREAM_VOICE_CALL, false, true, true);
+            case "bluetooth":
+                return new AudioRouteProfile(route, MODE_IN_COMMUNICATION, STREAM_VOICE_CALL, false, false, true);
+            default:
+                return new AudioRouteProfile(route, MODE_IN_COMMUNICATION, STREAM_VOICE_CALL, true, true, true);
+        }
+    }
+
+    /**
+     * Copy with the given settings replaced; null keeps the current value.
+     */
+    public AudioRouteProfile with(Integer mode, Integer volumeStream, Boolean echoCancellation,
+                                  Boolean noiseSuppression, Boolean autoGainControl) {
+        return new AudioRouteProfile(
+            route,
+            mode != null ? mode : this.mode,
+            volumeStream != null ? volumeStream : this.volumeStream,
+            echoCancellation != null ? echoCancellation : this.echoCancellation,
+            noiseSuppression != null ? noiseSuppression : this.noiseSuppression,
+            autoGainControl != null ? autoGainControl : this.autoGainControl
+        );
+    }
+
+    public static String modeName(int mode) {
+        return mode == MODE_NORMAL ? "normal" : "communication";
+    }
+
+    /**
+     * Parses "normal" or "communication"; returns -1 for anything else.
+     */
+    public static int parseMode(String name) {
+        if ("normal".equals(name)) {
+            return MODE_NORMAL;
+        }
+        return "communication".equals(name) ? MODE_IN_COMMUNICATION : -1;
+    }
+
+    public static String streamName(int stream) {
+        return stream == STREAM_MUSIC ? "music" : "voiceCall";
+    }
+
+    /**
+     * Parses "voiceCall" or "music"; returns -1 for anything else.
+     */
+    public static int parseStream(String name) {
+        if ("music".equals(name)) {
+            return STREAM_MUSIC;
+        }
+        return "voiceCall".equals(name) ? STREAM_VOICE_CALL : -1;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof AudioRouteProfile)) {
+            return false;
+        }
+        AudioRouteProfile profile = (AudioRouteProfile) other;
+        return route.equals(profile.route)
+            && mode == profile.mode
+            && volumeStream == profile.volumeStream
+            && echoCancellation == profile.echoCancellation
+            && noiseSuppression == profile.noiseSuppression
+            && autoGainControl == profile.autoGainControl;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = route.hashCode();
+        hash = 31 * hash + mode;
+        hash = 31 * hash + volumeStream;
+        hash = 31 * hash + (echoCancellation ? 1 : 0);
+        hash = 31 * hash + (noiseSuppression ? 1 : 0);
+        return 31 * hash + (autoGainControl ? 1 : 0);
+    }
+}
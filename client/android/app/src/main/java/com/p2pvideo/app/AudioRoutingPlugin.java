@@ -6,10 +6,13 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.media.AudioDeviceCallback;
 import android.media.AudioDeviceInfo;
 import android.media.AudioManager;
 import android.os.Build;
+import android.os.Handler;
 import android.util.Log;
+import android.util.SparseArray;
 
 import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
@@ -24,16 +27,179 @@ import java.util.List;
 @CapacitorPlugin(name = "AudioRouting")
 public class AudioRoutingPlugin extends Plugin {
     private static final String TAG = "AudioRoutingPlugin";
+    // Looper lane the inventory, receivers and route controller run on
+    private static final String LANE = "AudioRouting";
+    // Device events arriving within this window are folded into one snapshot update
+    private static final long DEVICE_COALESCE_MS = 150;
     private AudioManager audioManager;
     private BroadcastReceiver audioDeviceReceiver;
-    private boolean isBluetoothScoOn = false;
+    private volatile AudioRouteController routeController;
+    private List<AudioRouteEngine> benchmarkEngines;
 
-    @Override
-    public void load() {
-        super.load();
+    // Device inventory and route state, owned by the audio thread (the lane's looper)
+    private Handler audioHandler;
+    private AudioDeviceCallback audioDeviceCallback;
+    private final SparseArray<AudioDeviceInfo> outputDevices = new SparseArray<>();
+    private final AudioDeviceSnapshot.Builder snapshotBuilder = new AudioDeviceSnapshot.Builder();
+    private final Runnable publishSnapshotRunnable = this::publishSnapshot;
+    private boolean bluetoothHeadsetConnected = false;
+    // getAvailableAudioDevices calls made before the inventory was seeded
+    private final List<PluginCall> waitingDeviceCalls = new ArrayList<>();
+
+    // Read by bridge calls without touching AudioManager
+    private volatile AudioDeviceSnapshot deviceSnapshot = AudioDeviceSnapshot.EMPTY;
+    // Set once the device callback has reported the connected devices
+    private volatile boolean inventorySeeded = false;
+    // Set by MainActivity as the call service starts and stops
+    private volatile boolean callActive = false;
+
+    /**
+     * Starts the audio thread, device inventory, route controller and
+     * receivers on first use (a method call or listener registration) rather
+     * than in load(), keeping them off the cold-start path.
+     */
+    private synchronized void ensureStarted() {
+        if (routeController != null) {
+            return;
+        }
+        StartupTrace.begin("AudioRouting.start");
         audioManager = (AudioManager) getContext().getSystemService(Context.AUDIO_SERVICE);
+        setupDeviceInventory();
+        routeController = new AudioRouteController(audioManager,
+            AudioRouteEngine.create(audioManager, audioHandler), audioHandler,
+            new AudioRouteController.Listener() {
+                @Override
+                public void onRouteChanged(JSObject event) {
+                    if (event.getBoolean("success", false)) {
+                        applyVolumeStream(routeController.getProfile(event.getString("to")));
+                    }
+                    notifyListeners("audioRouteChanged", event);
+                }
+
+                @Override
+                public void onRouteAudible(JSObject event) {
+                    notifyListeners("audioRouteAudible", event);
+                }
+            });
+        Log.d(TAG, "Using " + routeController.getEngineName() + " route engine");
+        routeController.setCallActive(callActive);
+        // Queued behind the seed snapshot, so it sees the connected headset
+        audioHandler.post(() -> routeController.setBluetoothAvailable(deviceSnapshot.hasBluetooth));
         setupAudioDeviceListener();
-        Log.d(TAG, "AudioRoutingPlugin loaded");
+        StartupTrace.end();
+        Log.d(TAG, "AudioRoutingPlugin started");
+    }
+
+    @Override
+    @PluginMethod(returnType = PluginMethod.RETURN_NONE)
+    public void addListener(PluginCall call) {
+        ensureStarted();
+        super.addListener(call);
+    }
+
+    private void setupDeviceInventory() {
+        audioHandler = PluginDispatcher.get().looperFor(LANE);
+
+        PluginDispatcher.get().execute(LANE, "checkBluetoothHeadset",
+            () -> bluetoothHeadsetConnected = checkBluetoothHeadset());
+
+        audioDeviceCallback = new AudioDeviceCallback() {
+            @Override
+            public void onAudioDevicesAdded(AudioDeviceInfo[] addedDevices) {
+                for (AudioDeviceInfo device : addedDevices) {
+                    if (device.isSink()) {
+                        outputDevices.put(device.getId(), device);
+                    }
+                }
+                if (inventorySeeded) {
+                    scheduleSnapshotPublish();
+                } else {
+                    seedInventory();
+                }
+            }
+
+            @Override
+            public void onAudioDevicesRemoved(AudioDeviceInfo[] removedDevices) {
+                for (AudioDeviceInfo device : removedDevices) {
+                    outputDevices.remove(device.getId());
+                }
+                scheduleSnapshotPublish();
+            }
+        };
+        // Registration reports every connected device, which seeds the inventory
+        audioManager.registerAudioDeviceCallback(audioDeviceCallback, audioHandler);
+    }
+
+    /**
+     * Publishes the first snapshot without waiting out the coalescing delay
+     * and answers the device queries that were waiting for it.
+     */
+    private void seedInventory() {
+        publishSnapshot();
+        inventorySeeded = true;
+        for (PluginCall call : waitingDeviceCalls) {
+            resolveDevices(call);
+        }
+        waitingDeviceCalls.clear();
+    }
+
+    private void scheduleSnapshotPublish() {
+        audioHandler.removeCallbacks(publishSnapshotRunnable);
+        audioHandler.postDelayed(publishSnapshotRunnable, DEVICE_COALESCE_MS);
+    }
+
+    private void publishSnapshot() {
+        snapshotBuilder.reset().setBluetoothHeadsetConnected(bluetoothHeadsetConnected);
+        for (int i = 0; i < outputDevices.size(); i++) {
+            AudioDeviceInfo device = outputDevices.valueAt(i);
+            snapshotBuilder.addDevice(device.getId(), device.getType(), device.getProductName());
+        }
+
+        AudioDeviceSnapshot previous = deviceSnapshot;
+        AudioDeviceSnapshot next = snapshotBuilder.build(previous);
+        if (next == previous) {
+            return;
+        }
+        deviceSnapshot = next;
+        AudioRouteController controller = routeController;
+        if (controller != null) {
+            controller.setBluetoothAvailable(next.hasBluetooth);
+        }
+
+        List<AudioDeviceSnapshot.Device> added = next.addedSince(previous);
+        List<Integer> removed = next.removedSince(previous);
+        for (AudioDeviceSnapshot.Device device : added) {
+            Log.d(TAG, "Device added: " + device.typeName + " - " + device.productName);
+        }
+
+        JSArray addedDevices = new JSArray();
+        for (AudioDeviceSnapshot.Device device : added) {
+            addedDevices.put(toJSObject(device));
+        }
+        JSArray removedIds = new JSArray();
+        for (Integer id : removed) {
+            removedIds.put(id);
+        }
+
+        JSObject ret = new JSObject();
+        ret.put("version", next.version);
+        ret.put("previousVersion", previous.version);
+        ret.put("added", addedDevices);
+        ret.put("removed", removedIds);
+        ret.put("hasBluetooth", next.hasBluetooth);
+        ret.put("hasWiredHeadset", next.hasWiredHeadset);
+        notifyListeners("audioDevicesChanged", ret);
+    }
+
+    private static JSObject toJSObject(AudioDeviceSnapshot.Device device) {
+        JSObject deviceInfo = new JSObject();
+        deviceInfo.put("id", device.id);
+        deviceInfo.put("type", device.type);
+        deviceInfo.put("productName", device.productName);
+        deviceInfo.put("typeName", device.typeName);
+        deviceInfo.put("isBluetooth", device.isBluetooth);
+        deviceInfo.put("isHeadphone", device.isHeadphone);
+        return deviceInfo;
     }
 
     private void setupAudioDeviceListener() {
@@ -46,6 +212,12 @@ public class AudioRoutingPlugin extends Plugin {
                 if (AudioManager.ACTION_SCO_AUDIO_STATE_UPDATED.equals(action)) {
                     int state = intent.getIntExtra(AudioManager.EXTRA_SCO_AUDIO_STATE, -1);
                     Log.d(TAG, "SCO state: " + state);
+                    routeController.onScoAudioStateChanged(state);
+                    if (benchmarkEngines != null) {
+                        for (AudioRouteEngine engine : benchmarkEngines) {
+                            engine.onScoAudioStateChanged(state);
+                        }
+                    }
                     
                     JSObject ret = new JSObject();
                     ret.put("event", "scoStateChanged");
@@ -62,6 +234,10 @@ public class AudioRoutingPlugin extends Plugin {
                 } else if (BluetoothAdapter.ACTION_CONNECTION_STATE_CHANGED.equals(action)) {
                     int state = intent.getIntExtra(BluetoothAdapter.EXTRA_CONNECTION_STATE, -1);
                     Log.d(TAG, "Bluetooth connection state: " + state);
+                    if (state == BluetoothAdapter.STATE_CONNECTED || state == BluetoothAdapter.STATE_DISCONNECTED) {
+                        bluetoothHeadsetConnected = state == BluetoothAdapter.STATE_CONNECTED;
+                        scheduleSnapshotPublish();
+                    }
                     
                     JSObject ret = new JSObject();
                     ret.put("event", "bluetoothConnectionChanged");
@@ -76,62 +252,49 @@ public class AudioRoutingPlugin extends Plugin {
         filter.addAction(AudioManager.ACTION_HEADSET_PLUG);
         filter.addAction(BluetoothAdapter.ACTION_CONNECTION_STATE_CHANGED);
         
+        // Delivered on the audio thread so receiver updates, device callbacks and
+        // route transitions never race
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            getContext().registerReceiver(audioDeviceReceiver, filter, Context.RECEIVER_NOT_EXPORTED);
+            getContext().registerReceiver(audioDeviceReceiver, filter, null, audioHandler, Context.RECEIVER_NOT_EXPORTED);
         } else {
-            getContext().registerReceiver(audioDeviceReceiver, filter);
+            getContext().registerReceiver(audioDeviceReceiver, filter, null, audioHandler);
         }
     }
 
     @PluginMethod
     public void getAvailableAudioDevices(PluginCall call) {
-        JSArray devices = new JSArray();
-        
-        try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                AudioDeviceInfo[] outputDevices = audioManager.getDevices(AudioManager.GET_DEVICES_OUTPUTS);
-                
-                for (AudioDeviceInfo device : outputDevices) {
-                    JSObject deviceInfo = new JSObject();
-                    deviceInfo.put("id", device.getId());
-                    deviceInfo.put("type", device.getType());
-                    deviceInfo.put("productName", device.getProductName());
-                    
-                    String typeName = getDeviceTypeName(device.getType());
-                    deviceInfo.put("typeName", typeName);
-                    
-                    // Check if it's a Bluetooth device
-                    boolean isBluetooth = (device.getType() == AudioDeviceInfo.TYPE_BLUETOOTH_SCO ||
-                                          device.getType() == AudioDeviceInfo.TYPE_BLUETOOTH_A2DP);
-                    deviceInfo.put("isBluetooth", isBluetooth);
-                    
-                    // Check if it's a headphone/headset
-                    boolean isHeadphone = (device.getType() == AudioDeviceInfo.TYPE_WIRED_HEADPHONES ||
-                                          device.getType() == AudioDeviceInfo.TYPE_WIRED_HEADSET ||
-                                          device.getType() == AudioDeviceInfo.TYPE_USB_HEADSET);
-                    deviceInfo.put("isHeadphone", isHeadphone);
-                    
-                    devices.put(deviceInfo);
-                    Log.d(TAG, "Found device: " + typeName + " - " + device.getProductName());
-                }
+        ensureStarted();
+        if (inventorySeeded) {
+            resolveDevices(call);
+            return;
+        }
+        // Early call: answer once the audio thread has published the seed snapshot
+        audioHandler.post(() -> {
+            if (inventorySeeded) {
+                resolveDevices(call);
+            } else {
+                waitingDeviceCalls.add(call);
             }
-            
-            // Check Bluetooth SCO separately
-            boolean hasBluetoothSco = checkBluetoothHeadset();
-            
-            JSObject ret = new JSObject();
-            ret.put("devices", devices);
-            ret.put("hasBluetooth", hasBluetoothSco);
-            ret.put("hasWiredHeadset", audioManager.isWiredHeadsetOn());
-            ret.put("isSpeakerphoneOn", audioManager.isSpeakerphoneOn());
-            ret.put("isBluetoothScoOn", audioManager.isBluetoothScoOn());
-            ret.put("mode", audioManager.getMode());
-            
-            call.resolve(ret);
-        } catch (Exception e) {
-            Log.e(TAG, "Error getting audio devices", e);
-            call.reject("Error: " + e.getMessage());
+        });
+    }
+
+    private void resolveDevices(PluginCall call) {
+        // Served from the cached snapshot; the audio thread keeps it current
+        AudioDeviceSnapshot snapshot = deviceSnapshot;
+        JSArray devices = new JSArray();
+        for (AudioDeviceSnapshot.Device device : snapshot.devices) {
+            devices.put(toJSObject(device));
         }
+        
+        JSObject ret = new JSObject();
+        ret.put("version", snapshot.version);
+        ret.put("devices", devices);
+        ret.put("hasBluetooth", snapshot.hasBluetooth);
+        ret.put("hasWiredHeadset", snapshot.hasWiredHeadset);
+        ret.put("isSpeakerphoneOn", routeController.isSpeakerphoneOn());
+        ret.put("isBluetoothScoOn", routeController.isBluetoothScoOn());
+        ret.put("mode", routeController.getAudioMode());
+        call.resolve(ret);
     }
 
     @PluginMethod
@@ -143,105 +306,172 @@ public class AudioRoutingPlugin extends Plugin {
             return;
         }
         
-        Log.d(TAG, "Setting audio route to: " + route);
+        if (!isKnownRoute(route)) {
+            call.reject("Unknown route: " + route);
+            return;
+        }
         
-        try {
-            // Set audio mode to IN_COMMUNICATION for proper routing
-            audioManager.setMode(AudioManager.MODE_IN_COMMUNICATION);
-            
-            switch (route) {
-                case "bluetooth":
-                    setBluetoothRoute();
-                    break;
-                case "speaker":
-                    setSpeakerRoute();
-                    break;
-                case "earpiece":
-                    setEarpieceRoute();
-                    break;
-                case "headphones":
-                    setHeadphonesRoute();
-                    break;
-                default:
-                    call.reject("Unknown route: " + route);
-                    return;
+        Log.d(TAG, "Setting audio route to: " + route);
+        ensureStarted();
+        routeController.request(route, call);
+    }
+
+    /**
+     * Starts or stops Bluetooth prewarming along with the call.
+     */
+    public void setCallActive(boolean active) {
+        callActive = active;
+        AudioRouteController controller = routeController;
+        if (controller != null) {
+            controller.setCallActive(active);
+        }
+    }
+
+    @PluginMethod
+    public void getRouteProfiles(PluginCall call) {
+        ensureStarted();
+        JSObject profiles = new JSObject();
+        for (String route : new String[] { "earpiece", "speaker", "headphones", "bluetooth" }) {
+            profiles.put(route, AudioRouteController.toJSObject(routeController.getProfile(route)));
+        }
+        call.resolve(new JSObject().put("profiles", profiles));
+    }
+
+    /**
+     * Overrides settings of one route's profile. Omitted settings keep their
+     * current value. The page applies the capture preferences itself, from the
+     * profile returned here and by setAudioRoute.
+     */
+    @PluginMethod
+    public void setRouteProfile(PluginCall call) {
+        String route = call.getString("route");
+        if (route == null) {
+            call.reject("Route parameter is required");
+            return;
+        }
+        if (!isKnownRoute(route)) {
+            call.reject("Unknown route: " + route);
+            return;
+        }
+        ensureStarted();
+
+        Integer mode = null;
+        if (call.getString("mode") != null) {
+            mode = AudioRouteProfile.parseMode(call.getString("mode"));
+            if (mode < 0) {
+                call.reject("Unknown mode: " + call.getString("mode"));
+                return;
             }
-            
-            JSObject ret = new JSObject();
-            ret.put("success", true);
-            ret.put("route", route);
-            call.resolve(ret);
-        } catch (Exception e) {
-            Log.e(TAG, "Error setting audio route", e);
-            call.reject("Error: " + e.getMessage());
         }
+        Integer volumeStream = null;
+        if (call.getString("volumeStream") != null) {
+            volumeStream = AudioRouteProfile.parseStream(call.getString("volumeStream"));
+            if (volumeStream < 0) {
+                call.reject("Unknown volume stream: " + call.getString("volumeStream"));
+                return;
+            }
+        }
+
+        AudioRouteProfile profile = routeController.getProfile(route).with(mode, volumeStream,
+            call.getBoolean("echoCancellation"), call.getBoolean("noiseSuppression"),
+            call.getBoolean("autoGainControl"));
+        routeController.setProfile(profile);
+        if (route.equals(routeController.getCurrentRoute())) {
+            applyVolumeStream(profile);
+        }
+        call.resolve(AudioRouteController.toJSObject(profile));
     }
 
-    private void setBluetoothRoute() {
-        Log.d(TAG, "Enabling Bluetooth SCO");
-        
-        // Stop any existing SCO connection
-        if (audioManager.isBluetoothScoOn()) {
-            audioManager.stopBluetoothSco();
+    private static boolean isKnownRoute(String route) {
+        switch (route) {
+            case "bluetooth":
+            case "speaker":
+            case "earpiece":
+            case "headphones":
+                return true;
+            default:
+                return false;
         }
-        
-        // Turn off speakerphone
-        audioManager.setSpeakerphoneOn(false);
-        
-        // Start Bluetooth SCO
-        audioManager.startBluetoothSco();
-        audioManager.setBluetoothScoOn(true);
-        isBluetoothScoOn = true;
-        
-        Log.d(TAG, "Bluetooth SCO enabled: " + audioManager.isBluetoothScoOn());
     }
 
-    private void setSpeakerRoute() {
-        Log.d(TAG, "Enabling speakerphone");
-        
-        // Stop Bluetooth SCO if active
-        if (isBluetoothScoOn || audioManager.isBluetoothScoOn()) {
-            audioManager.stopBluetoothSco();
-            audioManager.setBluetoothScoOn(false);
-            isBluetoothScoOn = false;
+    private void applyVolumeStream(AudioRouteProfile profile) {
+        if (getActivity() != null) {
+            getActivity().runOnUiThread(() -> getActivity().setVolumeControlStream(profile.volumeStream));
         }
-        
-        // Enable speakerphone
-        audioManager.setSpeakerphoneOn(true);
-        
-        Log.d(TAG, "Speakerphone enabled: " + audioManager.isSpeakerphoneOn());
     }
 
-    private void setEarpieceRoute() {
-        Log.d(TAG, "Enabling earpiece");
-        
-        // Stop Bluetooth SCO if active
-        if (isBluetoothScoOn || audioManager.isBluetoothScoOn()) {
-            audioManager.stopBluetoothSco();
-            audioManager.setBluetoothScoOn(false);
-            isBluetoothScoOn = false;
+    /**
+     * Route currently in effect, for native consumers such as call telemetry.
+     */
+    public String getCurrentRoute() {
+        return routeController != null ? routeController.getCurrentRoute() : AudioRouteController.ROUTE_NONE;
+    }
+
+    /**
+     * Output device id for the current route, or 0 when no route is set or
+     * the device is not in the snapshot, letting the system pick by usage.
+     */
+    public int getRouteOutputDeviceId() {
+        if (routeController == null) {
+            return 0;
         }
-        
-        // Disable speakerphone (audio will go to earpiece)
-        audioManager.setSpeakerphoneOn(false);
-        
-        Log.d(TAG, "Earpiece enabled");
+        AudioDeviceSnapshot.Device device = deviceSnapshot.findForRoute(getCurrentRoute());
+        return device != null ? device.id : 0;
     }
 
-    private void setHeadphonesRoute() {
-        Log.d(TAG, "Enabling wired headphones");
-        
-        // Stop Bluetooth SCO if active
-        if (isBluetoothScoOn || audioManager.isBluetoothScoOn()) {
-            audioManager.stopBluetoothSco();
-            audioManager.setBluetoothScoOn(false);
-            isBluetoothScoOn = false;
+    @PluginMethod
+    public void getRouteMetrics(PluginCall call) {
+        ensureStarted();
+        PluginDispatcher.get().dispatchLong(this, LANE, call, routeController::getMetrics);
+    }
+
+    /**
+     * Cycles through routes on every engine available on this device and
+     * reports switch latency per engine. Audible; not for use mid-call.
+     */
+    @PluginMethod
+    public void benchmarkRouteEngines(PluginCall call) {
+        int iterations = call.getInt("iterations", 5);
+        String[] routes;
+        try {
+            JSArray requested = call.getArray("routes", null);
+            List<String> list = requested != null ? requested.<String>toList() : null;
+            routes = list != null && !list.isEmpty()
+                ? list.toArray(new String[0])
+                : new String[] { "speaker", "earpiece" };
+        } catch (Exception e) {
+            call.reject("Invalid routes: " + e.getMessage());
+            return;
         }
-        
-        // Disable speakerphone (audio will go to headphones)
-        audioManager.setSpeakerphoneOn(false);
-        
-        Log.d(TAG, "Wired headphones enabled");
+
+        ensureStarted();
+        audioHandler.post(() -> {
+            if (benchmarkEngines != null || !routeController.isIdle()) {
+                call.reject("Audio route is busy");
+                return;
+            }
+
+            // Both engines only route communication audio in this mode
+            audioManager.setMode(AudioManager.MODE_IN_COMMUNICATION);
+
+            List<AudioRouteEngine> engines = new ArrayList<>();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+                engines.add(new CommunicationDeviceRouteEngine(audioManager, audioHandler));
+            }
+            engines.add(new LegacyAudioRouteEngine(audioManager));
+            benchmarkEngines = engines;
+
+            new AudioRouteBenchmark(audioHandler, engines, routes, iterations, results -> {
+                for (AudioRouteEngine engine : engines) {
+                    engine.release();
+                }
+                benchmarkEngines = null;
+                routeController.reapply();
+
+                results.put("activeEngine", routeController.getEngineName());
+                call.resolve(results);
+            }).start();
+        });
     }
 
     private boolean checkBluetoothHeadset() {
@@ -259,40 +489,10 @@ public class AudioRoutingPlugin extends Plugin {
         return false;
     }
 
-    private String getDeviceTypeName(int type) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            switch (type) {
-                case AudioDeviceInfo.TYPE_BUILTIN_EARPIECE:
-                    return "Earpiece";
-                case AudioDeviceInfo.TYPE_BUILTIN_SPEAKER:
-                    return "Speaker";
-                case AudioDeviceInfo.TYPE_WIRED_HEADSET:
-                    return "Wired Headset";
-                case AudioDeviceInfo.TYPE_WIRED_HEADPHONES:
-                    return "Wired Headphones";
-                case AudioDeviceInfo.TYPE_BLUETOOTH_SCO:
-                    return "Bluetooth SCO";
-                case AudioDeviceInfo.TYPE_BLUETOOTH_A2DP:
-                    return "Bluetooth A2DP";
-                case AudioDeviceInfo.TYPE_USB_HEADSET:
-                    return "USB Headset";
-                default:
-                    return "Unknown (" + type + ")";
-            }
-        }
-        return "Unknown";
-    }
-
     @Override
     protected void handleOnDestroy() {
         super.handleOnDestroy();
         
-        // Clean up audio
-        if (isBluetoothScoOn || audioManager.isBluetoothScoOn()) {
-            audioManager.stopBluetoothSco();
-            audioManager.setBluetoothScoOn(false);
-        }
-        
         // Unregister receiver
         if (audioDeviceReceiver != null) {
             try {
@@ -301,5 +501,20 @@ public class AudioRoutingPlugin extends Plugin {
                 Log.e(TAG, "Error unregistering receiver", e);
             }
         }
+        
+        if (audioDeviceCallback != null) {
+            audioManager.unregisterAudioDeviceCallback(audioDeviceCallback);
+        }
+        if (audioHandler != null) {
+            // Clean up audio, including a prewarmed SCO link, on the thread
+            // the controller and its engine run on, then stop that thread
+            final AudioRouteController controller = routeController;
+            PluginDispatcher.get().execute(LANE, "release", () -> {
+                if (controller != null) {
+                    controller.release();
+                }
+            });
+            PluginDispatcher.get().quitLooper(LANE);
+        }
     }
 }
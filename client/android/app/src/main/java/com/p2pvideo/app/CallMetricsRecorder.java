@@ -0,0 +1,121 @@
+package com.p2pvideo.app;
+
+import android.content.Context;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.PowerManager;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Appends one CallMetricsStore sample per second while CallService runs:
+ * the latest telemetry pushed by the page plus process CPU, thermal status
+ * and battery readings taken here.
+ */
+public class CallMetricsRecorder {
+    private static final String TAG = "CallMetricsRecorder";
+    private static final long INTERVAL_MS = 1000;
+
+    private static CallMetricsStore store;
+
+    private final Context context;
+    private final CallTelemetry telemetry;
+    private final BatteryManager batteryManager;
+    private final PowerManager powerManager;
+    private final int cores = Runtime.getRuntime().availableProcessors();
+    private final CallMetricsStore.Sample sample = new CallMetricsStore.Sample();
+
+    private HandlerThread thread;
+    private Handler handler;
+    private CallMetricsStore activeStore;
+    private long lastCpuMs;
+    private long lastWallMs;
+
+    /**
+     * The process-wide store under the app's files directory, opened on
+     * first use.
+     */
+    public static synchronized CallMetricsStore getStore(Context context) throws IOException {
+        if (store == null) {
+            store = new CallMetricsStore(new File(context.getFilesDir(), "call-metrics"));
+            Log.d(TAG, "Opened metrics store, recovered " + store.getRecoveredRecords() + " records");
+        }
+        return store;
+    }
+
+    public CallMetricsRecorder(Context context, CallTelemetry telemetry) {
+        this.context = context.getApplicationContext();
+        this.telemetry = telemetry;
+        this.batteryManager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
+        this.powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+    }
+
+    public void start() {
+        thread = new HandlerThread("CallMetrics", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        handler.post(() -> {
+            try {
+                activeStore = getStore(context);
+            } catch (IOException e) {
+                Log.e(TAG, "Metrics store unavailable", e);
+                return;
+            }
+            lastCpuMs = Process.getElapsedCpuTime();
+            lastWallMs = SystemClock.elapsedRealtime();
+            handler.postDelayed(tick, INTERVAL_MS);
+        });
+    }
+
+    public void stop() {
+        if (thread != null) {
+            handler.removeCallbacks(tick);
+            thread.quitSafely();
+            thread = null;
+        }
+    }
+
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            long next = SystemClock.uptimeMillis() + INTERVAL_MS;
+            collect();
+            try {
+                activeStore.append(sample);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not append sample, stopping", e);
+                return;
+            }
+            handler.postAtTime(this, next);
+        }
+    };
+
+    private void collect() {
+        telemetry.fillLatest(sample);
+        sample.timestamp = System.currentTimeMillis();
+
+        long cpuMs = Process.getElapsedCpuTime();
+        long wallMs = SystemClock.elapsedRealtime();
+        long wallDelta = wallMs - lastWallMs;
+        sample.cpuPct = wallDelta > 0 ? (cpuMs - lastCpuMs) * 100f / (wallDelta * cores) : Float.NaN;
+        lastCpuMs = cpuMs;
+        lastWallMs = wallMs;
+
+        sample.thermalStatus = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && powerManager != null
+            ? powerManager.getCurrentThermalStatus()
+            : -1;
+
+        if (batteryManager != null) {
+            int level = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY);
+            int currentUa = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CURRENT_NOW);
+            sample.batteryLevelPct = level != Integer.MIN_VALUE ? level : Float.NaN;
+            sample.batteryCurrentMa = currentUa != Integer.MIN_VALUE ? currentUa / 1000f : Float.NaN;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.p2pvideo.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only on-device log of per-second call samples.
+ *
+ * Samples are fixed 64-byte little-endian records written into memory-mapped
+ * segment files, so an append is a few absolute puts into the page cache with
+ * no syscall and no allocation. A segment holds a fixed number of records;
+ * when it is full the next one is created, and the oldest segments are
+ * deleted to stay under the segment cap.
+ *
+ * Each record ends up with a checksum written after its body. On open, the
+ * newest segment is scanned and appending resumes after the last record whose
+ * checksum matches, so a record torn by a crash is overwritten rather than
+ * read back. Dirty pages reach the file even if the process dies; only a
+ * power loss can drop the last few seconds.
+ *
+ * Pure Java. Not for use from several processes; within one process all
+ * methods are synchronized.
+ */
+public class CallMetricsStore {
+    public static final int RECORD_SIZE = 64;
+    public static final int HEADER_SIZE = 32;
+    public static final int DEFAULT_RECORDS_PER_SEGMENT = 3600;
+    public static final int DEFAULT_MAX_SEGMENTS = 24;
+
+    private static final int MAGIC = 0x4d435650; // "PVCM"
+    private static final short FORMAT_VERSION = 1;
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".bin";
+
+    // Record layout
+    private static final int OFF_CHECKSUM = 0;
+    private static final int OFF_THERMAL = 4;
+    private static final int OFF_ROUTE = 5;
+    private static final int OFF_TIMESTAMP = 8;
+    private static final int OFF_CALL_ID = 16;
+    private static final int OFF_BITRATE = 24;
+    private static final int OFF_LOSS = 28;
+    private static final int OFF_RTT = 32;
+    private static final int OFF_JITTER = 36;
+    private static final int OFF_CPU = 40;
+    private static final int OFF_BATTERY_LEVEL = 44;
+    private static final int OFF_BATTERY_CURRENT = 48;
+    private static final int OFF_DECODE_FPS = 52;
+
+    public static final String[] ROUTES = {"none", "earpiece", "speaker", "bluetooth", "headphones"};
+
+    /**
+     * One sample. Reused by callers; NaN means not available.
+     */
+    public static final class Sample {
+        public long timestamp;
+        public long callId;
+        public float bitrateKbps = Float.NaN;
+        public float packetLossPct = Float.NaN;
+        public float rttMs = Float.NaN;
+        public float jitterMs = Float.NaN;
+        public float cpuPct = Float.NaN;
+        public float batteryLevelPct = Float.NaN;
+        // Negative while discharging
+        public float batteryCurrentMa = Float.NaN;
+        public float decodeFps = Float.NaN;
+        // PowerManager.THERMAL_STATUS_*, or -1 if unknown
+        public int thermalStatus = -1;
+        public int audioRoute = 0;
+    }
+
+    /**
+     * Receives records in append order. Return false to stop.
+     */
+    public interface Visitor {
+        boolean visit(Sample sample);
+    }
+
+    private final File directory;
+    private final int recordsPerSegment;
+    private final int maxSegments;
+
+    private RandomAccessFile file;
+    private MappedByteBuffer segment;
+    private long segmentIndex;
+    private int recordCount;
+    private long recoveredRecords;
+    private boolean closed = false;
+
+    public CallMetricsStore(File directory) throws IOException {
+        this(directory, DEFAULT_RECORDS_PER_SEGMENT, DEFAULT_MAX_SEGMENTS);
+    }
+
+    public CallMetricsStore(File directory, int recordsPerSegment, int maxSegments) throws IOException {
+        this.directory = directory;
+        this.recordsPerSegment = recordsPerSegment;
+        this.maxSegments = maxSegments;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+
+        long[] segments = listSegments();
+        if (segments.length == 0) {
+            openSegment(0, true);
+        } else {
+            openSegment(segments[segments.length - 1], false);
+        }
+    }
+
+    public static int routeCode(String route) {
+        for (int i = 0; i < ROUTES.length; i++) {
+            if (ROUTES[i].equals(route)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    public static String routeName(int code) {
+        return code >= 0 && code < ROUTES.length ? ROUTES[code] : ROUTES[0];
+    }
+
+    /**
+     * Records found intact in the newest segment when the store was opened.
+     */
+    public synchronized long getRecoveredRecords() {
+        return recoveredRecords;
+    }
+
+    public long getMaxBytes() {
+        return (long) maxSegments * (HEADER_SIZE + (long) recordsPerSegment * RECORD_SIZE);
+    }
+
+    public synchronized void append(Sample sample) throws IOException {
+        if (closed) {
+            throw new IOException("Store closed");
+        }
+        if (recordCount == recordsPerSegment) {
+            rollSegment();
+        }
+        int base = HEADER_SIZE + recordCount * RECORD_SIZE;
+        MappedByteBuffer buffer = segment;
+        buffer.put(base + OFF_THERMAL, (byte) sample.thermalStatus);
+        buffer.put(base + OFF_ROUTE, (byte) sample.audioRoute);
+        buffer.putShort(base + 6, (short) 0);
+        buffer.putLong(base + OFF_TIMESTAMP, sample.timestamp);
+        buffer.putLong(base + OFF_CALL_ID, sample.callId);
+        buffer.putFloat(base + OFF_BITRATE, sample.bitrateKbps);
+        buffer.putFloat(base + OFF_LOSS, sample.packetLossPct);
+        buffer.putFloat(base + OFF_RTT, sample.rttMs);
+        buffer.putFloat(base + OFF_JITTER, sample.jitterMs);
+        buffer.putFloat(base + OFF_CPU, sample.cpuPct);
+        buffer.putFloat(base + OFF_BATTERY_LEVEL, sample.batteryLevelPct);
+        buffer.putFloat(base + OFF_BATTERY_CURRENT, sample.batteryCurrentMa);
+        buffer.putFloat(base + OFF_DECODE_FPS, sample.decodeFps);
+        buffer.putLong(base + 56, 0);
+        // Written last: a torn record fails the check on recovery
+        buffer.putInt(base + OFF_CHECKSUM, checksum(buffer, base));
+        recordCount++;
+    }
+
+    /**
+     * Visits intact records with from <= timestamp < to, oldest first.
+     * callId 0 matches every call.
+     */
+    public synchronized void read(long callId, long from, long to, Visitor visitor) throws IOException {
+        Sample sample = new Sample();
+        for (long index : listSegments()) {
+            MappedByteBuffer buffer;
+            int count;
+            if (index == segmentIndex && !closed) {
+                buffer = segment;
+                count = recordCount;
+            } else {
+                buffer = mapReadOnly(index);
+                if (buffer == null) {
+                    continue;
+                }
+                count = recordsPerSegment;
+            }
+            for (int i = 0; i < count; i++) {
+                int base = HEADER_SIZE + i * RECORD_SIZE;
+                if (buffer.getInt(base + OFF_CHECKSUM) != checksum(buffer, base)) {
+                    break;
+                }
+                long timestamp = buffer.getLong(base + OFF_TIMESTAMP);
+                long recordCallId = buffer.getLong(base + OFF_CALL_ID);
+                if (timestamp < from || timestamp >= to || (callId != 0 && recordCallId != callId)) {
+                    continue;
+                }
+                decode(buffer, base, sample);
+                if (!visitor.visit(sample)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    public synchronized long getSizeBytes() {
+        long total = 0;
+        for (long index : listSegments()) {
+            total += segmentFile(index).length();
+        }
+        return total;
+    }
+
+    /**
+     * Flushes the mapped pages and releases the current segment.
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        segment.force();
+        file.close();
+        segment = null;
+    }
+
+    private static void decode(MappedByteBuffer buffer, int base, Sample out) {
+        out.thermalStatus = buffer.get(base + OFF_THERMAL);
+        out.audioRoute = buffer.get(base + OFF_ROUTE);
+        out.timestamp = buffer.getLong(base + OFF_TIMESTAMP);
+        out.callId = buffer.getLong(base + OFF_CALL_ID);
+        out.bitrateKbps = buffer.getFloat(base + OFF_BITRATE);
+        out.packetLossPct = buffer.getFloat(base + OFF_LOSS);
+        out.rttMs = buffer.getFloat(base + OFF_RTT);
+        out.jitterMs = buffer.getFloat(base + OFF_JITTER);
+        out.cpuPct = buffer.getFloat(base + OFF_CPU);
+        out.batteryLevelPct = buffer.getFloat(base + OFF_BATTERY_LEVEL);
+        out.batteryCurrentMa = buffer.getFloat(base + OFF_BATTERY_CURRENT);
+        out.decodeFps = buffer.getFloat(base + OFF_DECODE_FPS);
+    }
+
+    /**
+     * 32-bit mix of the record body (bytes 4..63). Never returns the value an
+     * all-zero record would carry, so unwritten space never validates.
+     */
+    static int checksum(MappedByteBuffer buffer, int base) {
+        long h = 0x9E3779B97F4A7C15L ^ buffer.getInt(base + 4);
+        for (int offset = 8; offset < RECORD_SIZE; offset += 8) {
+            h = (h ^ buffer.getLong(base + offset)) * 0xBF58476D1CE4E5B9L;
+            h ^= h >>> 31;
+        }
+        int result = (int) (h ^ (h >>> 32));
+        return result == 0 ? 1 : result;
+    }
+
+    private void rollSegment() throws IOException {
+        segment.force();
+        file.close();
+        openSegment(segmentIndex + 1, true);
+
+        long[] segments = listSegments();
+        for (int i = 0; i < segments.length - maxSegments; i++) {
+            File oldest = segmentFile(segments[i]);
+            if (!oldest.delete()) {
+                throw new IOException("Cannot delete " + oldest);
+            }
+        }
+    }
+
+    private void openSegment(long index, boolean create) throws IOException {
+        File path = segmentFile(index);
+        long size = HEADER_SIZE + (long) recordsPerSegment * RECORD_SIZE;
+        boolean valid = !create && path.length() == size;
+
+        file = new RandomAccessFile(path, "rw");
+        if (!valid) {
+            file.setLength(0);
+            file.setLength(size);
+        }
+        segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segmentIndex = index;
+
+        if (valid && segment.getInt(0) == MAGIC && segment.getShort(6) == RECORD_SIZE) {
+            recordCount = 0;
+            while (recordCount < recordsPerSegment) {
+                int base = HEADER_SIZE + recordCount * RECORD_SIZE;
+                if (segment.getInt(base + OFF_CHECKSUM) != checksum(segment, base)) {
+                    break;
+                }
+                recordCount++;
+            }
+            recoveredRecords = recordCount;
+        } else {
+            segment.putInt(0, MAGIC);
+            segment.putShort(4, FORMAT_VERSION);
+            segment.putShort(6, (short) RECORD_SIZE);
+            segment.putLong(8, index);
+            segment.putLong(16, System.currentTimeMillis());
+            recordCount = 0;
+        }
+    }
+
+    private MappedByteBuffer mapReadOnly(long index) throws IOException {
+        File path = segmentFile(index);
+        long size = HEADER_SIZE + (long) recordsPerSegment * RECORD_SIZE;
+        if (path.length() != size) {
+            return null;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(path, "r")) {
+            MappedByteBuffer buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer.getInt(0) == MAGIC ? buffer : null;
+        }
+    }
+
+    private File segmentFile(long index) {
+        return new File(directory, String.format("%s%08d%s", PREFIX, index, SUFFIX));
+    }
+
+    private long[] listSegments() {
+        String[] names = directory.list();
+        if (names == null) {
+            return new long[0];
+        }
+        List<Long> indices = new ArrayList<>();
+        for (String name : names) {
+            if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                try {
+                    indices.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        long[] ret = new long[indices.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = indices.get(i);
+        }
+        Arrays.sort(ret);
+        return ret;
+    }
+}
@@ -1,6 +1,5 @@
 package com.p2pvideo.app;
 
-import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
@@ -11,6 +10,7 @@ import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
 import androidx.core.app.NotificationCompat;
+import org.json.JSONArray;
 
 public class CallService extends Service {
     
@@ -18,33 +18,124 @@ public class CallService extends Service {
     private static final int NOTIFICATION_ID = 1;
     private static final String ACTION_END_CALL = "com.p2pvideo.app.END_CALL";
     
-    private Handler handler;
-    private Runnable timerRunnable;
     private long startTime;
     private NotificationManager notificationManager;
+    private NotificationCompat.Builder notificationBuilder;
+    private final StringBuilder durationText = new StringBuilder(8);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private CallTelemetry telemetry;
+    private CallMetricsRecorder metricsRecorder;
+    private ThermalQualityController qualityController;
+    private NetworkHandoverMonitor networkMonitor;
+    private CallSession session;
+    private int shownQuality = CallTelemetry.QUALITY_UNKNOWN;
+    private int shownParticipants = 0;
+    // Metric-only updates leave summaryVersion alone and never reach the notification
+    private final CallSession.Listener sessionListener = (previous, current) -> {
+        if (previous.summaryVersion != current.summaryVersion) {
+            mainHandler.post(this::updateNotification);
+        }
+    };
+    
+    // Telemetry of the call in progress, for CallServicePlugin
+    private static volatile CallTelemetry activeTelemetry;
     
     @Override
     public void onCreate() {
         super.onCreate();
         createNotificationChannel();
         notificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
-        handler = new Handler(Looper.getMainLooper());
         startTime = System.currentTimeMillis();
+        notificationBuilder = createNotificationBuilder();
+        telemetry = new CallTelemetry(level -> mainHandler.post(this::updateNotification));
+        activeTelemetry = telemetry;
+        // MainActivity begins the session before starting the service; a
+        // sticky restart after process death begins a fresh one
+        session = CallSession.getActive();
+        if (session == null) {
+            session = CallSession.begin();
+        }
+        session.addListener(sessionListener);
+        metricsRecorder = new CallMetricsRecorder(this, telemetry);
+        metricsRecorder.start();
+        qualityController = new ThermalQualityController(this);
+        qualityController.start();
+        networkMonitor = new NetworkHandoverMonitor(this);
+        networkMonitor.start();
+    }
+    
+    static CallTelemetry getActiveTelemetry() {
+        return activeTelemetry;
     }
     
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         if (intent != null && ACTION_END_CALL.equals(intent.getAction())) {
+            // Tell the peer from here; the page may be frozen in the background
+            SignalingClient signaling = SignalingClient.getActive();
+            if (signaling != null && signaling.getRoom() != null) {
+                signaling.emit("endCall", new JSONArray().put(signaling.getRoom()));
+            }
             stopSelf();
             return START_NOT_STICKY;
         }
         
-        startForeground(NOTIFICATION_ID, buildNotification("00:00"));
-        startTimer();
+        // The chronometer renders the elapsed time itself, so the notification
+        // is posted once here and never reposted on a timer.
+        startForeground(NOTIFICATION_ID, notificationBuilder.build());
         
         return START_STICKY;
     }
     
+    /**
+     * Reposts the notification with the current quality level and participant
+     * count. Only runs when either changes, and reuses the builder so the
+     * chronometer keeps going. In a group call the level is the worst
+     * participant's.
+     */
+    private void updateNotification() {
+        CallSession.Snapshot snapshot = session.snapshot();
+        int participants = snapshot.participants.size();
+        int level = participants > 1 && snapshot.aggregateQuality != CallTelemetry.QUALITY_UNKNOWN
+            ? snapshot.aggregateQuality
+            : telemetry.getQualityLevel();
+        if ((level == shownQuality && participants == shownParticipants) || activeTelemetry != telemetry) {
+            return;
+        }
+        shownQuality = level;
+        shownParticipants = participants;
+        notificationBuilder.setContentText(participants > 1 ? groupText(level, participants) : qualityText(level));
+        notificationManager.notify(NOTIFICATION_ID, notificationBuilder.build());
+    }
+    
+    private static String groupText(int level, int participants) {
+        // Participants are the remote peers; the count shown includes us
+        String text = "Group call • " + (participants + 1) + " people";
+        switch (level) {
+            case CallTelemetry.QUALITY_GOOD:
+                return text + " • Good connection";
+            case CallTelemetry.QUALITY_FAIR:
+                return text + " • Fair connection";
+            case CallTelemetry.QUALITY_POOR:
+                return text + " • Poor connection";
+            default:
+                return text;
+        }
+    }
+    
+    private static String qualityText(int level) {
+        switch (level) {
+            case CallTelemetry.QUALITY_GOOD:
+                return "Ongoing call • Good connection";
+            case CallTelemetry.QUALITY_FAIR:
+                return "Ongoing call • Fair connection";
+            case CallTelemetry.QUALITY_POOR:
+                return "Ongoing call • Poor connection";
+            default:
+                return "Ongoing call";
+        }
+    }
+    
     private void createNotificationChannel() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             NotificationChannel channel = new NotificationChannel(
@@ -63,7 +154,7 @@ public class CallService extends Service {
         }
     }
     
-    private Notification buildNotification(String duration) {
+    private NotificationCompat.Builder createNotificationBuilder() {
         Intent notificationIntent = new Intent(this, MainActivity.class);
         notificationIntent.setFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP | Intent.FLAG_ACTIVITY_CLEAR_TOP);
         PendingIntent pendingIntent = PendingIntent.getActivity(
@@ -81,10 +172,13 @@ public class CallService extends Service {
         NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
             .setSmallIcon(android.R.drawable.stat_sys_phone_call)
             .setContentTitle("P2P Video Call")
-            .setContentText("Ongoing call • " + duration)
+            .setContentText("Ongoing call")
             .setPriority(NotificationCompat.PRIORITY_LOW)
             .setOngoing(true)
-            .setShowWhen(false)
+            .setOnlyAlertOnce(true)
+            .setShowWhen(true)
+            .setWhen(startTime)
+            .setUsesChronometer(true)
             .setContentIntent(pendingIntent)
             .addAction(android.R.drawable.ic_menu_call, "End Call", endCallPendingIntent);
         
@@ -92,43 +186,26 @@ public class CallService extends Service {
             builder.setForegroundServiceBehavior(NotificationCompat.FOREGROUND_SERVICE_IMMEDIATE);
         }
         
-        return builder.build();
-    }
-    
-    private void startTimer() {
-        timerRunnable = new Runnable() {
-            @Override
-            public void run() {
-                long elapsedMillis = System.currentTimeMillis() - startTime;
-                int seconds = (int) (elapsedMillis / 1000);
-                int minutes = seconds / 60;
-                int hours = minutes / 60;
-                
-                String duration;
-                if (hours > 0) {
-                    duration = String.format("%02d:%02d:%02d", hours, minutes % 60, seconds % 60);
-                } else {
-                    duration = String.format("%02d:%02d", minutes, seconds % 60);
-                }
-                
-                if (notificationManager != null) {
-                    notificationManager.notify(NOTIFICATION_ID, buildNotification(duration));
-                }
-                
-                handler.postDelayed(this, 1000);
-            }
-        };
-        handler.post(timerRunnable);
+        return builder;
     }
     
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if (handler != null && timerRunnable != null) {
-            handler.removeCallbacks(timerRunnable);
-        }
+        activeTelemetry = null;
+        session.removeListener(sessionListener);
+        session.end();
+        metricsRecorder.stop();
+        qualityController.stop();
+        networkMonitor.stop();
+        mainHandler.removeCallbacksAndMessages(null);
+        telemetry.finish();
+        
+        durationText.setLength(0);
+        DurationFormat.appendDuration(durationText, System.currentTimeMillis() - startTime);
         
         Intent broadcast = new Intent("com.p2pvideo.app.CALL_ENDED");
+        broadcast.putExtra("duration", durationText.toString());
         sendBroadcast(broadcast);
     }
     
@@ -0,0 +1,286 @@
+package com.p2pvideo.app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Native state of the call in progress: who is in it, how each participant's
+ * connection is doing, and the local mute state shown in PiP.
+ *
+ * Updates arrive from bridge calls (joins, leaves, per-peer stats) and from
+ * broadcasts on other threads. Each update builds the next immutable
+ * Snapshot and installs it with compare-and-set, retrying on contention, so
+ * readers never lock and never see a half-applied change. summaryVersion
+ * only moves when something a user can see changes (membership, a
+ * participant's quality level, mute), letting the notification and PiP skip
+ * the per-sample metric updates. Pure Java; unit tested.
+ */
+public final class CallSession {
+    // Up to 8 people per call, counting the local user
+    public static final int MAX_PARTICIPANTS = 7;
+    // Weight of a new stats sample in a participant's smoothed metrics
+    static final double SMOOTHING = 0.5;
+
+    private static final AtomicReference<CallSession> active = new AtomicReference<>();
+
+    /**
+     * Told after every installed change. Calls can arrive out of order across
+     * threads; anything rendering state should read snapshot() for the latest.
+     */
+    public interface Listener {
+        void onSessionChanged(Snapshot previous, Snapshot current);
+    }
+
+    public static final class Participant {
+        public final String id;
+        public final String displayName;
+        public final long joinedAt;
+        public final double rttMs;
+        public final double jitterMs;
+        public final double packetLossPct;
+        public final int quality;
+
+        Participant(String id, String displayName, long joinedAt,
+                    double rttMs, double jitterMs, double packetLossPct) {
+            this.id = id;
+            this.displayName = displayName;
+            this.joinedAt = joinedAt;
+            this.rttMs = rttMs;
+            this.jitterMs = jitterMs;
+            this.packetLossPct = packetLossPct;
+            this.quality = classifyQuality(rttMs, jitterMs, packetLossPct);
+        }
+
+        Participant withStats(double rtt, double jitter, double loss) {
+            return new Participant(id, displayName, joinedAt,
+                smooth(rttMs, rtt), smooth(jitterMs, jitter), smooth(packetLossPct, loss));
+        }
+
+        Participant withDisplayName(String name) {
+            return new Participant(id, name, joinedAt, rttMs, jitterMs, packetLossPct);
+        }
+
+        private static double smooth(double previous, double sample) {
+            if (Double.isNaN(sample)) {
+                return previous;
+            }
+            return Double.isNaN(previous) ? sample : previous + SMOOTHING * (sample - previous);
+        }
+    }
+
+    public static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(0, 0, Collections.<Participant>emptyList(), false);
+
+        public final long version;
+        public final long summaryVersion;
+        // In join order
+        public final List<Participant> participants;
+        public final boolean audioMuted;
+        // Worst known participant quality, QUALITY_UNKNOWN when none is known
+        public final int aggregateQuality;
+        public final int poorParticipants;
+
+        private Snapshot(long version, long summaryVersion, List<Participant> participants, boolean audioMuted) {
+            this.version = version;
+            this.summaryVersion = summaryVersion;
+            this.participants = participants;
+            this.audioMuted = audioMuted;
+
+            int worst = CallTelemetry.QUALITY_UNKNOWN;
+            int poor = 0;
+            for (int i = 0; i < participants.size(); i++) {
+                int quality = participants.get(i).quality;
+                worst = Math.max(worst, quality);
+                if (quality == CallTelemetry.QUALITY_POOR) {
+                    poor++;
+                }
+            }
+            this.aggregateQuality = worst;
+            this.poorParticipants = poor;
+        }
+
+        public Participant find(String id) {
+            int index = indexOf(id);
+            return index >= 0 ? participants.get(index) : null;
+        }
+
+        int indexOf(String id) {
+            for (int i = 0; i < participants.size(); i++) {
+                if (participants.get(i).id.equals(id)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        Snapshot with(List<Participant> nextParticipants, boolean nextMuted, boolean summaryChanged) {
+            return new Snapshot(version + 1, summaryChanged ? summaryVersion + 1 : summaryVersion,
+                Collections.unmodifiableList(nextParticipants), nextMuted);
+        }
+    }
+
+    private final AtomicReference<Snapshot> state = new AtomicReference<>(Snapshot.EMPTY);
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean ended;
+
+    /**
+     * Starts a new session and makes it the active one.
+     */
+    public static CallSession begin() {
+        CallSession session = new CallSession();
+        CallSession previous = active.getAndSet(session);
+        if (previous != null) {
+            previous.ended = true;
+        }
+        return session;
+    }
+
+    public static CallSession getActive() {
+        return active.get();
+    }
+
+    /**
+     * Ends the active session, if any, and returns it.
+     */
+    public static CallSession endActive() {
+        CallSession session = active.getAndSet(null);
+        if (session != null) {
+            session.ended = true;
+        }
+        return session;
+    }
+
+    /**
+     * Ends this session; a no-op if another one has replaced it.
+     */
+    public void end() {
+        ended = true;
+        active.compareAndSet(this, null);
+    }
+
+    public boolean isEnded() {
+        return ended;
+    }
+
+    /**
+     * Quality level for a set of metrics, as shown in the notification.
+     * NaN compares false, so a missing metric never lowers the level.
+     */
+    public static int classifyQuality(double rttMs, double jitterMs, double packetLossPct) {
+        if (Double.isNaN(rttMs) && Double.isNaN(packetLossPct)) {
+            return CallTelemetry.QUALITY_UNKNOWN;
+        }
+        if (rttMs > 300 || packetLossPct > 5 || jitterMs > 50) {
+            return CallTelemetry.QUALITY_POOR;
+        }
+        if (rttMs > 150 || packetLossPct > 2 || jitterMs > 30) {
+            return CallTelemetry.QUALITY_FAIR;
+        }
+        return CallTelemetry.QUALITY_GOOD;
+    }
+
+    public Snapshot snapshot() {
+        return state.get();
+    }
+
+    /**
+     * Adding a listener that is already registered does nothing.
+     */
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Adds a participant, or renames one already present. Returns false when
+     * the call is full or has ended.
+     */
+    public boolean join(String id, String displayName, long now) {
+        Snapshot result = update(current -> {
+            int index = current.indexOf(id);
+            List<Participant> next = new ArrayList<>(current.participants);
+            if (index >= 0) {
+                Participant existing = next.get(index);
+                if (displayName == null || displayName.equals(existing.displayName)) {
+                    return current;
+                }
+                next.set(index, existing.withDisplayName(displayName));
+            } else if (next.size() >= MAX_PARTICIPANTS) {
+                return current;
+            } else {
+                next.add(new Participant(id, displayName, now, Double.NaN, Double.NaN, Double.NaN));
+            }
+            return current.with(next, current.audioMuted, true);
+        });
+        return result.find(id) != null;
+    }
+
+    /**
+     * Returns false if the participant was not in the call.
+     */
+    public boolean leave(String id) {
+        boolean[] removed = new boolean[1];
+        update(current -> {
+            int index = current.indexOf(id);
+            removed[0] = index >= 0;
+            if (index < 0) {
+                return current;
+            }
+            List<Participant> next = new ArrayList<>(current.participants);
+            next.remove(index);
+            return current.with(next, current.audioMuted, true);
+        });
+        return removed[0];
+    }
+
+    /**
+     * Folds one stats sample into a participant's metrics. Missing values are
+     * NaN. Returns the updated participant, or null if unknown.
+     */
+    public Participant recordStats(String id, double rttMs, double jitterMs, double packetLossPct) {
+        Snapshot result = update(current -> {
+            int index = current.indexOf(id);
+            if (index < 0) {
+                return current;
+            }
+            Participant before = current.participants.get(index);
+            Participant after = before.withStats(rttMs, jitterMs, packetLossPct);
+            List<Participant> next = new ArrayList<>(current.participants);
+            next.set(index, after);
+            return current.with(next, current.audioMuted, after.quality != before.quality);
+        });
+        return result.find(id);
+    }
+
+    public void setAudioMuted(boolean muted) {
+        update(current -> current.audioMuted == muted
+            ? current
+            : current.with(new ArrayList<>(current.participants), muted, true));
+    }
+
+    private Snapshot update(UnaryOperator<Snapshot> change) {
+        while (true) {
+            Snapshot previous = state.get();
+            if (ended) {
+                return previous;
+            }
+            Snapshot next = change.apply(previous);
+            if (next == previous) {
+                return previous;
+            }
+            if (state.compareAndSet(previous, next)) {
+                for (Listener listener : listeners) {
+                    listener.onSessionChanged(previous, next);
+                }
+                return next;
+            }
+        }
+    }
+}
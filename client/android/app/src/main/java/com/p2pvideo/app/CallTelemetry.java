@@ -0,0 +1,186 @@
+package com.p2pvideo.app;
+
+import android.os.SystemClock;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Call-quality telemetry for one call, owned by CallService.
+ *
+ * The page pushes a stats sample every few seconds (through
+ * CallServicePlugin.pushStatsSample); each metric goes into a
+ * MetricHistogram. The quality level shown in the notification is derived
+ * from the last few samples. When the call ends, a fixed-size summary is
+ * kept in a small in-memory history for export.
+ */
+public class CallTelemetry {
+    public static final int QUALITY_UNKNOWN = 0;
+    public static final int QUALITY_GOOD = 1;
+    public static final int QUALITY_FAIR = 2;
+    public static final int QUALITY_POOR = 3;
+    private static final String[] QUALITY_NAMES = {"unknown", "good", "fair", "poor"};
+
+    // Samples averaged for the live quality level
+    private static final int QUALITY_WINDOW = 3;
+    private static final int RECENT_SAMPLES = 32;
+    private static final int MAX_SUMMARIES = 10;
+
+    private static final ArrayDeque<JSObject> summaries = new ArrayDeque<>();
+
+    /**
+     * Told when the live quality level changes.
+     */
+    public interface Listener {
+        void onQualityChanged(int level);
+    }
+
+    private final MetricHistogram rtt = new MetricHistogram("rttMs",
+        new double[] {25, 50, 75, 100, 150, 200, 300, 500, 1000}, RECENT_SAMPLES);
+    private final MetricHistogram jitter = new MetricHistogram("jitterMs",
+        new double[] {5, 10, 20, 30, 50, 75, 100, 200}, RECENT_SAMPLES);
+    private final MetricHistogram packetLoss = new MetricHistogram("packetLossPct",
+        new double[] {0, 0.5, 1, 2, 5, 10, 20}, RECENT_SAMPLES);
+    private final MetricHistogram bitrate = new MetricHistogram("bitrateKbps",
+        new double[] {100, 250, 500, 1000, 1500, 2500, 4000}, RECENT_SAMPLES);
+    private final MetricHistogram decodeFps = new MetricHistogram("decodeFps",
+        new double[] {5, 10, 15, 20, 25, 30}, RECENT_SAMPLES);
+    private final MetricHistogram[] metrics = {rtt, jitter, packetLoss, bitrate, decodeFps};
+
+    private final long startedAt = SystemClock.elapsedRealtime();
+    private final long startedAtWall = System.currentTimeMillis();
+    private final Listener listener;
+    private volatile int qualityLevel = QUALITY_UNKNOWN;
+    private volatile long qualitySince = startedAt;
+    // Milliseconds spent at each quality level
+    private final AtomicLongArray qualityMillis = new AtomicLongArray(QUALITY_NAMES.length);
+
+    private volatile String audioRoute;
+    private volatile int audioRouteChanges = 0;
+    // Every sample pushed, whichever metrics it carried
+    private volatile long sampleCount = 0;
+
+    public CallTelemetry(Listener listener) {
+        this.listener = listener;
+    }
+
+    public static String qualityName(int level) {
+        return QUALITY_NAMES[level];
+    }
+
+    public int getQualityLevel() {
+        return qualityLevel;
+    }
+
+    /**
+     * Wall-clock start of the call, used as its id in CallMetricsStore.
+     */
+    public long getCallId() {
+        return startedAtWall;
+    }
+
+    /**
+     * Copies the latest value of each metric, and the route, into the sample.
+     */
+    public void fillLatest(CallMetricsStore.Sample sample) {
+        sample.callId = startedAtWall;
+        sample.rttMs = (float) rtt.recentMean(1);
+        sample.jitterMs = (float) jitter.recentMean(1);
+        sample.packetLossPct = (float) packetLoss.recentMean(1);
+        sample.bitrateKbps = (float) bitrate.recentMean(1);
+        sample.decodeFps = (float) decodeFps.recentMean(1);
+        sample.audioRoute = CallMetricsStore.routeCode(audioRoute);
+    }
+
+    /**
+     * Records one sample. Missing values are NaN. Called from the bridge
+     * thread, one sample at a time.
+     */
+    public void record(double rttMs, double jitterMs, double packetLossPct,
+                       double bitrateKbps, double fps, String route) {
+        sampleCount++;
+        rtt.record(rttMs);
+        jitter.record(jitterMs);
+        packetLoss.record(packetLossPct);
+        bitrate.record(bitrateKbps);
+        decodeFps.record(fps);
+
+        if (route != null && !route.equals(audioRoute)) {
+            if (audioRoute != null) {
+                audioRouteChanges++;
+            }
+            audioRoute = route;
+        }
+
+        int level = evaluateQuality();
+        if (level != qualityLevel) {
+            long now = SystemClock.elapsedRealtime();
+            qualityMillis.addAndGet(qualityLevel, now - qualitySince);
+            qualitySince = now;
+            qualityLevel = level;
+            listener.onQualityChanged(level);
+        }
+    }
+
+    private int evaluateQuality() {
+        double recentRtt = rtt.recentMean(QUALITY_WINDOW);
+        double recentJitter = jitter.recentMean(QUALITY_WINDOW);
+        double recentLoss = packetLoss.recentMean(QUALITY_WINDOW);
+        return CallSession.classifyQuality(recentRtt, recentJitter, recentLoss);
+    }
+
+    /**
+     * Fixed-size summary of the call so far.
+     */
+    public JSObject getSummary() {
+        long now = SystemClock.elapsedRealtime();
+        JSObject ret = new JSObject();
+        ret.put("callId", startedAtWall);
+        ret.put("startedAt", startedAtWall);
+        ret.put("durationMs", now - startedAt);
+        ret.put("samples", sampleCount);
+        ret.put("quality", qualityName(qualityLevel));
+        JSObject timeAtQuality = new JSObject();
+        for (int i = 0; i < QUALITY_NAMES.length; i++) {
+            long millis = qualityMillis.get(i) + (i == qualityLevel ? now - qualitySince : 0);
+            timeAtQuality.put(QUALITY_NAMES[i], millis);
+        }
+        ret.put("qualityMs", timeAtQuality);
+        for (MetricHistogram metric : metrics) {
+            ret.put(metric.getName(), metric.toJSObject());
+        }
+        ret.put("audioRoute", audioRoute);
+        ret.put("audioRouteChanges", audioRouteChanges);
+        return ret;
+    }
+
+    /**
+     * Stores the final summary in the bounded history.
+     */
+    public JSObject finish() {
+        JSObject summary = getSummary();
+        synchronized (summaries) {
+            if (summaries.size() >= MAX_SUMMARIES) {
+                summaries.removeFirst();
+            }
+            summaries.addLast(summary);
+        }
+        return summary;
+    }
+
+    /**
+     * Summaries of the most recent finished calls, oldest first.
+     */
+    public static JSArray getRecentSummaries() {
+        JSArray ret = new JSArray();
+        synchronized (summaries) {
+            for (JSObject summary : summaries) {
+                ret.put(summary);
+            }
+        }
+        return ret;
+    }
+}
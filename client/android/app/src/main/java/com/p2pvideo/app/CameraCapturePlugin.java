@@ -0,0 +1,253 @@
+package com.p2pvideo.app;
+
+import android.content.Context;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.os.Build;
+import android.util.Log;
+import android.util.Range;
+import android.util.Size;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Camera2 facts the page needs to capture and switch cameras well.
+ *
+ * Call video is captured by the WebView's WebRTC stack, which takes frames
+ * only from getUserMedia, so the camera itself stays there. This plugin
+ * tells the page the exact sizes each camera supports (see
+ * CaptureFormatSelector) and whether the front and back cameras can stream
+ * at the same time. Where they can, the page keeps the other camera's track
+ * open during a call, so switching is a replaceTrack rather than a close,
+ * reopen and renegotiated capture. The page reports switch latency and
+ * capture frame rate back here for getStats.
+ */
+@CapacitorPlugin(name = "CameraCapture")
+public class CameraCapturePlugin extends Plugin {
+    private static final String TAG = "CameraCapturePlugin";
+    private static final String LANE = "CameraCapture";
+    static final double[] SWITCH_BOUNDS_MS = {50, 100, 200, 400, 800, 1500, 3000};
+    static final double[] FPS_BOUNDS = {5, 10, 15, 20, 24, 28, 30, 60};
+
+    private static final class CameraInfo {
+        final String id;
+        final String facing;
+        final int[][] sizes;
+        final int[][] fpsRanges;
+        final int hardwareLevel;
+        final int sensorOrientation;
+
+        CameraInfo(String id, String facing, int[][] sizes, int[][] fpsRanges, int hardwareLevel, int sensorOrientation) {
+            this.id = id;
+            this.facing = facing;
+            this.sizes = sizes;
+            this.fpsRanges = fpsRanges;
+            this.hardwareLevel = hardwareLevel;
+            this.sensorOrientation = sensorOrientation;
+        }
+    }
+
+    // Read once on the lane; characteristics don't change while we run
+    private List<CameraInfo> cameras;
+    private boolean concurrentFrontBack = false;
+
+    private final MetricHistogram warmSwitchMs = new MetricHistogram("warmSwitchMs", SWITCH_BOUNDS_MS, 16);
+    private final MetricHistogram coldSwitchMs = new MetricHistogram("coldSwitchMs", SWITCH_BOUNDS_MS, 16);
+    private final MetricHistogram captureFps = new MetricHistogram("captureFps", FPS_BOUNDS, 16);
+    private volatile double lastSwitchMs = -1;
+    private volatile boolean lastSwitchWarm = false;
+
+    /**
+     * Lists the cameras with their supported sizes and frame rate ranges, and
+     * whether a front and a back camera can stream concurrently.
+     */
+    @PluginMethod
+    public void getCameras(PluginCall call) {
+        PluginDispatcher.get().dispatch(this, LANE, call, () -> {
+            JSArray list = new JSArray();
+            for (CameraInfo camera : loadCameras()) {
+                JSObject info = new JSObject();
+                info.put("id", camera.id);
+                info.put("facing", camera.facing);
+                info.put("hardwareLevel", camera.hardwareLevel);
+                info.put("sensorOrientation", camera.sensorOrientation);
+                JSArray sizes = new JSArray();
+                for (int[] size : camera.sizes) {
+                    sizes.put(new JSObject().put("width", size[0]).put("height", size[1]));
+                }
+                info.put("sizes", sizes);
+                JSArray fpsRanges = new JSArray();
+                for (int[] range : camera.fpsRanges) {
+                    fpsRanges.put(new JSArray().put(range[0]).put(range[1]));
+                }
+                info.put("fpsRanges", fpsRanges);
+                list.put(info);
+            }
+
+            JSObject ret = new JSObject();
+            ret.put("cameras", list);
+            ret.put("concurrentFrontBack", concurrentFrontBack);
+            return ret;
+        });
+    }
+
+    /**
+     * The capture format to request for facing ("user" or "environment") at
+     * the negotiated width, height and frameRate. exact is false when the
+     * camera has no such size and the nearest one was chosen.
+     */
+    @PluginMethod
+    public void selectCaptureFormat(PluginCall call) {
+        String facing = call.getString("facing", "user");
+        Integer width = call.getInt("width");
+        Integer height = call.getInt("height");
+        int frameRate = call.getInt("frameRate", 30);
+        if (width == null || height == null || width <= 0 || height <= 0) {
+            call.reject("width and height are required");
+            return;
+        }
+
+        PluginDispatcher.get().dispatch(this, LANE, call, () -> {
+            CameraInfo camera = null;
+            for (CameraInfo candidate : loadCameras()) {
+                if (candidate.facing.equals(facing)) {
+                    camera = candidate;
+                    break;
+                }
+            }
+            if (camera == null) {
+                throw new IllegalArgumentException("No " + facing + " camera");
+            }
+            CaptureFormatSelector.Format format =
+                CaptureFormatSelector.select(camera.sizes, camera.fpsRanges, width, height, frameRate);
+            if (format == null) {
+                throw new IllegalStateException("Camera " + camera.id + " lists no output sizes");
+            }
+
+            JSObject ret = new JSObject();
+            ret.put("cameraId", camera.id);
+            ret.put("width", format.width);
+            ret.put("height", format.height);
+            ret.put("frameRate", format.frameRate);
+            ret.put("exact", format.exact);
+            return ret;
+        });
+    }
+
+    /**
+     * Records one camera switch: ms from the tap to the first frame from the
+     * new camera, warm if the new camera was already open.
+     */
+    @PluginMethod
+    public void recordSwitch(PluginCall call) {
+        Double ms = call.getDouble("ms");
+        if (ms == null || ms < 0) {
+            call.reject("ms is required");
+            return;
+        }
+        boolean warm = call.getBoolean("warm", false);
+        (warm ? warmSwitchMs : coldSwitchMs).record(ms);
+        lastSwitchMs = ms;
+        lastSwitchWarm = warm;
+        Log.d(TAG, (warm ? "Warm" : "Cold") + " camera switch in " + Math.round(ms) + "ms");
+        call.resolve();
+    }
+
+    /**
+     * Records the local capture frame rate (the media-source stats report).
+     */
+    @PluginMethod
+    public void recordCaptureFps(PluginCall call) {
+        Double fps = call.getDouble("fps");
+        if (fps == null || fps < 0) {
+            call.reject("fps is required");
+            return;
+        }
+        captureFps.record(fps);
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void getStats(PluginCall call) {
+        JSObject ret = new JSObject();
+        ret.put("lastSwitchMs", lastSwitchMs);
+        ret.put("lastSwitchWarm", lastSwitchWarm);
+        ret.put("warmSwitchMs", warmSwitchMs.toJSObject());
+        ret.put("coldSwitchMs", coldSwitchMs.toJSObject());
+        ret.put("captureFps", captureFps.toJSObject());
+        call.resolve(ret);
+    }
+
+    private List<CameraInfo> loadCameras() throws CameraAccessException {
+        if (cameras != null) {
+            return cameras;
+        }
+        CameraManager manager = (CameraManager) getContext().getSystemService(Context.CAMERA_SERVICE);
+        List<CameraInfo> found = new ArrayList<>();
+        for (String id : manager.getCameraIdList()) {
+            CameraCharacteristics characteristics = manager.getCameraCharacteristics(id);
+            StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            Integer lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
+            if (map == null || lensFacing == null) {
+                continue;
+            }
+
+            // The WebView's capturer renders into a SurfaceTexture
+            Size[] outputSizes = map.getOutputSizes(SurfaceTexture.class);
+            int[][] sizes = new int[outputSizes != null ? outputSizes.length : 0][];
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = new int[] {outputSizes[i].getWidth(), outputSizes[i].getHeight()};
+            }
+            Range<Integer>[] ranges = characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+            int[][] fpsRanges = new int[ranges != null ? ranges.length : 0][];
+            for (int i = 0; i < fpsRanges.length; i++) {
+                fpsRanges[i] = new int[] {ranges[i].getLower(), ranges[i].getUpper()};
+            }
+            Integer level = characteristics.get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
+            Integer orientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+
+            found.add(new CameraInfo(id, facingName(lensFacing), sizes, fpsRanges,
+                level != null ? level : -1, orientation != null ? orientation : 0));
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            for (Set<String> combination : manager.getConcurrentCameraIds()) {
+                boolean front = false;
+                boolean back = false;
+                for (CameraInfo camera : found) {
+                    if (combination.contains(camera.id)) {
+                        front |= "user".equals(camera.facing);
+                        back |= "environment".equals(camera.facing);
+                    }
+                }
+                concurrentFrontBack |= front && back;
+            }
+        }
+        Log.d(TAG, found.size() + " cameras, concurrent front/back: " + concurrentFrontBack);
+        cameras = found;
+        return found;
+    }
+
+    private static String facingName(int lensFacing) {
+        switch (lensFacing) {
+            case CameraCharacteristics.LENS_FACING_FRONT:
+                return "user";
+            case CameraCharacteristics.LENS_FACING_BACK:
+                return "environment";
+            default:
+                return "external";
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.p2pvideo.app;
+
+/**
+ * Picks the camera output format closest to the negotiated capture size.
+ *
+ * The WebView's capturer opens the camera at the supported size nearest
+ * the request and then crops and scales every frame in software to match
+ * the constraints. Asking for a size the camera supports exactly, with
+ * exact constraints, means frames come straight from the camera HAL.
+ *
+ * Sizes are given the way Camera2 lists them, landscape; the target may be
+ * either orientation. Pure Java; unit tested.
+ */
+final class CaptureFormatSelector {
+    // Aspect ratios closer than this are the same shape (854x480 vs 16:9)
+    static final double ASPECT_TOLERANCE = 0.02;
+
+    static final class Format {
+        final int width;
+        final int height;
+        final int frameRate;
+        final boolean exact;
+
+        Format(int width, int height, int frameRate, boolean exact) {
+            this.width = width;
+            this.height = height;
+            this.frameRate = frameRate;
+            this.exact = exact;
+        }
+    }
+
+    private CaptureFormatSelector() {
+    }
+
+    /**
+     * sizes are {width, height} pairs and fpsRanges {lower, upper} pairs.
+     * Prefers, in order: the target size itself; the smallest size of the
+     * same shape that covers it; the largest size of the same shape; the
+     * size nearest in area. The result keeps the target's orientation.
+     * Returns null if sizes is empty.
+     */
+    static Format select(int[][] sizes, int[][] fpsRanges, int width, int height, int frameRate) {
+        if (sizes.length == 0) {
+            return null;
+        }
+        boolean portrait = height > width;
+        int longSide = Math.max(width, height);
+        int shortSide = Math.min(width, height);
+        double aspect = (double) longSide / shortSide;
+
+        int[] exact = null;
+        int[] covering = null;
+        int[] sameShape = null;
+        int[] nearest = null;
+        for (int[] size : sizes) {
+            int sizeLong = Math.max(size[0], size[1]);
+            int sizeShort = Math.min(size[0], size[1]);
+            if (sizeLong == longSide && sizeShort == shortSide) {
+                exact = size;
+                break;
+            }
+            long area = (long) sizeLong * sizeShort;
+            if (Math.abs((double) sizeLong / sizeShort - aspect) <= aspect * ASPECT_TOLERANCE) {
+                if (sizeLong >= longSide && sizeShort >= shortSide
+                        && (covering == null || area < areaOf(covering))) {
+                    covering = size;
+                }
+                if (sameShape == null || area > areaOf(sameShape)) {
+                    sameShape = size;
+                }
+            }
+            long distance = Math.abs(area - (long) longSide * shortSide);
+            if (nearest == null || distance < Math.abs(areaOf(nearest) - (long) longSide * shortSide)) {
+                nearest = size;
+            }
+        }
+
+        int[] chosen = exact != null ? exact : covering != null ? covering : sameShape != null ? sameShape : nearest;
+        int chosenLong = Math.max(chosen[0], chosen[1]);
+        int chosenShort = Math.min(chosen[0], chosen[1]);
+        return new Format(portrait ? chosenShort : chosenLong, portrait ? chosenLong : chosenShort,
+            selectFrameRate(fpsRanges, frameRate), exact != null);
+    }
+
+    /**
+     * frameRate itself when a supported range contains it, otherwise the
+     * highest upper bound below it, or frameRate if no range fits at all.
+     */
+    static int selectFrameRate(int[][] fpsRanges, int frameRate) {
+        int best = -1;
+        for (int[] range : fpsRanges) {
+            if (range[0] <= frameRate && frameRate <= range[1]) {
+                return frameRate;
+            }
+            if (range[1] < frameRate && range[1] > best) {
+                best = range[1];
+            }
+        }
+        return best > 0 ? best : frameRate;
+    }
+
+    private static long areaOf(int[] size) {
+        return (long) size[0] * size[1];
+    }
+}
@@ -0,0 +1,163 @@
+package com.p2pvideo.app;
+
+import android.media.AudioDeviceInfo;
+import android.media.AudioManager;
+import android.os.Build;
+import android.os.Handler;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+
+import java.util.List;
+
+/**
+ * Route engine for API 31+ built on setCommunicationDevice.
+ *
+ * A switch is a single call; it completes when the framework reports the new
+ * device through OnCommunicationDeviceChangedListener, so there is no SCO
+ * start/stop cycle and no polling.
+ */
+@RequiresApi(api = Build.VERSION_CODES.S)
+public class CommunicationDeviceRouteEngine implements AudioRouteEngine {
+    private static final String TAG = "CommDeviceRouteEngine";
+
+    private final AudioManager audioManager;
+    private final AudioManager.OnCommunicationDeviceChangedListener deviceChangedListener;
+
+    private volatile AudioDeviceInfo communicationDevice;
+    private String pendingRoute;
+    private Callback pendingCallback;
+
+    public CommunicationDeviceRouteEngine(AudioManager audioManager, Handler handler) {
+        this.audioManager = audioManager;
+        this.communicationDevice = audioManager.getCommunicationDevice();
+        this.deviceChangedListener = this::onCommunicationDeviceChanged;
+        audioManager.addOnCommunicationDeviceChangedListener(handler::post, deviceChangedListener);
+    }
+
+    @Override
+    public String getName() {
+        return "communicationDevice";
+    }
+
+    @Override
+    public boolean apply(String route, Callback callback) {
+        if (isRouteInEffect(route)) {
+            return true;
+        }
+
+        AudioDeviceInfo target = findDevice(route);
+        if (target == null) {
+            throw new IllegalStateException("No communication device for route: " + route);
+        }
+
+        pendingRoute = route;
+        pendingCallback = callback;
+        if (!audioManager.setCommunicationDevice(target)) {
+            cancel();
+            throw new IllegalStateException("setCommunicationDevice refused " + target.getType());
+        }
+        Log.d(TAG, "Requested communication device " + target.getType() + " for " + route);
+
+        // The framework may already report the device synchronously. Ask it
+        // directly: the cached device is only updated by the listener, which
+        // is queued behind this call on the same handler
+        AudioDeviceInfo current = audioManager.getCommunicationDevice();
+        if (current != null && matches(route, current.getType())) {
+            communicationDevice = current;
+            cancel();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isRouteInEffect(String route) {
+        AudioDeviceInfo device = communicationDevice;
+        return device != null && matches(route, device.getType());
+    }
+
+    @Override
+    public void cancel() {
+        pendingRoute = null;
+        pendingCallback = null;
+    }
+
+    @Override
+    public void onScoAudioStateChanged(int scoState) {
+        // SCO is managed by the framework on this path
+    }
+
+    @Override
+    public boolean prewarm(String route) {
+        // Bringing up SCO here means setCommunicationDevice, which moves the audio
+        return false;
+    }
+
+    @Override
+    public void releasePrewarm() {
+    }
+
+    @Override
+    public boolean isRouteWarm(String route) {
+        return isRouteInEffect(route);
+    }
+
+    @Override
+    public boolean isSpeakerphoneOn() {
+        AudioDeviceInfo device = communicationDevice;
+        return device != null && device.getType() == AudioDeviceInfo.TYPE_BUILTIN_SPEAKER;
+    }
+
+    @Override
+    public boolean isBluetoothScoOn() {
+        AudioDeviceInfo device = communicationDevice;
+        return device != null && matches("bluetooth", device.getType());
+    }
+
+    @Override
+    public void release() {
+        cancel();
+        audioManager.removeOnCommunicationDeviceChangedListener(deviceChangedListener);
+        audioManager.clearCommunicationDevice();
+    }
+
+    private void onCommunicationDeviceChanged(AudioDeviceInfo device) {
+        communicationDevice = device;
+        Log.d(TAG, "Communication device changed: " + (device != null ? device.getType() : "none"));
+
+        if (pendingCallback != null && device != null && matches(pendingRoute, device.getType())) {
+            Callback callback = pendingCallback;
+            cancel();
+            callback.onRouteApplied(true, null);
+        }
+    }
+
+    private AudioDeviceInfo findDevice(String route) {
+        List<AudioDeviceInfo> devices = audioManager.getAvailableCommunicationDevices();
+        for (AudioDeviceInfo device : devices) {
+            if (matches(route, device.getType())) {
+                return device;
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(String route, int type) {
+        switch (route) {
+            case "bluetooth":
+                return type == AudioDeviceInfo.TYPE_BLUETOOTH_SCO
+                    || type == AudioDeviceInfo.TYPE_BLE_HEADSET;
+            case "speaker":
+                return type == AudioDeviceInfo.TYPE_BUILTIN_SPEAKER;
+            case "earpiece":
+                return type == AudioDeviceInfo.TYPE_BUILTIN_EARPIECE;
+            case "headphones":
+                return type == AudioDeviceInfo.TYPE_WIRED_HEADSET
+                    || type == AudioDeviceInfo.TYPE_WIRED_HEADPHONES
+                    || type == AudioDeviceInfo.TYPE_USB_HEADSET;
+            default:
+                return false;
+        }
+    }
+}
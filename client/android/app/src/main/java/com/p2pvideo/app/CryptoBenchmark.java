@@ -0,0 +1,99 @@
+package com.p2pvideo.app;
+
+import java.security.GeneralSecurityException;
+import java.util.Locale;
+
+/**
+ * Times RoomCipher: one key derivation, then encrypt and decrypt round trips
+ * of a signal-sized payload in both formats. The page times the CryptoJS
+ * path with the same parameters (benchmarkE2E in encryption.js) to compare
+ * on the device. On a desktop JVM, RoomCipherBenchmark in :benchmark-jvm
+ * measures the same operations with JMH.
+ */
+final class CryptoBenchmark {
+    // Untimed rounds so the JIT and the provider are warm
+    static final int WARMUP_ROUNDS = 20;
+
+    static final class Result {
+        final double deriveMs;
+        final double encryptUs;
+        final double decryptUs;
+        final double gcmEncryptUs;
+        final double gcmDecryptUs;
+        final int iterations;
+        final int payloadChars;
+        final String provider;
+
+        Result(double deriveMs, double encryptUs, double decryptUs, double gcmEncryptUs, double gcmDecryptUs,
+               int iterations, int payloadChars, String provider) {
+            this.deriveMs = deriveMs;
+            this.encryptUs = encryptUs;
+            this.decryptUs = decryptUs;
+            this.gcmEncryptUs = gcmEncryptUs;
+            this.gcmDecryptUs = gcmDecryptUs;
+            this.iterations = iterations;
+            this.payloadChars = payloadChars;
+            this.provider = provider;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                "derive %.1fms; per %d-char message: cryptojs %.1f/%.1fus, gcm %.1f/%.1fus (encrypt/decrypt, %s)",
+                deriveMs, payloadChars, encryptUs, decryptUs, gcmEncryptUs, gcmDecryptUs, provider);
+        }
+    }
+
+    private CryptoBenchmark() {
+    }
+
+    /**
+     * A stand-in for a signal: JSON of roughly payloadChars characters.
+     */
+    static String payload(int payloadChars) {
+        StringBuilder sdp = new StringBuilder();
+        for (int i = 0; sdp.length() < payloadChars; i++) {
+            sdp.append("a=candidate:").append(i).append(" 1 udp 2122260223 192.0.2.").append(i % 255)
+                .append(' ').append(50000 + i).append(" typ host\\r\\n");
+        }
+        return "{\"type\":\"offer\",\"sdp\":\"" + sdp + "\"}";
+    }
+
+    static Result run(int iterations, int payloadChars) throws GeneralSecurityException {
+        long started = System.nanoTime();
+        RoomCipher cipher = RoomCipher.derive("benchmark-room", "benchmark-password");
+        double deriveMs = (System.nanoTime() - started) / 1e6;
+
+        String plaintext = payload(payloadChars);
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            cipher.decrypt(cipher.encrypt(plaintext));
+            cipher.decrypt(cipher.encryptGcm(plaintext));
+        }
+
+        String[] messages = new String[iterations];
+        started = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            messages[i] = cipher.encrypt(plaintext);
+        }
+        double encryptUs = (System.nanoTime() - started) / 1e3 / iterations;
+        started = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            cipher.decrypt(messages[i]);
+        }
+        double decryptUs = (System.nanoTime() - started) / 1e3 / iterations;
+
+        started = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            messages[i] = cipher.encryptGcm(plaintext);
+        }
+        double gcmEncryptUs = (System.nanoTime() - started) / 1e3 / iterations;
+        started = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            cipher.decrypt(messages[i]);
+        }
+        double gcmDecryptUs = (System.nanoTime() - started) / 1e3 / iterations;
+
+        return new Result(deriveMs, encryptUs, decryptUs, gcmEncryptUs, gcmDecryptUs,
+            iterations, plaintext.length(), cipher.getProvider());
+    }
+}
@@ -0,0 +1,203 @@
+package com.p2pvideo.app;
+
+import android.os.Build;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONObject;
+
+import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * E2E encryption off the page's main thread (see RoomCipher).
+ *
+ * The page derives a room key once per join and gets back a keyId; the key
+ * itself stays here. encrypt and decrypt take a list of items so a batch of
+ * signals costs one bridge round trip. Everything runs on the plugin's
+ * PluginDispatcher lane, which is serial, so RoomCipher's reused Cipher
+ * instances are never shared between threads.
+ *
+ * The room key comes from the room ID and password on both ends, so it can't
+ * be generated inside Android Keystore, and a Keystore key would put a binder
+ * call in front of every message; keys live in memory for the call only.
+ */
+@CapacitorPlugin(name = "Crypto")
+public class CryptoPlugin extends Plugin {
+    private static final String TAG = "CryptoPlugin";
+    private static final String LANE = "Crypto";
+    // Long enough to stall live signal encryption; runs on a thread of its own
+    private static final String BENCHMARK_LANE = "CryptoBenchmark";
+    private static final int MAX_BATCH = 256;
+
+    private final Map<String, RoomCipher> keys = new ConcurrentHashMap<>();
+    private final AtomicInteger nextKeyId = new AtomicInteger(1);
+
+    /**
+     * Derives the room key from roomId and password exactly as CryptoJS does
+     * and returns its keyId.
+     */
+    @PluginMethod
+    public void deriveKey(PluginCall call) {
+        String roomId = call.getString("roomId");
+        if (roomId == null) {
+            call.reject("roomId is required");
+            return;
+        }
+        String password = call.getString("password", "");
+
+        PluginDispatcher.get().dispatch(this, LANE, call, () -> {
+            long startedAt = System.nanoTime();
+            RoomCipher cipher = RoomCipher.derive(roomId, password);
+            double deriveMs = (System.nanoTime() - startedAt) / 1e6;
+            String keyId = String.valueOf(nextKeyId.getAndIncrement());
+            keys.put(keyId, cipher);
+            Log.d(TAG, "Derived key " + keyId + " in " + Math.round(deriveMs) + "ms (" + cipher.getProvider() + ")");
+
+            JSObject ret = new JSObject();
+            ret.put("keyId", keyId);
+            ret.put("deriveMs", deriveMs);
+            ret.put("provider", cipher.getProvider());
+            return ret;
+        });
+    }
+
+    /**
+     * Encrypts each string in items. format is "cryptojs" (the default,
+     * readable by every peer) or "gcm".
+     */
+    @PluginMethod
+    public void encrypt(PluginCall call) {
+        RoomCipher cipher = cipherFor(call);
+        if (cipher == null) {
+            return;
+        }
+        JSArray items = itemsFor(call);
+        if (items == null) {
+            return;
+        }
+        String format = call.getString("format", "cryptojs");
+        boolean gcm = "gcm".equals(format);
+        if (!gcm && !"cryptojs".equals(format)) {
+            call.reject("format must be cryptojs or gcm");
+            return;
+        }
+
+        PluginDispatcher.get().dispatch(this, LANE, call, () -> {
+            JSArray out = new JSArray();
+            for (int i = 0; i < items.length(); i++) {
+                String plaintext = items.getString(i);
+                out.put(gcm ? cipher.encryptGcm(plaintext) : cipher.encrypt(plaintext));
+            }
+            return new JSObject().put("items", out);
+        });
+    }
+
+    /**
+     * Decrypts each message in items, in either format. An item that fails
+     * (wrong key, damaged) comes back as null rather than failing the batch.
+     */
+    @PluginMethod
+    public void decrypt(PluginCall call) {
+        RoomCipher cipher = cipherFor(call);
+        if (cipher == null) {
+            return;
+        }
+        JSArray items = itemsFor(call);
+        if (items == null) {
+            return;
+        }
+
+        PluginDispatcher.get().dispatch(this, LANE, call, () -> {
+            JSArray out = new JSArray();
+            int failed = 0;
+            for (int i = 0; i < items.length(); i++) {
+                try {
+                    out.put(cipher.decrypt(items.getString(i)));
+                } catch (GeneralSecurityException e) {
+                    out.put(JSONObject.NULL);
+                    failed++;
+                }
+            }
+            if (failed > 0) {
+                Log.d(TAG, "Failed to decrypt " + failed + " of " + items.length());
+            }
+            return new JSObject().put("items", out);
+        });
+    }
+
+    @PluginMethod
+    public void releaseKey(PluginCall call) {
+        String keyId = call.getString("keyId");
+        if (keyId != null) {
+            keys.remove(keyId);
+        }
+        call.resolve();
+    }
+
+    /**
+     * Runs CryptoBenchmark on the device. Compare with benchmarkE2E in
+     * encryption.js, which times the CryptoJS path with the same parameters.
+     */
+    @PluginMethod
+    public void benchmark(PluginCall call) {
+        int iterations = call.getInt("iterations", 200);
+        int payloadChars = call.getInt("payloadChars", 2000);
+        if (iterations < 1 || iterations > 10000) {
+            call.reject("iterations must be between 1 and 10000");
+            return;
+        }
+        if (payloadChars < 1 || payloadChars > 100000) {
+            call.reject("payloadChars must be between 1 and 100000");
+            return;
+        }
+
+        PluginDispatcher.get().dispatchLong(this, BENCHMARK_LANE, call, () -> {
+            CryptoBenchmark.Result result = CryptoBenchmark.run(iterations, payloadChars);
+            Log.d(TAG, "Benchmark: " + result);
+
+            JSObject ret = new JSObject();
+            ret.put("device", Build.MANUFACTURER + " " + Build.MODEL);
+            ret.put("abi", Build.SUPPORTED_ABIS.length > 0 ? Build.SUPPORTED_ABIS[0] : null);
+            ret.put("provider", result.provider);
+            ret.put("iterations", result.iterations);
+            ret.put("payloadChars", result.payloadChars);
+            ret.put("deriveMs", result.deriveMs);
+            ret.put("encryptUs", result.encryptUs);
+            ret.put("decryptUs", result.decryptUs);
+            ret.put("gcmEncryptUs", result.gcmEncryptUs);
+            ret.put("gcmDecryptUs", result.gcmDecryptUs);
+            return ret;
+        });
+    }
+
+    private RoomCipher cipherFor(PluginCall call) {
+        String keyId = call.getString("keyId");
+        RoomCipher cipher = keyId != null ? keys.get(keyId) : null;
+        if (cipher == null) {
+            call.reject("Unknown keyId");
+        }
+        return cipher;
+    }
+
+    private JSArray itemsFor(PluginCall call) {
+        JSArray items = call.getArray("items", null);
+        if (items == null) {
+            call.reject("items is required");
+            return null;
+        }
+        if (items.length() > MAX_BATCH) {
+            call.reject("At most " + MAX_BATCH + " items per call");
+            return null;
+        }
+        return items;
+    }
+}
@@ -0,0 +1,35 @@
+package com.p2pvideo.app;
+
+/**
+ * Call duration text for the ongoing-call notification and the call-ended
+ * broadcast. Runs every second for the whole call, so it appends into a
+ * caller-owned builder instead of allocating.
+ */
+public final class DurationFormat {
+
+    private DurationFormat() {
+    }
+
+    /**
+     * Writes the elapsed call time as mm:ss (or hh:mm:ss) into the given
+     * builder without allocating.
+     */
+    public static StringBuilder appendDuration(StringBuilder out, long elapsedMillis) {
+        int seconds = (int) (elapsedMillis / 1000);
+        int minutes = seconds / 60;
+        int hours = minutes / 60;
+
+        if (hours > 0) {
+            appendTwoDigits(out, hours).append(':');
+        }
+        appendTwoDigits(out, minutes % 60).append(':');
+        return appendTwoDigits(out, seconds % 60);
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder out, int value) {
+        if (value < 10) {
+            out.append('0');
+        }
+        return out.append(value);
+    }
+}
@@ -0,0 +1,162 @@
+package com.p2pvideo.app;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Detects whether a frame differs from the previous one, and where.
+ *
+ * The frame is split into square tiles and each tile gets a 64-bit hash,
+ * read straight from the (usually direct, mapped) buffer with absolute
+ * getLong calls so no pixel data is copied onto the heap. A frame whose tile
+ * hashes all match the previous frame is reported as unchanged; otherwise
+ * the changed tiles and their bounding box are available until the next call.
+ *
+ * Pure Java and single-threaded.
+ */
+public class FrameDiffEngine {
+    public static final int DEFAULT_TILE_SIZE = 64;
+    private static final long MIX = 0x9E3779B97F4A7C15L;
+
+    private final int width;
+    private final int height;
+    private final int bytesPerPixel;
+    private final int tileSize;
+    private final int tilesX;
+    private final int tilesY;
+
+    private long[] previousHashes;
+    private long[] currentHashes;
+    private final long[] changedMask;
+    private boolean hasPrevious = false;
+
+    private int changedTiles;
+    private int dirtyLeft;
+    private int dirtyTop;
+    private int dirtyRight;
+    private int dirtyBottom;
+
+    public FrameDiffEngine(int width, int height, int bytesPerPixel) {
+        this(width, height, bytesPerPixel, DEFAULT_TILE_SIZE);
+    }
+
+    public FrameDiffEngine(int width, int height, int bytesPerPixel, int tileSize) {
+        this.width = width;
+        this.height = height;
+        this.bytesPerPixel = bytesPerPixel;
+        this.tileSize = tileSize;
+        this.tilesX = (width + tileSize - 1) / tileSize;
+        this.tilesY = (height + tileSize - 1) / tileSize;
+        this.previousHashes = new long[tilesX * tilesY];
+        this.currentHashes = new long[tilesX * tilesY];
+        this.changedMask = new long[(tilesX * tilesY + 63) / 64];
+    }
+
+    /**
+     * Hashes the frame and compares it against the previous one.
+     *
+     * @param frame     pixel data starting at position 0
+     * @param rowStride bytes between the starts of consecutive rows
+     * @return true if any tile changed (always true for the first frame)
+     */
+    public boolean process(ByteBuffer frame, int rowStride) {
+        long[] hashes = currentHashes;
+        int tileRowBytes = tileSize * bytesPerPixel;
+        int rowBytes = width * bytesPerPixel;
+
+        for (int ty = 0; ty < tilesY; ty++) {
+            int base = ty * tilesX;
+            for (int tx = 0; tx < tilesX; tx++) {
+                hashes[base + tx] = tx + 1;
+            }
+
+            int yEnd = Math.min(height, (ty + 1) * tileSize);
+            for (int y = ty * tileSize; y < yEnd; y++) {
+                int rowStart = y * rowStride;
+                for (int tx = 0; tx < tilesX; tx++) {
+                    int start = rowStart + tx * tileRowBytes;
+                    int end = rowStart + Math.min(rowBytes, (tx + 1) * tileRowBytes);
+                    long h = hashes[base + tx];
+                    int i = start;
+                    for (; i + 8 <= end; i += 8) {
+                        h = (h ^ frame.getLong(i)) * MIX;
+                        h ^= h >>> 29;
+                    }
+                    for (; i < end; i++) {
+                        h = (h ^ frame.get(i)) * MIX;
+                    }
+                    hashes[base + tx] = h;
+                }
+            }
+        }
+
+        return compare();
+    }
+
+    private boolean compare() {
+        boolean first = !hasPrevious;
+        changedTiles = 0;
+        dirtyLeft = Integer.MAX_VALUE;
+        dirtyTop = Integer.MAX_VALUE;
+        dirtyRight = -1;
+        dirtyBottom = -1;
+        for (int i = 0; i < changedMask.length; i++) {
+            changedMask[i] = 0;
+        }
+
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                int tile = ty * tilesX + tx;
+                if (first || currentHashes[tile] != previousHashes[tile]) {
+                    changedTiles++;
+                    changedMask[tile >>> 6] |= 1L << (tile & 63);
+                    dirtyLeft = Math.min(dirtyLeft, tx);
+                    dirtyTop = Math.min(dirtyTop, ty);
+                    dirtyRight = Math.max(dirtyRight, tx);
+                    dirtyBottom = Math.max(dirtyBottom, ty);
+                }
+            }
+        }
+
+        long[] swap = previousHashes;
+        previousHashes = currentHashes;
+        currentHashes = swap;
+        hasPrevious = true;
+        return changedTiles > 0;
+    }
+
+    /**
+     * Forgets the previous frame so the next one is reported as changed.
+     */
+    public void reset() {
+        hasPrevious = false;
+    }
+
+    public int getTileCount() {
+        return tilesX * tilesY;
+    }
+
+    public int getChangedTileCount() {
+        return changedTiles;
+    }
+
+    public boolean isTileChanged(int tileX, int tileY) {
+        int tile = tileY * tilesX + tileX;
+        return (changedMask[tile >>> 6] & (1L << (tile & 63))) != 0;
+    }
+
+    /**
+     * Bounding box of the changed tiles in pixels, as {left, top, right, bottom}
+     * with right/bottom exclusive, or null if nothing changed.
+     */
+    public int[] getDirtyRect() {
+        if (changedTiles == 0) {
+            return null;
+        }
+        return new int[] {
+            dirtyLeft * tileSize,
+            dirtyTop * tileSize,
+            Math.min(width, (dirtyRight + 1) * tileSize),
+            Math.min(height, (dirtyBottom + 1) * tileSize)
+        };
+    }
+}
@@ -0,0 +1,158 @@
+package com.p2pvideo.app;
+
+import android.graphics.PixelFormat;
+import android.hardware.HardwareBuffer;
+import android.media.Image;
+import android.media.ImageReader;
+import android.media.ImageWriter;
+import android.os.Build;
+import android.os.Handler;
+import android.util.Log;
+import android.view.Surface;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sits between the VirtualDisplay and the encoder input Surface and drops
+ * frames that are identical to the previous one.
+ *
+ * The display renders into an ImageReader. Each frame is diffed in place
+ * through its mapped plane buffer with FrameDiffEngine. A changed frame is
+ * handed to the encoder by queueing the same Image into an ImageWriter,
+ * which attaches the underlying HardwareBuffer instead of copying pixels.
+ *
+ * Frames are handled on the handler passed in; release() may come from any
+ * thread and waits for the frame in hand, since closing the reader frees
+ * the Image being hashed.
+ */
+public class FrameDiffStage {
+    private static final String TAG = "FrameDiffStage";
+    private static final int MAX_IMAGES = 3;
+
+    /**
+     * Told when the device cannot pass frames through without copying, so the
+     * caller can fall back to feeding the encoder directly.
+     */
+    public interface Listener {
+        void onPassThroughFailed();
+    }
+
+    private final ImageReader imageReader;
+    private final ImageWriter imageWriter;
+    private final FrameDiffEngine diffEngine;
+    private final Listener listener;
+    // Held while an Image is in use and while closing the reader and writer
+    private final Object imageLock = new Object();
+    private volatile boolean released = false;
+    private volatile boolean failed = false;
+    private volatile boolean forceNext = false;
+
+    private final AtomicLong forwardedFrames = new AtomicLong();
+    private final AtomicLong skippedFrames = new AtomicLong();
+    private volatile int lastChangedTiles;
+    private volatile int[] lastDirtyRect;
+
+    public FrameDiffStage(int width, int height, Surface encoderSurface, Handler handler, Listener listener) {
+        this.listener = listener;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            imageReader = ImageReader.newInstance(width, height, PixelFormat.RGBA_8888, MAX_IMAGES,
+                HardwareBuffer.USAGE_CPU_READ_OFTEN
+                    | HardwareBuffer.USAGE_GPU_SAMPLED_IMAGE
+                    | HardwareBuffer.USAGE_VIDEO_ENCODE);
+        } else {
+            imageReader = ImageReader.newInstance(width, height, PixelFormat.RGBA_8888, MAX_IMAGES);
+        }
+        imageWriter = ImageWriter.newInstance(encoderSurface, MAX_IMAGES);
+        diffEngine = new FrameDiffEngine(width, height, 4);
+        imageReader.setOnImageAvailableListener(this::onImageAvailable, handler);
+    }
+
+    public Surface getInputSurface() {
+        return imageReader.getSurface();
+    }
+
+    public long getForwardedFrames() {
+        return forwardedFrames.get();
+    }
+
+    public long getSkippedFrames() {
+        return skippedFrames.get();
+    }
+
+    public int getLastChangedTiles() {
+        return lastChangedTiles;
+    }
+
+    public int getTileCount() {
+        return diffEngine.getTileCount();
+    }
+
+    public int[] getLastDirtyRect() {
+        return lastDirtyRect;
+    }
+
+    /**
+     * Makes the next frame go through even if it matches, e.g. after the
+     * encoder was asked for a key frame.
+     */
+    public void forceNextFrame() {
+        forceNext = true;
+    }
+
+    public void release() {
+        synchronized (imageLock) {
+            released = true;
+            imageReader.setOnImageAvailableListener(null, null);
+            imageReader.close();
+            imageWriter.close();
+        }
+    }
+
+    private void onImageAvailable(ImageReader reader) {
+        synchronized (imageLock) {
+            if (!released && !failed) {
+                processLatestImage(reader);
+            }
+        }
+    }
+
+    private void processLatestImage(ImageReader reader) {
+        Image image;
+        try {
+            image = reader.acquireLatestImage();
+        } catch (IllegalStateException e) {
+            return;
+        }
+        if (image == null) {
+            return;
+        }
+
+        if (forceNext) {
+            forceNext = false;
+            diffEngine.reset();
+        }
+        Image.Plane plane = image.getPlanes()[0];
+        boolean changed = diffEngine.process(plane.getBuffer(), plane.getRowStride());
+
+        NativeEventBus.get().publish(NativeEventSchema.FRAME_DIFF, record ->
+            record.putInt(diffEngine.getChangedTileCount()).putInt(diffEngine.getTileCount()).putInt(changed ? 1 : 0));
+        if (!changed) {
+            skippedFrames.incrementAndGet();
+            image.close();
+            return;
+        }
+        lastChangedTiles = diffEngine.getChangedTileCount();
+        lastDirtyRect = diffEngine.getDirtyRect();
+
+        try {
+            // Takes ownership of the image; no close() on success
+            imageWriter.queueInputImage(image);
+            forwardedFrames.incrementAndGet();
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Encoder surface cannot take ImageReader buffers", e);
+            image.close();
+            failed = true;
+            listener.onPassThroughFailed();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.p2pvideo.app;
+
+/**
+ * The bookkeeping behind NetworkHandoverMonitor: which network is the
+ * default, whether a change is a handover, which capability updates are
+ * worth telling the page about, and how long media took to come back.
+ *
+ * The outage is timed from the first loss or handover since media last
+ * flowed, so a Wi-Fi drop followed seconds later by cellular counts from
+ * the drop. Times are in ms on any monotonic clock.
+ *
+ * Thread-safe; pure Java; unit tested.
+ */
+final class HandoverTracker {
+    // Bandwidth estimates jitter; only report changes bigger than this
+    static final double BANDWIDTH_CHANGE = 0.25;
+    static final double[] RECOVERY_BOUNDS_MS = {250, 500, 1000, 2000, 4000, 8000, 16000};
+    static final String NONE = "none";
+
+    /**
+     * A change of default network.
+     */
+    static final class Handover {
+        final String from;
+        final String to;
+        final boolean lost;
+
+        Handover(String from, String to, boolean lost) {
+            this.from = from;
+            this.to = to;
+            this.lost = lost;
+        }
+    }
+
+    private String networkId;
+    private String transport = NONE;
+    // Transport before a loss, so the next network is a handover from it
+    private String lastTransport;
+    private long outageStartedAt = -1;
+    private int handovers = 0;
+    private long lastRecoveryMs = -1;
+    private final MetricHistogram recoveryMs = new MetricHistogram("handoverRecoveryMs", RECOVERY_BOUNDS_MS, 16);
+
+    private int reportedDownKbps = -1;
+    private int reportedUpKbps = -1;
+    private boolean reportedMetered;
+    private boolean reportedValidated;
+    private String reportedTransport;
+
+    /**
+     * A network became the default. Returns the handover, or null if it is
+     * the first network seen or already the default.
+     */
+    synchronized Handover onDefaultNetwork(String id, String newTransport, long now) {
+        if (id.equals(networkId)) {
+            return null;
+        }
+        String from = networkId != null ? transport : lastTransport;
+        networkId = id;
+        transport = newTransport;
+        reportedTransport = null;
+        if (from == null) {
+            return null;
+        }
+        handovers++;
+        if (outageStartedAt < 0) {
+            outageStartedAt = now;
+        }
+        return new Handover(from, newTransport, false);
+    }
+
+    /**
+     * A network went away. Returns the loss if it was the default.
+     */
+    synchronized Handover onLost(String id, long now) {
+        if (!id.equals(networkId)) {
+            return null;
+        }
+        Handover lost = new Handover(transport, NONE, true);
+        lastTransport = transport;
+        networkId = null;
+        transport = NONE;
+        if (outageStartedAt < 0) {
+            outageStartedAt = now;
+        }
+        return lost;
+    }
+
+    /**
+     * New capabilities for a network. Returns true if they are for the
+     * default network and differ enough from the last ones reported.
+     */
+    synchronized boolean onCapabilities(String id, String newTransport, int downKbps, int upKbps,
+                                        boolean metered, boolean validated) {
+        if (!id.equals(networkId)) {
+            return false;
+        }
+        transport = newTransport;
+        boolean changed = !newTransport.equals(reportedTransport)
+            || metered != reportedMetered
+            || validated != reportedValidated
+            || changedBy(reportedDownKbps, downKbps)
+            || changedBy(reportedUpKbps, upKbps);
+        if (changed) {
+            reportedTransport = newTransport;
+            reportedMetered = metered;
+            reportedValidated = validated;
+            reportedDownKbps = downKbps;
+            reportedUpKbps = upKbps;
+        }
+        return changed;
+    }
+
+    private static boolean changedBy(int previous, int current) {
+        if (previous <= 0 || current <= 0) {
+            return previous != current;
+        }
+        return Math.abs(current - previous) > previous * BANDWIDTH_CHANGE;
+    }
+
+    /**
+     * Media is flowing again. Returns the outage length, or -1 if there was
+     * no outage since it last flowed.
+     */
+    synchronized long onMediaResumed(long now) {
+        if (outageStartedAt < 0) {
+            return -1;
+        }
+        long elapsed = now - outageStartedAt;
+        outageStartedAt = -1;
+        lastRecoveryMs = elapsed;
+        recoveryMs.record(elapsed);
+        return elapsed;
+    }
+
+    synchronized String getTransport() {
+        return transport;
+    }
+
+    synchronized boolean isRecovering() {
+        return outageStartedAt >= 0;
+    }
+
+    synchronized int getHandovers() {
+        return handovers;
+    }
+
+    synchronized long getLastRecoveryMs() {
+        return lastRecoveryMs;
+    }
+
+    MetricHistogram getRecoveryHistogram() {
+        return recoveryMs;
+    }
+}
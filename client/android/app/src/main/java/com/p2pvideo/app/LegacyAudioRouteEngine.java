@@ -0,0 +1,220 @@
+package com.p2pvideo.app;
+
+import android.media.AudioManager;
+import android.util.Log;
+
+/**
+ * Route engine for API 24-30 built on setSpeakerphoneOn and Bluetooth SCO.
+ *
+ * A Bluetooth switch completes when ACTION_SCO_AUDIO_STATE_UPDATED reports
+ * the link connected, and leaving Bluetooth when it reports disconnected.
+ * While prewarmed the SCO link stays up when the route is elsewhere, so
+ * switching to Bluetooth only flips setBluetoothScoOn and completes at once.
+ */
+@SuppressWarnings("deprecation")
+public class LegacyAudioRouteEngine implements AudioRouteEngine {
+    private static final String TAG = "LegacyAudioRouteEngine";
+
+    private final AudioManager audioManager;
+
+    private volatile boolean speakerphoneOn;
+    // SCO link state from ACTION_SCO_AUDIO_STATE_UPDATED
+    private volatile boolean scoLinkUp;
+    private boolean scoConnecting = false;
+    // Communication audio forced onto SCO with setBluetoothScoOn
+    private volatile boolean scoRouted;
+    // startBluetoothSco called and not yet stopped
+    private boolean scoStarted;
+    // Keep the link up while not routed to it, for an instant switch back
+    private boolean keepWarm;
+
+    // SCO state that completes the current switch, or -1 when none is awaited
+    private int awaitedScoState = -1;
+    private Callback pendingCallback;
+
+    public LegacyAudioRouteEngine(AudioManager audioManager) {
+        this.audioManager = audioManager;
+        speakerphoneOn = audioManager.isSpeakerphoneOn();
+        scoRouted = audioManager.isBluetoothScoOn();
+        scoLinkUp = scoRouted;
+        scoStarted = scoRouted;
+    }
+
+    @Override
+    public String getName() {
+        return "legacy";
+    }
+
+    @Override
+    public boolean apply(String route, Callback callback) {
+        awaitedScoState = -1;
+
+        if ("bluetooth".equals(route)) {
+            setSpeakerphone(false);
+            if (!scoStarted) {
+                Log.d(TAG, "Starting Bluetooth SCO");
+                audioManager.startBluetoothSco();
+                scoStarted = true;
+            }
+            if (!scoRouted) {
+                audioManager.setBluetoothScoOn(true);
+                scoRouted = true;
+            }
+            if (scoLinkUp) {
+                Log.d(TAG, "Switched onto warm SCO link");
+            } else {
+                awaitedScoState = AudioManager.SCO_AUDIO_STATE_CONNECTED;
+            }
+        } else {
+            if (scoRouted) {
+                audioManager.setBluetoothScoOn(false);
+                scoRouted = false;
+            }
+            if (scoStarted && !keepWarm) {
+                Log.d(TAG, "Stopping Bluetooth SCO");
+                audioManager.stopBluetoothSco();
+                scoStarted = false;
+                if (scoLinkUp) {
+                    awaitedScoState = AudioManager.SCO_AUDIO_STATE_DISCONNECTED;
+                }
+            }
+            setSpeakerphone("speaker".equals(route));
+        }
+
+        if (awaitedScoState == -1) {
+            return true;
+        }
+        pendingCallback = callback;
+        return false;
+    }
+
+    @Override
+    public boolean isRouteInEffect(String route) {
+        switch (route) {
+            case "bluetooth":
+                return scoRouted && scoLinkUp;
+            case "speaker":
+                return speakerphoneOn && !scoRouted;
+            default:
+                return !speakerphoneOn && !scoRouted;
+        }
+    }
+
+    @Override
+    public void cancel() {
+        pendingCallback = null;
+        awaitedScoState = -1;
+    }
+
+    @Override
+    public void onScoAudioStateChanged(int scoState) {
+        boolean wasConnecting = scoConnecting;
+        if (scoState == AudioManager.SCO_AUDIO_STATE_CONNECTING) {
+            scoConnecting = true;
+        } else if (scoState == AudioManager.SCO_AUDIO_STATE_CONNECTED) {
+            scoConnecting = false;
+            scoLinkUp = true;
+            if (!scoRouted) {
+                holdCurrentRoute();
+            }
+        } else if (scoState == AudioManager.SCO_AUDIO_STATE_DISCONNECTED) {
+            // The sticky broadcast replays DISCONNECTED right after a start;
+            // only a real drop means the link has to be started again
+            if (wasConnecting || scoLinkUp) {
+                scoStarted = false;
+            }
+            scoConnecting = false;
+            scoLinkUp = false;
+        }
+
+        if (pendingCallback == null) {
+            return;
+        }
+        if (scoState == awaitedScoState) {
+            finish(true, null);
+        } else if (scoState == AudioManager.SCO_AUDIO_STATE_DISCONNECTED && wasConnecting) {
+            // The headset refused the link
+            finish(false, "Bluetooth SCO failed to connect");
+        }
+    }
+
+    /**
+     * Starts the SCO link without routing to it, so a later switch to
+     * Bluetooth only has to flip setBluetoothScoOn.
+     */
+    @Override
+    public boolean prewarm(String route) {
+        if (!"bluetooth".equals(route)) {
+            return false;
+        }
+        keepWarm = true;
+        if (!scoStarted) {
+            Log.d(TAG, "Pre-warming Bluetooth SCO");
+            audioManager.startBluetoothSco();
+            scoStarted = true;
+        }
+        return true;
+    }
+
+    @Override
+    public void releasePrewarm() {
+        keepWarm = false;
+        if (scoStarted && !scoRouted) {
+            Log.d(TAG, "Releasing warm SCO link");
+            audioManager.stopBluetoothSco();
+            scoStarted = false;
+        }
+    }
+
+    @Override
+    public boolean isRouteWarm(String route) {
+        return !"bluetooth".equals(route) || scoLinkUp;
+    }
+
+    @Override
+    public boolean isSpeakerphoneOn() {
+        return speakerphoneOn;
+    }
+
+    @Override
+    public boolean isBluetoothScoOn() {
+        return scoRouted && scoLinkUp;
+    }
+
+    @Override
+    public void release() {
+        cancel();
+        keepWarm = false;
+        if (scoStarted || scoRouted || audioManager.isBluetoothScoOn()) {
+            audioManager.stopBluetoothSco();
+            audioManager.setBluetoothScoOn(false);
+            scoStarted = false;
+            scoRouted = false;
+        }
+    }
+
+    /**
+     * Some builds move communication audio onto SCO as soon as the link is up;
+     * a warm link must not take the call away from the current route.
+     */
+    private void holdCurrentRoute() {
+        audioManager.setBluetoothScoOn(false);
+        if (speakerphoneOn) {
+            audioManager.setSpeakerphoneOn(true);
+        }
+    }
+
+    private void setSpeakerphone(boolean on) {
+        if (speakerphoneOn != on) {
+            audioManager.setSpeakerphoneOn(on);
+            speakerphoneOn = on;
+        }
+    }
+
+    private void finish(boolean success, String error) {
+        Callback callback = pendingCallback;
+        pendingCallback = null;
+        awaitedScoState = -1;
+        callback.onRouteApplied(success, error);
+    }
+}
@@ -0,0 +1,119 @@
+package com.p2pvideo.app;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Finds round-trip audio latency in a loopback recording.
+ *
+ * NativeAudioEngine plays a noise pulse at the start of each interval and
+ * records the input on the same callback timeline, so the lag at which the
+ * pulse best matches the recording is the round-trip latency in frames.
+ * Matching uses normalized cross-correlation, which tolerates the level
+ * changes and room noise of a speaker-to-mic path. Pure Java; unit tested.
+ */
+public class LoopbackLatencyAnalyzer {
+    // Normalized correlation below this is treated as "pulse not heard"
+    static final double MIN_CONFIDENCE = 0.3;
+
+    public static final class Result {
+        public final double[] latenciesMs;
+        public final double[] confidences;
+        public final int validPulses;
+        public final double medianLatencyMs;
+        public final double minLatencyMs;
+        public final double maxLatencyMs;
+
+        Result(double[] latenciesMs, double[] confidences) {
+            this.latenciesMs = latenciesMs;
+            this.confidences = confidences;
+
+            double[] valid = new double[latenciesMs.length];
+            int count = 0;
+            for (int i = 0; i < latenciesMs.length; i++) {
+                if (!Double.isNaN(latenciesMs[i])) {
+                    valid[count++] = latenciesMs[i];
+                }
+            }
+            Arrays.sort(valid, 0, count);
+            this.validPulses = count;
+            this.medianLatencyMs = count > 0 ? valid[count / 2] : Double.NaN;
+            this.minLatencyMs = count > 0 ? valid[0] : Double.NaN;
+            this.maxLatencyMs = count > 0 ? valid[count - 1] : Double.NaN;
+        }
+    }
+
+    private LoopbackLatencyAnalyzer() {
+    }
+
+    /**
+     * White-noise burst with short fades, deterministic for a given seed.
+     * Noise has a sharp autocorrelation peak, so the match is unambiguous.
+     */
+    public static float[] generatePulse(int length, long seed) {
+        Random random = new Random(seed);
+        float[] pulse = new float[length];
+        int fade = Math.max(1, length / 16);
+        for (int i = 0; i < length; i++) {
+            float gain = Math.min(1f, Math.min(i, length - 1 - i) / (float) fade);
+            pulse[i] = (random.nextFloat() * 2f - 1f) * 0.5f * gain;
+        }
+        return pulse;
+    }
+
+    /**
+     * @param recording      input frames, mono, aligned with the output timeline
+     * @param pulse          the pulse played at the start of each interval
+     * @param intervalFrames frames between pulse starts
+     * @param pulseCount     pulses played
+     * @param sampleRate     frames per second
+     */
+    public static Result analyze(float[] recording, float[] pulse, int intervalFrames, int pulseCount,
+                                 int sampleRate) {
+        double pulseEnergy = 0;
+        for (float sample : pulse) {
+            pulseEnergy += sample * sample;
+        }
+
+        double[] latencies = new double[pulseCount];
+        double[] confidences = new double[pulseCount];
+        for (int p = 0; p < pulseCount; p++) {
+            int start = p * intervalFrames;
+            int maxLag = Math.min(intervalFrames, recording.length - start) - pulse.length;
+            int bestLag = -1;
+            double best = 0;
+
+            // Running energy of the recording under the pulse at each lag
+            double windowEnergy = 0;
+            for (int i = 0; i < pulse.length && start + i < recording.length; i++) {
+                windowEnergy += recording[start + i] * recording[start + i];
+            }
+            for (int lag = 0; lag <= maxLag; lag++) {
+                int offset = start + lag;
+                if (lag > 0) {
+                    float out = recording[offset - 1];
+                    float in = recording[offset + pulse.length - 1];
+                    windowEnergy += in * in - out * out;
+                }
+                if (windowEnergy <= 1e-12) {
+                    continue;
+                }
+                double dot = 0;
+                for (int i = 0; i < pulse.length; i++) {
+                    dot += pulse[i] * recording[offset + i];
+                }
+                double score = dot / Math.sqrt(pulseEnergy * windowEnergy);
+                if (score > best) {
+                    best = score;
+                    bestLag = lag;
+                }
+            }
+
+            confidences[p] = best;
+            latencies[p] = bestLag >= 0 && best >= MIN_CONFIDENCE
+                ? bestLag * 1000.0 / sampleRate
+                : Double.NaN;
+        }
+        return new Result(latencies, confidences);
+    }
+}
@@ -0,0 +1,234 @@
+package com.p2pvideo.app;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.media.AudioManager;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginHandle;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONObject;
+
+/**
+ * Native low-latency audio path, measured on the device.
+ *
+ * Call audio itself still runs through the WebView's WebRTC stack; this
+ * plugin opens Oboe streams in low-latency mode with voice-communication
+ * usage on the output device of the route AudioRoutingPlugin selected, and
+ * reports what the device granted (buffer sizes, MMAP, xruns) along with a
+ * loopback round-trip latency per device.
+ */
+@CapacitorPlugin(name = "LowLatencyAudio")
+public class LowLatencyAudioPlugin extends Plugin {
+    private static final String TAG = "LowLatencyAudioPlugin";
+    // Each method runs for a second or more; see PluginDispatcher.dispatchLong
+    private static final String LANE = "LowLatencyAudio";
+    // Long enough for the stream to settle and the xrun count to mean something
+    private static final int PROBE_MS = 1000;
+    private static final int PULSE_MS = 10;
+    private static final long PULSE_SEED = 0x5eed;
+    // Allowance on top of the expected run time before giving up
+    private static final long RUN_SLACK_MS = 2000;
+    private static final long POLL_MS = 20;
+
+    /**
+     * Opens an output stream for about a second of silence and reports the
+     * path the device granted, next to the AudioManager hints.
+     */
+    @PluginMethod
+    public void getAudioPathInfo(PluginCall call) {
+        PluginDispatcher.get().dispatchLong(this, LANE, call, () -> {
+            AudioManager audioManager = (AudioManager) getContext().getSystemService(Context.AUDIO_SERVICE);
+            PackageManager packageManager = getContext().getPackageManager();
+
+            JSObject ret = new JSObject();
+            ret.put("lowLatencyFeature", packageManager.hasSystemFeature(PackageManager.FEATURE_AUDIO_LOW_LATENCY));
+            ret.put("proAudioFeature", packageManager.hasSystemFeature(PackageManager.FEATURE_AUDIO_PRO));
+            ret.put("propertySampleRate", parseProperty(audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE)));
+            ret.put("propertyFramesPerBuffer",
+                parseProperty(audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_FRAMES_PER_BUFFER)));
+            ret.put("nativeAvailable", NativeAudioEngine.isAvailable());
+            putRoute(ret);
+            if (!NativeAudioEngine.isAvailable()) {
+                return ret;
+            }
+
+            try (NativeAudioEngine engine = new NativeAudioEngine()) {
+                openOrThrow(engine, getRouteOutputDeviceId(), false);
+                long[] stats = engine.getStats();
+                int sampleRate = (int) stats[NativeAudioEngine.STAT_SAMPLE_RATE];
+                run(engine, null, sampleRate * PROBE_MS / 1000, 1);
+                putStats(ret, engine.getStats());
+            }
+            return ret;
+        });
+    }
+
+    /**
+     * Plays a noise pulse every intervalMs and finds it again in the
+     * microphone input. Audible, so not for use mid-call; hold the phone away
+     * from soft surfaces, or use a loopback dongle for the wired route.
+     */
+    @PluginMethod
+    public void measureLoopbackLatency(PluginCall call) {
+        int pulses = call.getInt("pulses", 8);
+        int intervalMs = call.getInt("intervalMs", 500);
+        if (pulses < 1 || pulses > 32) {
+            call.reject("pulses must be between 1 and 32");
+            return;
+        }
+        if (intervalMs < 200 || intervalMs > 2000) {
+            call.reject("intervalMs must be between 200 and 2000");
+            return;
+        }
+        if (getContext().checkSelfPermission(Manifest.permission.RECORD_AUDIO) != PackageManager.PERMISSION_GRANTED) {
+            call.reject("Microphone permission not granted");
+            return;
+        }
+
+        PluginDispatcher.get().dispatchLong(this, LANE, call, () -> {
+            if (!NativeAudioEngine.isAvailable()) {
+                throw new IllegalStateException("Native audio library unavailable");
+            }
+
+            JSObject ret = new JSObject();
+            ret.put("device", Build.MANUFACTURER + " " + Build.MODEL);
+            ret.put("sdkInt", Build.VERSION.SDK_INT);
+            putRoute(ret);
+
+            try (NativeAudioEngine engine = new NativeAudioEngine()) {
+                openOrThrow(engine, getRouteOutputDeviceId(), true);
+                int sampleRate = (int) engine.getStats()[NativeAudioEngine.STAT_SAMPLE_RATE];
+                int intervalFrames = sampleRate * intervalMs / 1000;
+                float[] pulse = LoopbackLatencyAnalyzer.generatePulse(sampleRate * PULSE_MS / 1000, PULSE_SEED);
+
+                run(engine, pulse, intervalFrames, pulses);
+                long[] stats = engine.getStats();
+                engine.stop();
+
+                LoopbackLatencyAnalyzer.Result result = LoopbackLatencyAnalyzer.analyze(
+                    engine.getRecording(intervalFrames * pulses), pulse, intervalFrames, pulses, sampleRate);
+                Log.d(TAG, "Loopback latency " + result.medianLatencyMs + "ms from "
+                    + result.validPulses + "/" + pulses + " pulses");
+
+                ret.put("latencyMs", toJson(result.medianLatencyMs));
+                ret.put("minLatencyMs", toJson(result.minLatencyMs));
+                ret.put("maxLatencyMs", toJson(result.maxLatencyMs));
+                ret.put("validPulses", result.validPulses);
+                ret.put("pulses", pulses);
+                JSArray latencies = new JSArray();
+                JSArray confidences = new JSArray();
+                for (int i = 0; i < pulses; i++) {
+                    latencies.put(toJson(result.latenciesMs[i]));
+                    confidences.put(result.confidences[i]);
+                }
+                ret.put("latenciesMs", latencies);
+                ret.put("confidences", confidences);
+                putStats(ret, stats);
+            }
+            return ret;
+        });
+    }
+
+    private static void openOrThrow(NativeAudioEngine engine, int deviceId, boolean withInput) {
+        int result = engine.open(deviceId, withInput);
+        if (result != 0) {
+            throw new IllegalStateException("Audio stream open failed (" + result + ")");
+        }
+    }
+
+    /**
+     * Starts the engine and blocks this lane until the run completes.
+     */
+    private static void run(NativeAudioEngine engine, float[] pulse, int intervalFrames, int count)
+        throws InterruptedException {
+        int result = engine.start(pulse, intervalFrames, count);
+        if (result != 0) {
+            throw new IllegalStateException("Audio stream start failed (" + result + ")");
+        }
+
+        long sampleRate = engine.getStats()[NativeAudioEngine.STAT_SAMPLE_RATE];
+        long deadline = SystemClock.elapsedRealtime()
+            + (long) intervalFrames * count * 1000 / Math.max(1, sampleRate) + RUN_SLACK_MS;
+        while (!engine.isDone()) {
+            if (SystemClock.elapsedRealtime() > deadline) {
+                throw new IllegalStateException("Audio stream stalled");
+            }
+            Thread.sleep(POLL_MS);
+        }
+        if (engine.isDisconnected()) {
+            throw new IllegalStateException("Audio stream disconnected, likely by a route change");
+        }
+    }
+
+    private AudioRoutingPlugin getAudioRouting() {
+        PluginHandle handle = getBridge().getPlugin("AudioRouting");
+        if (handle != null && handle.getInstance() instanceof AudioRoutingPlugin) {
+            return (AudioRoutingPlugin) handle.getInstance();
+        }
+        return null;
+    }
+
+    private int getRouteOutputDeviceId() {
+        AudioRoutingPlugin audioRouting = getAudioRouting();
+        return audioRouting != null ? audioRouting.getRouteOutputDeviceId() : 0;
+    }
+
+    private void putRoute(JSObject ret) {
+        AudioRoutingPlugin audioRouting = getAudioRouting();
+        ret.put("route", audioRouting != null ? audioRouting.getCurrentRoute() : AudioRouteController.ROUTE_NONE);
+        ret.put("requestedDeviceId", getRouteOutputDeviceId());
+    }
+
+    private static void putStats(JSObject ret, long[] stats) {
+        ret.put("output", streamStats(stats, 0));
+        ret.put("input", stats[NativeAudioEngine.INPUT_STATS + NativeAudioEngine.STAT_SAMPLE_RATE] > 0
+            ? streamStats(stats, NativeAudioEngine.INPUT_STATS)
+            : JSONObject.NULL);
+        ret.put("callbacks", stats[NativeAudioEngine.STAT_CALLBACKS]);
+        ret.put("inputUnderflows", stats[NativeAudioEngine.STAT_INPUT_UNDERFLOWS]);
+    }
+
+    private static JSObject streamStats(long[] stats, int offset) {
+        JSObject stream = new JSObject();
+        long sampleRate = stats[offset + NativeAudioEngine.STAT_SAMPLE_RATE];
+        long bufferSize = stats[offset + NativeAudioEngine.STAT_BUFFER_SIZE];
+        long latencyMicros = stats[offset + NativeAudioEngine.STAT_LATENCY_MICROS];
+        stream.put("sampleRate", sampleRate);
+        stream.put("framesPerBurst", stats[offset + NativeAudioEngine.STAT_FRAMES_PER_BURST]);
+        stream.put("bufferSizeFrames", bufferSize);
+        stream.put("bufferCapacityFrames", stats[offset + NativeAudioEngine.STAT_BUFFER_CAPACITY]);
+        stream.put("bufferMs", sampleRate > 0 ? bufferSize * 1000.0 / sampleRate : 0);
+        stream.put("performanceMode",
+            NativeAudioEngine.performanceModeName(stats[offset + NativeAudioEngine.STAT_PERFORMANCE_MODE]));
+        stream.put("sharingMode",
+            NativeAudioEngine.sharingModeName(stats[offset + NativeAudioEngine.STAT_SHARING_MODE]));
+        stream.put("audioApi", NativeAudioEngine.audioApiName(stats[offset + NativeAudioEngine.STAT_AUDIO_API]));
+        stream.put("mmap", stats[offset + NativeAudioEngine.STAT_MMAP] == 1);
+        stream.put("deviceId", stats[offset + NativeAudioEngine.STAT_DEVICE_ID]);
+        stream.put("xruns", stats[offset + NativeAudioEngine.STAT_XRUNS]);
+        stream.put("reportedLatencyMs", latencyMicros >= 0 ? (Object) (latencyMicros / 1000.0) : JSONObject.NULL);
+        return stream;
+    }
+
+    private static Object parseProperty(String value) {
+        try {
+            return value != null ? (Object) Integer.parseInt(value) : JSONObject.NULL;
+        } catch (NumberFormatException e) {
+            return JSONObject.NULL;
+        }
+    }
+
+    private static Object toJson(double value) {
+        return Double.isNaN(value) ? JSONObject.NULL : (Object) value;
+    }
+}
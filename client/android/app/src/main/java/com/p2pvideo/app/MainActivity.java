@@ -2,6 +2,7 @@ package com.p2pvideo.app;
 
 import android.os.Bundle;
 import android.view.WindowManager;
+import android.webkit.WebView;
 import android.app.PictureInPictureParams;
 import android.app.RemoteAction;
 import android.app.PendingIntent;
@@ -14,11 +15,19 @@ import android.util.Rational;
 import android.os.Build;
 import android.graphics.drawable.Icon;
 import com.getcapacitor.BridgeActivity;
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginHandle;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
+import com.getcapacitor.WebViewListener;
 import com.getcapacitor.annotation.CapacitorPlugin;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.json.JSONObject;
 
 public class MainActivity extends BridgeActivity {
     
@@ -30,24 +39,67 @@ public class MainActivity extends BridgeActivity {
     private BroadcastReceiver pipReceiver;
     private BroadcastReceiver callEndedReceiver;
     private boolean isInPipMode = false;
-    private boolean isCallActive = false;
+    private final PipPerformanceProfile pipProfile = new PipPerformanceProfile();
+    // PiP params are built once and only rebuilt when an input changes: the
+    // video shape, the mute state or auto-enter. UI thread only.
+    private PipAspectRatio pipAspectRatio = PipAspectRatio.fromVideoSize(9, 16);
+    private ArrayList<RemoteAction> pipActions;
+    private ArrayList<RemoteAction> pipActionsMuted;
+    private PictureInPictureParams pipParams;
+    private boolean pipAutoEnter = false;
+    // Only a mute change alters the PiP actions
+    private final CallSession.Listener sessionListener = (previous, current) -> {
+        if (previous.audioMuted != current.audioMuted) {
+            runOnUiThread(this::invalidatePipParams);
+        }
+    };
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTrace.mark("activityCreate");
+        StartupTrace.begin("MainActivity.onCreate");
+        
+        // Must be registered before BridgeActivity.onCreate builds the bridge
+        registerPlugin(PipPlugin.class);
+        registerPlugin(CallServicePlugin.class);
+        registerPlugin(ScreenCapturePlugin.class);
+        registerPlugin(AudioRoutingPlugin.class);
+        registerPlugin(LowLatencyAudioPlugin.class);
+        registerPlugin(NativeEventBusPlugin.class);
+        registerPlugin(SignalingPlugin.class);
+        registerPlugin(CryptoPlugin.class);
+        registerPlugin(CameraCapturePlugin.class);
+        registerPlugin(StartupPlugin.class);
+        
+        StartupTrace.begin("BridgeActivity.onCreate");
         super.onCreate(savedInstanceState);
+        StartupTrace.end();
         
         getWindow().setFlags(
             WindowManager.LayoutParams.FLAG_SECURE,
             WindowManager.LayoutParams.FLAG_SECURE
         );
         
-        registerPlugin(PipPlugin.class);
-        registerPlugin(CallServicePlugin.class);
-        registerPlugin(ScreenCapturePlugin.class);
-        registerPlugin(AudioRoutingPlugin.class);
+        // The PiP and call-ended receivers are registered when first needed
+        getBridge().addWebViewListener(new WebViewListener() {
+            @Override
+            public void onPageLoaded(WebView webView) {
+                StartupTrace.mark("pageLoaded");
+            }
+        });
         
-        setupPipReceiver();
-        setupCallEndedReceiver();
+        StartupTrace.end();
+        StartupTrace.mark("activityCreated");
+    }
+    
+    /**
+     * The page is ready to join a call: local media is up and the signaling
+     * server has given us an id. Reported as fully drawn.
+     */
+    void onJoinReady() {
+        if (StartupTrace.markJoinReady()) {
+            reportFullyDrawn();
+        }
     }
     
     @Override
@@ -59,15 +111,41 @@ public class MainActivity extends BridgeActivity {
     @Override
     public void onUserLeaveHint() {
         super.onUserLeaveHint();
-        enterPipMode();
+        // With auto-enter armed the system has already started the transition
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S || !pipAutoEnter) {
+            enterPipMode();
+        }
     }
     
     @Override
     public void onPictureInPictureModeChanged(boolean isInPictureInPictureMode, Configuration newConfig) {
         super.onPictureInPictureModeChanged(isInPictureInPictureMode, newConfig);
         isInPipMode = isInPictureInPictureMode;
-        getBridge().triggerWindowJSEvent("pipModeChanged", 
-            "{\"isInPipMode\":" + isInPictureInPictureMode + "}");
+        getBridge().triggerWindowJSEvent("pipModeChanged", WindowEvents.pipModeChanged(isInPictureInPictureMode));
+        applyPipProfile(isInPictureInPictureMode);
+    }
+    
+    public PipPerformanceProfile getPipProfile() {
+        return pipProfile;
+    }
+    
+    /**
+     * Scales the call down while the window is a thumbnail and back up on
+     * exit. The web layer acks through PipPlugin.pipProfileApplied.
+     */
+    private void applyPipProfile(boolean inPip) {
+        JSObject profile = pipProfile.begin(inPip);
+        int transitionId = profile.getInteger("transitionId");
+        getBridge().triggerWindowJSEvent("pipProfileChanged", profile.toString());
+        
+        Runnable onNativeApplied = () -> pipProfile.onNativeApplied(transitionId);
+        PluginHandle handle = getBridge().getPlugin("ScreenCapture");
+        if (handle != null && handle.getInstance() instanceof ScreenCapturePlugin) {
+            ((ScreenCapturePlugin) handle.getInstance()).setQualityCap("pip",
+                inPip ? PipPerformanceProfile.PIP_SCREEN_CAPTURE_LEVEL : 0, onNativeApplied);
+        } else {
+            onNativeApplied.run();
+        }
     }
     
     private void setupPipReceiver() {
@@ -77,11 +155,11 @@ public class MainActivity extends BridgeActivity {
                 if (intent != null) {
                     String action = intent.getAction();
                     if (ACTION_MUTE.equals(action)) {
-                        getBridge().triggerWindowJSEvent("pipAction", "{\"action\":\"mute\"}");
+                        getBridge().triggerWindowJSEvent("pipAction", WindowEvents.pipAction("mute"));
                     } else if (ACTION_HANGUP.equals(action)) {
-                        getBridge().triggerWindowJSEvent("pipAction", "{\"action\":\"hangup\"}");
+                        getBridge().triggerWindowJSEvent("pipAction", WindowEvents.pipAction("hangup"));
                     } else if (ACTION_CAMERA.equals(action)) {
-                        getBridge().triggerWindowJSEvent("pipAction", "{\"action\":\"camera\"}");
+                        getBridge().triggerWindowJSEvent("pipAction", WindowEvents.pipAction("camera"));
                     } else if (ACTION_EXPAND.equals(action)) {
                         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && isInPictureInPictureMode()) {
                             Intent expandIntent = new Intent(context, MainActivity.class);
@@ -112,47 +190,112 @@ public class MainActivity extends BridgeActivity {
     
     public void enterPipMode() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            Rational aspectRatio = new Rational(9, 16);
-            ArrayList<RemoteAction> actions = new ArrayList<>();
-            
-            Intent muteIntent = new Intent(ACTION_MUTE);
-            PendingIntent mutePending = PendingIntent.getBroadcast(this, 0, muteIntent, 
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-            Icon muteIcon = Icon.createWithResource(this, android.R.drawable.ic_btn_speak_now);
-            RemoteAction muteAction = new RemoteAction(muteIcon, "Mute", "Mute/Unmute", mutePending);
-            actions.add(muteAction);
-            
-            Intent cameraIntent = new Intent(ACTION_CAMERA);
-            PendingIntent cameraPending = PendingIntent.getBroadcast(this, 1, cameraIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-            Icon cameraIcon = Icon.createWithResource(this, android.R.drawable.ic_menu_camera);
-            RemoteAction cameraAction = new RemoteAction(cameraIcon, "Camera", "Switch Camera", cameraPending);
-            actions.add(cameraAction);
-            
-            Intent expandIntent = new Intent(ACTION_EXPAND);
-            PendingIntent expandPending = PendingIntent.getBroadcast(this, 2, expandIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-            Icon expandIcon = Icon.createWithResource(this, android.R.drawable.ic_menu_zoom);
-            RemoteAction expandAction = new RemoteAction(expandIcon, "Expand", "Full Screen", expandPending);
-            actions.add(expandAction);
-            
-            Intent hangupIntent = new Intent(ACTION_HANGUP);
-            PendingIntent hangupPending = PendingIntent.getBroadcast(this, 3, hangupIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-            Icon hangupIcon = Icon.createWithResource(this, android.R.drawable.ic_delete);
-            RemoteAction hangupAction = new RemoteAction(hangupIcon, "Hang Up", "End Call", hangupPending);
-            actions.add(hangupAction);
-            
-            PictureInPictureParams params = new PictureInPictureParams.Builder()
-                    .setAspectRatio(aspectRatio)
-                    .setActions(actions)
-                    .build();
-            enterPictureInPictureMode(params);
+            if (pipParams == null) {
+                pipParams = buildPipParams();
+            }
+            enterPictureInPictureMode(pipParams);
         } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
             enterPictureInPictureMode();
         }
     }
     
+    /**
+     * Shapes the PiP window after the remote video. Sizes within a couple of
+     * percent of the current shape are ignored. Returns the ratio in use.
+     */
+    public PipAspectRatio setPipVideoSize(int width, int height) {
+        PipAspectRatio ratio = PipAspectRatio.fromVideoSize(width, height);
+        if (ratio == null || ratio.isCloseTo(pipAspectRatio)) {
+            return pipAspectRatio;
+        }
+        pipAspectRatio = ratio;
+        invalidatePipParams();
+        return ratio;
+    }
+    
+    /**
+     * Auto-enter is armed for the length of a call, so leaving the app goes
+     * straight into PiP without waiting for onUserLeaveHint.
+     */
+    private void setPipAutoEnter(boolean enabled) {
+        if (pipAutoEnter == enabled) {
+            return;
+        }
+        pipAutoEnter = enabled;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            invalidatePipParams();
+        }
+    }
+    
+    /**
+     * Rebuilds the params around the cached actions. The system only needs
+     * them now if the window is already in PiP or may auto-enter (API 31+);
+     * otherwise enterPipMode builds them on demand.
+     */
+    private void invalidatePipParams() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O || isDestroyed()) {
+            return;
+        }
+        pipParams = null;
+        if (isInPipMode || Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            pipParams = buildPipParams();
+            setPictureInPictureParams(pipParams);
+        }
+    }
+    
+    private PictureInPictureParams buildPipParams() {
+        if (pipActions == null) {
+            createPipActions();
+        }
+        PictureInPictureParams.Builder builder = new PictureInPictureParams.Builder()
+                .setAspectRatio(new Rational(pipAspectRatio.width, pipAspectRatio.height))
+                .setActions(isLocalAudioMuted() ? pipActionsMuted : pipActions);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            builder.setAutoEnterEnabled(pipAutoEnter)
+                    .setSeamlessResizeEnabled(true);
+        }
+        return builder.build();
+    }
+    
+    /**
+     * Builds the PiP actions once. Both mute states are kept so a mute change
+     * only swaps the list.
+     */
+    private void createPipActions() {
+        if (pipReceiver == null) {
+            setupPipReceiver();
+        }
+        PendingIntent mutePending = PendingIntent.getBroadcast(this, 0, new Intent(ACTION_MUTE),
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        RemoteAction muteAction = new RemoteAction(
+            Icon.createWithResource(this, android.R.drawable.ic_btn_speak_now), "Mute", "Mute/Unmute", mutePending);
+        RemoteAction unmuteAction = new RemoteAction(
+            Icon.createWithResource(this, android.R.drawable.ic_lock_silent_mode), "Unmute", "Mute/Unmute", mutePending);
+        
+        PendingIntent cameraPending = PendingIntent.getBroadcast(this, 1, new Intent(ACTION_CAMERA),
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        RemoteAction cameraAction = new RemoteAction(
+            Icon.createWithResource(this, android.R.drawable.ic_menu_camera), "Camera", "Switch Camera", cameraPending);
+        
+        PendingIntent expandPending = PendingIntent.getBroadcast(this, 2, new Intent(ACTION_EXPAND),
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        RemoteAction expandAction = new RemoteAction(
+            Icon.createWithResource(this, android.R.drawable.ic_menu_zoom), "Expand", "Full Screen", expandPending);
+        
+        PendingIntent hangupPending = PendingIntent.getBroadcast(this, 3, new Intent(ACTION_HANGUP),
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        RemoteAction hangupAction = new RemoteAction(
+            Icon.createWithResource(this, android.R.drawable.ic_delete), "Hang Up", "End Call", hangupPending);
+        
+        pipActions = new ArrayList<>(Arrays.asList(muteAction, cameraAction, expandAction, hangupAction));
+        pipActionsMuted = new ArrayList<>(Arrays.asList(unmuteAction, cameraAction, expandAction, hangupAction));
+    }
+    
+    private boolean isLocalAudioMuted() {
+        CallSession session = CallSession.getActive();
+        return session != null && session.snapshot().audioMuted;
+    }
+    
     @Override
     public void onDestroy() {
         super.onDestroy();
@@ -169,8 +312,13 @@ public class MainActivity extends BridgeActivity {
         callEndedReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                isCallActive = false;
-                getBridge().triggerWindowJSEvent("callServiceEnded", "{}");
+                // Ended from the notification, or by stopCallService
+                if (CallSession.getActive() == null) {
+                    setAudioCallActive(false);
+                    setPipAutoEnter(false);
+                }
+                String duration = intent.getStringExtra("duration");
+                getBridge().triggerWindowJSEvent("callServiceEnded", WindowEvents.callServiceEnded(duration));
             }
         };
         
@@ -183,34 +331,91 @@ public class MainActivity extends BridgeActivity {
         }
     }
     
-    public void startCallService() {
-        if (!isCallActive) {
+    public synchronized void startCallService() {
+        if (callEndedReceiver == null) {
+            setupCallEndedReceiver();
+        }
+        if (CallSession.getActive() == null) {
+            // Begun before the service starts so early participant updates land
+            CallSession.begin().addListener(sessionListener);
             Intent serviceIntent = new Intent(this, CallService.class);
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
                 startForegroundService(serviceIntent);
             } else {
                 startService(serviceIntent);
             }
-            isCallActive = true;
+            setAudioCallActive(true);
+            runOnUiThread(() -> setPipAutoEnter(true));
         }
     }
     
-    public void stopCallService() {
-        if (isCallActive) {
+    public synchronized void stopCallService() {
+        if (CallSession.endActive() != null) {
             Intent serviceIntent = new Intent(this, CallService.class);
             stopService(serviceIntent);
-            isCallActive = false;
+            setAudioCallActive(false);
+            runOnUiThread(() -> setPipAutoEnter(false));
+        }
+    }
+
+    private void setAudioCallActive(boolean active) {
+        PluginHandle handle = getBridge() != null ? getBridge().getPlugin("AudioRouting") : null;
+        if (handle != null && handle.getInstance() instanceof AudioRoutingPlugin) {
+            ((AudioRoutingPlugin) handle.getInstance()).setCallActive(active);
         }
     }
 }
 
+@CapacitorPlugin(name = "Startup")
+class StartupPlugin extends Plugin {
+    /**
+     * Called by the page once it can join a call; ends the cold-start trace.
+     */
+    @PluginMethod
+    public void markJoinReady(PluginCall call) {
+        MainActivity activity = (MainActivity) getActivity();
+        activity.runOnUiThread(() -> {
+            activity.onJoinReady();
+            call.resolve();
+        });
+    }
+    
+    /**
+     * Cold-start milestones in milliseconds since process start.
+     */
+    @PluginMethod
+    public void getStartupMetrics(PluginCall call) {
+        call.resolve(StartupTrace.getMilestones());
+    }
+}
+
 @CapacitorPlugin(name = "PipPlugin")
 class PipPlugin extends Plugin {
     @PluginMethod
     public void enterPipMode(PluginCall call) {
         MainActivity activity = (MainActivity) getActivity();
-        activity.enterPipMode();
-        call.resolve();
+        activity.runOnUiThread(() -> {
+            activity.enterPipMode();
+            call.resolve();
+        });
+    }
+    
+    /**
+     * Reports the remote video's size so the PiP window can match its shape.
+     */
+    @PluginMethod
+    public void setVideoSize(PluginCall call) {
+        Integer width = call.getInt("width");
+        Integer height = call.getInt("height");
+        if (width == null || height == null || width <= 0 || height <= 0) {
+            call.reject("width and height must be positive");
+            return;
+        }
+        MainActivity activity = (MainActivity) getActivity();
+        activity.runOnUiThread(() -> {
+            PipAspectRatio ratio = activity.setPipVideoSize(width, height);
+            call.resolve(new JSObject().put("aspectRatio", ratio.toString()));
+        });
     }
     
     @PluginMethod
@@ -218,21 +423,404 @@ class PipPlugin extends Plugin {
         boolean supported = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
         call.resolve(new com.getcapacitor.JSObject().put("supported", supported));
     }
+    
+    /**
+     * Called by the web layer once it has applied a pipProfileChanged event.
+     */
+    @PluginMethod
+    public void pipProfileApplied(PluginCall call) {
+        Integer transitionId = call.getInt("transitionId");
+        if (transitionId == null) {
+            call.reject("transitionId is required");
+            return;
+        }
+        MainActivity activity = (MainActivity) getActivity();
+        boolean current = activity.getPipProfile().onWebApplied(transitionId);
+        call.resolve(new JSObject().put("current", current));
+    }
+    
+    @PluginMethod
+    public void getPipMetrics(PluginCall call) {
+        MainActivity activity = (MainActivity) getActivity();
+        call.resolve(activity.getPipProfile().getMetrics());
+    }
 }
 
 @CapacitorPlugin(name = "CallServicePlugin")
 class CallServicePlugin extends Plugin {
+    private static final String LANE = "CallService";
+    
+    // Per-sample metric updates stay native; JS hears about visible changes
+    private final CallSession.Listener sessionListener = (previous, current) -> {
+        if (previous.summaryVersion != current.summaryVersion) {
+            notifyListeners("callSessionChanged", toJSObject(current));
+        }
+    };
+    
+    @Override
+    public void load() {
+        super.load();
+        ThermalQualityController.setListener(ceiling -> {
+            notifyListeners("qualityCeilingChanged", ceiling);
+            PluginHandle handle = getBridge().getPlugin("ScreenCapture");
+            if (handle != null && handle.getInstance() instanceof ScreenCapturePlugin) {
+                ((ScreenCapturePlugin) handle.getInstance()).setQualityCap("thermal",
+                    ceiling.getInteger("screenCaptureLevel", 0), null);
+            }
+        });
+        NetworkHandoverMonitor.setListener(new NetworkHandoverMonitor.Listener() {
+            @Override
+            public void onHandover(JSObject event) {
+                notifyListeners("networkHandover", event);
+            }
+            
+            @Override
+            public void onLinkChanged(JSObject link) {
+                notifyListeners("networkLinkChanged", link);
+            }
+        });
+    }
+    
+    @Override
+    protected void handleOnDestroy() {
+        super.handleOnDestroy();
+        ThermalQualityController.setListener(null);
+        NetworkHandoverMonitor.setListener(null);
+        CallSession session = CallSession.getActive();
+        if (session != null) {
+            session.removeListener(sessionListener);
+        }
+    }
+    
     @PluginMethod
     public void startCall(PluginCall call) {
         MainActivity activity = (MainActivity) getActivity();
-        activity.startCallService();
-        call.resolve();
+        PluginDispatcher.get().dispatch(this, LANE, call, () -> {
+            activity.startCallService();
+            CallSession session = CallSession.getActive();
+            if (session != null) {
+                session.addListener(sessionListener);
+            }
+            return null;
+        });
     }
     
     @PluginMethod
     public void endCall(PluginCall call) {
         MainActivity activity = (MainActivity) getActivity();
-        activity.stopCallService();
+        PluginDispatcher.get().dispatch(this, LANE, call, () -> {
+            activity.stopCallService();
+            return null;
+        });
+    }
+    
+    /**
+     * Adds a remote participant to the call in progress, or renames one
+     * already in it. Up to CallSession.MAX_PARTICIPANTS.
+     */
+    @PluginMethod
+    public void participantJoined(PluginCall call) {
+        String participantId = call.getString("participantId");
+        if (participantId == null || participantId.isEmpty()) {
+            call.reject("participantId is required");
+            return;
+        }
+        CallSession session = CallSession.getActive();
+        if (session == null) {
+            call.reject("No call in progress");
+            return;
+        }
+        if (!session.join(participantId, call.getString("displayName"), System.currentTimeMillis())) {
+            call.reject(session.isEnded() ? "No call in progress" : "Call is full");
+            return;
+        }
+        call.resolve(toJSObject(session.snapshot()));
+    }
+    
+    @PluginMethod
+    public void participantLeft(PluginCall call) {
+        String participantId = call.getString("participantId");
+        if (participantId == null || participantId.isEmpty()) {
+            call.reject("participantId is required");
+            return;
+        }
+        CallSession session = CallSession.getActive();
+        if (session == null) {
+            call.reject("No call in progress");
+            return;
+        }
+        JSObject ret = toJSObject(session.snapshot());
+        ret.put("removed", session.leave(participantId));
+        call.resolve(ret);
+    }
+    
+    /**
+     * Local microphone state, shown on the PiP mute action.
+     */
+    @PluginMethod
+    public void setLocalMuted(PluginCall call) {
+        Boolean audioMuted = call.getBoolean("audioMuted");
+        if (audioMuted == null) {
+            call.reject("audioMuted is required");
+            return;
+        }
+        CallSession session = CallSession.getActive();
+        if (session == null) {
+            call.reject("No call in progress");
+            return;
+        }
+        session.setAudioMuted(audioMuted);
+        call.resolve();
+    }
+    
+    @PluginMethod
+    public void getCallSession(PluginCall call) {
+        CallSession session = CallSession.getActive();
+        if (session == null) {
+            call.resolve(new JSObject().put("active", false));
+            return;
+        }
+        call.resolve(toJSObject(session.snapshot()));
+    }
+    
+    @PluginMethod
+    public void getPluginMetrics(PluginCall call) {
+        call.resolve(PluginDispatcher.get().getMetrics());
+    }
+    
+    /**
+     * Current quality ceiling from thermal and battery state, plus the recent
+     * decisions. Changes arrive as qualityCeilingChanged events.
+     */
+    @PluginMethod
+    public void getQualityCeiling(PluginCall call) {
+        ThermalQualityController controller = ThermalQualityController.getActive();
+        if (controller == null) {
+            call.resolve(new JSObject().put("active", false));
+            return;
+        }
+        JSObject ret = controller.getCeiling();
+        ret.put("active", true);
+        ret.put("decisions", controller.getDecisions());
+        call.resolve(ret);
+    }
+    
+    /**
+     * Default network, link capabilities and handover recovery times of the
+     * running call. Changes arrive as networkHandover and networkLinkChanged
+     * events.
+     */
+    @PluginMethod
+    public void getNetworkStatus(PluginCall call) {
+        NetworkHandoverMonitor monitor = NetworkHandoverMonitor.getActive();
+        if (monitor == null) {
+            call.resolve(new JSObject().put("active", false));
+            return;
+        }
+        JSObject ret = monitor.getStatus();
+        ret.put("active", true);
+        call.resolve(ret);
+    }
+    
+    /**
+     * Remote media is flowing again after a networkHandover; ends the
+     * outage timing.
+     */
+    @PluginMethod
+    public void networkMediaResumed(PluginCall call) {
+        NetworkHandoverMonitor monitor = NetworkHandoverMonitor.getActive();
+        if (monitor != null) {
+            monitor.onMediaResumed();
+        }
         call.resolve();
     }
+    
+    /**
+     * Feeds one stats sample from RTCPeerConnection.getStats() into the
+     * running call's telemetry. Any metric may be omitted. With a
+     * participantId the sample also updates that participant's quality.
+     */
+    @PluginMethod
+    public void pushStatsSample(PluginCall call) {
+        CallTelemetry telemetry = CallService.getActiveTelemetry();
+        if (telemetry == null) {
+            call.reject("No call in progress");
+            return;
+        }
+        telemetry.record(
+            getMetric(call, "rttMs"),
+            getMetric(call, "jitterMs"),
+            getMetric(call, "packetLossPct"),
+            getMetric(call, "bitrateKbps"),
+            getMetric(call, "decodeFps"),
+            getAudioRoute()
+        );
+        JSObject ret = new JSObject();
+        ret.put("quality", CallTelemetry.qualityName(telemetry.getQualityLevel()));
+        String participantId = call.getString("participantId");
+        CallSession session = CallSession.getActive();
+        if (participantId != null && session != null) {
+            CallSession.Participant participant = session.recordStats(participantId,
+                getMetric(call, "rttMs"), getMetric(call, "jitterMs"), getMetric(call, "packetLossPct"));
+            if (participant != null) {
+                ret.put("participantQuality", CallTelemetry.qualityName(participant.quality));
+            }
+        }
+        call.resolve(ret);
+    }
+    
+    /**
+     * Summary of the call in progress (if any) and of recent finished calls.
+     */
+    @PluginMethod
+    public void getCallTelemetry(PluginCall call) {
+        JSObject ret = new JSObject();
+        CallTelemetry telemetry = CallService.getActiveTelemetry();
+        if (telemetry != null) {
+            ret.put("current", telemetry.getSummary());
+        }
+        ret.put("recent", CallTelemetry.getRecentSummaries());
+        call.resolve(ret);
+    }
+    
+    /**
+     * Per-second samples from the on-device metrics store as parallel arrays,
+     * ready for charting. Filters: callId (0 = all), from/to (epoch ms), limit.
+     */
+    @PluginMethod
+    public void getStoredMetrics(PluginCall call) {
+        long callId = call.getLong("callId", 0L);
+        long from = call.getLong("from", 0L);
+        long to = call.getLong("to", Long.MAX_VALUE);
+        int limit = call.getInt("limit", 3600);
+        Context context = getContext();
+        PluginDispatcher.get().dispatch(this, LANE, call, () -> {
+            JSArray timestamp = new JSArray();
+            JSArray callIds = new JSArray();
+            JSArray bitrate = new JSArray();
+            JSArray loss = new JSArray();
+            JSArray rtt = new JSArray();
+            JSArray jitter = new JSArray();
+            JSArray cpu = new JSArray();
+            JSArray thermal = new JSArray();
+            JSArray batteryLevel = new JSArray();
+            JSArray batteryCurrent = new JSArray();
+            JSArray decodeFps = new JSArray();
+            JSArray route = new JSArray();
+            int[] count = {0};
+            CallMetricsRecorder.getStore(context).read(callId, from, to, sample -> {
+                timestamp.put(sample.timestamp);
+                callIds.put(sample.callId);
+                bitrate.put(toJson(sample.bitrateKbps));
+                loss.put(toJson(sample.packetLossPct));
+                rtt.put(toJson(sample.rttMs));
+                jitter.put(toJson(sample.jitterMs));
+                cpu.put(toJson(sample.cpuPct));
+                thermal.put(sample.thermalStatus);
+                batteryLevel.put(toJson(sample.batteryLevelPct));
+                batteryCurrent.put(toJson(sample.batteryCurrentMa));
+                decodeFps.put(toJson(sample.decodeFps));
+                route.put(CallMetricsStore.routeName(sample.audioRoute));
+                return ++count[0] < limit;
+            });
+            
+            JSObject ret = new JSObject();
+            ret.put("count", count[0]);
+            ret.put("timestamp", timestamp);
+            ret.put("callId", callIds);
+            ret.put("bitrateKbps", bitrate);
+            ret.put("packetLossPct", loss);
+            ret.put("rttMs", rtt);
+            ret.put("jitterMs", jitter);
+            ret.put("cpuPct", cpu);
+            ret.put("thermalStatus", thermal);
+            ret.put("batteryLevelPct", batteryLevel);
+            ret.put("batteryCurrentMa", batteryCurrent);
+            ret.put("decodeFps", decodeFps);
+            ret.put("audioRoute", route);
+            return ret;
+        });
+    }
+    
+    /**
+     * Calls present in the metrics store with their first/last sample time.
+     */
+    @PluginMethod
+    public void getStoredCalls(PluginCall call) {
+        Context context = getContext();
+        PluginDispatcher.get().dispatch(this, LANE, call, () -> {
+            Map<Long, long[]> calls = new LinkedHashMap<>();
+            CallMetricsStore store = CallMetricsRecorder.getStore(context);
+            store.read(0, 0, Long.MAX_VALUE, sample -> {
+                long[] range = calls.get(sample.callId);
+                if (range == null) {
+                    calls.put(sample.callId, new long[] {sample.timestamp, sample.timestamp, 1});
+                } else {
+                    range[1] = sample.timestamp;
+                    range[2]++;
+                }
+                return true;
+            });
+            
+            JSArray list = new JSArray();
+            for (Map.Entry<Long, long[]> entry : calls.entrySet()) {
+                JSObject item = new JSObject();
+                item.put("callId", entry.getKey());
+                item.put("firstSample", entry.getValue()[0]);
+                item.put("lastSample", entry.getValue()[1]);
+                item.put("samples", entry.getValue()[2]);
+                list.put(item);
+            }
+            JSObject ret = new JSObject();
+            ret.put("calls", list);
+            ret.put("sizeBytes", store.getSizeBytes());
+            ret.put("maxBytes", store.getMaxBytes());
+            return ret;
+        });
+    }
+    
+    static JSObject toJSObject(CallSession.Snapshot snapshot) {
+        JSArray participants = new JSArray();
+        for (CallSession.Participant participant : snapshot.participants) {
+            JSObject item = new JSObject();
+            item.put("participantId", participant.id);
+            item.put("displayName", participant.displayName);
+            item.put("joinedAt", participant.joinedAt);
+            item.put("rttMs", toJson(participant.rttMs));
+            item.put("jitterMs", toJson(participant.jitterMs));
+            item.put("packetLossPct", toJson(participant.packetLossPct));
+            item.put("quality", CallTelemetry.qualityName(participant.quality));
+            participants.put(item);
+        }
+        JSObject ret = new JSObject();
+        ret.put("active", true);
+        ret.put("version", snapshot.version);
+        ret.put("participants", participants);
+        ret.put("audioMuted", snapshot.audioMuted);
+        ret.put("quality", CallTelemetry.qualityName(snapshot.aggregateQuality));
+        ret.put("poorParticipants", snapshot.poorParticipants);
+        return ret;
+    }
+    
+    // JSON has no NaN
+    private static Object toJson(float value) {
+        return Float.isNaN(value) ? JSONObject.NULL : (Object) (double) value;
+    }
+    
+    private static Object toJson(double value) {
+        return Double.isNaN(value) ? JSONObject.NULL : (Object) value;
+    }
+    
+    private static double getMetric(PluginCall call, String name) {
+        Double value = call.getDouble(name);
+        return value != null ? value : Double.NaN;
+    }
+    
+    private String getAudioRoute() {
+        PluginHandle handle = getBridge().getPlugin("AudioRouting");
+        if (handle != null && handle.getInstance() instanceof AudioRoutingPlugin) {
+            return ((AudioRoutingPlugin) handle.getInstance()).getCurrentRoute();
+        }
+        return null;
+    }
 }
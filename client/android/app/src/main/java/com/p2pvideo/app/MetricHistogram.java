@@ -0,0 +1,162 @@
+package com.p2pvideo.app;
+
+import com.getcapacitor.JSObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram for one call metric.
+ *
+ * Keeps two views: fixed buckets counting every sample of the call (for the
+ * summary percentiles) and a ring of the most recent raw samples (for the
+ * live quality indicator). Recording is a handful of atomic operations and
+ * never allocates; readers may see a sample half-applied, which is fine for
+ * telemetry.
+ */
+public class MetricHistogram {
+    private final String name;
+    private final double[] bounds;
+    // One more bucket than bounds for values above the last bound
+    private final AtomicLongArray buckets;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumBits = new AtomicLong(Double.doubleToRawLongBits(0));
+    private final AtomicLong minBits = new AtomicLong(Double.doubleToRawLongBits(Double.POSITIVE_INFINITY));
+    private final AtomicLong maxBits = new AtomicLong(Double.doubleToRawLongBits(Double.NEGATIVE_INFINITY));
+
+    private final AtomicLongArray recent;
+    private final AtomicLong writeIndex = new AtomicLong();
+
+    /**
+     * @param bounds     ascending upper bounds of the buckets
+     * @param recentSize how many recent samples the ring keeps
+     */
+    public MetricHistogram(String name, double[] bounds, int recentSize) {
+        this.name = name;
+        this.bounds = bounds.clone();
+        this.buckets = new AtomicLongArray(bounds.length + 1);
+        this.recent = new AtomicLongArray(recentSize);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void record(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+        buckets.incrementAndGet(bucketFor(value));
+        addDouble(sumBits, value);
+        updateMin(value);
+        updateMax(value);
+
+        long index = writeIndex.getAndIncrement();
+        recent.set((int) (index % recent.length()), Double.doubleToRawLongBits(value));
+        count.incrementAndGet();
+    }
+
+    private int bucketFor(double value) {
+        int low = 0;
+        int high = bounds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (value <= bounds[mid]) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private static void addDouble(AtomicLong bits, double delta) {
+        long current;
+        long next;
+        do {
+            current = bits.get();
+            next = Double.doubleToRawLongBits(Double.longBitsToDouble(current) + delta);
+        } while (!bits.compareAndSet(current, next));
+    }
+
+    private void updateMin(double value) {
+        long current;
+        while (value < Double.longBitsToDouble(current = minBits.get())) {
+            if (minBits.compareAndSet(current, Double.doubleToRawLongBits(value))) {
+                return;
+            }
+        }
+    }
+
+    private void updateMax(double value) {
+        long current;
+        while (value > Double.longBitsToDouble(current = maxBits.get())) {
+            if (maxBits.compareAndSet(current, Double.doubleToRawLongBits(value))) {
+                return;
+            }
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Mean of the last n samples, or NaN if there are none.
+     */
+    public double recentMean(int n) {
+        long written = writeIndex.get();
+        int available = (int) Math.min(Math.min(n, recent.length()), written);
+        if (available == 0) {
+            return Double.NaN;
+        }
+        double sum = 0;
+        for (int i = 1; i <= available; i++) {
+            sum += Double.longBitsToDouble(recent.get((int) ((written - i) % recent.length())));
+        }
+        return sum / available;
+    }
+
+    /**
+     * Approximate quantile from the buckets: the upper bound of the bucket
+     * holding the q-th sample, capped at the observed maximum.
+     */
+    public double quantile(double q) {
+        long total = 0;
+        long[] snapshot = new long[buckets.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        double max = Double.longBitsToDouble(maxBits.get());
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= Math.max(1, rank)) {
+                return i < bounds.length ? Math.min(bounds[i], max) : max;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Fixed-size summary: count, min, max, avg, p50, p95.
+     */
+    public JSObject toJSObject() {
+        JSObject ret = new JSObject();
+        long n = count.get();
+        ret.put("count", n);
+        if (n > 0) {
+            ret.put("min", Double.longBitsToDouble(minBits.get()));
+            ret.put("max", Double.longBitsToDouble(maxBits.get()));
+            ret.put("avg", Double.longBitsToDouble(sumBits.get()) / n);
+            ret.put("p50", quantile(0.5));
+            ret.put("p95", quantile(0.95));
+        }
+        return ret;
+    }
+}
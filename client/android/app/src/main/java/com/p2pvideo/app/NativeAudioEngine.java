@@ -0,0 +1,146 @@
+package com.p2pvideo.app;
+
+import android.util.Log;
+
+/**
+ * JNI wrapper for the Oboe engine in src/main/cpp (LowLatencyEngine).
+ *
+ * Opens an output stream in low-latency mode with voice-communication usage,
+ * optionally paired with an input stream read on the output callback, and
+ * plays either silence or a repeating pulse for a fixed number of intervals.
+ * One instance per run; not thread-safe.
+ */
+final class NativeAudioEngine implements AutoCloseable {
+    private static final String TAG = "NativeAudioEngine";
+
+    // Per-stream stats, output block first, then input (LowLatencyEngine.h)
+    static final int STAT_SAMPLE_RATE = 0;
+    static final int STAT_FRAMES_PER_BURST = 1;
+    static final int STAT_BUFFER_SIZE = 2;
+    static final int STAT_BUFFER_CAPACITY = 3;
+    static final int STAT_PERFORMANCE_MODE = 4;
+    static final int STAT_SHARING_MODE = 5;
+    static final int STAT_AUDIO_API = 6;
+    static final int STAT_DEVICE_ID = 7;
+    static final int STAT_XRUNS = 8;
+    static final int STAT_LATENCY_MICROS = 9;
+    static final int STAT_MMAP = 10;
+    static final int STREAM_STATS = 11;
+    static final int INPUT_STATS = STREAM_STATS;
+    static final int STAT_CALLBACKS = 2 * STREAM_STATS;
+    static final int STAT_INPUT_UNDERFLOWS = STAT_CALLBACKS + 1;
+    static final int STAT_COUNT = STAT_INPUT_UNDERFLOWS + 1;
+
+    // oboe::PerformanceMode, oboe::SharingMode and oboe::AudioApi values
+    private static final int PERFORMANCE_MODE_LOW_LATENCY = 12;
+    private static final int SHARING_MODE_EXCLUSIVE = 0;
+    private static final int AUDIO_API_OPENSLES = 1;
+    private static final int AUDIO_API_AAUDIO = 2;
+
+    private static final boolean available = loadLibrary();
+
+    private long handle;
+
+    private static boolean loadLibrary() {
+        try {
+            System.loadLibrary("lowlatencyaudio");
+            return true;
+        } catch (UnsatisfiedLinkError e) {
+            Log.e(TAG, "Native audio library unavailable", e);
+            return false;
+        }
+    }
+
+    static boolean isAvailable() {
+        return available;
+    }
+
+    NativeAudioEngine() {
+        if (!available) {
+            throw new IllegalStateException("Native audio library unavailable");
+        }
+        handle = nativeCreate();
+    }
+
+    /**
+     * @param deviceId  output AudioDeviceInfo id, or 0 to let the system route
+     * @param withInput also open a microphone stream; needs RECORD_AUDIO
+     * @return oboe::Result, 0 on success
+     */
+    int open(int deviceId, boolean withInput) {
+        return nativeOpen(handle, deviceId, withInput);
+    }
+
+    /**
+     * Plays pulseCount intervals of intervalFrames each, starting every
+     * interval with the pulse. A null pulse plays silence.
+     */
+    int start(float[] pulse, int intervalFrames, int pulseCount) {
+        return nativeStart(handle, pulse, intervalFrames, pulseCount);
+    }
+
+    boolean isDone() {
+        return nativeIsDone(handle);
+    }
+
+    /**
+     * A stream was closed underneath the engine, usually by a route change.
+     */
+    boolean isDisconnected() {
+        return nativeIsDisconnected(handle);
+    }
+
+    /**
+     * The input recorded on the output timeline, once isDone().
+     */
+    float[] getRecording(int frames) {
+        float[] recording = new float[frames];
+        nativeCopyRecording(handle, recording);
+        return recording;
+    }
+
+    long[] getStats() {
+        long[] stats = new long[STAT_COUNT];
+        nativeGetStats(handle, stats);
+        return stats;
+    }
+
+    void stop() {
+        nativeStop(handle);
+    }
+
+    @Override
+    public void close() {
+        if (handle != 0) {
+            nativeClose(handle);
+            nativeDelete(handle);
+            handle = 0;
+        }
+    }
+
+    static String performanceModeName(long mode) {
+        return mode == PERFORMANCE_MODE_LOW_LATENCY ? "lowLatency" : "other(" + mode + ")";
+    }
+
+    static String sharingModeName(long mode) {
+        return mode == SHARING_MODE_EXCLUSIVE ? "exclusive" : "shared";
+    }
+
+    static String audioApiName(long api) {
+        if (api == AUDIO_API_AAUDIO) {
+            return "aaudio";
+        }
+        return api == AUDIO_API_OPENSLES ? "opensles" : "unspecified";
+    }
+
+    private static native long nativeCreate();
+    private static native void nativeDelete(long handle);
+    private static native int nativeOpen(long handle, int deviceId, boolean withInput);
+    private static native int nativeStart(long handle, float[] pulse, int intervalFrames, int pulseCount);
+    private static native void nativeStop(long handle);
+    private static native void nativeClose(long handle);
+    private static native boolean nativeIsDone(long handle);
+    private static native boolean nativeIsDisconnected(long handle);
+    private static native int nativeCopyRecording(long handle, float[] out);
+    private static native void nativeGetStats(long handle, long[] out);
+}
@@ -0,0 +1,206 @@
+package com.p2pvideo.app;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Base64;
+import android.util.Log;
+import android.view.Choreographer;
+import android.webkit.WebView;
+
+import androidx.webkit.WebMessageCompat;
+import androidx.webkit.WebMessagePortCompat;
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
+
+import com.getcapacitor.JSObject;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Binary event channel from native code to the WebView for high-rate data
+ * (encoder frames, diff results, levels) that would be too expensive as
+ * notifyListeners JSON.
+ *
+ * Producers on any thread append fixed-layout records (NativeEventSchema)
+ * to a shared batch. Once per display frame a Choreographer callback posts
+ * the batch as a single ArrayBuffer over a WebMessagePort, so the WebView
+ * sees at most one message per frame however many events were produced.
+ * Producer pattern:
+ *
+ *   NativeEventBus.get().publish(NativeEventSchema.FRAME_DIFF,
+ *       record -> record.putInt(changed).putInt(total).putInt(1));
+ *
+ * The writer runs under the batch lock, so it must only put fields. It is
+ * not called at all when no page is connected or the batch is full.
+ */
+public final class NativeEventBus implements Choreographer.FrameCallback {
+    private static final String TAG = "NativeEventBus";
+    // Sent with the port so the page can tell it apart from other messages
+    public static final String HANDSHAKE = "p2pvideo-event-bus";
+    private static final int BATCH_CAPACITY = 64 * 1024;
+
+    private static NativeEventBus instance;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ReentrantLock lock = new ReentrantLock();
+    private final NativeEventEncoder encoder = new NativeEventEncoder(BATCH_CAPACITY);
+    private final AtomicBoolean frameScheduled = new AtomicBoolean();
+
+    private volatile WebMessagePortCompat port;
+    private boolean arrayBuffers;
+
+    // Stats, guarded by lock
+    private long records = 0;
+    private long batches = 0;
+    private long bytes = 0;
+    private int maxBatchRecords = 0;
+
+    public static synchronized NativeEventBus get() {
+        if (instance == null) {
+            instance = new NativeEventBus();
+        }
+        return instance;
+    }
+
+    /**
+     * Fills in the fields of one record.
+     */
+    public interface RecordWriter {
+        void write(NativeEventEncoder record);
+    }
+
+    private NativeEventBus() {
+    }
+
+    public static boolean isSupported() {
+        return WebViewFeature.isFeatureSupported(WebViewFeature.CREATE_WEB_MESSAGE_CHANNEL)
+            && WebViewFeature.isFeatureSupported(WebViewFeature.POST_WEB_MESSAGE)
+            && WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_PORT_POST_MESSAGE);
+    }
+
+    public boolean isConnected() {
+        return port != null;
+    }
+
+    public boolean usesArrayBuffers() {
+        return arrayBuffers;
+    }
+
+    /**
+     * Hands a fresh port to the page, replacing any previous one (e.g. after
+     * a reload). Only a page at origin gets it. Must run on the main thread.
+     */
+    public void connect(WebView webView, Uri origin) {
+        disconnect();
+        WebMessagePortCompat[] ports = WebViewCompat.createWebMessageChannel(webView);
+        arrayBuffers = WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_ARRAY_BUFFER);
+        WebViewCompat.postWebMessage(webView,
+            new WebMessageCompat(HANDSHAKE, new WebMessagePortCompat[] {ports[1]}),
+            origin);
+        port = ports[0];
+        Log.d(TAG, "Connected, " + (arrayBuffers ? "ArrayBuffer" : "base64") + " batches");
+    }
+
+    public void disconnect() {
+        WebMessagePortCompat previous = port;
+        port = null;
+        if (previous != null && WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_PORT_CLOSE)) {
+            previous.close();
+        }
+        lock.lock();
+        try {
+            encoder.finish();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends one record. The lock is always released, and a writer that
+     * throws (e.g. a field that does not match the schema) loses only its own
+     * record.
+     */
+    public void publish(NativeEventSchema.Type type, RecordWriter writer) {
+        if (port == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (encoder.begin(type, SystemClock.elapsedRealtime())) {
+                try {
+                    writer.write(encoder);
+                    encoder.end();
+                    records++;
+                } catch (RuntimeException e) {
+                    encoder.abort();
+                    Log.e(TAG, "Dropped malformed " + type.name + " record", e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (frameScheduled.compareAndSet(false, true)) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                Choreographer.getInstance().postFrameCallback(this);
+            } else {
+                mainHandler.post(() -> Choreographer.getInstance().postFrameCallback(this));
+            }
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled.set(false);
+        byte[] batch;
+        lock.lock();
+        try {
+            if (encoder.isEmpty()) {
+                return;
+            }
+            int count = encoder.getRecordCount();
+            batch = encoder.finish();
+            batches++;
+            bytes += batch.length;
+            maxBatchRecords = Math.max(maxBatchRecords, count);
+        } finally {
+            lock.unlock();
+        }
+
+        WebMessagePortCompat target = port;
+        if (target == null) {
+            return;
+        }
+        try {
+            target.postMessage(arrayBuffers
+                ? new WebMessageCompat(batch)
+                : new WebMessageCompat(Base64.encodeToString(batch, Base64.NO_WRAP)));
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Port closed, disconnecting", e);
+            port = null;
+        }
+    }
+
+    public JSObject getMetrics() {
+        JSObject ret = new JSObject();
+        lock.lock();
+        try {
+            ret.put("connected", port != null);
+            ret.put("arrayBuffers", arrayBuffers);
+            ret.put("records", records);
+            ret.put("batches", batches);
+            ret.put("bytes", bytes);
+            ret.put("maxBatchRecords", maxBatchRecords);
+            ret.put("droppedRecords", encoder.getTotalDropped());
+        } finally {
+            lock.unlock();
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,56 @@
+package com.p2pvideo.app;
+
+import android.net.Uri;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+/**
+ * Connects the page to NativeEventBus. The port arrives as a window message
+ * whose data is NativeEventBus.HANDSHAKE; the call resolves with the record
+ * layouts needed to decode the batches.
+ */
+@CapacitorPlugin(name = "NativeEventBus")
+public class NativeEventBusPlugin extends Plugin {
+
+    @PluginMethod
+    public void connect(PluginCall call) {
+        if (!NativeEventBus.isSupported()) {
+            call.reject("WebMessagePort is not supported by this WebView");
+            return;
+        }
+        getActivity().runOnUiThread(() -> {
+            try {
+                NativeEventBus bus = NativeEventBus.get();
+                bus.connect(getBridge().getWebView(), Uri.parse(getBridge().getLocalUrl()));
+
+                JSObject ret = NativeEventSchema.toJson();
+                ret.put("handshake", NativeEventBus.HANDSHAKE);
+                ret.put("arrayBuffers", bus.usesArrayBuffers());
+                call.resolve(ret);
+            } catch (Exception e) {
+                call.reject("Error: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void disconnect(PluginCall call) {
+        NativeEventBus.get().disconnect();
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void getMetrics(PluginCall call) {
+        call.resolve(NativeEventBus.get().getMetrics());
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        super.handleOnDestroy();
+        NativeEventBus.get().disconnect();
+    }
+}
@@ -0,0 +1,151 @@
+package com.p2pvideo.app;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Packs NativeEventSchema records into one binary batch.
+ *
+ * Batch layout (little-endian):
+ *   header: uint32 sequence, uint16 record count, uint16 records dropped
+ *           since the previous batch (saturating)
+ *   record: uint16 type id, uint16 payload size, uint32 timestamp in ms
+ *           (elapsedRealtime, wrapping), then the payload fields in schema
+ *           order
+ *
+ * Records that do not fit are dropped and counted rather than growing the
+ * buffer. Usage:
+ *
+ *   if (encoder.begin(type, now)) {
+ *       encoder.putInt(a).putLong(b);
+ *       encoder.end();
+ *   }
+ *
+ * abort() takes back a record that could not be completed.
+ *
+ * Pure Java and not thread-safe; NativeEventBus guards it with a lock.
+ */
+public class NativeEventEncoder {
+    public static final int BATCH_HEADER_SIZE = 8;
+    public static final int RECORD_HEADER_SIZE = 8;
+
+    private final ByteBuffer buffer;
+    private int sequence = 0;
+    private int recordCount = 0;
+    private int dropped = 0;
+    private long totalDropped = 0;
+
+    private NativeEventSchema.Type current;
+    private int fieldIndex;
+    private int recordStart;
+
+    public NativeEventEncoder(int capacity) {
+        buffer = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(BATCH_HEADER_SIZE);
+    }
+
+    /**
+     * Starts a record. Returns false, and counts a drop, when the batch has
+     * no room for it or the record count would overflow.
+     */
+    public boolean begin(NativeEventSchema.Type type, long timestampMs) {
+        if (current != null) {
+            throw new IllegalStateException("Record " + current.name + " not ended");
+        }
+        if (buffer.remaining() < RECORD_HEADER_SIZE + type.getPayloadSize() || recordCount == 0xFFFF) {
+            dropped++;
+            totalDropped++;
+            return false;
+        }
+        recordStart = buffer.position();
+        buffer.putShort((short) type.id);
+        buffer.putShort((short) type.getPayloadSize());
+        buffer.putInt((int) timestampMs);
+        current = type;
+        fieldIndex = 0;
+        return true;
+    }
+
+    public NativeEventEncoder putInt(int value) {
+        expect(NativeEventSchema.INT32);
+        buffer.putInt(value);
+        return this;
+    }
+
+    public NativeEventEncoder putFloat(float value) {
+        expect(NativeEventSchema.FLOAT32);
+        buffer.putFloat(value);
+        return this;
+    }
+
+    public NativeEventEncoder putLong(long value) {
+        expect(NativeEventSchema.INT64);
+        buffer.putLong(value);
+        return this;
+    }
+
+    public NativeEventEncoder putDouble(double value) {
+        expect(NativeEventSchema.FLOAT64);
+        buffer.putDouble(value);
+        return this;
+    }
+
+    public void end() {
+        if (current == null || fieldIndex != current.getFieldCount()) {
+            throw new IllegalStateException("Incomplete record "
+                + (current != null ? current.name : "(none)"));
+        }
+        current = null;
+        recordCount++;
+    }
+
+    /**
+     * Discards the record in progress, if any, as if begin() was never called.
+     */
+    public void abort() {
+        if (current != null) {
+            buffer.position(recordStart);
+            current = null;
+        }
+    }
+
+    private void expect(int kind) {
+        if (current == null || fieldIndex >= current.getFieldCount()
+            || current.getFieldKind(fieldIndex) != kind) {
+            throw new IllegalStateException("Field " + fieldIndex + " does not match "
+                + (current != null ? current.name : "(none)"));
+        }
+        fieldIndex++;
+    }
+
+    public boolean isEmpty() {
+        return recordCount == 0 && dropped == 0;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public long getTotalDropped() {
+        return totalDropped;
+    }
+
+    /**
+     * Returns the batch and starts a new one.
+     */
+    public byte[] finish() {
+        if (current != null) {
+            throw new IllegalStateException("Record " + current.name + " not ended");
+        }
+        buffer.putInt(0, sequence++);
+        buffer.putShort(4, (short) recordCount);
+        buffer.putShort(6, (short) Math.min(dropped, 0xFFFF));
+        byte[] batch = Arrays.copyOf(buffer.array(), buffer.position());
+
+        buffer.position(BATCH_HEADER_SIZE);
+        recordCount = 0;
+        dropped = 0;
+        return batch;
+    }
+}
@@ -0,0 +1,121 @@
+package com.p2pvideo.app;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Record types carried by NativeEventBus.
+ *
+ * Every record has a fixed layout, so the web side decodes it with a
+ * DataView at known offsets instead of parsing text. The layouts are sent to
+ * JS once as JSON when the bus connects (see toJson()); to add an event,
+ * define a Type here and write its fields in the declared order.
+ *
+ * All values are little-endian. INT64 fields are read as BigInt in JS and
+ * converted to Number, so keep them below 2^53.
+ */
+public final class NativeEventSchema {
+    public static final int INT32 = 0;
+    public static final int FLOAT32 = 1;
+    public static final int INT64 = 2;
+    public static final int FLOAT64 = 3;
+
+    private static final String[] KIND_NAMES = {"int32", "float32", "int64", "float64"};
+    private static final int[] KIND_SIZES = {4, 4, 8, 8};
+
+    private static final List<Type> TYPES = new ArrayList<>();
+
+    /**
+     * One output buffer from ScreenEncoder.
+     */
+    public static final Type ENCODED_FRAME = new Type(1, "encodedFrame")
+        .field("size", INT32)
+        .field("ptsUs", INT64)
+        .field("flags", INT32)
+        .field("queueDepth", INT32);
+
+    /**
+     * One display frame seen by FrameDiffStage.
+     */
+    public static final Type FRAME_DIFF = new Type(2, "frameDiff")
+        .field("changedTiles", INT32)
+        .field("tileCount", INT32)
+        .field("forwarded", INT32);
+
+    private NativeEventSchema() {
+    }
+
+    public static final class Type {
+        public final int id;
+        public final String name;
+        private final List<String> fieldNames = new ArrayList<>();
+        private int[] kinds = new int[0];
+        private int payloadSize = 0;
+
+        private Type(int id, String name) {
+            this.id = id;
+            this.name = name;
+            TYPES.add(this);
+        }
+
+        private Type field(String fieldName, int kind) {
+            fieldNames.add(fieldName);
+            int[] grown = new int[kinds.length + 1];
+            System.arraycopy(kinds, 0, grown, 0, kinds.length);
+            grown[kinds.length] = kind;
+            kinds = grown;
+            payloadSize += KIND_SIZES[kind];
+            return this;
+        }
+
+        public int getFieldCount() {
+            return kinds.length;
+        }
+
+        public int getFieldKind(int index) {
+            return kinds[index];
+        }
+
+        public int getPayloadSize() {
+            return payloadSize;
+        }
+    }
+
+    public static List<Type> getTypes() {
+        return TYPES;
+    }
+
+    /**
+     * Layout description for the JS decoder: {types: [{id, name, size,
+     * fields: [{name, kind, offset}]}]}.
+     */
+    public static JSObject toJson() {
+        JSArray types = new JSArray();
+        for (Type type : TYPES) {
+            JSArray fields = new JSArray();
+            int offset = 0;
+            for (int i = 0; i < type.kinds.length; i++) {
+                JSObject field = new JSObject();
+                field.put("name", type.fieldNames.get(i));
+                field.put("kind", KIND_NAMES[type.kinds[i]]);
+                field.put("offset", offset);
+                fields.put(field);
+                offset += KIND_SIZES[type.kinds[i]];
+            }
+            JSObject entry = new JSObject();
+            entry.put("id", type.id);
+            entry.put("name", type.name);
+            entry.put("size", type.payloadSize);
+            entry.put("fields", fields);
+            types.put(entry);
+        }
+        JSObject ret = new JSObject();
+        ret.put("batchHeaderSize", NativeEventEncoder.BATCH_HEADER_SIZE);
+        ret.put("recordHeaderSize", NativeEventEncoder.RECORD_HEADER_SIZE);
+        ret.put("types", types);
+        return ret;
+    }
+}
@@ -0,0 +1,239 @@
+package com.p2pvideo.app;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.wifi.WifiManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+/**
+ * Runs alongside CallService and watches the default network, so a move
+ * from Wi-Fi to cellular (or back) is acted on at once instead of after
+ * ICE and the signaling heartbeat time out.
+ *
+ * On a handover it reconnects the native signaling socket, which is still
+ * bound to the old network, and tells the page, which restarts ICE. Link
+ * capabilities (bandwidth estimate, metered, validated) go to the page too.
+ * The page reports when remote media flows again, and the outage length
+ * goes into a histogram (see HandoverTracker).
+ *
+ * Also holds a low-latency Wi-Fi lock for the call, which turns off Wi-Fi
+ * power save while the app is in the foreground.
+ */
+public class NetworkHandoverMonitor {
+    private static final String TAG = "NetworkHandover";
+    private static final String WIFI_LOCK_TAG = "p2pvideo:call";
+
+    /**
+     * Receives network events on the monitor's thread.
+     */
+    public interface Listener {
+        void onHandover(JSObject event);
+
+        void onLinkChanged(JSObject link);
+    }
+
+    private static volatile NetworkHandoverMonitor active;
+    private static volatile Listener listener;
+
+    private final ConnectivityManager connectivityManager;
+    private final WifiManager.WifiLock wifiLock;
+    private final HandoverTracker tracker = new HandoverTracker();
+
+    private HandlerThread thread;
+    private Handler handler;
+    private ConnectivityManager.NetworkCallback callback;
+    private volatile JSObject link = new JSObject();
+
+    public NetworkHandoverMonitor(Context context) {
+        connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        WifiManager wifiManager = (WifiManager) context.getApplicationContext().getSystemService(Context.WIFI_SERVICE);
+        if (wifiManager != null) {
+            wifiLock = wifiManager.createWifiLock(wifiLockMode(), WIFI_LOCK_TAG);
+            wifiLock.setReferenceCounted(false);
+        } else {
+            wifiLock = null;
+        }
+    }
+
+    /**
+     * The monitor of the running call, if any.
+     */
+    public static NetworkHandoverMonitor getActive() {
+        return active;
+    }
+
+    public static void setListener(Listener newListener) {
+        listener = newListener;
+    }
+
+    public void start() {
+        thread = new HandlerThread("NetworkHandover", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+
+        if (wifiLock != null) {
+            wifiLock.acquire();
+        }
+        if (connectivityManager != null) {
+            callback = new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network network) {
+                    handler.post(() -> onDefaultNetwork(network));
+                }
+
+                @Override
+                public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                    handler.post(() -> onCapabilities(network, capabilities));
+                }
+
+                @Override
+                public void onLost(Network network) {
+                    handler.post(() -> onNetworkLost(network));
+                }
+            };
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                connectivityManager.registerDefaultNetworkCallback(callback, handler);
+            } else {
+                connectivityManager.registerDefaultNetworkCallback(callback);
+            }
+        }
+        active = this;
+    }
+
+    public void stop() {
+        if (active == this) {
+            active = null;
+        }
+        if (callback != null) {
+            connectivityManager.unregisterNetworkCallback(callback);
+            callback = null;
+        }
+        if (wifiLock != null && wifiLock.isHeld()) {
+            wifiLock.release();
+        }
+        if (thread != null) {
+            thread.quitSafely();
+            thread = null;
+        }
+    }
+
+    /**
+     * Called when remote media flows again after a handover.
+     */
+    public void onMediaResumed() {
+        long elapsed = tracker.onMediaResumed(SystemClock.elapsedRealtime());
+        if (elapsed >= 0) {
+            Log.d(TAG, "Media resumed " + elapsed + "ms after the network changed");
+        }
+    }
+
+    public JSObject getStatus() {
+        JSObject ret = new JSObject();
+        ret.put("transport", tracker.getTransport());
+        ret.put("link", link);
+        ret.put("handovers", tracker.getHandovers());
+        ret.put("recovering", tracker.isRecovering());
+        ret.put("lastRecoveryMs", tracker.getLastRecoveryMs());
+        ret.put("recoveryMs", tracker.getRecoveryHistogram().toJSObject());
+        ret.put("wifiLockHeld", wifiLock != null && wifiLock.isHeld());
+        return ret;
+    }
+
+    private void onDefaultNetwork(Network network) {
+        NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(network);
+        String transport = capabilities != null ? transportOf(capabilities) : "unknown";
+        HandoverTracker.Handover handover =
+            tracker.onDefaultNetwork(idOf(network), transport, SystemClock.elapsedRealtime());
+        if (handover == null) {
+            return;
+        }
+        Log.d(TAG, "Handover " + handover.from + " -> " + handover.to);
+
+        // The socket is bound to the old network; don't wait for the heartbeat
+        SignalingClient signaling = SignalingClient.getActive();
+        if (signaling != null) {
+            signaling.reconnectOnNetworkChange();
+        }
+        publish(handover);
+    }
+
+    private void onNetworkLost(Network network) {
+        HandoverTracker.Handover lost = tracker.onLost(idOf(network), SystemClock.elapsedRealtime());
+        if (lost != null) {
+            Log.d(TAG, "Lost " + lost.from + ", no default network");
+            publish(lost);
+        }
+    }
+
+    private void onCapabilities(Network network, NetworkCapabilities capabilities) {
+        String transport = transportOf(capabilities);
+        int downKbps = capabilities.getLinkDownstreamBandwidthKbps();
+        int upKbps = capabilities.getLinkUpstreamBandwidthKbps();
+        boolean metered = !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+        boolean validated = capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+        if (!tracker.onCapabilities(idOf(network), transport, downKbps, upKbps, metered, validated)) {
+            return;
+        }
+
+        JSObject next = new JSObject();
+        next.put("transport", transport);
+        next.put("downKbps", downKbps);
+        next.put("upKbps", upKbps);
+        next.put("metered", metered);
+        next.put("validated", validated);
+        link = next;
+        Listener current = listener;
+        if (current != null) {
+            current.onLinkChanged(next);
+        }
+    }
+
+    private void publish(HandoverTracker.Handover handover) {
+        JSObject event = new JSObject();
+        event.put("type", handover.lost ? "lost" : "handover");
+        event.put("from", handover.from);
+        event.put("to", handover.to);
+        event.put("handovers", tracker.getHandovers());
+        Listener current = listener;
+        if (current != null) {
+            current.onHandover(event);
+        }
+    }
+
+    // HIGH_PERF is deprecated from API 29 but is the closest mode below it
+    @SuppressWarnings("deprecation")
+    private static int wifiLockMode() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+            ? WifiManager.WIFI_MODE_FULL_LOW_LATENCY
+            : WifiManager.WIFI_MODE_FULL_HIGH_PERF;
+    }
+
+    private static String idOf(Network network) {
+        return String.valueOf(network.getNetworkHandle());
+    }
+
+    private static String transportOf(NetworkCapabilities capabilities) {
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
+            return "wifi";
+        }
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+            return "cellular";
+        }
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) {
+            return "ethernet";
+        }
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_VPN)) {
+            return "vpn";
+        }
+        return "other";
+    }
+}
@@ -0,0 +1,78 @@
+package com.p2pvideo.app;
+
+/**
+ * PiP window shape for a video size, reduced and clamped to the range the
+ * system accepts (2.39:1 either way). Pure Java; unit tested.
+ */
+public final class PipAspectRatio {
+    // PictureInPictureParams throws outside 1:2.39 .. 2.39:1
+    static final PipAspectRatio WIDEST = new PipAspectRatio(239, 100);
+    static final PipAspectRatio TALLEST = new PipAspectRatio(100, 239);
+    // Encoders round odd sizes and crop a few rows; not worth a window resize
+    static final double TOLERANCE = 0.02;
+
+    public final int width;
+    public final int height;
+
+    private PipAspectRatio(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Returns null for sizes that aren't known yet (0 or negative).
+     */
+    public static PipAspectRatio fromVideoSize(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        double ratio = (double) width / height;
+        if (ratio > WIDEST.value()) {
+            return WIDEST;
+        }
+        if (ratio < TALLEST.value()) {
+            return TALLEST;
+        }
+        int divisor = gcd(width, height);
+        return new PipAspectRatio(width / divisor, height / divisor);
+    }
+
+    public double value() {
+        return (double) width / height;
+    }
+
+    /**
+     * True when the two shapes differ by less than TOLERANCE.
+     */
+    public boolean isCloseTo(PipAspectRatio other) {
+        return other != null && Math.abs(value() - other.value()) < TOLERANCE * other.value();
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PipAspectRatio)) {
+            return false;
+        }
+        PipAspectRatio other = (PipAspectRatio) o;
+        return width == other.width && height == other.height;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * width + height;
+    }
+
+    @Override
+    public String toString() {
+        return width + ":" + height;
+    }
+}
@@ -0,0 +1,123 @@
+package com.p2pvideo.app;
+
+import android.os.SystemClock;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import java.util.ArrayDeque;
+
+/**
+ * What the call should scale down to while the activity is in
+ * picture-in-picture, and how long each switch takes to land.
+ *
+ * A transition has two halves: the native side (screen-capture cap) and the
+ * web side (receive resolution, frame rate, local preview), which reports
+ * back through PipPlugin.pipProfileApplied. The transition is recorded once
+ * both have finished, or as superseded if PiP flips again first.
+ */
+public class PipPerformanceProfile {
+    // The PiP window is a thumbnail; anything above this is decoded for nothing
+    public static final int PIP_MAX_RECEIVE_HEIGHT = 360;
+    public static final int PIP_MAX_RECEIVE_FPS = 15;
+    // ScreenShareGovernor level: full resolution, 15 fps
+    public static final int PIP_SCREEN_CAPTURE_LEVEL = 1;
+    private static final int HISTORY_SIZE = 16;
+
+    private boolean active = false;
+    private int transitionId = 0;
+    private long startedAt;
+    private long nativeMs = -1;
+    private long webMs = -1;
+    private final ArrayDeque<JSObject> history = new ArrayDeque<>();
+    private long completedTransitions = 0;
+    private long supersededTransitions = 0;
+
+    public synchronized boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Starts a transition and returns the profile to send to the web layer.
+     */
+    public synchronized JSObject begin(boolean inPip) {
+        if (transitionId > 0 && (nativeMs < 0 || webMs < 0)) {
+            record(true);
+        }
+        active = inPip;
+        transitionId++;
+        startedAt = SystemClock.elapsedRealtime();
+        nativeMs = -1;
+        webMs = -1;
+
+        JSObject profile = new JSObject();
+        profile.put("transitionId", transitionId);
+        profile.put("active", inPip);
+        if (inPip) {
+            profile.put("maxReceiveHeight", PIP_MAX_RECEIVE_HEIGHT);
+            profile.put("maxReceiveFps", PIP_MAX_RECEIVE_FPS);
+        }
+        profile.put("pauseLocalPreview", inPip);
+        return profile;
+    }
+
+    public synchronized int getTransitionId() {
+        return transitionId;
+    }
+
+    public synchronized void onNativeApplied(int id) {
+        if (id == transitionId && nativeMs < 0) {
+            nativeMs = SystemClock.elapsedRealtime() - startedAt;
+            if (webMs >= 0) {
+                record(false);
+            }
+        }
+    }
+
+    /**
+     * Returns false when the ack is for a transition that is no longer current.
+     */
+    public synchronized boolean onWebApplied(int id) {
+        if (id != transitionId || webMs >= 0) {
+            return false;
+        }
+        webMs = SystemClock.elapsedRealtime() - startedAt;
+        if (nativeMs >= 0) {
+            record(false);
+        }
+        return true;
+    }
+
+    private void record(boolean superseded) {
+        JSObject entry = new JSObject();
+        entry.put("transitionId", transitionId);
+        entry.put("enter", active);
+        entry.put("nativeMs", nativeMs);
+        entry.put("webMs", webMs);
+        entry.put("totalMs", Math.max(nativeMs, webMs));
+        entry.put("superseded", superseded);
+        if (history.size() >= HISTORY_SIZE) {
+            history.removeFirst();
+        }
+        history.addLast(entry);
+        if (superseded) {
+            supersededTransitions++;
+        } else {
+            completedTransitions++;
+        }
+    }
+
+    public synchronized JSObject getMetrics() {
+        JSObject ret = new JSObject();
+        ret.put("active", active);
+        ret.put("transitionId", transitionId);
+        ret.put("completedTransitions", completedTransitions);
+        ret.put("supersededTransitions", supersededTransitions);
+        JSArray transitions = new JSArray();
+        for (JSObject entry : history) {
+            transitions.put(entry);
+        }
+        ret.put("transitions", transitions);
+        return ret;
+    }
+}
@@ -0,0 +1,387 @@
+package com.p2pvideo.app;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.getcapacitor.Bridge;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared execution layer for plugin work that touches slow system services.
+ *
+ * Each plugin gets its own serial lane so that, for example, two audio route
+ * changes can never interleave, while different plugins still run in parallel
+ * on a small bounded pool. Each lane holds at most LANE_CAPACITY waiting
+ * tasks; past that, or if the pool refuses work, calls are rejected rather
+ * than left pending. Results are handed back to the Capacitor bridge thread
+ * before the call is resolved or rejected.
+ *
+ * Work that blocks for seconds (device measurements, benchmarks) goes through
+ * dispatchLong instead, on a lane with a thread of its own, so it never ties
+ * up the shared pool. Plugins driven by Handler callbacks (delayed
+ * timeouts, system listeners) get a looper lane: a Handler thread of their
+ * own that dispatchLong and execute calls naming the lane also run on.
+ */
+public final class PluginDispatcher {
+    private static final String TAG = "PluginDispatcher";
+    private static final int POOL_SIZE = 2;
+    private static final int QUEUE_CAPACITY = 64;
+    static final int LANE_CAPACITY = 32;
+
+    private static PluginDispatcher instance;
+
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentHashMap<String, SerialLane> lanes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, DedicatedLane> dedicatedLanes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LooperLane> looperLanes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, MethodStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Work to run on a lane. Returning null resolves the call without data.
+     */
+    public interface Task {
+        JSObject run() throws Exception;
+    }
+
+    public static synchronized PluginDispatcher get() {
+        if (instance == null) {
+            instance = new PluginDispatcher();
+        }
+        return instance;
+    }
+
+    private PluginDispatcher() {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "PluginWorker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = new ThreadPoolExecutor(
+            POOL_SIZE, POOL_SIZE,
+            30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(QUEUE_CAPACITY),
+            threadFactory
+        );
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs the task on the plugin's lane and settles the call on the bridge thread.
+     */
+    public void dispatch(Plugin plugin, String lane, PluginCall call, Task task) {
+        submit(laneFor(lane), plugin, lane, call, task);
+    }
+
+    /**
+     * Like dispatch, for tasks that block for seconds. The lane runs on its
+     * own thread, started on demand and stopped when idle; use a lane name of
+     * its own rather than the plugin's short-task lane.
+     */
+    public void dispatchLong(Plugin plugin, String lane, PluginCall call, Task task) {
+        LooperLane looperLane = looperLanes.get(lane);
+        submit(looperLane != null ? looperLane : dedicatedLanes.computeIfAbsent(lane, DedicatedLane::new),
+            plugin, lane, call, task);
+    }
+
+    /**
+     * Handler of a looper lane, started on first use. Messages posted to it
+     * directly are timed under "lane.handler"; calls dispatched to the lane
+     * are timed by method as usual. The thread runs until quitLooper.
+     */
+    public Handler looperFor(String lane) {
+        return looperLanes.computeIfAbsent(lane, key -> new LooperLane(key, statsFor(key, "handler"))).handler;
+    }
+
+    /**
+     * Stops a looper lane once the messages already due have run. A later
+     * looperFor starts a new thread.
+     */
+    public void quitLooper(String lane) {
+        LooperLane looperLane = looperLanes.remove(lane);
+        if (looperLane != null) {
+            looperLane.thread.quitSafely();
+        }
+    }
+
+    private void submit(Lane target, Plugin plugin, String lane, PluginCall call, Task task) {
+        final Bridge bridge = plugin.getBridge();
+        final MethodStats methodStats = statsFor(lane, call.getMethodName());
+        final long enqueuedAt = System.nanoTime();
+
+        try {
+            target.execute(() -> {
+                long startedAt = System.nanoTime();
+                JSObject result = null;
+                Exception error = null;
+                try {
+                    result = task.run();
+                } catch (Exception e) {
+                    error = e;
+                }
+                methodStats.record(startedAt - enqueuedAt, System.nanoTime() - startedAt);
+
+                final JSObject ret = result;
+                final Exception failure = error;
+                bridge.execute(() -> {
+                    if (failure != null) {
+                        Log.e(TAG, lane + "." + call.getMethodName() + " failed", failure);
+                        call.reject("Error: " + failure.getMessage(), failure);
+                    } else if (ret != null) {
+                        call.resolve(ret);
+                    } else {
+                        call.resolve();
+                    }
+                });
+            }, () -> bridge.execute(() -> {
+                Log.w(TAG, "Dispatcher saturated, rejecting queued " + lane + "." + call.getMethodName());
+                call.reject("Plugin dispatcher is busy");
+            }));
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Dispatcher saturated, rejecting " + lane + "." + call.getMethodName());
+            call.reject("Plugin dispatcher is busy");
+        }
+    }
+
+    /**
+     * Runs work on the plugin's lane without a call to settle, e.g. from a broadcast receiver.
+     */
+    public void execute(String lane, String name, Runnable runnable) {
+        final MethodStats methodStats = statsFor(lane, name);
+        final long enqueuedAt = System.nanoTime();
+
+        try {
+            laneFor(lane).execute(() -> {
+                long startedAt = System.nanoTime();
+                try {
+                    runnable.run();
+                } catch (Exception e) {
+                    Log.e(TAG, lane + "." + name + " failed", e);
+                }
+                methodStats.record(startedAt - enqueuedAt, System.nanoTime() - startedAt);
+            }, () -> Log.w(TAG, "Dispatcher saturated, dropping queued " + lane + "." + name));
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Dispatcher saturated, dropping " + lane + "." + name);
+        }
+    }
+
+    /**
+     * Per-method queue and run times in milliseconds, keyed by "lane.method".
+     */
+    public JSObject getMetrics() {
+        JSObject methods = new JSObject();
+        for (Map.Entry<String, MethodStats> entry : stats.entrySet()) {
+            methods.put(entry.getKey(), entry.getValue().toJSObject());
+        }
+
+        JSObject ret = new JSObject();
+        ret.put("methods", methods);
+        ret.put("activeThreads", executor.getActiveCount());
+        ret.put("queuedTasks", executor.getQueue().size());
+        return ret;
+    }
+
+    private Lane laneFor(String lane) {
+        LooperLane looperLane = looperLanes.get(lane);
+        return looperLane != null ? looperLane : lanes.computeIfAbsent(lane, key -> new SerialLane(executor));
+    }
+
+    private MethodStats statsFor(String lane, String method) {
+        return stats.computeIfAbsent(lane + "." + method, key -> new MethodStats());
+    }
+
+    private interface Lane {
+        /**
+         * Queues the task, or throws RejectedExecutionException if the lane is
+         * full. onDropped runs instead of the task if it is dropped later.
+         */
+        void execute(Runnable runnable, Runnable onDropped);
+    }
+
+    /**
+     * Feeds tasks to the shared pool one at a time, in submission order.
+     *
+     * A task that never runs, because the pool refused it or an earlier task
+     * of the lane, gets its onDropped callback instead, so no call is left
+     * unsettled.
+     */
+    private static final class SerialLane implements Lane {
+        private final Executor pool;
+        private final ArrayDeque<QueuedTask> tasks = new ArrayDeque<>();
+        private Runnable active;
+
+        SerialLane(Executor pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public synchronized void execute(Runnable runnable, Runnable onDropped) {
+            if (tasks.size() >= LANE_CAPACITY) {
+                throw new RejectedExecutionException("Lane full");
+            }
+            tasks.offer(new QueuedTask(() -> {
+                try {
+                    runnable.run();
+                } finally {
+                    scheduleNext();
+                }
+            }, onDropped));
+            if (active == null) {
+                scheduleNext();
+            }
+        }
+
+        private synchronized void scheduleNext() {
+            QueuedTask next = tasks.poll();
+            active = next != null ? next.runnable : null;
+            if (active == null) {
+                return;
+            }
+            try {
+                pool.execute(active);
+            } catch (RejectedExecutionException e) {
+                active = null;
+                next.onDropped.run();
+                for (QueuedTask dropped : tasks) {
+                    dropped.onDropped.run();
+                }
+                tasks.clear();
+            }
+        }
+    }
+
+    /**
+     * Runs tasks one at a time on a thread of the lane's own.
+     */
+    private static final class DedicatedLane implements Lane {
+        private final ThreadPoolExecutor thread;
+
+        DedicatedLane(String name) {
+            thread = new ThreadPoolExecutor(
+                1, 1,
+                30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(LANE_CAPACITY),
+                runnable -> {
+                    Thread worker = new Thread(runnable, "PluginWorker-" + name);
+                    worker.setDaemon(true);
+                    return worker;
+                }
+            );
+            thread.allowCoreThreadTimeOut(true);
+        }
+
+        @Override
+        public void execute(Runnable runnable, Runnable onDropped) {
+            // Rejects up front when full; a queued task is never dropped
+            thread.execute(runnable);
+        }
+    }
+
+    /**
+     * Runs tasks in order with everything else posted to the lane's Handler.
+     */
+    private static final class LooperLane implements Lane {
+        // Marks messages that carry dispatched tasks, which are timed by method
+        private static final Object TASK_TOKEN = new Object();
+
+        final HandlerThread thread;
+        final Handler handler;
+        private final AtomicInteger pending = new AtomicInteger();
+
+        LooperLane(String name, MethodStats handlerStats) {
+            thread = new HandlerThread("PluginWorker-" + name);
+            thread.start();
+            handler = new Handler(thread.getLooper()) {
+                @Override
+                public void dispatchMessage(Message msg) {
+                    if (msg.obj == TASK_TOKEN) {
+                        super.dispatchMessage(msg);
+                        return;
+                    }
+                    long lateNanos = Math.max(0, SystemClock.uptimeMillis() - msg.getWhen()) * 1_000_000L;
+                    long startedAt = System.nanoTime();
+                    super.dispatchMessage(msg);
+                    handlerStats.record(lateNanos, System.nanoTime() - startedAt);
+                }
+            };
+        }
+
+        @Override
+        public void execute(Runnable runnable, Runnable onDropped) {
+            if (pending.incrementAndGet() > LANE_CAPACITY) {
+                pending.decrementAndGet();
+                throw new RejectedExecutionException("Lane full");
+            }
+            Runnable task = () -> {
+                pending.decrementAndGet();
+                runnable.run();
+            };
+            if (!handler.postAtTime(task, TASK_TOKEN, SystemClock.uptimeMillis())) {
+                // The looper has quit
+                pending.decrementAndGet();
+                throw new RejectedExecutionException("Lane stopped");
+            }
+        }
+    }
+
+    private static final class QueuedTask {
+        final Runnable runnable;
+        final Runnable onDropped;
+
+        QueuedTask(Runnable runnable, Runnable onDropped) {
+            this.runnable = runnable;
+            this.onDropped = onDropped;
+        }
+    }
+
+    private static final class MethodStats {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalQueueNanos = new AtomicLong();
+        private final AtomicLong totalRunNanos = new AtomicLong();
+        private final AtomicLong maxQueueNanos = new AtomicLong();
+        private final AtomicLong maxRunNanos = new AtomicLong();
+
+        void record(long queueNanos, long runNanos) {
+            count.incrementAndGet();
+            totalQueueNanos.addAndGet(queueNanos);
+            totalRunNanos.addAndGet(runNanos);
+            updateMax(maxQueueNanos, queueNanos);
+            updateMax(maxRunNanos, runNanos);
+        }
+
+        private static void updateMax(AtomicLong max, long value) {
+            long current;
+            do {
+                current = max.get();
+            } while (value > current && !max.compareAndSet(current, value));
+        }
+
+        JSObject toJSObject() {
+            long calls = count.get();
+            JSObject ret = new JSObject();
+            ret.put("count", calls);
+            ret.put("avgQueueMs", calls > 0 ? totalQueueNanos.get() / calls / 1e6 : 0);
+            ret.put("avgRunMs", calls > 0 ? totalRunNanos.get() / calls / 1e6 : 0);
+            ret.put("maxQueueMs", maxQueueNanos.get() / 1e6);
+            ret.put("maxRunMs", maxRunNanos.get() / 1e6);
+            return ret;
+        }
+    }
+}
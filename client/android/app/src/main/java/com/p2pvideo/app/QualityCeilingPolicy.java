@@ -0,0 +1,149 @@
+package com.p2pvideo.app;
+
+/**
+ * Decides how much video quality the device can sustain from thermal and
+ * battery readings.
+ *
+ * Steps down as soon as any signal calls for it, using thermal headroom to
+ * act before the OS starts throttling. Steps back up one level at a time,
+ * and only after every signal has stayed below a stricter threshold for
+ * several consecutive evaluations, so the ceiling does not flap around a
+ * boundary. Pure Java; ThermalQualityController feeds it.
+ */
+public class QualityCeilingPolicy {
+    // Mirrors PowerManager.THERMAL_STATUS_*
+    public static final int THERMAL_NONE = 0;
+    public static final int THERMAL_LIGHT = 1;
+    public static final int THERMAL_MODERATE = 2;
+    public static final int THERMAL_SEVERE = 3;
+    public static final int THERMAL_CRITICAL = 4;
+
+    // Headroom 1.0 is where the OS starts throttling
+    private static final float HEADROOM_WARN = 0.85f;
+    private static final float HEADROOM_HIGH = 0.95f;
+    // Step-up thresholds sit this far below the step-down ones
+    private static final float HEADROOM_HYSTERESIS = 0.1f;
+    private static final float DRAIN_HIGH_PCT_PER_HOUR = 25f;
+    private static final float DRAIN_HYSTERESIS = 5f;
+    private static final int LOW_BATTERY_PCT = 15;
+    private static final int LOW_BATTERY_HYSTERESIS = 5;
+    private static final int STABLE_EVALUATIONS_TO_STEP_UP = 6;
+
+    public static final class Ceiling {
+        public final int maxHeight;
+        public final int maxFps;
+        // ScreenShareGovernor level to cap native screen capture at
+        public final int screenCaptureLevel;
+
+        Ceiling(int maxHeight, int maxFps, int screenCaptureLevel) {
+            this.maxHeight = maxHeight;
+            this.maxFps = maxFps;
+            this.screenCaptureLevel = screenCaptureLevel;
+        }
+    }
+
+    static final Ceiling[] CEILINGS = {
+        new Ceiling(1080, 30, 0),
+        new Ceiling(720, 30, 0),
+        new Ceiling(720, 24, 1),
+        new Ceiling(540, 15, 2),
+        new Ceiling(360, 15, 3),
+    };
+
+    /**
+     * One evaluation's inputs. NaN / -1 mean unknown.
+     */
+    public static final class Reading {
+        public int thermalStatus = -1;
+        public float headroom = Float.NaN;
+        public float drainPctPerHour = Float.NaN;
+        public int batteryPct = -1;
+        public boolean charging = false;
+    }
+
+    private int level = 0;
+    private int stableEvaluations = 0;
+    private String lastReason = "initial";
+
+    public int getLevel() {
+        return level;
+    }
+
+    public Ceiling getCeiling() {
+        return CEILINGS[level];
+    }
+
+    public String getLastReason() {
+        return lastReason;
+    }
+
+    /**
+     * Returns true when the level changed.
+     */
+    public boolean evaluate(Reading reading) {
+        StringBuilder reason = new StringBuilder();
+        int down = target(reading, 0, 0, 0, reason);
+
+        if (down > level) {
+            level = down;
+            stableEvaluations = 0;
+            lastReason = reason.toString();
+            return true;
+        }
+
+        StringBuilder ignored = new StringBuilder();
+        int up = target(reading, HEADROOM_HYSTERESIS, DRAIN_HYSTERESIS, LOW_BATTERY_HYSTERESIS, ignored);
+        if (up < level) {
+            stableEvaluations++;
+            if (stableEvaluations >= STABLE_EVALUATIONS_TO_STEP_UP) {
+                level--;
+                stableEvaluations = 0;
+                lastReason = "recovered";
+                return true;
+            }
+        } else {
+            stableEvaluations = 0;
+        }
+        return false;
+    }
+
+    /**
+     * Level the reading calls for, with thresholds lowered by the margins.
+     */
+    private static int target(Reading r, float headroomMargin, float drainMargin, int batteryMargin,
+                              StringBuilder reason) {
+        int target = 0;
+        if (r.thermalStatus >= THERMAL_CRITICAL) {
+            target = raise(target, 4, "thermalCritical", reason);
+        } else if (r.thermalStatus == THERMAL_SEVERE) {
+            target = raise(target, 3, "thermalSevere", reason);
+        } else if (r.thermalStatus == THERMAL_MODERATE) {
+            target = raise(target, 2, "thermalModerate", reason);
+        }
+
+        if (r.headroom >= HEADROOM_HIGH - headroomMargin) {
+            target = raise(target, 2, "headroomHigh", reason);
+        } else if (r.headroom >= HEADROOM_WARN - headroomMargin) {
+            target = raise(target, 1, "headroomWarn", reason);
+        }
+
+        if (!r.charging) {
+            if (r.batteryPct >= 0 && r.batteryPct <= LOW_BATTERY_PCT + batteryMargin) {
+                target = raise(target, 2, "batteryLow", reason);
+            }
+            if (r.drainPctPerHour >= DRAIN_HIGH_PCT_PER_HOUR - drainMargin) {
+                target = raise(target, 1, "drainHigh", reason);
+            }
+        }
+        return target;
+    }
+
+    private static int raise(int current, int candidate, String why, StringBuilder reason) {
+        if (candidate > current) {
+            reason.setLength(0);
+            reason.append(why);
+            return candidate;
+        }
+        return current;
+    }
+}
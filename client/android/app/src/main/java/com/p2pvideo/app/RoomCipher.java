@@ -0,0 +1,212 @@
+package com.p2pvideo.app;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The E2E room key and its two message formats, through javax.crypto so
+ * AES runs in the platform provider (BoringSSL via Conscrypt on Android,
+ * which uses the ARMv8 AES instructions when the CPU has them).
+ *
+ * Key derivation matches encryption.js exactly so native and CryptoJS peers
+ * share a room: PBKDF2-HMAC-SHA256 (crypto-js 4.2's default hasher) over
+ * roomId + password, 10000 iterations, 32 bytes. CryptoJS then uses the key's
+ * hex string as an AES passphrase, giving the OpenSSL format:
+ *
+ *   base64("Salted__" + salt[8] + AES-256-CBC(plaintext))
+ *
+ * with key and IV from EVP_BytesToKey(MD5, passphrase, salt). The second
+ * format is AES-256-GCM under an HKDF-SHA256 subkey of the room key:
+ *
+ *   "g1:" + base64(iv[12] + ciphertext + tag[16])
+ *
+ * decrypt() accepts either.
+ *
+ * Not thread-safe: Cipher instances are reused. Pure Java; unit tested.
+ */
+final class RoomCipher {
+    static final String SALT = "p2p-video-chat-secure-salt-2024";
+    static final int ITERATIONS = 10000;
+    static final int KEY_BYTES = 32;
+    static final String GCM_PREFIX = "g1:";
+    static final String GCM_INFO = "p2p-e2e-aes-gcm-v1";
+    private static final byte[] OPENSSL_MAGIC = "Salted__".getBytes(StandardCharsets.US_ASCII);
+    private static final int OPENSSL_SALT_BYTES = 8;
+    private static final int CBC_IV_BYTES = 16;
+    private static final int GCM_IV_BYTES = 12;
+    private static final int GCM_TAG_BITS = 128;
+
+    private final byte[] passphrase;
+    private final SecretKeySpec gcmKey;
+    private final SecureRandom random = new SecureRandom();
+    private final MessageDigest md5;
+    private final Cipher cbc;
+    private final Cipher gcm;
+
+    private RoomCipher(byte[] roomKey) throws GeneralSecurityException {
+        passphrase = hex(roomKey).getBytes(StandardCharsets.US_ASCII);
+        gcmKey = new SecretKeySpec(
+            hkdf(roomKey, SALT.getBytes(StandardCharsets.UTF_8), GCM_INFO.getBytes(StandardCharsets.UTF_8), KEY_BYTES),
+            "AES");
+        md5 = MessageDigest.getInstance("MD5");
+        cbc = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        gcm = Cipher.getInstance("AES/GCM/NoPadding");
+    }
+
+    /**
+     * Derives the room key. Takes as long as the PBKDF2 iterations do, so
+     * never on the main thread.
+     */
+    static RoomCipher derive(String roomId, String password) throws GeneralSecurityException {
+        String baseKey = roomId + (password != null ? password : "");
+        return new RoomCipher(pbkdf2(baseKey.getBytes(StandardCharsets.UTF_8),
+            SALT.getBytes(StandardCharsets.UTF_8), ITERATIONS, KEY_BYTES));
+    }
+
+    /**
+     * The provider AES actually runs in, for diagnostics.
+     */
+    String getProvider() {
+        return cbc.getProvider().getName();
+    }
+
+    /**
+     * Encrypts in the CryptoJS format every peer understands.
+     */
+    String encrypt(String plaintext) throws GeneralSecurityException {
+        byte[] salt = new byte[OPENSSL_SALT_BYTES];
+        random.nextBytes(salt);
+        return encrypt(plaintext, salt);
+    }
+
+    String encrypt(String plaintext, byte[] salt) throws GeneralSecurityException {
+        byte[] keyIv = evpBytesToKey(salt);
+        cbc.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(keyIv, 0, KEY_BYTES, "AES"),
+            new IvParameterSpec(keyIv, KEY_BYTES, CBC_IV_BYTES));
+        byte[] ciphertext = cbc.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
+
+        byte[] out = new byte[OPENSSL_MAGIC.length + OPENSSL_SALT_BYTES + ciphertext.length];
+        System.arraycopy(OPENSSL_MAGIC, 0, out, 0, OPENSSL_MAGIC.length);
+        System.arraycopy(salt, 0, out, OPENSSL_MAGIC.length, OPENSSL_SALT_BYTES);
+        System.arraycopy(ciphertext, 0, out, OPENSSL_MAGIC.length + OPENSSL_SALT_BYTES, ciphertext.length);
+        return WebSocketClient.base64(out);
+    }
+
+    /**
+     * Encrypts in the AES-GCM format.
+     */
+    String encryptGcm(String plaintext) throws GeneralSecurityException {
+        byte[] iv = new byte[GCM_IV_BYTES];
+        random.nextBytes(iv);
+        gcm.init(Cipher.ENCRYPT_MODE, gcmKey, new GCMParameterSpec(GCM_TAG_BITS, iv));
+        byte[] ciphertext = gcm.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
+
+        byte[] out = new byte[GCM_IV_BYTES + ciphertext.length];
+        System.arraycopy(iv, 0, out, 0, GCM_IV_BYTES);
+        System.arraycopy(ciphertext, 0, out, GCM_IV_BYTES, ciphertext.length);
+        return GCM_PREFIX + WebSocketClient.base64(out);
+    }
+
+    /**
+     * Decrypts either format. Throws on a wrong key or a damaged message.
+     */
+    String decrypt(String message) throws GeneralSecurityException {
+        if (message.startsWith(GCM_PREFIX)) {
+            byte[] data = WebSocketClient.base64Decode(message.substring(GCM_PREFIX.length()));
+            if (data == null || data.length < GCM_IV_BYTES + GCM_TAG_BITS / 8) {
+                throw new GeneralSecurityException("Malformed AES-GCM message");
+            }
+            gcm.init(Cipher.DECRYPT_MODE, gcmKey, new GCMParameterSpec(GCM_TAG_BITS, data, 0, GCM_IV_BYTES));
+            return new String(gcm.doFinal(data, GCM_IV_BYTES, data.length - GCM_IV_BYTES), StandardCharsets.UTF_8);
+        }
+
+        byte[] data = WebSocketClient.base64Decode(message);
+        int header = OPENSSL_MAGIC.length + OPENSSL_SALT_BYTES;
+        if (data == null || data.length <= header
+                || !Arrays.equals(Arrays.copyOf(data, OPENSSL_MAGIC.length), OPENSSL_MAGIC)) {
+            throw new GeneralSecurityException("Malformed CryptoJS message");
+        }
+        byte[] keyIv = evpBytesToKey(Arrays.copyOfRange(data, OPENSSL_MAGIC.length, header));
+        cbc.init(Cipher.DECRYPT_MODE, new SecretKeySpec(keyIv, 0, KEY_BYTES, "AES"),
+            new IvParameterSpec(keyIv, KEY_BYTES, CBC_IV_BYTES));
+        return new String(cbc.doFinal(data, header, data.length - header), StandardCharsets.UTF_8);
+    }
+
+    // OpenSSL's EVP_BytesToKey with MD5 and one iteration, as CryptoJS does
+    private byte[] evpBytesToKey(byte[] salt) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(KEY_BYTES + CBC_IV_BYTES + 16);
+        byte[] block = new byte[0];
+        while (out.size() < KEY_BYTES + CBC_IV_BYTES) {
+            md5.update(block);
+            md5.update(passphrase);
+            md5.update(salt);
+            block = md5.digest();
+            out.write(block, 0, block.length);
+        }
+        return out.toByteArray();
+    }
+
+    // By hand: SecretKeyFactory only has PBKDF2WithHmacSHA256 from API 26
+    static byte[] pbkdf2(byte[] password, byte[] salt, int iterations, int length) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(password, "HmacSHA256"));
+        int hashLength = mac.getMacLength();
+        byte[] out = new byte[length];
+        byte[] u = new byte[hashLength];
+        byte[] t = new byte[hashLength];
+        for (int block = 1, offset = 0; offset < length; block++, offset += hashLength) {
+            mac.update(salt);
+            mac.update(new byte[] {(byte) (block >>> 24), (byte) (block >>> 16), (byte) (block >>> 8), (byte) block});
+            mac.doFinal(u, 0);
+            System.arraycopy(u, 0, t, 0, hashLength);
+            for (int i = 1; i < iterations; i++) {
+                mac.update(u);
+                mac.doFinal(u, 0);
+                for (int j = 0; j < hashLength; j++) {
+                    t[j] ^= u[j];
+                }
+            }
+            System.arraycopy(t, 0, out, offset, Math.min(hashLength, length - offset));
+        }
+        return out;
+    }
+
+    /**
+     * HKDF-SHA256 (RFC 5869).
+     */
+    static byte[] hkdf(byte[] ikm, byte[] salt, byte[] info, int length) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(salt.length > 0 ? salt : new byte[mac.getMacLength()], "HmacSHA256"));
+        byte[] prk = mac.doFinal(ikm);
+
+        mac.init(new SecretKeySpec(prk, "HmacSHA256"));
+        byte[] out = new byte[length];
+        byte[] t = new byte[0];
+        for (int block = 1, offset = 0; offset < length; block++, offset += t.length) {
+            mac.update(t);
+            mac.update(info);
+            mac.update((byte) block);
+            t = mac.doFinal();
+            System.arraycopy(t, 0, out, offset, Math.min(t.length, length - offset));
+        }
+        return out;
+    }
+
+    static String hex(byte[] data) {
+        StringBuilder sb = new StringBuilder(data.length * 2);
+        for (byte b : data) {
+            sb.append(Character.forDigit((b >>> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,143 @@
+package com.p2pvideo.app;
+
+import android.media.AudioDeviceInfo;
+import android.media.AudioManager;
+import android.media.AudioRecordingConfiguration;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * Measures time to audio after a route switch: from the start of the switch
+ * until the route is confirmed and the call's microphone capture is running
+ * on the new route's input device.
+ *
+ * The capture side is watched through AudioRecordingCallback. WebRTC
+ * restarts or reroutes its AudioRecord once the new device is usable, and
+ * that happens later than the route confirmation, most visibly for Bluetooth
+ * SCO. Without an active capture (no call) the switch is not measured.
+ *
+ * Every method runs on the handler passed to the constructor.
+ */
+public class RouteAudioProbe {
+    private static final String TAG = "RouteAudioProbe";
+    // Give up if capture has not moved to the route after this long
+    private static final long TIMEOUT_MS = 5000;
+
+    public interface Callback {
+        /**
+         * @param timeToAudioMs time since the switch started, or -1 if capture
+         *                      did not reach the route in time
+         */
+        void onMeasured(String route, long timeToAudioMs);
+    }
+
+    private final AudioManager audioManager;
+    private final Handler handler;
+    private final AudioManager.AudioRecordingCallback recordingCallback;
+    private final Runnable timeoutRunnable = this::onTimeout;
+
+    private String route;
+    private long startedAt;
+    private boolean confirmed;
+    private Callback callback;
+
+    public RouteAudioProbe(AudioManager audioManager, Handler handler) {
+        this.audioManager = audioManager;
+        this.handler = handler;
+        this.recordingCallback = new AudioManager.AudioRecordingCallback() {
+            @Override
+            public void onRecordingConfigChanged(List<AudioRecordingConfiguration> configs) {
+                check(configs);
+            }
+        };
+        audioManager.registerAudioRecordingCallback(recordingCallback, handler);
+    }
+
+    /**
+     * Starts timing a switch to the route.
+     */
+    public void begin(String route, long startedAt) {
+        cancel();
+        this.route = route;
+        this.startedAt = startedAt;
+    }
+
+    /**
+     * The engine confirmed the route; the result follows once capture is on it.
+     */
+    public void onRouteConfirmed(Callback callback) {
+        if (route == null) {
+            return;
+        }
+        this.confirmed = true;
+        this.callback = callback;
+        if (audioManager.getActiveRecordingConfigurations().isEmpty()) {
+            Log.d(TAG, "No active capture; not measuring " + route);
+            cancel();
+            return;
+        }
+        handler.postDelayed(timeoutRunnable, TIMEOUT_MS);
+        check(audioManager.getActiveRecordingConfigurations());
+    }
+
+    public void cancel() {
+        handler.removeCallbacks(timeoutRunnable);
+        route = null;
+        confirmed = false;
+        callback = null;
+    }
+
+    public void release() {
+        cancel();
+        audioManager.unregisterAudioRecordingCallback(recordingCallback);
+    }
+
+    private void check(List<AudioRecordingConfiguration> configs) {
+        if (!confirmed) {
+            return;
+        }
+        for (AudioRecordingConfiguration config : configs) {
+            AudioDeviceInfo device = config.getAudioDevice();
+            if (device != null && inputCarriesRoute(route, device.getType())) {
+                finish(SystemClock.elapsedRealtime() - startedAt);
+                return;
+            }
+        }
+    }
+
+    private void onTimeout() {
+        Log.w(TAG, "Capture did not reach route " + route);
+        finish(-1);
+    }
+
+    private void finish(long timeToAudioMs) {
+        Callback done = callback;
+        String doneRoute = route;
+        cancel();
+        if (done != null) {
+            done.onMeasured(doneRoute, timeToAudioMs);
+        }
+    }
+
+    /**
+     * Whether an input device is the microphone that goes with the route.
+     * Headphones may have no mic of their own, so the built-in mic counts.
+     */
+    static boolean inputCarriesRoute(String route, int inputType) {
+        boolean bluetooth = inputType == AudioDeviceInfo.TYPE_BLUETOOTH_SCO
+            || inputType == AudioDeviceInfo.TYPE_BLE_HEADSET;
+        switch (route) {
+            case "bluetooth":
+                return bluetooth;
+            case "headphones":
+                return inputType == AudioDeviceInfo.TYPE_WIRED_HEADSET
+                    || inputType == AudioDeviceInfo.TYPE_USB_HEADSET
+                    || inputType == AudioDeviceInfo.TYPE_BUILTIN_MIC;
+            default:
+                return inputType == AudioDeviceInfo.TYPE_BUILTIN_MIC;
+        }
+    }
+}
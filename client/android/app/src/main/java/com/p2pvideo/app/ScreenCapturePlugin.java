@@ -3,9 +3,16 @@ package com.p2pvideo.app;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.hardware.display.DisplayManager;
+import android.hardware.display.VirtualDisplay;
+import android.media.MediaFormat;
 import android.media.projection.MediaProjection;
 import android.media.projection.MediaProjectionManager;
+import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import androidx.activity.result.ActivityResult;
 import android.widget.Toast;
@@ -17,23 +24,46 @@ import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 import com.getcapacitor.annotation.ActivityCallback;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 @CapacitorPlugin(name = "ScreenCapture")
 public class ScreenCapturePlugin extends Plugin {
     private static final String TAG = "ScreenCapturePlugin";
+    private static final String LANE = "ScreenCapture";
     private static final int REQUEST_MEDIA_PROJECTION = 1001;
     private MediaProjectionManager mediaProjectionManager;
-    private MediaProjection mediaProjection;
-    private Intent permissionIntent;
-    private int permissionResultCode;
+    private volatile MediaProjection mediaProjection;
+    private volatile Intent permissionIntent;
+    private volatile int permissionResultCode;
     private PluginCall savedCall;
+    private volatile ScreenEncoder screenEncoder;
+    // Created once per projection and handed from encoder to encoder; a
+    // projection may only ever create one display on API 34+
+    private VirtualDisplay virtualDisplay;
+    private MediaProjection.Callback projectionCallback;
+    // Native quality caps by source, e.g. "pip"; the strictest one wins
+    private final Map<String, Integer> qualityCaps = new ConcurrentHashMap<>();
+    // Long edge of the default native capture size
+    private static final int DEFAULT_MAX_EDGE = 1280;
 
     @Override
     public void load() {
         super.load();
-        mediaProjectionManager = (MediaProjectionManager) getContext().getSystemService(Context.MEDIA_PROJECTION_SERVICE);
         Log.d(TAG, "ScreenCapturePlugin loaded successfully");
     }
 
+    /**
+     * Resolved on first use rather than in load(), keeping the lookup off the
+     * cold-start path for users who never share their screen.
+     */
+    private synchronized MediaProjectionManager getMediaProjectionManager() {
+        if (mediaProjectionManager == null) {
+            mediaProjectionManager = (MediaProjectionManager) getContext().getSystemService(Context.MEDIA_PROJECTION_SERVICE);
+        }
+        return mediaProjectionManager;
+    }
+
     @PluginMethod
     public void requestScreenCapturePermission(PluginCall call) {
         Log.d(TAG, "requestScreenCapturePermission called");
@@ -44,7 +74,7 @@ public class ScreenCapturePlugin extends Plugin {
                 savedCall = call;
                 
                 // Create the screen capture intent
-                Intent intent = mediaProjectionManager.createScreenCaptureIntent();
+                Intent intent = getMediaProjectionManager().createScreenCaptureIntent();
                 Log.d(TAG, "Created screen capture intent, launching permission dialog");
                 
                 // Show toast to user
@@ -80,16 +110,19 @@ public class ScreenCapturePlugin extends Plugin {
             Intent data = result.getData();
             
             if (data != null) {
-                // Store the permission data for later use
-                permissionIntent = data;
-                permissionResultCode = result.getResultCode();
-                
                 Log.d(TAG, "Screen capture permission granted, data received");
                 
-                // Immediately start screen capture
-                try {
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                        mediaProjection = mediaProjectionManager.getMediaProjection(permissionResultCode, permissionIntent);
+                // Immediately start screen capture, off the main thread
+                PluginDispatcher.get().dispatch(this, LANE, call, () -> {
+                    try {
+                        // A fresh consent replaces the projection from an earlier one
+                        stopEncoder();
+                        releaseProjection(false);
+                        
+                        // Store the permission data for later use
+                        permissionIntent = data;
+                        permissionResultCode = result.getResultCode();
+                        ensureProjection();
                         
                         if (mediaProjection != null) {
                             ret.put("granted", true);
@@ -106,20 +139,20 @@ public class ScreenCapturePlugin extends Plugin {
                             ret.put("error", "MediaProjection is null");
                             Log.e(TAG, "MediaProjection is null after creation");
                         }
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error starting media projection", e);
+                        ret.put("granted", true);
+                        ret.put("started", false);
+                        ret.put("error", e.getMessage());
                     }
-                } catch (Exception e) {
-                    Log.e(TAG, "Error starting media projection", e);
-                    ret.put("granted", true);
-                    ret.put("started", false);
-                    ret.put("error", e.getMessage());
-                }
+                    return ret;
+                });
             } else {
                 Log.e(TAG, "Result data is null");
                 ret.put("granted", false);
                 ret.put("error", "Result data is null");
+                call.resolve(ret);
             }
-            
-            call.resolve(ret);
         } else {
             Log.d(TAG, "Screen capture permission denied or cancelled");
             ret.put("granted", false);
@@ -139,20 +172,15 @@ public class ScreenCapturePlugin extends Plugin {
         
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
             if (permissionIntent != null && permissionResultCode == Activity.RESULT_OK) {
-                try {
-                    if (mediaProjection == null) {
-                        mediaProjection = mediaProjectionManager.getMediaProjection(permissionResultCode, permissionIntent);
-                    }
+                PluginDispatcher.get().dispatch(this, LANE, call, () -> {
+                    ensureProjection();
                     
                     JSObject ret = new JSObject();
                     ret.put("success", true);
                     ret.put("message", "Screen capture started");
-                    call.resolve(ret);
                     Log.d(TAG, "Screen capture started successfully");
-                } catch (Exception e) {
-                    call.reject("Failed to start screen capture: " + e.getMessage());
-                    Log.e(TAG, "Error starting screen capture", e);
-                }
+                    return ret;
+                });
             } else {
                 Log.w(TAG, "Permission not granted, requesting again");
                 // Automatically request permission if not granted
@@ -163,29 +191,117 @@ public class ScreenCapturePlugin extends Plugin {
         }
     }
 
+    /**
+     * Stops whatever is encoding. The projection and its consent are kept for
+     * the rest of the session, so sharing again needs no new permission
+     * dialog; releaseScreenCapture ends the session.
+     */
     @PluginMethod
     public void stopScreenCapture(PluginCall call) {
         Log.d(TAG, "stopScreenCapture called");
         
+        PluginDispatcher.get().dispatch(this, LANE, call, () -> {
+            stopEncoder();
+            
+            JSObject ret = new JSObject();
+            ret.put("success", true);
+            return ret;
+        });
+    }
+
+    /**
+     * Ends the capture session: stops the projection and forgets the consent.
+     */
+    @PluginMethod
+    public void releaseScreenCapture(PluginCall call) {
+        PluginDispatcher.get().dispatch(this, LANE, call, () -> {
+            stopEncoder();
+            releaseProjection(true);
+            return null;
+        });
+    }
+
+    /**
+     * Creates the projection from the stored consent, if not done yet. Runs
+     * on the lane.
+     */
+    private void ensureProjection() {
         if (mediaProjection != null) {
+            return;
+        }
+        MediaProjection projection = getMediaProjectionManager().getMediaProjection(permissionResultCode, permissionIntent);
+        if (projection == null) {
+            return;
+        }
+        // Must be registered before the display is created on API 34+
+        projectionCallback = new MediaProjection.Callback() {
+            @Override
+            public void onStop() {
+                PluginDispatcher.get().execute(LANE, "projectionStopped", () -> {
+                    if (mediaProjection != projection) {
+                        return;
+                    }
+                    Log.d(TAG, "MediaProjection stopped");
+                    boolean encoding = screenEncoder != null;
+                    stopEncoder();
+                    releaseProjection(false);
+                    if (encoding) {
+                        JSObject event = new JSObject();
+                        event.put("reason", "projectionStopped");
+                        notifyListeners("nativeCaptureStopped", event);
+                    }
+                });
+            }
+        };
+        projection.registerCallback(projectionCallback, new Handler(Looper.getMainLooper()));
+        mediaProjection = projection;
+    }
+
+    /**
+     * The projection's display, created on first use with no surface
+     * attached. Runs on the lane.
+     */
+    private VirtualDisplay ensureDisplay(ScreenEncoder.Config config) {
+        if (virtualDisplay == null) {
+            virtualDisplay = mediaProjection.createVirtualDisplay(
+                "ScreenShare",
+                config.width, config.height, config.densityDpi,
+                DisplayManager.VIRTUAL_DISPLAY_FLAG_AUTO_MIRROR,
+                null, null, null
+            );
+        }
+        return virtualDisplay;
+    }
+
+    /**
+     * Releases the display and stops the projection; its consent can't be
+     * reused afterwards, so it is forgotten. Runs on the lane.
+     */
+    private void releaseProjection(boolean announce) {
+        if (virtualDisplay != null) {
+            virtualDisplay.release();
+            virtualDisplay = null;
+        }
+        MediaProjection projection = mediaProjection;
+        mediaProjection = null;
+        if (projection != null) {
             try {
-                mediaProjection.stop();
-                mediaProjection = null;
-                permissionIntent = null;
-                permissionResultCode = 0;
+                projection.unregisterCallback(projectionCallback);
+                projection.stop();
                 Log.d(TAG, "Screen capture stopped successfully");
                 
-                getActivity().runOnUiThread(() -> {
-                    Toast.makeText(getContext(), "Screen sharing stopped", Toast.LENGTH_SHORT).show();
-                });
+                if (announce) {
+                    getActivity().runOnUiThread(() -> {
+                        Toast.makeText(getContext(), "Screen sharing stopped", Toast.LENGTH_SHORT).show();
+                    });
+                }
             } catch (Exception e) {
                 Log.e(TAG, "Error stopping screen capture", e);
             }
         }
-        
-        JSObject ret = new JSObject();
-        ret.put("success", true);
-        call.resolve(ret);
+        projectionCallback = null;
+        permissionIntent = null;
+        permissionResultCode = 0;
     }
 
     @PluginMethod
@@ -202,4 +318,196 @@ public class ScreenCapturePlugin extends Plugin {
         ret.put("isActive", mediaProjection != null);
         call.resolve(ret);
     }
+
+    /**
+     * Starts the native encoder on the granted projection. With transport
+     * "page" the frames go to the page over a port (see ScreenFramePort and
+     * nativeScreenShare.js); otherwise they are streamed to the returned
+     * local socket, see ScreenEncoder for the framing.
+     */
+    @PluginMethod
+    public void startNativeCapture(PluginCall call) {
+        if (permissionIntent == null || permissionResultCode != Activity.RESULT_OK) {
+            call.reject("Screen capture permission not granted");
+            return;
+        }
+        boolean toPage = "page".equals(call.getString("transport", "socket"));
+        if (toPage && !ScreenFramePort.isSupported()) {
+            call.reject("Streaming frames to the page is not supported by this WebView");
+            return;
+        }
+
+        DisplayMetrics metrics = getContext().getResources().getDisplayMetrics();
+        float scale = Math.min(1f, (float) DEFAULT_MAX_EDGE / Math.max(metrics.widthPixels, metrics.heightPixels));
+
+        ScreenEncoder.Config config = new ScreenEncoder.Config();
+        config.width = call.getInt("width", Math.round(metrics.widthPixels * scale));
+        config.height = call.getInt("height", Math.round(metrics.heightPixels * scale));
+        config.densityDpi = metrics.densityDpi;
+        config.fps = call.getInt("fps", config.fps);
+        config.bitrate = call.getInt("bitrate", config.bitrate);
+        config.mimeType = "vp8".equalsIgnoreCase(call.getString("codec", "h264"))
+            ? MediaFormat.MIMETYPE_VIDEO_VP8
+            : MediaFormat.MIMETYPE_VIDEO_AVC;
+        config.skipStaticFrames = call.getBoolean("skipStaticFrames", config.skipStaticFrames);
+        boolean adaptive = call.getBoolean("adaptive", true);
+
+        if (!toPage) {
+            startEncoder(call, config, adaptive, null);
+            return;
+        }
+        // The port is created against the WebView, on the main thread
+        getActivity().runOnUiThread(() -> {
+            ScreenFramePort port;
+            try {
+                port = new ScreenFramePort(getBridge().getWebView(), Uri.parse(getBridge().getLocalUrl()));
+            } catch (RuntimeException e) {
+                call.reject("Error: " + e.getMessage());
+                return;
+            }
+            startEncoder(call, config, adaptive, port);
+        });
+    }
+
+    private void startEncoder(PluginCall call, ScreenEncoder.Config config, boolean adaptive, ScreenFramePort port) {
+        PluginDispatcher.get().dispatch(this, LANE, call, () -> {
+            stopEncoder();
+            try {
+                ensureProjection();
+                if (mediaProjection == null) {
+                    throw new IllegalStateException("MediaProjection is null");
+                }
+            } catch (RuntimeException e) {
+                if (port != null) {
+                    port.close();
+                }
+                throw e;
+            }
+
+            ScreenEncoder encoder = new ScreenEncoder(ensureDisplay(config), config, port, new ScreenEncoder.Listener() {
+                @Override
+                public void onStopped(String reason) {
+                    JSObject event = new JSObject();
+                    event.put("reason", reason);
+                    notifyListeners("nativeCaptureStopped", event);
+                }
+
+                @Override
+                public void onQualityChanged(JSObject quality) {
+                    notifyListeners("captureQualityChanged", quality);
+                }
+            });
+            try {
+                encoder.start();
+            } catch (Exception e) {
+                encoder.stop();
+                throw e;
+            }
+            encoder.setGovernor(new ScreenShareGovernor(config.bitrate, adaptive));
+            encoder.setQualityCap(getQualityCap(), null);
+            screenEncoder = encoder;
+
+            JSObject ret = new JSObject();
+            if (port != null) {
+                ret.put("transport", "page");
+                ret.put("handshake", ScreenFramePort.HANDSHAKE);
+            } else {
+                ret.put("transport", "socket");
+                ret.put("socketName", encoder.getSocketName());
+            }
+            ret.put("codec", encoder.getCodecName());
+            ret.put("hardware", encoder.isHardwareCodec());
+            ret.put("width", config.width);
+            ret.put("height", config.height);
+            ret.put("fps", config.fps);
+            ret.put("bitrate", config.bitrate);
+            ret.put("skipStaticFrames", config.skipStaticFrames);
+            return ret;
+        });
+    }
+
+    /**
+     * Stops the encoder; the projection stays, see stopScreenCapture.
+     */
+    @PluginMethod
+    public void stopNativeCapture(PluginCall call) {
+        PluginDispatcher.get().dispatch(this, LANE, call, () -> {
+            stopEncoder();
+            return null;
+        });
+    }
+
+    /**
+     * Feeds the uplink estimate (availableOutgoingBitrate from getStats()) to
+     * the adaptive governor.
+     */
+    @PluginMethod
+    public void updateBandwidthEstimate(PluginCall call) {
+        Double bitrate = call.getDouble("availableOutgoingBitrate");
+        if (bitrate == null) {
+            call.reject("availableOutgoingBitrate is required");
+            return;
+        }
+        ScreenEncoder encoder = screenEncoder;
+        if (encoder != null && encoder.getGovernor() != null) {
+            encoder.getGovernor().setBandwidthEstimate(bitrate.longValue());
+        }
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void getCaptureStats(PluginCall call) {
+        ScreenEncoder encoder = screenEncoder;
+        if (encoder == null) {
+            call.resolve(new JSObject().put("running", false));
+            return;
+        }
+        call.resolve(encoder.getStats());
+    }
+
+    /**
+     * Caps the native capture at a ScreenShareGovernor level on behalf of a
+     * native component; 0 removes that component's cap. Also applies to
+     * captures started later. onApplied runs once the running encoder has
+     * been updated, or right away when nothing is capturing.
+     */
+    public void setQualityCap(String source, int level, Runnable onApplied) {
+        PluginDispatcher.get().execute(LANE, "setQualityCap", () -> {
+            if (level > 0) {
+                qualityCaps.put(source, level);
+            } else {
+                qualityCaps.remove(source);
+            }
+            ScreenEncoder encoder = screenEncoder;
+            if (encoder != null) {
+                encoder.setQualityCap(getQualityCap(), onApplied);
+            } else if (onApplied != null) {
+                onApplied.run();
+            }
+        });
+    }
+
+    private int getQualityCap() {
+        int cap = 0;
+        for (int level : qualityCaps.values()) {
+            cap = Math.max(cap, level);
+        }
+        return cap;
+    }
+
+    private void stopEncoder() {
+        if (screenEncoder != null) {
+            screenEncoder.stop();
+            screenEncoder = null;
+        }
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        super.handleOnDestroy();
+        PluginDispatcher.get().execute(LANE, "release", () -> {
+            stopEncoder();
+            releaseProjection(false);
+        });
+    }
 }
@@ -0,0 +1,806 @@
+package com.p2pvideo.app;
+
+import android.hardware.display.VirtualDisplay;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.net.LocalServerSocket;
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+import android.view.Surface;
+
+import com.getcapacitor.JSObject;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hardware screen encoder owned by ScreenCapturePlugin.
+ *
+ * The plugin's VirtualDisplay renders straight into the MediaCodec input
+ * Surface, so raw frames never reach the Java heap. The display outlives the
+ * encoder: start() points it at the codec and stop() detaches it, so sharing
+ * again reuses the same projection.
+ *
+ * Encoded frames, unlike raw ones, are copied. Each codec output buffer is
+ * copied once into a direct staging buffer and handed back to the codec
+ * right away; the copy is then written to a local socket with Os.write. The
+ * copy is what lets the write happen outside the encoder's lock: a stalled
+ * consumer holds neither the lock nor codec buffers, so it never holds up
+ * stop(), a reconfigure or the encoder itself. Each frame on the socket is a
+ * 16-byte little-endian header (payload size, presentation time in us, codec
+ * flags) followed by the payload. Only this app's uid may connect.
+ *
+ * Given a ScreenFramePort instead, frames go to the page: header and payload
+ * are copied into one array per frame, which the port posts to the WebView.
+ *
+ * When the consumer falls behind, encoded frames queue up; past a small limit
+ * non-key frames are dropped so latency stays bounded. An optional
+ * ScreenShareGovernor watches that backpressure once per tick and resizes
+ * the display, caps the frame rate and retunes the bitrate.
+ *
+ * The VirtualDisplay only emits a frame when the mirrored screen is
+ * recomposed, but a recompose does not mean the content changed (cursor
+ * blink elsewhere, status bar, identical redraws). With skipStaticFrames the
+ * display renders into a FrameDiffStage instead, which forwards a frame to
+ * the codec only when its tile hashes differ from the last one.
+ */
+public class ScreenEncoder {
+    private static final String TAG = "ScreenEncoder";
+    private static final int MAX_QUEUED_FRAMES = 6;
+    private static final int HEADER_SIZE = 16;
+    private static final int I_FRAME_INTERVAL_SECONDS = 2;
+    private static final long GOVERNOR_TICK_MS = 1000;
+    // Frames the page may be decoding at once before the writer holds back
+    private static final int MAX_PAGE_IN_FLIGHT = 3;
+    private static final long PAGE_ANSWER_TIMEOUT_MS = 1000;
+
+    /**
+     * Encoder settings. Width and height are rounded down to even values.
+     */
+    public static class Config {
+        public int width = 1280;
+        public int height = 720;
+        public int densityDpi = 320;
+        public int fps = 30;
+        public int bitrate = 2_500_000;
+        public String mimeType = MediaFormat.MIMETYPE_VIDEO_AVC;
+        public boolean skipStaticFrames = true;
+    }
+
+    /**
+     * Told when the pipeline stops on its own, e.g. on an encoder error.
+     */
+    public interface Listener {
+        void onStopped(String reason);
+
+        void onQualityChanged(JSObject quality);
+    }
+
+    private final VirtualDisplay virtualDisplay;
+    private final Config config;
+    private final Listener listener;
+    private final ScreenFramePort pagePort;
+    private final String socketName;
+    private final int fullWidth;
+    private final int fullHeight;
+    private ScreenShareGovernor governor;
+
+    private HandlerThread encoderThread;
+    private Handler encoderHandler;
+    private volatile MediaCodec codec;
+    private String codecName;
+    private boolean hardwareCodec;
+    private Surface inputSurface;
+    private HandlerThread diffThread;
+    private Handler diffHandler;
+    private FrameDiffStage diffStage;
+    private long skippedBeforeReconfigure;
+
+    private LocalServerSocket serverSocket;
+    private Thread writerThread;
+    private volatile boolean running = false;
+    private boolean released = false;
+    private volatile FileDescriptor clientFd;
+    // A socket client is connected, or the page port is open
+    private volatile boolean consumerConnected = false;
+    // Writer thread only; grown to the largest frame seen
+    private ByteBuffer staging;
+    // Entries are generation * 256 + buffer index, so buffers from before a
+    // codec reconfigure are never touched afterwards
+    private final BlockingQueue<Integer> outputQueue = new ArrayBlockingQueue<>(32);
+    private volatile int generation = 0;
+    private final MediaCodec.BufferInfo[] bufferInfos = new MediaCodec.BufferInfo[32];
+
+    // Stats
+    private final AtomicLong encodedFrames = new AtomicLong();
+    private final AtomicLong sentFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private long fpsWindowStart;
+    private long fpsWindowFrames;
+    private volatile double encodeFps;
+
+    private static final AtomicInteger SOCKET_COUNTER = new AtomicInteger();
+
+    /**
+     * Encodes what virtualDisplay shows. Frames go to pagePort, or to a local
+     * socket when it is null.
+     */
+    public ScreenEncoder(VirtualDisplay virtualDisplay, Config config, ScreenFramePort pagePort, Listener listener) {
+        this.virtualDisplay = virtualDisplay;
+        this.config = config;
+        this.pagePort = pagePort;
+        this.listener = listener;
+        this.socketName = pagePort == null ? "p2pvideo.screen." + SOCKET_COUNTER.incrementAndGet() : null;
+        config.width &= ~1;
+        config.height &= ~1;
+        this.fullWidth = config.width;
+        this.fullHeight = config.height;
+    }
+
+    /**
+     * Enables adaptive quality. Call after start().
+     */
+    public void setGovernor(ScreenShareGovernor governor) {
+        this.governor = governor;
+        encoderHandler.removeCallbacks(governorTick);
+        encoderHandler.postDelayed(governorTick, GOVERNOR_TICK_MS);
+    }
+
+    public ScreenShareGovernor getGovernor() {
+        return governor;
+    }
+
+    /**
+     * Caps quality at the given governor level; 0 lifts the cap. Applied on
+     * the encoder thread, where onApplied runs once the codec is updated.
+     */
+    public void setQualityCap(int cap, Runnable onApplied) {
+        encoderHandler.post(() -> {
+            if (running && governor != null && governor.setQualityCap(cap)) {
+                applyGovernorLevel();
+            }
+            if (onApplied != null) {
+                onApplied.run();
+            }
+        });
+    }
+
+    /**
+     * Name of the local socket, or null when frames go to the page.
+     */
+    public String getSocketName() {
+        return socketName;
+    }
+
+    public String getCodecName() {
+        return codecName;
+    }
+
+    public boolean isHardwareCodec() {
+        return hardwareCodec;
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    public void start() throws IOException {
+        encoderThread = new HandlerThread("ScreenEncoder");
+        encoderThread.start();
+        encoderHandler = new Handler(encoderThread.getLooper());
+
+        for (int i = 0; i < bufferInfos.length; i++) {
+            bufferInfos[i] = new MediaCodec.BufferInfo();
+        }
+
+        codecName = selectEncoder(config.mimeType);
+        codec = codecName != null
+            ? MediaCodec.createByCodecName(codecName)
+            : MediaCodec.createEncoderByType(config.mimeType);
+        codecName = codec.getName();
+        codec.setCallback(codecCallback, encoderHandler);
+        codec.configure(buildFormat(), null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        inputSurface = codec.createInputSurface();
+
+        running = true;
+        if (pagePort != null) {
+            pagePort.setKeyFrameRequestHandler(() -> encoderHandler.post(this::requestKeyFrame));
+            consumerConnected = true;
+            writerThread = new Thread(this::pageWriterLoop, "ScreenEncoderWriter");
+        } else {
+            serverSocket = new LocalServerSocket(socketName);
+            writerThread = new Thread(this::writerLoop, "ScreenEncoderWriter");
+        }
+        writerThread.start();
+
+        codec.start();
+        fpsWindowStart = SystemClock.elapsedRealtime();
+
+        if (config.skipStaticFrames) {
+            // Hashing a frame takes a few ms; keep it off the codec callback thread
+            diffThread = new HandlerThread("ScreenFrameDiff");
+            diffThread.start();
+            diffHandler = new Handler(diffThread.getLooper());
+            diffStage = createDiffStage();
+        }
+
+        virtualDisplay.resize(config.width, config.height, config.densityDpi);
+        virtualDisplay.setSurface(displaySurface());
+        Log.d(TAG, "Encoding " + config.width + "x" + config.height + "@" + config.fps
+            + " with " + codecName + " to " + (pagePort != null ? "page" : socketName));
+    }
+
+    public void stop() {
+        running = false;
+        // Unblock a write stuck on a stalled consumer before taking the lock
+        FileDescriptor fd = clientFd;
+        if (fd != null) {
+            try {
+                Os.shutdown(fd, OsConstants.SHUT_RDWR);
+            } catch (ErrnoException ignored) {
+            }
+        }
+        synchronized (this) {
+            release();
+        }
+    }
+
+    private void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+
+        // Detach before the surfaces go away; the display itself is the plugin's
+        virtualDisplay.setSurface(null);
+        if (pagePort != null) {
+            pagePort.close();
+        }
+        if (writerThread != null) {
+            writerThread.interrupt();
+        }
+        if (serverSocket != null) {
+            // close() does not unblock accept() on Android; poke it with a throwaway connection
+            try (LocalSocket wakeup = new LocalSocket()) {
+                wakeup.connect(new LocalSocketAddress(socketName));
+            } catch (IOException ignored) {
+            }
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing socket", e);
+            }
+        }
+        if (codec != null) {
+            try {
+                codec.stop();
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "Codec already stopped", e);
+            }
+            codec.release();
+            codec = null;
+        }
+        if (diffStage != null) {
+            diffStage.release();
+            diffStage = null;
+        }
+        if (diffThread != null) {
+            diffThread.quitSafely();
+        }
+        if (inputSurface != null) {
+            inputSurface.release();
+            inputSurface = null;
+        }
+        outputQueue.clear();
+        if (encoderThread != null) {
+            encoderHandler.removeCallbacks(governorTick);
+            encoderThread.quitSafely();
+        }
+    }
+
+    public JSObject getStats() {
+        JSObject ret = new JSObject();
+        ret.put("running", running);
+        ret.put("codec", codecName);
+        ret.put("hardware", hardwareCodec);
+        ret.put("width", config.width);
+        ret.put("height", config.height);
+        ret.put("targetFps", config.fps);
+        ret.put("bitrate", config.bitrate);
+        ret.put("encodeFps", encodeFps);
+        ret.put("encodedFrames", encodedFrames.get());
+        ret.put("sentFrames", sentFrames.get());
+        ret.put("droppedFrames", droppedFrames.get());
+        ret.put("sentBytes", sentBytes.get());
+        ret.put("queueDepth", outputQueue.size());
+        ret.put("maxQueueDepth", maxQueueDepth.get());
+        ret.put("transport", pagePort != null ? "page" : "socket");
+        ret.put("clientConnected", consumerConnected);
+        if (governor != null) {
+            ret.put("qualityLevel", governor.getLevelIndex());
+            ret.put("qualityCap", governor.getQualityCap());
+            ret.put("bandwidthEstimate", governor.getBandwidthEstimate());
+        }
+        FrameDiffStage stage = diffStage;
+        ret.put("skipStaticFrames", stage != null);
+        if (stage != null) {
+            ret.put("staticFramesSkipped", skippedBeforeReconfigure + stage.getSkippedFrames());
+            ret.put("changedTiles", stage.getLastChangedTiles());
+            ret.put("tileCount", stage.getTileCount());
+            int[] dirty = stage.getLastDirtyRect();
+            if (dirty != null) {
+                JSObject rect = new JSObject();
+                rect.put("left", dirty[0]);
+                rect.put("top", dirty[1]);
+                rect.put("right", dirty[2]);
+                rect.put("bottom", dirty[3]);
+                ret.put("dirtyRect", rect);
+            }
+        }
+        return ret;
+    }
+
+    private final Runnable governorTick = new Runnable() {
+        @Override
+        public void run() {
+            if (!running || governor == null) {
+                return;
+            }
+            if (governor.evaluate(outputQueue.size(), droppedFrames.get())) {
+                applyGovernorLevel();
+            }
+            encoderHandler.postDelayed(this, GOVERNOR_TICK_MS);
+        }
+    };
+
+    private void applyGovernorLevel() {
+        ScreenShareGovernor.Level level = governor.getLevel();
+        int width = Math.round(fullWidth * level.scale) & ~1;
+        int height = Math.round(fullHeight * level.scale) & ~1;
+        int bitrate = governor.getTargetBitrate();
+
+        try {
+            if (width != config.width || height != config.height || level.fps != config.fps) {
+                config.width = width;
+                config.height = height;
+                config.fps = level.fps;
+                config.bitrate = bitrate;
+                reconfigure();
+            } else if (bitrate != config.bitrate) {
+                config.bitrate = bitrate;
+                Bundle params = new Bundle();
+                params.putInt(MediaCodec.PARAMETER_KEY_VIDEO_BITRATE, bitrate);
+                codec.setParameters(params);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Could not apply quality level", e);
+            return;
+        }
+
+        Log.d(TAG, "Quality level " + governor.getLevelIndex() + " (" + governor.getLastReason() + "): "
+            + width + "x" + height + "@" + level.fps + " " + bitrate + "bps");
+
+        JSObject quality = new JSObject();
+        quality.put("level", governor.getLevelIndex());
+        quality.put("reason", governor.getLastReason());
+        quality.put("width", width);
+        quality.put("height", height);
+        quality.put("fps", level.fps);
+        quality.put("bitrate", bitrate);
+        listener.onQualityChanged(quality);
+    }
+
+    /**
+     * Restarts the codec with the current config and points the display at its
+     * new input surface. Runs on the encoder thread.
+     */
+    private synchronized void reconfigure() throws IOException {
+        if (released) {
+            return;
+        }
+        generation++;
+        drainQueue();
+
+        codec.stop();
+        codec.setCallback(codecCallback, encoderHandler);
+        codec.configure(buildFormat(), null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        Surface previousSurface = inputSurface;
+        inputSurface = codec.createInputSurface();
+        codec.start();
+
+        FrameDiffStage previousStage = diffStage;
+        if (previousStage != null) {
+            skippedBeforeReconfigure += previousStage.getSkippedFrames();
+            diffStage = createDiffStage();
+        }
+
+        virtualDisplay.resize(config.width, config.height, config.densityDpi);
+        virtualDisplay.setSurface(displaySurface());
+        if (previousStage != null) {
+            previousStage.release();
+        }
+        previousSurface.release();
+    }
+
+    private FrameDiffStage createDiffStage() {
+        try {
+            return new FrameDiffStage(config.width, config.height, inputSurface, diffHandler,
+                () -> encoderHandler.post(this::bypassDiffStage));
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Frame diffing unavailable, encoding every frame", e);
+            return null;
+        }
+    }
+
+    /**
+     * Surface the VirtualDisplay renders into: the diff stage when present,
+     * otherwise the codec directly.
+     */
+    private Surface displaySurface() {
+        return diffStage != null ? diffStage.getInputSurface() : inputSurface;
+    }
+
+    private synchronized void bypassDiffStage() {
+        if (released || diffStage == null) {
+            return;
+        }
+        Log.w(TAG, "Frame diffing disabled, encoding every frame");
+        skippedBeforeReconfigure += diffStage.getSkippedFrames();
+        FrameDiffStage stage = diffStage;
+        diffStage = null;
+        virtualDisplay.setSurface(inputSurface);
+        stage.release();
+    }
+
+    private MediaFormat buildFormat() {
+        MediaFormat format = MediaFormat.createVideoFormat(config.mimeType, config.width, config.height);
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, config.bitrate);
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, config.fps);
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, I_FRAME_INTERVAL_SECONDS);
+        format.setInteger(MediaFormat.KEY_BITRATE_MODE, MediaCodecInfo.EncoderCapabilities.BITRATE_MODE_CBR);
+        // Lowest latency the codec offers; ignored where unsupported
+        format.setInteger(MediaFormat.KEY_PRIORITY, 0);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            format.setFloat(MediaFormat.KEY_MAX_FPS_TO_ENCODER, config.fps);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            format.setInteger(MediaFormat.KEY_LOW_LATENCY, 1);
+        }
+        return format;
+    }
+
+    /**
+     * Prefers a hardware encoder that accepts the configured size.
+     */
+    private String selectEncoder(String mimeType) {
+        MediaCodecList codecList = new MediaCodecList(MediaCodecList.REGULAR_CODECS);
+        String fallback = null;
+        for (MediaCodecInfo info : codecList.getCodecInfos()) {
+            if (!info.isEncoder()) {
+                continue;
+            }
+            for (String type : info.getSupportedTypes()) {
+                if (!type.equalsIgnoreCase(mimeType)) {
+                    continue;
+                }
+                MediaCodecInfo.VideoCapabilities video =
+                    info.getCapabilitiesForType(type).getVideoCapabilities();
+                if (video == null || !video.isSizeSupported(config.width, config.height)) {
+                    continue;
+                }
+                boolean hardware = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                    ? info.isHardwareAccelerated()
+                    : !info.getName().startsWith("OMX.google.") && !info.getName().startsWith("c2.android.");
+                if (hardware) {
+                    hardwareCodec = true;
+                    return info.getName();
+                }
+                if (fallback == null) {
+                    fallback = info.getName();
+                }
+            }
+        }
+        return fallback;
+    }
+
+    private final MediaCodec.Callback codecCallback = new MediaCodec.Callback() {
+        @Override
+        public void onInputBufferAvailable(MediaCodec mediaCodec, int index) {
+            // Input arrives through the Surface
+        }
+
+        @Override
+        public void onOutputBufferAvailable(MediaCodec mediaCodec, int index, MediaCodec.BufferInfo info) {
+            encodedFrames.incrementAndGet();
+            updateFps();
+
+            boolean keyFrame = (info.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
+            boolean config = (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+            if (!consumerConnected
+                || (outputQueue.size() >= MAX_QUEUED_FRAMES && !keyFrame && !config)
+                || index >= bufferInfos.length) {
+                droppedFrames.incrementAndGet();
+                mediaCodec.releaseOutputBuffer(index, false);
+                return;
+            }
+
+            bufferInfos[index].set(info.offset, info.size, info.presentationTimeUs, info.flags);
+            if (!outputQueue.offer(generation * 256 + index)) {
+                droppedFrames.incrementAndGet();
+                mediaCodec.releaseOutputBuffer(index, false);
+                return;
+            }
+            int depth = outputQueue.size();
+            if (depth > maxQueueDepth.get()) {
+                maxQueueDepth.set(depth);
+            }
+
+            NativeEventBus.get().publish(NativeEventSchema.ENCODED_FRAME, record ->
+                record.putInt(info.size).putLong(info.presentationTimeUs).putInt(info.flags).putInt(depth));
+        }
+
+        @Override
+        public void onError(MediaCodec mediaCodec, MediaCodec.CodecException e) {
+            Log.e(TAG, "Encoder error", e);
+            stop();
+            listener.onStopped("encoderError");
+        }
+
+        @Override
+        public void onOutputFormatChanged(MediaCodec mediaCodec, MediaFormat format) {
+            Log.d(TAG, "Output format: " + format);
+        }
+    };
+
+    private void updateFps() {
+        fpsWindowFrames++;
+        long now = SystemClock.elapsedRealtime();
+        long elapsed = now - fpsWindowStart;
+        if (elapsed >= 1000) {
+            encodeFps = fpsWindowFrames * 1000.0 / elapsed;
+            fpsWindowFrames = 0;
+            fpsWindowStart = now;
+        }
+    }
+
+    /**
+     * Accepts one consumer at a time and streams queued codec buffers to it.
+     */
+    private void writerLoop() {
+        ByteBuffer header = ByteBuffer.allocateDirect(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        while (running) {
+            LocalSocket client;
+            try {
+                client = serverSocket.accept();
+            } catch (IOException e) {
+                if (running) {
+                    Log.w(TAG, "Accept failed", e);
+                }
+                return;
+            }
+            if (!isOwnProcess(client)) {
+                closeQuietly(client);
+                continue;
+            }
+            Log.d(TAG, "Consumer connected to " + socketName);
+            clientFd = client.getFileDescriptor();
+            consumerConnected = true;
+            // A new consumer needs a key frame to start decoding
+            requestKeyFrame();
+
+            try {
+                while (running) {
+                    Integer entry = outputQueue.poll(500, TimeUnit.MILLISECONDS);
+                    if (entry == null) {
+                        continue;
+                    }
+                    writeFrame(entry, header);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (ErrnoException | IOException e) {
+                Log.d(TAG, "Consumer disconnected: " + e.getMessage());
+            } finally {
+                consumerConnected = false;
+                clientFd = null;
+                drainQueue();
+                closeQuietly(client);
+            }
+        }
+    }
+
+    /**
+     * Abstract-namespace sockets are reachable by any app on the device, so
+     * only a peer running as this app's uid gets the screen.
+     */
+    private boolean isOwnProcess(LocalSocket client) {
+        try {
+            int uid = client.getPeerCredentials().getUid();
+            if (uid == Process.myUid()) {
+                return true;
+            }
+            Log.w(TAG, "Rejected consumer with uid " + uid + " on " + socketName);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read consumer credentials", e);
+        }
+        return false;
+    }
+
+    private static void closeQuietly(LocalSocket client) {
+        try {
+            client.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Streams queued codec buffers to the page, holding back while it is
+     * still busy with earlier frames.
+     */
+    private void pageWriterLoop() {
+        try {
+            while (running && pagePort.awaitCapacity(MAX_PAGE_IN_FLIGHT, PAGE_ANSWER_TIMEOUT_MS)) {
+                Integer entry = outputQueue.poll(500, TimeUnit.MILLISECONDS);
+                if (entry == null) {
+                    continue;
+                }
+                byte[][] frame = new byte[1][];
+                takeFrame(entry, (payload, info) -> {
+                    frame[0] = new byte[HEADER_SIZE + info.size];
+                    ByteBuffer.wrap(frame[0]).order(ByteOrder.LITTLE_ENDIAN)
+                        .putInt(info.size).putLong(info.presentationTimeUs).putInt(info.flags)
+                        .put(payload);
+                });
+                if (frame[0] != null) {
+                    pagePort.post(frame[0]);
+                    sentFrames.incrementAndGet();
+                    sentBytes.addAndGet(frame[0].length - HEADER_SIZE);
+                }
+            }
+        } catch (InterruptedException ignored) {
+        } catch (RuntimeException e) {
+            // The WebView refused the message, e.g. the page went away
+            Log.w(TAG, "Page port failed", e);
+            encoderHandler.post(() -> {
+                stop();
+                listener.onStopped("consumerClosed");
+            });
+        } finally {
+            consumerConnected = false;
+        }
+    }
+
+    /**
+     * Copies a codec output buffer out of the codec.
+     */
+    private interface FrameCopy {
+        void copy(ByteBuffer payload, MediaCodec.BufferInfo info);
+    }
+
+    /**
+     * Hands the queued codec buffer to copy and releases it, all under the
+     * lock. Returns false, without calling copy, if the entry predates a
+     * reconfigure or the codec is gone.
+     */
+    private boolean takeFrame(int entry, FrameCopy copy) {
+        synchronized (this) {
+            MediaCodec activeCodec = codec;
+            if (activeCodec == null || entry / 256 != generation) {
+                return false;
+            }
+            int index = entry % 256;
+            MediaCodec.BufferInfo info = bufferInfos[index];
+            try {
+                ByteBuffer payload = activeCodec.getOutputBuffer(index);
+                if (payload == null) {
+                    return false;
+                }
+                payload.position(info.offset).limit(info.offset + info.size);
+                copy.copy(payload, info);
+                return true;
+            } catch (IllegalStateException e) {
+                // Codec was stopped under us
+                return false;
+            } finally {
+                try {
+                    activeCodec.releaseOutputBuffer(index, false);
+                } catch (IllegalStateException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the codec buffer into the staging buffer, then writes the copy
+     * without holding the lock. Writing straight from the codec buffer would
+     * keep it, and the lock, for as long as the consumer takes to read.
+     */
+    private void writeFrame(int entry, ByteBuffer header) throws ErrnoException, IOException {
+        boolean taken = takeFrame(entry, (payload, info) -> {
+            int size = info.size;
+            if (staging == null || staging.capacity() < size) {
+                staging = ByteBuffer.allocateDirect(size + size / 2);
+            }
+            staging.clear();
+            staging.put(payload).flip();
+
+            header.clear();
+            header.putInt(size).putLong(info.presentationTimeUs).putInt(info.flags).flip();
+        });
+        if (!taken) {
+            return;
+        }
+
+        int size = staging.remaining();
+        writeFully(header);
+        writeFully(staging);
+        sentFrames.incrementAndGet();
+        sentBytes.addAndGet(size);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws ErrnoException, IOException {
+        FileDescriptor fd = clientFd;
+        if (fd == null) {
+            throw new IOException("No consumer");
+        }
+        while (buffer.hasRemaining()) {
+            // Os.write advances the buffer position and reads direct buffers in place
+            Os.write(fd, buffer);
+        }
+    }
+
+    private void drainQueue() {
+        Integer entry;
+        while ((entry = outputQueue.poll()) != null) {
+            droppedFrames.incrementAndGet();
+            MediaCodec activeCodec = codec;
+            if (activeCodec != null && entry / 256 == generation) {
+                try {
+                    activeCodec.releaseOutputBuffer(entry % 256, false);
+                } catch (IllegalStateException ignored) {
+                }
+            }
+        }
+    }
+
+    private void requestKeyFrame() {
+        FrameDiffStage stage = diffStage;
+        if (stage != null) {
+            // The encoder only emits the key frame once it gets another input frame
+            stage.forceNextFrame();
+        }
+        MediaCodec activeCodec = codec;
+        if (activeCodec != null) {
+            Bundle params = new Bundle();
+            params.putInt(MediaCodec.PARAMETER_KEY_REQUEST_SYNC_FRAME, 0);
+            try {
+                activeCodec.setParameters(params);
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "Could not request key frame", e);
+            }
+        }
+    }
+}
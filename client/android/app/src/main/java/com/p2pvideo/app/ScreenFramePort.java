@@ -0,0 +1,133 @@
+package com.p2pvideo.app;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+import android.webkit.WebView;
+
+import androidx.webkit.WebMessageCompat;
+import androidx.webkit.WebMessagePortCompat;
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
+
+/**
+ * Carries ScreenEncoder output to the page, which decodes it with WebCodecs
+ * and sends the resulting track over WebRTC (see nativeScreenShare.js).
+ *
+ * Every message is one frame as an ArrayBuffer: the 16-byte header
+ * ScreenEncoder also uses on its socket, then the payload. The page answers
+ * with the running count of frames it has finished with, or "keyframe" when
+ * its decoder needs to resync. The writer holds back while too many frames
+ * are in flight, so a page that falls behind shows up as encoder queue
+ * depth and drives ScreenShareGovernor like a slow socket would.
+ */
+public final class ScreenFramePort {
+    private static final String TAG = "ScreenFramePort";
+    // Sent with the port so the page can tell it apart from other messages
+    public static final String HANDSHAKE = "p2pvideo-screen-frames";
+    private static final String KEY_FRAME_REQUEST = "keyframe";
+
+    private final WebMessagePortCompat port;
+    private Runnable keyFrameRequestHandler;
+    private boolean closed = false;
+
+    // Guarded by this
+    private long posted = 0;
+    private long handled = 0;
+    // Frames whose answer never came; see awaitCapacity
+    private long writtenOff = 0;
+
+    public static boolean isSupported() {
+        return NativeEventBus.isSupported()
+            && WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_ARRAY_BUFFER)
+            && WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_PORT_SET_MESSAGE_CALLBACK);
+    }
+
+    /**
+     * Hands a fresh port to the page at origin. Must run on the main thread.
+     */
+    public ScreenFramePort(WebView webView, Uri origin) {
+        WebMessagePortCompat[] ports = WebViewCompat.createWebMessageChannel(webView);
+        port = ports[0];
+        port.setWebMessageCallback(new WebMessagePortCompat.WebMessageCallbackCompat() {
+            @Override
+            public void onMessage(WebMessagePortCompat source, WebMessageCompat message) {
+                onPageMessage(message.getData());
+            }
+        });
+        WebViewCompat.postWebMessage(webView,
+            new WebMessageCompat(HANDSHAKE, new WebMessagePortCompat[] {ports[1]}),
+            origin);
+    }
+
+    /**
+     * Runs on the main thread when the page asks for a key frame.
+     */
+    public synchronized void setKeyFrameRequestHandler(Runnable handler) {
+        keyFrameRequestHandler = handler;
+    }
+
+    private void onPageMessage(String data) {
+        Runnable keyFrameRequest = null;
+        synchronized (this) {
+            if (KEY_FRAME_REQUEST.equals(data)) {
+                keyFrameRequest = keyFrameRequestHandler;
+            } else {
+                try {
+                    handled = Long.parseLong(data);
+                } catch (NumberFormatException e) {
+                    Log.w(TAG, "Unexpected message from page: " + data);
+                }
+                notifyAll();
+            }
+        }
+        if (keyFrameRequest != null) {
+            keyFrameRequest.run();
+        }
+    }
+
+    /**
+     * Blocks while maxInFlight frames are unanswered. An answer that does
+     * not come within timeoutMs is written off, so a frame the page lost
+     * can't stall the stream. Returns false once the port is closed.
+     */
+    public synchronized boolean awaitCapacity(int maxInFlight, long timeoutMs) throws InterruptedException {
+        long deadline = SystemClock.uptimeMillis() + timeoutMs;
+        while (!closed && posted - handled - writtenOff >= maxInFlight) {
+            long remaining = deadline - SystemClock.uptimeMillis();
+            if (remaining <= 0) {
+                Log.w(TAG, "Page stopped answering, writing off " + (posted - handled - writtenOff) + " frames");
+                writtenOff = posted - handled;
+                break;
+            }
+            wait(remaining);
+        }
+        return !closed;
+    }
+
+    /**
+     * Posts one frame: header and payload in a single array.
+     */
+    public void post(byte[] frame) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            posted++;
+        }
+        port.postMessage(new WebMessageCompat(frame));
+    }
+
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        if (WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_PORT_CLOSE)) {
+            port.close();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.p2pvideo.app;
+
+/**
+ * Picks the screen-share resolution, frame rate and bitrate from encoder
+ * backpressure and the uplink bandwidth estimate reported by JS.
+ *
+ * Steps down one level as soon as the encoder queue backs up, frames get
+ * dropped or the estimate no longer covers the current level. Steps back up
+ * only after several healthy ticks with headroom, so it does not oscillate.
+ * A quality cap (e.g. while the app is in picture-in-picture) pins the level
+ * at or below a given step regardless of conditions. Without adaptive mode
+ * only the cap is applied.
+ * Pure Java; ScreenEncoder calls evaluate() once per tick.
+ */
+public class ScreenShareGovernor {
+    // Fraction of the estimated uplink the encoder may use
+    private static final double BANDWIDTH_UTILIZATION = 0.8;
+    // The next level up needs this much more headroom than its minimum
+    private static final double STEP_UP_HEADROOM = 1.3;
+    static final int HEALTHY_TICKS_TO_STEP_UP = 5;
+    static final int BACKPRESSURE_QUEUE_DEPTH = 3;
+    // The target bitrate never drops below this, even at the lowest level
+    static final int MIN_TARGET_BITRATE = 60_000;
+    // Bitrate changes smaller than this are not worth a codec parameter update
+    private static final double BITRATE_CHANGE_THRESHOLD = 0.1;
+
+    public static final class Level {
+        public final float scale;
+        public final int fps;
+        public final int minBitrate;
+
+        Level(float scale, int fps, int minBitrate) {
+            this.scale = scale;
+            this.fps = fps;
+            this.minBitrate = minBitrate;
+        }
+    }
+
+    static final Level[] LEVELS = {
+        new Level(1.0f, 30, 1_500_000),
+        new Level(1.0f, 15, 800_000),
+        new Level(0.75f, 15, 500_000),
+        new Level(0.5f, 10, 250_000),
+        new Level(0.5f, 5, 120_000),
+        new Level(0.33f, 5, 0),
+    };
+
+    private final int maxBitrate;
+    private final boolean adaptive;
+    private volatile long bandwidthEstimate = 0;
+
+    private int levelIndex = 0;
+    private int qualityCap = 0;
+    private int levelBeforeCap = 0;
+    private int targetBitrate;
+    private int healthyTicks = 0;
+    private long lastDroppedFrames = 0;
+    private String lastReason = "initial";
+
+    public ScreenShareGovernor(int maxBitrate) {
+        this(maxBitrate, true);
+    }
+
+    public ScreenShareGovernor(int maxBitrate, boolean adaptive) {
+        this.maxBitrate = maxBitrate;
+        this.adaptive = adaptive;
+        this.targetBitrate = maxBitrate;
+    }
+
+    /**
+     * Available outgoing bitrate in bps, e.g. from RTCIceCandidatePairStats.
+     * Zero or less means unknown.
+     */
+    public void setBandwidthEstimate(long bitsPerSecond) {
+        bandwidthEstimate = bitsPerSecond;
+    }
+
+    public long getBandwidthEstimate() {
+        return bandwidthEstimate;
+    }
+
+    public int getLevelIndex() {
+        return levelIndex;
+    }
+
+    public Level getLevel() {
+        return LEVELS[levelIndex];
+    }
+
+    public int getTargetBitrate() {
+        return targetBitrate;
+    }
+
+    public String getLastReason() {
+        return lastReason;
+    }
+
+    public int getQualityCap() {
+        return qualityCap;
+    }
+
+    /**
+     * Keeps the level at index cap or lower quality; 0 lifts the cap. When
+     * the cap is lifted the level returns to where it was before, unless
+     * conditions pushed it further down meanwhile. Returns true when the
+     * level changed and should be applied.
+     */
+    public boolean setQualityCap(int cap) {
+        cap = Math.max(0, Math.min(cap, LEVELS.length - 1));
+        if (cap == qualityCap) {
+            return false;
+        }
+        int previousLevel = levelIndex;
+        if (cap > qualityCap) {
+            if (qualityCap == 0) {
+                levelBeforeCap = levelIndex;
+            }
+            levelIndex = Math.max(levelIndex, cap);
+            lastReason = "capped";
+        } else {
+            int restored = levelIndex == qualityCap ? levelBeforeCap : levelIndex;
+            levelIndex = Math.max(cap, restored);
+            lastReason = "uncapped";
+        }
+        qualityCap = cap;
+        healthyTicks = 0;
+        return levelIndex != previousLevel;
+    }
+
+    /**
+     * Feeds one tick of encoder stats. Returns true when the level or the
+     * target bitrate changed and should be applied.
+     */
+    public boolean evaluate(int queueDepth, long totalDroppedFrames) {
+        long droppedSinceLastTick = totalDroppedFrames - lastDroppedFrames;
+        lastDroppedFrames = totalDroppedFrames;
+        if (!adaptive) {
+            return false;
+        }
+
+        long estimate = bandwidthEstimate;
+        int budget = estimate > 0
+            ? (int) Math.min(maxBitrate, estimate * BANDWIDTH_UTILIZATION)
+            : maxBitrate;
+
+        int previousLevel = levelIndex;
+        int previousBitrate = targetBitrate;
+
+        boolean backpressure = queueDepth >= BACKPRESSURE_QUEUE_DEPTH || droppedSinceLastTick > 0;
+        boolean underBudget = budget < LEVELS[levelIndex].minBitrate;
+
+        if ((backpressure || underBudget) && levelIndex < LEVELS.length - 1) {
+            levelIndex++;
+            healthyTicks = 0;
+            lastReason = backpressure ? "backpressure" : "bandwidth";
+        } else if (backpressure) {
+            healthyTicks = 0;
+        } else if (levelIndex > qualityCap) {
+            healthyTicks++;
+            Level up = LEVELS[levelIndex - 1];
+            if (healthyTicks >= HEALTHY_TICKS_TO_STEP_UP && budget >= up.minBitrate * STEP_UP_HEADROOM) {
+                levelIndex--;
+                healthyTicks = 0;
+                lastReason = "recovered";
+            }
+        }
+
+        // Backpressure means the encoder is already producing more than we can ship
+        targetBitrate = backpressure ? Math.min(budget, (int) (previousBitrate * 0.7)) : budget;
+        targetBitrate = Math.max(targetBitrate, MIN_TARGET_BITRATE);
+
+        boolean bitrateChanged = Math.abs(targetBitrate - previousBitrate)
+            > previousBitrate * BITRATE_CHANGE_THRESHOLD;
+        if (!bitrateChanged) {
+            targetBitrate = previousBitrate;
+        }
+        return levelIndex != previousLevel || bitrateChanged;
+    }
+}
@@ -0,0 +1,245 @@
+package com.p2pvideo.app;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Coalesces outgoing WebRTC signals into fewer signaling messages.
+ *
+ * Trickle ICE produces a burst of candidates, each of which used to be its
+ * own emit and server relay. Candidates for the same event and target are
+ * held for WINDOW_MS and sent together; offers, answers and anything else
+ * go at once, taking any held candidates with them so order is kept.
+ *
+ * The batch goes where the single signal used to, so the server relays it
+ * unchanged. Receivers unpack it in nativeSignaling.js:
+ *
+ *   signal                                   one signal, as before
+ *   {"v":1,"batch":[signal, ...]}            several signals
+ *   {"v":1,"z":"<base64 zlib of [signal, ...]>"}  compressed, when it pays
+ *
+ * Signals are opaque here: with E2E on they are already ciphertext and
+ * compression is skipped as it never pays.
+ *
+ * Also times call setup, from the first offer sent or received to the
+ * peer connection reporting connected.
+ *
+ * Runs on SignalingClient's executor thread; the stats getters may be read
+ * from any thread. Pure Java; unit tested.
+ */
+final class SignalBatcher {
+    interface Sink {
+        void emit(String event, JSONArray args);
+    }
+
+    static final int VERSION = 1;
+    // Long enough to catch a gathering burst, short next to an RTT
+    static final long WINDOW_MS = 40;
+    static final int MAX_BATCH = 24;
+    // Below this the base64 overhead eats the gain
+    static final int COMPRESS_MIN_CHARS = 512;
+    static final double COMPRESS_MAX_RATIO = 0.9;
+    static final double[] SETUP_BOUNDS_MS = {250, 500, 1000, 2000, 4000, 8000, 16000};
+
+    private static final class Pending {
+        final String event;
+        final JSONObject routing;
+        final String signalKey;
+        final JSONArray signals = new JSONArray();
+        ScheduledFuture<?> flush;
+
+        Pending(String event, JSONObject routing, String signalKey) {
+            this.event = event;
+            this.routing = routing;
+            this.signalKey = signalKey;
+        }
+    }
+
+    private final ScheduledExecutorService executor;
+    private final Sink sink;
+    private final Map<String, Pending> pending = new HashMap<>();
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final byte[] deflateChunk = new byte[4096];
+    private final MetricHistogram setupMs = new MetricHistogram("callSetupMs", SETUP_BOUNDS_MS, 16);
+    private long setupStartedAt = -1;
+
+    private volatile long signalsQueued = 0;
+    private volatile long messagesSent = 0;
+    private volatile long compressedMessages = 0;
+    private volatile long rawChars = 0;
+    private volatile long sentChars = 0;
+    private volatile long lastSetupMs = -1;
+
+    SignalBatcher(ScheduledExecutorService executor, Sink sink) {
+        this.executor = executor;
+        this.sink = sink;
+    }
+
+    /**
+     * Queues one signal for event, sent as routing plus signalKey: signal.
+     * kind is the plaintext signal's type ("offer", "answer", "candidate",
+     * ...); only candidates wait for the window.
+     */
+    void queue(String event, JSONObject routing, String signalKey, Object signal, String kind, long now) {
+        if ("offer".equals(kind) && setupStartedAt < 0) {
+            setupStartedAt = now;
+        }
+        String key = event + '\n' + signalKey + '\n' + routing;
+        Pending batch = pending.get(key);
+        if (batch == null) {
+            batch = new Pending(event, routing, signalKey);
+            pending.put(key, batch);
+        }
+        batch.signals.put(signal);
+        signalsQueued++;
+
+        if (!"candidate".equals(kind) || batch.signals.length() >= MAX_BATCH) {
+            flush(key);
+        } else if (batch.flush == null) {
+            String flushKey = key;
+            batch.flush = executor.schedule(() -> flush(flushKey), WINDOW_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends everything held, e.g. before the connection goes away.
+     */
+    void flushAll() {
+        for (String key : new ArrayList<>(pending.keySet())) {
+            flush(key);
+        }
+    }
+
+    /**
+     * Drops everything held and frees the compressor. Unusable afterwards.
+     */
+    void release() {
+        for (Pending batch : pending.values()) {
+            if (batch.flush != null) {
+                batch.flush.cancel(false);
+            }
+        }
+        pending.clear();
+        deflater.end();
+    }
+
+    private void flush(String key) {
+        Pending batch = pending.remove(key);
+        if (batch == null) {
+            return;
+        }
+        if (batch.flush != null) {
+            batch.flush.cancel(false);
+        }
+        try {
+            JSONObject payload = new JSONObject(batch.routing.toString());
+            payload.put(batch.signalKey, pack(batch.signals));
+            messagesSent++;
+            sink.emit(batch.event, new JSONArray().put(payload));
+        } catch (JSONException e) {
+            // routing came from a JSONObject; can't happen
+        }
+    }
+
+    Object pack(JSONArray signals) throws JSONException {
+        String json = signals.toString();
+        rawChars += json.length();
+        if (json.length() >= COMPRESS_MIN_CHARS && !allStrings(signals)) {
+            String compressed = WebSocketClient.base64(deflate(json));
+            if (compressed.length() < json.length() * COMPRESS_MAX_RATIO) {
+                compressedMessages++;
+                sentChars += compressed.length();
+                return new JSONObject().put("v", VERSION).put("z", compressed);
+            }
+        }
+        sentChars += json.length();
+        if (signals.length() == 1) {
+            return signals.get(0);
+        }
+        return new JSONObject().put("v", VERSION).put("batch", signals);
+    }
+
+    // Ciphertext signals are strings and don't compress
+    private static boolean allStrings(JSONArray signals) {
+        for (int i = 0; i < signals.length(); i++) {
+            if (!(signals.opt(i) instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] deflate(String text) {
+        deflater.reset();
+        deflater.setInput(text.getBytes(StandardCharsets.UTF_8));
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(text.length() / 2);
+        while (!deflater.finished()) {
+            int n = deflater.deflate(deflateChunk);
+            out.write(deflateChunk, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * The callee's setup starts when the offer arrives.
+     */
+    void markOfferReceived(long now) {
+        if (setupStartedAt < 0) {
+            setupStartedAt = now;
+        }
+    }
+
+    /**
+     * Ends the setup timing. Returns its length, or -1 if none was running.
+     */
+    long markConnected(long now) {
+        if (setupStartedAt < 0) {
+            return -1;
+        }
+        long elapsed = now - setupStartedAt;
+        setupStartedAt = -1;
+        lastSetupMs = elapsed;
+        setupMs.record(elapsed);
+        return elapsed;
+    }
+
+    long getSignalsQueued() {
+        return signalsQueued;
+    }
+
+    long getMessagesSent() {
+        return messagesSent;
+    }
+
+    long getCompressedMessages() {
+        return compressedMessages;
+    }
+
+    long getRawChars() {
+        return rawChars;
+    }
+
+    long getSentChars() {
+        return sentChars;
+    }
+
+    long getLastSetupMs() {
+        return lastSetupMs;
+    }
+
+    MetricHistogram getSetupHistogram() {
+        return setupMs;
+    }
+}
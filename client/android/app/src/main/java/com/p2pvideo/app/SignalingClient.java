@@ -0,0 +1,516 @@
+package com.p2pvideo.app;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Native Socket.IO client for the signaling server, so offers, answers and
+ * ICE restarts don't wait on the WebView's background timer throttling.
+ *
+ * Speaks Engine.IO 4 over a WebSocket only (no long-polling). The server
+ * pings every pingInterval and we answer; if no ping arrives within
+ * pingInterval + pingTimeout the connection is presumed dead and dropped.
+ * Dropped connections are retried with the same jittered exponential
+ * backoff as socket.io-client, indefinitely, until stop(). Events emitted
+ * while disconnected are buffered (bounded) and sent on reconnect.
+ *
+ * All state lives on one executor thread; each connection also has a
+ * blocking reader thread that hands messages to the executor. Callbacks run
+ * on the executor thread. Pure Java; unit tested against a local server.
+ */
+public final class SignalingClient {
+    public static final int STATE_IDLE = 0;
+    public static final int STATE_CONNECTING = 1;
+    public static final int STATE_CONNECTED = 2;
+    public static final int STATE_WAITING = 3;
+
+    // socket.io-client defaults: reconnectionDelay, reconnectionDelayMax, randomizationFactor
+    static final long RECONNECT_DELAY_MS = 1000;
+    static final long RECONNECT_DELAY_MAX_MS = 5000;
+    static final double RECONNECT_JITTER = 0.5;
+    static final int CONNECT_TIMEOUT_MS = 10_000;
+    // Used until the server's open packet says otherwise
+    static final long DEFAULT_PING_INTERVAL_MS = 25_000;
+    static final long DEFAULT_PING_TIMEOUT_MS = 20_000;
+    static final int MAX_BUFFERED = 64;
+
+    private static final AtomicReference<SignalingClient> active = new AtomicReference<>();
+
+    public interface Listener {
+        void onStateChanged(int state, String reason);
+
+        void onEvent(String event, JSONArray args);
+    }
+
+    private final URI endpoint;
+    private final JSONObject auth;
+    private final Listener listener;
+    private final ScheduledExecutorService executor;
+    private final Random random = new Random();
+
+    // Written on the executor thread only
+    private volatile int state = STATE_IDLE;
+    private boolean stopped = false;
+    private int generation = 0;
+    private WebSocketClient socket;
+    private ScheduledFuture<?> heartbeat;
+    private ScheduledFuture<?> reconnect;
+    private long pingIntervalMs = DEFAULT_PING_INTERVAL_MS;
+    private long pingTimeoutMs = DEFAULT_PING_TIMEOUT_MS;
+    private int attempt = 0;
+    private long connectStartedAt;
+    private final ArrayDeque<String> sendBuffer = new ArrayDeque<>();
+    private final SignalBatcher batcher;
+
+    // Read from any thread
+    private volatile String sid;
+    private volatile String room;
+    private volatile long lastConnectMs = -1;
+    private volatile long lastPingAt = 0;
+    private volatile int reconnects = 0;
+    private volatile int dropped = 0;
+    private volatile int buffered = 0;
+
+    /**
+     * @param serverUrl the signaling server's http(s) base URL, as given to io()
+     * @param auth      sent with the Socket.IO CONNECT, like io()'s auth option
+     */
+    public SignalingClient(String serverUrl, JSONObject auth, Listener listener) throws URISyntaxException {
+        this.endpoint = endpointFor(serverUrl);
+        this.auth = auth;
+        this.listener = listener;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "Signaling"));
+        this.batcher = new SignalBatcher(executor, (event, args) -> send(SocketIoPacket.encodeEvent(event, args)));
+    }
+
+    public static SignalingClient getActive() {
+        return active.get();
+    }
+
+    /**
+     * Makes this the process-wide client and returns the one it replaced.
+     */
+    public SignalingClient makeActive() {
+        return active.getAndSet(this);
+    }
+
+    /**
+     * The Engine.IO WebSocket endpoint for a server base URL.
+     */
+    static URI endpointFor(String serverUrl) throws URISyntaxException {
+        URI base = new URI(serverUrl);
+        String scheme = base.getScheme() == null ? "" : base.getScheme().toLowerCase();
+        String wsScheme;
+        if ("https".equals(scheme) || "wss".equals(scheme)) {
+            wsScheme = "wss";
+        } else if ("http".equals(scheme) || "ws".equals(scheme)) {
+            wsScheme = "ws";
+        } else {
+            throw new URISyntaxException(serverUrl, "Expected an http(s) or ws(s) URL");
+        }
+        if (base.getHost() == null) {
+            throw new URISyntaxException(serverUrl, "No host");
+        }
+        return new URI(wsScheme, null, base.getHost(), base.getPort(), "/socket.io/",
+            "EIO=4&transport=websocket", null);
+    }
+
+    /**
+     * Delay before reconnect attempt n (0-based), as socket.io-client's
+     * backoff computes it. jitter is uniform in [0, 1).
+     */
+    static long backoffDelayMs(int attempt, double jitter) {
+        double delay = RECONNECT_DELAY_MS * Math.pow(2, Math.min(attempt, 16));
+        double deviation = RECONNECT_JITTER * delay * jitter;
+        // Even draws shorten the delay, odd ones lengthen it
+        delay = ((int) Math.floor(jitter * 10) & 1) == 0 ? delay - deviation : delay + deviation;
+        return (long) Math.min(delay, RECONNECT_DELAY_MAX_MS);
+    }
+
+    public void start() {
+        post(() -> {
+            if (!stopped && state == STATE_IDLE) {
+                open();
+            }
+        });
+    }
+
+    /**
+     * Disconnects for good and releases the threads. If this is the active
+     * client it stops being so.
+     */
+    public void stop() {
+        active.compareAndSet(this, null);
+        post(() -> {
+            // Held candidates are worth more sent late than never
+            batcher.flushAll();
+            stopped = true;
+            cancelTimers();
+            if (socket != null) {
+                if (state == STATE_CONNECTED) {
+                    trySend(socket, SocketIoPacket.DISCONNECT);
+                }
+                socket.close();
+                socket = null;
+            }
+            sendBuffer.clear();
+            buffered = 0;
+            batcher.release();
+            setState(STATE_IDLE, "client stopped");
+            executor.shutdown();
+        });
+    }
+
+    /**
+     * Skips any pending backoff, e.g. when the network has just come back.
+     */
+    public void reconnectNow() {
+        post(() -> {
+            if (!stopped && state == STATE_WAITING) {
+                cancelTimers();
+                attempt = 0;
+                open();
+            }
+        });
+    }
+
+    /**
+     * Replaces the connection at once, even one that looks healthy: after
+     * the default network changes, the socket is still bound to the old
+     * network and would only be found dead by the heartbeat.
+     */
+    public void reconnectOnNetworkChange() {
+        post(() -> {
+            if (stopped) {
+                return;
+            }
+            WebSocketClient old = socket;
+            socket = null;
+            cancelTimers();
+            attempt = 0;
+            // open() moves to a new generation, so the old reader's onClosed is ignored
+            open();
+            if (old != null) {
+                old.close();
+            }
+        });
+    }
+
+    /**
+     * Sends an event now if connected, otherwise once connected. When the
+     * buffer is full the oldest buffered event is dropped.
+     */
+    public void emit(String event, JSONArray args) {
+        String packet = SocketIoPacket.encodeEvent(event, args);
+        post(() -> {
+            if (!stopped) {
+                send(packet);
+            }
+        });
+    }
+
+    /**
+     * Queues a WebRTC signal through the SignalBatcher. The event is sent as
+     * routing plus {signalKey: signal}, possibly batched with others.
+     */
+    public void queueSignal(String event, JSONObject routing, String signalKey, Object signal, String kind) {
+        long now = System.currentTimeMillis();
+        post(() -> {
+            if (!stopped) {
+                batcher.queue(event, routing, signalKey, signal, kind, now);
+            }
+        });
+    }
+
+    public void markOfferReceived() {
+        long now = System.currentTimeMillis();
+        post(() -> batcher.markOfferReceived(now));
+    }
+
+    public void markConnected() {
+        long now = System.currentTimeMillis();
+        post(() -> batcher.markConnected(now));
+    }
+
+    /**
+     * Batching stats. Read from any thread.
+     */
+    SignalBatcher getBatcher() {
+        return batcher;
+    }
+
+    private void send(String packet) {
+        if (state == STATE_CONNECTED && trySend(socket, packet)) {
+            return;
+        }
+        if (sendBuffer.size() >= MAX_BUFFERED) {
+            sendBuffer.pollFirst();
+            dropped++;
+        }
+        sendBuffer.addLast(packet);
+        buffered = sendBuffer.size();
+    }
+
+    public String getSid() {
+        return sid;
+    }
+
+    /**
+     * The room last joined through this client, for native senders such as
+     * the notification's End Call.
+     */
+    public String getRoom() {
+        return room;
+    }
+
+    public void setRoom(String room) {
+        this.room = room;
+    }
+
+    public boolean isConnected() {
+        return state == STATE_CONNECTED;
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    public int getReconnects() {
+        return reconnects;
+    }
+
+    public int getDropped() {
+        return dropped;
+    }
+
+    public int getBuffered() {
+        return buffered;
+    }
+
+    /**
+     * Time from opening the WebSocket to the Socket.IO CONNECT ack, or -1.
+     */
+    public long getLastConnectMs() {
+        return lastConnectMs;
+    }
+
+    public long getLastPingAt() {
+        return lastPingAt;
+    }
+
+    public static String stateName(int state) {
+        switch (state) {
+            case STATE_CONNECTING:
+                return "connecting";
+            case STATE_CONNECTED:
+                return "connected";
+            case STATE_WAITING:
+                return "waiting";
+            default:
+                return "idle";
+        }
+    }
+
+    private void open() {
+        int gen = ++generation;
+        setState(STATE_CONNECTING, null);
+        connectStartedAt = System.nanoTime();
+        Thread reader = new Thread(() -> {
+            WebSocketClient ws;
+            try {
+                ws = WebSocketClient.connect(endpoint, CONNECT_TIMEOUT_MS);
+            } catch (IOException e) {
+                post(() -> onClosed(gen, e.getMessage() != null ? e.getMessage() : "connect failed"));
+                return;
+            }
+            post(() -> onOpened(gen, ws));
+            ws.readLoop(new WebSocketClient.Listener() {
+                @Override
+                public void onText(String text) {
+                    post(() -> onMessage(gen, ws, text));
+                }
+
+                @Override
+                public void onClosed(String reason) {
+                    post(() -> SignalingClient.this.onClosed(gen, reason));
+                }
+            });
+        }, "SignalingReader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void post(Runnable task) {
+        if (!executor.isShutdown()) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // Stopped meanwhile
+            }
+        }
+    }
+
+    private void onOpened(int gen, WebSocketClient ws) {
+        if (gen != generation || stopped) {
+            ws.close();
+            return;
+        }
+        socket = ws;
+        // The server speaks first with the open packet
+        armHeartbeat(gen);
+    }
+
+    private void onMessage(int gen, WebSocketClient ws, String text) {
+        if (gen != generation || ws != socket) {
+            return;
+        }
+        SocketIoPacket packet = SocketIoPacket.decode(text);
+        if (packet == null) {
+            return;
+        }
+        switch (packet.engineType) {
+            case SocketIoPacket.ENGINE_OPEN:
+                if (packet.data instanceof JSONObject) {
+                    JSONObject handshake = (JSONObject) packet.data;
+                    pingIntervalMs = handshake.optLong("pingInterval", DEFAULT_PING_INTERVAL_MS);
+                    pingTimeoutMs = handshake.optLong("pingTimeout", DEFAULT_PING_TIMEOUT_MS);
+                }
+                armHeartbeat(gen);
+                trySend(ws, SocketIoPacket.encodeConnect(auth));
+                break;
+            case SocketIoPacket.ENGINE_PING:
+                lastPingAt = System.currentTimeMillis();
+                trySend(ws, SocketIoPacket.PONG);
+                armHeartbeat(gen);
+                break;
+            case SocketIoPacket.ENGINE_CLOSE:
+                ws.close();
+                break;
+            case SocketIoPacket.ENGINE_MESSAGE:
+                onSocketPacket(ws, packet);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void onSocketPacket(WebSocketClient ws, SocketIoPacket packet) {
+        if (!"/".equals(packet.namespace)) {
+            return;
+        }
+        switch (packet.socketType) {
+            case SocketIoPacket.SOCKET_CONNECT:
+                sid = packet.data instanceof JSONObject ? ((JSONObject) packet.data).optString("sid", null) : null;
+                lastConnectMs = (System.nanoTime() - connectStartedAt) / 1_000_000;
+                if (attempt > 0) {
+                    reconnects++;
+                }
+                attempt = 0;
+                while (!sendBuffer.isEmpty()) {
+                    String pending = sendBuffer.pollFirst();
+                    buffered = sendBuffer.size();
+                    if (!trySend(ws, pending)) {
+                        sendBuffer.addFirst(pending);
+                        buffered = sendBuffer.size();
+                        break;
+                    }
+                }
+                setState(STATE_CONNECTED, null);
+                break;
+            case SocketIoPacket.SOCKET_CONNECT_ERROR:
+                String message = packet.data instanceof JSONObject
+                    ? ((JSONObject) packet.data).optString("message", "connect error") : "connect error";
+                listener.onEvent("connect_error", new JSONArray().put(message));
+                ws.close();
+                break;
+            case SocketIoPacket.SOCKET_DISCONNECT:
+                // Like socket.io-client, a server-side disconnect is not retried
+                stopped = true;
+                active.compareAndSet(this, null);
+                cancelTimers();
+                ws.close();
+                socket = null;
+                setState(STATE_IDLE, "io server disconnect");
+                executor.shutdown();
+                break;
+            case SocketIoPacket.SOCKET_EVENT:
+                if (packet.isEvent()) {
+                    listener.onEvent(packet.eventName(), packet.eventArgs());
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void onClosed(int gen, String reason) {
+        if (gen != generation) {
+            return;
+        }
+        socket = null;
+        cancelTimers();
+        if (stopped) {
+            return;
+        }
+        long delay = backoffDelayMs(attempt++, random.nextDouble());
+        setState(STATE_WAITING, reason);
+        reconnect = executor.schedule(this::open, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void armHeartbeat(int gen) {
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+        }
+        heartbeat = executor.schedule(() -> {
+            if (gen == generation && socket != null) {
+                WebSocketClient dead = socket;
+                // onClosed follows from the reader thread
+                dead.close();
+            }
+        }, pingIntervalMs + pingTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelTimers() {
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+            heartbeat = null;
+        }
+        if (reconnect != null) {
+            reconnect.cancel(false);
+            reconnect = null;
+        }
+    }
+
+    private boolean trySend(WebSocketClient ws, String packet) {
+        if (ws == null) {
+            return false;
+        }
+        try {
+            ws.send(packet);
+            return true;
+        } catch (IOException e) {
+            ws.close();
+            return false;
+        }
+    }
+
+    private void setState(int next, String reason) {
+        if (state == next) {
+            return;
+        }
+        state = next;
+        listener.onStateChanged(next, reason);
+    }
+}
@@ -0,0 +1,206 @@
+package com.p2pvideo.app;
+
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONArray;
+
+import java.net.URISyntaxException;
+
+/**
+ * Bridges SignalingClient to the page, which uses it in place of
+ * socket.io-client when running in the app (see nativeSignaling.js).
+ * Server events arrive as signalingEvent {event, args}; connection changes
+ * as signalingState.
+ *
+ * The client is process-wide rather than owned by the page, so a call keeps
+ * its signaling while CallService holds the process in the foreground, and
+ * native code can signal without the WebView: a callEnded from the peer
+ * stops CallService directly, and the notification's End Call tells the
+ * peer itself.
+ */
+@CapacitorPlugin(name = "Signaling")
+public class SignalingPlugin extends Plugin {
+    private static final String TAG = "SignalingPlugin";
+
+    private final class Forwarder implements SignalingClient.Listener {
+        private SignalingClient client;
+
+        @Override
+        public void onStateChanged(int state, String reason) {
+            if (client != SignalingClient.getActive()) {
+                return;
+            }
+            Log.d(TAG, "State " + SignalingClient.stateName(state) + (reason != null ? ": " + reason : ""));
+            JSObject ret = status(client);
+            ret.put("reason", reason);
+            notifyListeners("signalingState", ret);
+        }
+
+        @Override
+        public void onEvent(String event, JSONArray args) {
+            if (client != SignalingClient.getActive()) {
+                return;
+            }
+            if ("callEnded".equals(event) && getActivity() instanceof MainActivity) {
+                ((MainActivity) getActivity()).stopCallService();
+            }
+            JSObject ret = new JSObject();
+            ret.put("event", event);
+            ret.put("args", args);
+            notifyListeners("signalingEvent", ret);
+        }
+    }
+
+    /**
+     * Connects to the server at url (the same base URL given to io()),
+     * replacing any previous connection.
+     */
+    @PluginMethod
+    public void connect(PluginCall call) {
+        String url = call.getString("url");
+        if (url == null || url.isEmpty()) {
+            call.reject("url is required");
+            return;
+        }
+        JSObject auth = new JSObject();
+        String token = call.getString("token");
+        if (token != null) {
+            auth.put("token", token);
+        }
+
+        Forwarder forwarder = new Forwarder();
+        SignalingClient client;
+        try {
+            client = new SignalingClient(url, auth, forwarder);
+        } catch (URISyntaxException e) {
+            call.reject("Invalid url: " + e.getMessage());
+            return;
+        }
+        forwarder.client = client;
+        SignalingClient previous = client.makeActive();
+        if (previous != null) {
+            previous.stop();
+        }
+        client.start();
+        call.resolve(status(client));
+    }
+
+    /**
+     * Emits {event, args}. Buffered while reconnecting.
+     */
+    @PluginMethod
+    public void emit(PluginCall call) {
+        String event = call.getString("event");
+        if (event == null || event.isEmpty()) {
+            call.reject("event is required");
+            return;
+        }
+        SignalingClient client = SignalingClient.getActive();
+        if (client == null) {
+            call.reject("Not connected");
+            return;
+        }
+        JSArray args = call.getArray("args", new JSArray());
+        if ("joinRoom".equals(event)) {
+            client.setRoom(args.optString(0, null));
+        }
+        client.emit(event, args);
+        call.resolve();
+    }
+
+    /**
+     * Sends a WebRTC signal as event with routing plus {signalKey: signal},
+     * batched with its neighbours (see SignalBatcher). kind is the plaintext
+     * signal's type; only "candidate" waits for a batch.
+     */
+    @PluginMethod
+    public void queueSignal(PluginCall call) {
+        String event = call.getString("event");
+        String signalKey = call.getString("signalKey");
+        Object signal = call.getData().opt("signal");
+        if (event == null || signalKey == null || signal == null) {
+            call.reject("event, signalKey and signal are required");
+            return;
+        }
+        SignalingClient client = SignalingClient.getActive();
+        if (client == null) {
+            call.reject("Not connected");
+            return;
+        }
+        JSObject routing = call.getObject("routing", new JSObject());
+        client.queueSignal(event, routing, signalKey, signal, call.getString("kind", "other"));
+        call.resolve();
+    }
+
+    /**
+     * Call setup timing: phase "offerReceived" starts it on the callee (the
+     * caller starts it by queueing its offer), "connected" ends it.
+     */
+    @PluginMethod
+    public void markCallSetup(PluginCall call) {
+        String phase = call.getString("phase");
+        SignalingClient client = SignalingClient.getActive();
+        if (client == null) {
+            call.reject("Not connected");
+            return;
+        }
+        if ("offerReceived".equals(phase)) {
+            client.markOfferReceived();
+        } else if ("connected".equals(phase)) {
+            client.markConnected();
+        } else {
+            call.reject("phase must be offerReceived or connected");
+            return;
+        }
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void disconnect(PluginCall call) {
+        SignalingClient client = SignalingClient.getActive();
+        if (client != null) {
+            client.stop();
+        }
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void getStatus(PluginCall call) {
+        SignalingClient client = SignalingClient.getActive();
+        if (client == null) {
+            call.resolve(new JSObject().put("state", SignalingClient.stateName(SignalingClient.STATE_IDLE)));
+            return;
+        }
+        call.resolve(status(client));
+    }
+
+    static JSObject status(SignalingClient client) {
+        JSObject ret = new JSObject();
+        ret.put("state", SignalingClient.stateName(client.getState()));
+        ret.put("id", client.getSid());
+        ret.put("reconnects", client.getReconnects());
+        ret.put("buffered", client.getBuffered());
+        ret.put("dropped", client.getDropped());
+        ret.put("lastConnectMs", client.getLastConnectMs());
+        ret.put("lastPingAt", client.getLastPingAt());
+        
+        SignalBatcher batcher = client.getBatcher();
+        JSObject signals = new JSObject();
+        signals.put("queued", batcher.getSignalsQueued());
+        signals.put("messages", batcher.getMessagesSent());
+        signals.put("compressed", batcher.getCompressedMessages());
+        signals.put("rawChars", batcher.getRawChars());
+        signals.put("sentChars", batcher.getSentChars());
+        signals.put("lastSetupMs", batcher.getLastSetupMs());
+        signals.put("setupMs", batcher.getSetupHistogram().toJSObject());
+        ret.put("signals", signals);
+        return ret;
+    }
+}
@@ -0,0 +1,147 @@
+package com.p2pvideo.app;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Engine.IO 4 / Socket.IO 5 text framing, as spoken by the socket.io 4
+ * server in server/index.js.
+ *
+ * Each WebSocket message is one Engine.IO packet: a type digit then the
+ * payload. Socket.IO packets ride inside MESSAGE ("4") packets with their
+ * own type digit, an optional "/namespace," and ack id, then JSON:
+ *
+ *   0{"sid":"..","pingInterval":25000,"pingTimeout":60000}   open
+ *   2 / 3                                                    ping / pong
+ *   40{"token":".."}                                         connect
+ *   42["callUser",{"signal":..}]                             event
+ *
+ * Binary events are not used by this server and decode with null data.
+ * Pure Java; unit tested.
+ */
+public final class SocketIoPacket {
+    public static final int ENGINE_OPEN = 0;
+    public static final int ENGINE_CLOSE = 1;
+    public static final int ENGINE_PING = 2;
+    public static final int ENGINE_PONG = 3;
+    public static final int ENGINE_MESSAGE = 4;
+
+    public static final int SOCKET_CONNECT = 0;
+    public static final int SOCKET_DISCONNECT = 1;
+    public static final int SOCKET_EVENT = 2;
+    public static final int SOCKET_ACK = 3;
+    public static final int SOCKET_CONNECT_ERROR = 4;
+
+    static final String PONG = "3";
+    static final String DISCONNECT = "41";
+
+    public final int engineType;
+    // -1 unless engineType is ENGINE_MESSAGE
+    public final int socketType;
+    public final String namespace;
+    // -1 when the packet carries no ack id
+    public final long ackId;
+    // JSONObject, JSONArray or null
+    public final Object data;
+
+    private SocketIoPacket(int engineType, int socketType, String namespace, long ackId, Object data) {
+        this.engineType = engineType;
+        this.socketType = socketType;
+        this.namespace = namespace;
+        this.ackId = ackId;
+        this.data = data;
+    }
+
+    public static String encodeConnect(JSONObject auth) {
+        return auth != null && auth.length() > 0 ? "40" + auth : "40";
+    }
+
+    public static String encodeEvent(String event, JSONArray args) {
+        JSONArray packet = new JSONArray();
+        packet.put(event);
+        if (args != null) {
+            for (int i = 0; i < args.length(); i++) {
+                packet.put(args.opt(i));
+            }
+        }
+        return "42" + packet;
+    }
+
+    /**
+     * Returns null for packets that are malformed or of an unknown type.
+     */
+    public static SocketIoPacket decode(String text) {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        int engineType = text.charAt(0) - '0';
+        if (engineType < ENGINE_OPEN || engineType > 6) {
+            return null;
+        }
+        try {
+            if (engineType != ENGINE_MESSAGE) {
+                Object data = text.length() > 1 && engineType == ENGINE_OPEN ? parseJson(text, 1) : null;
+                return new SocketIoPacket(engineType, -1, "/", -1, data);
+            }
+            if (text.length() < 2) {
+                return null;
+            }
+            int socketType = text.charAt(1) - '0';
+            if (socketType < SOCKET_CONNECT || socketType > 6) {
+                return null;
+            }
+            int pos = 2;
+            String namespace = "/";
+            if (pos < text.length() && text.charAt(pos) == '/') {
+                int comma = text.indexOf(',', pos);
+                int end = comma >= 0 ? comma : text.length();
+                namespace = text.substring(pos, end);
+                pos = comma >= 0 ? comma + 1 : end;
+            }
+            long ackId = -1;
+            int digits = pos;
+            while (digits < text.length() && Character.isDigit(text.charAt(digits))) {
+                digits++;
+            }
+            if (digits > pos) {
+                ackId = Long.parseLong(text.substring(pos, digits));
+                pos = digits;
+            }
+            Object data = pos < text.length() ? parseJson(text, pos) : null;
+            return new SocketIoPacket(engineType, socketType, namespace, ackId, data);
+        } catch (JSONException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Object parseJson(String text, int offset) throws JSONException {
+        Object value = new JSONTokener(text.substring(offset)).nextValue();
+        return value instanceof JSONObject || value instanceof JSONArray ? value : null;
+    }
+
+    public boolean isEvent() {
+        return engineType == ENGINE_MESSAGE && socketType == SOCKET_EVENT
+            && data instanceof JSONArray && ((JSONArray) data).length() > 0;
+    }
+
+    /**
+     * Event name, for isEvent() packets.
+     */
+    public String eventName() {
+        return ((JSONArray) data).optString(0, null);
+    }
+
+    /**
+     * Event arguments without the name, for isEvent() packets.
+     */
+    public JSONArray eventArgs() {
+        JSONArray array = (JSONArray) data;
+        JSONArray args = new JSONArray();
+        for (int i = 1; i < array.length(); i++) {
+            args.put(array.opt(i));
+        }
+        return args;
+    }
+}
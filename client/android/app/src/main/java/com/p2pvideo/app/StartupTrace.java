@@ -0,0 +1,85 @@
+package com.p2pvideo.app;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Trace sections and milestones for cold start, from process start to the
+ * page reporting it is ready to join a call.
+ *
+ * Sections show up in system traces, which is what the macrobenchmark in
+ * :baselineprofile reads. Milestones are kept as milliseconds since process
+ * start and returned by StartupPlugin.getStartupMetrics. Only the first
+ * occurrence of each milestone counts.
+ */
+public final class StartupTrace {
+    private static final String TAG = "StartupTrace";
+    // Async section spanning the whole cold start, API 29+
+    public static final String COLD_START_SECTION = "coldStartToJoinReady";
+    private static final int COLD_START_COOKIE = 1;
+
+    private static final long processStart = Process.getStartUptimeMillis();
+    private static final Map<String, Long> milestones = new LinkedHashMap<>();
+    private static boolean coldStartOpen;
+
+    static {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.beginAsyncSection(COLD_START_SECTION, COLD_START_COOKIE);
+            coldStartOpen = true;
+        }
+    }
+
+    private StartupTrace() {
+    }
+
+    public static void begin(String section) {
+        Trace.beginSection(section);
+    }
+
+    public static void end() {
+        Trace.endSection();
+    }
+
+    /**
+     * Records a milestone. Returns false if it was already recorded.
+     */
+    public static synchronized boolean mark(String name) {
+        if (milestones.containsKey(name)) {
+            return false;
+        }
+        long sinceStart = SystemClock.uptimeMillis() - processStart;
+        milestones.put(name, sinceStart);
+        Log.d(TAG, name + " at " + sinceStart + "ms");
+        return true;
+    }
+
+    /**
+     * The page can join a call; closes the cold-start section.
+     */
+    public static synchronized boolean markJoinReady() {
+        if (!mark("joinReady")) {
+            return false;
+        }
+        if (coldStartOpen && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.endAsyncSection(COLD_START_SECTION, COLD_START_COOKIE);
+            coldStartOpen = false;
+        }
+        return true;
+    }
+
+    public static synchronized JSObject getMilestones() {
+        JSObject ret = new JSObject();
+        for (Map.Entry<String, Long> milestone : milestones.entrySet()) {
+            ret.put(milestone.getKey(), milestone.getValue());
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,208 @@
+package com.p2pvideo.app;
+
+import android.content.Context;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.PowerManager;
+import android.os.Process;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import java.util.ArrayDeque;
+
+import org.json.JSONObject;
+
+/**
+ * Runs alongside CallService and publishes a quality ceiling (max video
+ * height, fps and screen-capture level) derived from thermal status, thermal
+ * headroom and battery drain through QualityCeilingPolicy.
+ *
+ * Evaluates every few seconds and immediately on thermal status changes.
+ * Each decision is logged and kept in a short history for tuning.
+ */
+public class ThermalQualityController {
+    private static final String TAG = "ThermalQuality";
+    private static final long INTERVAL_MS = 5000;
+    // Forecast window for getThermalHeadroom
+    private static final int HEADROOM_FORECAST_SECONDS = 10;
+    private static final int HISTORY_SIZE = 32;
+
+    /**
+     * Receives the ceiling whenever it changes.
+     */
+    public interface Listener {
+        void onCeilingChanged(JSObject ceiling);
+    }
+
+    private static volatile ThermalQualityController active;
+    private static volatile Listener listener;
+
+    private final PowerManager powerManager;
+    private final BatteryManager batteryManager;
+    private final QualityCeilingPolicy policy = new QualityCeilingPolicy();
+    private final QualityCeilingPolicy.Reading reading = new QualityCeilingPolicy.Reading();
+    private final ArrayDeque<JSObject> decisions = new ArrayDeque<>();
+
+    private HandlerThread thread;
+    private Handler handler;
+    private PowerManager.OnThermalStatusChangedListener thermalListener;
+    private volatile JSObject ceiling;
+    // Last headroom the system reported; handler thread only
+    private float lastHeadroom = Float.NaN;
+
+    public ThermalQualityController(Context context) {
+        powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        batteryManager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
+        ceiling = toJSObject(0, "initial");
+    }
+
+    /**
+     * The controller of the running call, if any.
+     */
+    public static ThermalQualityController getActive() {
+        return active;
+    }
+
+    public static void setListener(Listener newListener) {
+        listener = newListener;
+    }
+
+    public void start() {
+        thread = new HandlerThread("ThermalQuality", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && powerManager != null) {
+            thermalListener = status -> evaluate();
+            powerManager.addThermalStatusListener(handler::post, thermalListener);
+        }
+        handler.post(tick);
+        active = this;
+    }
+
+    public void stop() {
+        if (active == this) {
+            active = null;
+        }
+        if (thermalListener != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            powerManager.removeThermalStatusListener(thermalListener);
+            thermalListener = null;
+        }
+        if (thread != null) {
+            handler.removeCallbacks(tick);
+            thread.quitSafely();
+            thread = null;
+        }
+
+        // Lift the ceiling once the call is over
+        Listener current = listener;
+        if (policy.getLevel() > 0 && current != null) {
+            current.onCeilingChanged(toJSObject(0, "callEnded"));
+        }
+    }
+
+    /**
+     * A copy of the current ceiling; the original also goes out to the
+     * listener, so callers must not be able to add fields to it.
+     */
+    public JSObject getCeiling() {
+        JSObject current = ceiling;
+        return toJSObject(current.getInteger("level", 0), current.getString("reason"));
+    }
+
+    public synchronized JSArray getDecisions() {
+        JSArray ret = new JSArray();
+        for (JSObject decision : decisions) {
+            ret.put(decision);
+        }
+        return ret;
+    }
+
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            evaluate();
+            handler.postDelayed(this, INTERVAL_MS);
+        }
+    };
+
+    private void evaluate() {
+        read();
+        int previous = policy.getLevel();
+        if (!policy.evaluate(reading)) {
+            return;
+        }
+
+        JSObject next = toJSObject(policy.getLevel(), policy.getLastReason());
+        ceiling = next;
+        logDecision(previous, next);
+
+        Listener current = listener;
+        if (current != null) {
+            current.onCeilingChanged(next);
+        }
+    }
+
+    private void read() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && powerManager != null) {
+            reading.thermalStatus = powerManager.getCurrentThermalStatus();
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R && powerManager != null) {
+            // NaN when polled again within about a second, which a thermal
+            // status callback right after a scheduled tick easily does
+            float headroom = powerManager.getThermalHeadroom(HEADROOM_FORECAST_SECONDS);
+            if (!Float.isNaN(headroom)) {
+                lastHeadroom = headroom;
+            }
+            reading.headroom = lastHeadroom;
+        }
+        if (batteryManager != null) {
+            int level = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY);
+            int currentUa = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CURRENT_NOW);
+            int chargeUah = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CHARGE_COUNTER);
+            reading.batteryPct = level != Integer.MIN_VALUE ? level : -1;
+            reading.charging = batteryManager.isCharging();
+            // Full capacity estimated from the remaining charge and level
+            if (currentUa != Integer.MIN_VALUE && chargeUah > 0 && level > 0) {
+                float fullUah = chargeUah * 100f / level;
+                reading.drainPctPerHour = Math.max(0, -currentUa) * 100f / fullUah;
+            } else {
+                reading.drainPctPerHour = Float.NaN;
+            }
+        }
+    }
+
+    private synchronized void logDecision(int previous, JSObject next) {
+        JSObject decision = new JSObject();
+        decision.put("time", System.currentTimeMillis());
+        decision.put("from", previous);
+        decision.put("to", policy.getLevel());
+        decision.put("reason", policy.getLastReason());
+        decision.put("thermalStatus", reading.thermalStatus);
+        decision.put("headroom", Float.isNaN(reading.headroom) ? JSONObject.NULL : (Object) (double) reading.headroom);
+        decision.put("drainPctPerHour",
+            Float.isNaN(reading.drainPctPerHour) ? JSONObject.NULL : (Object) (double) reading.drainPctPerHour);
+        decision.put("batteryPct", reading.batteryPct);
+        decision.put("charging", reading.charging);
+        if (decisions.size() >= HISTORY_SIZE) {
+            decisions.removeFirst();
+        }
+        decisions.addLast(decision);
+        Log.d(TAG, "Ceiling " + previous + " -> " + policy.getLevel() + ": " + decision);
+    }
+
+    private static JSObject toJSObject(int level, String reason) {
+        QualityCeilingPolicy.Ceiling c = QualityCeilingPolicy.CEILINGS[level];
+        JSObject ret = new JSObject();
+        ret.put("level", level);
+        ret.put("maxHeight", c.maxHeight);
+        ret.put("maxFps", c.maxFps);
+        ret.put("screenCaptureLevel", c.screenCaptureLevel);
+        ret.put("reason", reason);
+        return ret;
+    }
+}
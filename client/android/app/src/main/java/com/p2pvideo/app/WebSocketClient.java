@@ -0,0 +1,361 @@
+package com.p2pvideo.app;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Locale;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Minimal RFC 6455 client carrying text messages, which is all Engine.IO
+ * needs. No extensions, no binary messages.
+ *
+ * connect() blocks through the TCP, TLS and upgrade handshakes; the caller
+ * then runs readLoop() on a thread of its own until the connection closes.
+ * send() may be called from any thread. Pure Java so it can run against a
+ * local stand-in server in unit tests.
+ */
+final class WebSocketClient {
+    interface Listener {
+        void onText(String text);
+
+        /**
+         * Called once, on the reading thread, however the connection ends.
+         */
+        void onClosed(String reason);
+    }
+
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int OP_CONTINUATION = 0x0;
+    private static final int OP_TEXT = 0x1;
+    private static final int OP_BINARY = 0x2;
+    private static final int OP_CLOSE = 0x8;
+    private static final int OP_PING = 0x9;
+    private static final int OP_PONG = 0xA;
+    // Engine.IO's default maxPayload; anything larger is a broken peer
+    static final int MAX_MESSAGE_BYTES = 1_000_000;
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final SecureRandom random = new SecureRandom();
+    private final byte[] maskKey = new byte[4];
+    private volatile boolean closeSent = false;
+
+    private WebSocketClient(Socket socket, InputStream in, OutputStream out) {
+        this.socket = socket;
+        this.in = in;
+        this.out = out;
+    }
+
+    /**
+     * Opens a ws:// or wss:// URI. TLS connections verify the host name.
+     */
+    static WebSocketClient connect(URI uri, int timeoutMs) throws IOException {
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.US) : "";
+        boolean secure = "wss".equals(scheme) || "https".equals(scheme);
+        String host = uri.getHost();
+        if (host == null) {
+            throw new IOException("No host in " + uri);
+        }
+        int port = uri.getPort() != -1 ? uri.getPort() : (secure ? 443 : 80);
+
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMs);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(timeoutMs);
+            if (secure) {
+                SSLSocket ssl = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+                    .createSocket(socket, host, port, true);
+                ssl.startHandshake();
+                if (!HttpsURLConnection.getDefaultHostnameVerifier().verify(host, ssl.getSession())) {
+                    throw new IOException("Certificate does not match " + host);
+                }
+                socket = ssl;
+            }
+
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            WebSocketClient client = new WebSocketClient(socket, in, out);
+            client.upgrade(uri, host, port, secure);
+            // Liveness is Engine.IO's job (ping/pong); reads block indefinitely
+            socket.setSoTimeout(0);
+            return client;
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private void upgrade(URI uri, String host, int port, boolean secure) throws IOException {
+        byte[] nonce = new byte[16];
+        random.nextBytes(nonce);
+        String key = base64(nonce);
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            path += "?" + uri.getRawQuery();
+        }
+        boolean defaultPort = port == (secure ? 443 : 80);
+        String request = "GET " + path + " HTTP/1.1\r\n"
+            + "Host: " + host + (defaultPort ? "" : ":" + port) + "\r\n"
+            + "Upgrade: websocket\r\n"
+            + "Connection: Upgrade\r\n"
+            + "Sec-WebSocket-Key: " + key + "\r\n"
+            + "Sec-WebSocket-Version: 13\r\n"
+            + "\r\n";
+        out.write(request.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        String status = readLine();
+        if (!status.startsWith("HTTP/1.1 101")) {
+            throw new IOException("Upgrade refused: " + status);
+        }
+        String accept = null;
+        for (String line = readLine(); !line.isEmpty(); line = readLine()) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Accept")) {
+                accept = line.substring(colon + 1).trim();
+            }
+        }
+        if (!acceptFor(key).equals(accept)) {
+            throw new IOException("Bad Sec-WebSocket-Accept");
+        }
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Connection closed during upgrade");
+            }
+            if (b == '\n') {
+                int length = line.length();
+                return length > 0 && line.charAt(length - 1) == '\r' ? line.substring(0, length - 1) : line.toString();
+            }
+            if (line.length() > 8192) {
+                throw new IOException("Upgrade response header too long");
+            }
+            line.append((char) b);
+        }
+    }
+
+    static String acceptFor(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            return base64(sha1.digest((key + ACCEPT_GUID).getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads messages until the connection closes, answering pings and the
+     * server's close frame. Always ends with exactly one onClosed().
+     */
+    void readLoop(Listener listener) {
+        String reason = "closed";
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        boolean inMessage = false;
+        byte[] header = new byte[8];
+        try {
+            while (true) {
+                readFully(header, 2);
+                boolean fin = (header[0] & 0x80) != 0;
+                int opcode = header[0] & 0x0F;
+                boolean masked = (header[1] & 0x80) != 0;
+                long length = header[1] & 0x7F;
+                if (length == 126) {
+                    readFully(header, 2);
+                    length = ((header[0] & 0xFF) << 8) | (header[1] & 0xFF);
+                } else if (length == 127) {
+                    readFully(header, 8);
+                    length = 0;
+                    for (int i = 0; i < 8; i++) {
+                        length = (length << 8) | (header[i] & 0xFF);
+                    }
+                    // RFC 6455 keeps the top bit clear; set, it reads as negative
+                    if (length < 0) {
+                        throw new IOException("Invalid frame length");
+                    }
+                }
+                if (length > MAX_MESSAGE_BYTES || message.size() + length > MAX_MESSAGE_BYTES) {
+                    throw new IOException("Message too large");
+                }
+                byte[] mask = null;
+                if (masked) {
+                    mask = new byte[4];
+                    readFully(mask, 4);
+                }
+                byte[] payload = new byte[(int) length];
+                readFully(payload, payload.length);
+                if (mask != null) {
+                    for (int i = 0; i < payload.length; i++) {
+                        payload[i] ^= mask[i & 3];
+                    }
+                }
+
+                if (opcode == OP_PING) {
+                    sendFrame(OP_PONG, payload);
+                } else if (opcode == OP_PONG) {
+                    // Unsolicited; we never ping at this layer
+                } else if (opcode == OP_CLOSE) {
+                    int code = payload.length >= 2 ? ((payload[0] & 0xFF) << 8) | (payload[1] & 0xFF) : 1005;
+                    reason = "server closed (" + code + ")";
+                    sendClose();
+                    break;
+                } else if (opcode == OP_TEXT || opcode == OP_BINARY || opcode == OP_CONTINUATION) {
+                    if (opcode != OP_CONTINUATION) {
+                        message.reset();
+                        inMessage = opcode == OP_TEXT;
+                    }
+                    if (inMessage) {
+                        message.write(payload, 0, payload.length);
+                        if (fin) {
+                            listener.onText(new String(message.toByteArray(), StandardCharsets.UTF_8));
+                            message.reset();
+                            inMessage = false;
+                        }
+                    }
+                } else {
+                    throw new IOException("Unknown opcode " + opcode);
+                }
+            }
+        } catch (IOException e) {
+            reason = closeSent ? "closed" : e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        } finally {
+            closeQuietly();
+            listener.onClosed(reason);
+        }
+    }
+
+    private void readFully(byte[] buffer, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int n = in.read(buffer, read, length - read);
+            if (n < 0) {
+                throw new EOFException("Connection lost");
+            }
+            read += n;
+        }
+    }
+
+    void send(String text) throws IOException {
+        sendFrame(OP_TEXT, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sends a close frame and shuts the socket; readLoop() then returns.
+     */
+    void close() {
+        try {
+            sendClose();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        closeQuietly();
+    }
+
+    private void sendClose() throws IOException {
+        if (!closeSent) {
+            closeSent = true;
+            sendFrame(OP_CLOSE, new byte[] {0x03, (byte) 0xE8});
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    // Client frames are always masked (RFC 6455 5.3)
+    private synchronized void sendFrame(int opcode, byte[] payload) throws IOException {
+        int length = payload.length;
+        out.write(0x80 | opcode);
+        if (length < 126) {
+            out.write(0x80 | length);
+        } else if (length <= 0xFFFF) {
+            out.write(0x80 | 126);
+            out.write(length >>> 8);
+            out.write(length);
+        } else {
+            out.write(0x80 | 127);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) ((long) length >>> shift));
+            }
+        }
+        random.nextBytes(maskKey);
+        out.write(maskKey);
+        byte[] masked = new byte[length];
+        for (int i = 0; i < length; i++) {
+            masked[i] = (byte) (payload[i] ^ maskKey[i & 3]);
+        }
+        out.write(masked);
+        out.flush();
+    }
+
+    // java.util.Base64 needs API 26
+    private static final String BASE64_ALPHABET =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    private static final char[] BASE64 = BASE64_ALPHABET.toCharArray();
+
+    static String base64(byte[] data) {
+        StringBuilder sb = new StringBuilder((data.length + 2) / 3 * 4);
+        for (int i = 0; i < data.length; i += 3) {
+            int b0 = data[i] & 0xFF;
+            int b1 = i + 1 < data.length ? data[i + 1] & 0xFF : 0;
+            int b2 = i + 2 < data.length ? data[i + 2] & 0xFF : 0;
+            sb.append(BASE64[b0 >>> 2]);
+            sb.append(BASE64[((b0 & 0x03) << 4) | (b1 >>> 4)]);
+            sb.append(i + 1 < data.length ? BASE64[((b1 & 0x0F) << 2) | (b2 >>> 6)] : '=');
+            sb.append(i + 2 < data.length ? BASE64[b2 & 0x3F] : '=');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Decodes padded base64, or returns null if text isn't valid base64.
+     */
+    static byte[] base64Decode(String text) {
+        int length = text.length();
+        if (length % 4 != 0) {
+            return null;
+        }
+        int padding = length > 0 && text.charAt(length - 1) == '=' ? (text.charAt(length - 2) == '=' ? 2 : 1) : 0;
+        byte[] out = new byte[length / 4 * 3 - padding];
+        int bits = 0;
+        int bitCount = 0;
+        int n = 0;
+        for (int i = 0; i < length - padding; i++) {
+            int value = BASE64_ALPHABET.indexOf(text.charAt(i));
+            if (value < 0) {
+                return null;
+            }
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                out[n++] = (byte) (bits >>> bitCount);
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,46 @@
+package com.p2pvideo.app;
+
+/**
+ * JSON payloads for the window events MainActivity fires through
+ * Bridge.triggerWindowJSEvent. The page parses them with JSON.parse, so
+ * string values are escaped here.
+ */
+public final class WindowEvents {
+
+    private WindowEvents() {
+    }
+
+    public static String pipModeChanged(boolean isInPipMode) {
+        return "{\"isInPipMode\":" + isInPipMode + "}";
+    }
+
+    public static String pipAction(String action) {
+        return appendQuoted(new StringBuilder(32).append("{\"action\":"), action).append('}').toString();
+    }
+
+    public static String callServiceEnded(String duration) {
+        return appendQuoted(new StringBuilder(32).append("{\"duration\":"), duration != null ? duration : "")
+            .append('}')
+            .toString();
+    }
+
+    /**
+     * Appends value as a JSON string literal.
+     */
+    static StringBuilder appendQuoted(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append("\\u00");
+                out.append(Character.forDigit(c >> 4, 16));
+                out.append(Character.forDigit(c & 0xf, 16));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.append('"');
+    }
+}
@@ -0,0 +1,56 @@
+package com.p2pvideo.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class AudioDeviceSnapshotTest {
+
+    @Test
+    public void leAudioHeadsetCountsAsBluetooth() {
+        AudioDeviceSnapshot snapshot = new AudioDeviceSnapshot.Builder()
+            .addDevice(1, AudioDeviceSnapshot.TYPE_BUILTIN_SPEAKER, "Speaker")
+            .addDevice(2, AudioDeviceSnapshot.TYPE_BLE_HEADSET, "Buds")
+            .build(AudioDeviceSnapshot.EMPTY);
+
+        assertTrue(snapshot.hasBluetooth);
+        AudioDeviceSnapshot.Device headset = snapshot.findForRoute("bluetooth");
+        assertEquals(2, headset.id);
+        assertTrue(headset.isBluetooth);
+        assertFalse(headset.isHeadphone);
+    }
+
+    @Test
+    public void mediaOnlyBluetoothCannotCarryCalls() {
+        AudioDeviceSnapshot snapshot = new AudioDeviceSnapshot.Builder()
+            .addDevice(1, AudioDeviceSnapshot.TYPE_BLUETOOTH_A2DP, "Car")
+            .build(AudioDeviceSnapshot.EMPTY);
+
+        assertFalse(snapshot.hasBluetooth);
+        assertNull(snapshot.findForRoute("bluetooth"));
+        assertTrue(snapshot.devices.get(0).isBluetooth);
+    }
+
+    @Test
+    public void unchangedDevicesKeepTheSnapshot() {
+        AudioDeviceSnapshot.Builder builder = new AudioDeviceSnapshot.Builder();
+        AudioDeviceSnapshot first = builder
+            .addDevice(1, AudioDeviceSnapshot.TYPE_BLE_HEADSET, "Buds")
+            .build(AudioDeviceSnapshot.EMPTY);
+
+        // The headset profile flag adds nothing when an LE headset is already listed
+        AudioDeviceSnapshot second = builder.reset()
+            .addDevice(1, AudioDeviceSnapshot.TYPE_BLE_HEADSET, "Buds")
+            .setBluetoothHeadsetConnected(true)
+            .build(first);
+        assertSame(first, second);
+
+        AudioDeviceSnapshot third = builder.reset()
+            .addDevice(1, AudioDeviceSnapshot.TYPE_BUILTIN_SPEAKER, "Speaker")
+            .build(second);
+        assertEquals(first.version + 1, third.version);
+        assertFalse(third.hasBluetooth);
+        assertEquals(1, third.addedSince(second).size());
+        assertEquals(1, third.removedSince(second).size());
+    }
+}
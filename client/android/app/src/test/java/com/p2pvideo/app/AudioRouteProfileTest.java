@@ -0,0 +1,52 @@
+package com.p2pvideo.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class AudioRouteProfileTest {
+
+    @Test
+    public void defaultsFollowRouteAcoustics() {
+        AudioRouteProfile speaker = AudioRouteProfile.defaultFor("speaker");
+        assertTrue(speaker.echoCancellation);
+        assertTrue(speaker.noiseSuppression);
+        assertEquals(AudioRouteProfile.MODE_IN_COMMUNICATION, speaker.mode);
+        assertEquals(AudioRouteProfile.STREAM_VOICE_CALL, speaker.volumeStream);
+
+        AudioRouteProfile bluetooth = AudioRouteProfile.defaultFor("bluetooth");
+        assertFalse(bluetooth.echoCancellation);
+        assertFalse(bluetooth.noiseSuppression);
+
+        AudioRouteProfile headphones = AudioRouteProfile.defaultFor("headphones");
+        assertFalse(headphones.echoCancellation);
+        assertTrue(headphones.noiseSuppression);
+    }
+
+    @Test
+    public void overridesOnlyGivenSettings() {
+        AudioRouteProfile base = AudioRouteProfile.defaultFor("earpiece");
+        AudioRouteProfile changed = base.with(null, AudioRouteProfile.STREAM_MUSIC, null, false, null);
+
+        assertEquals("earpiece", changed.route);
+        assertEquals(base.mode, changed.mode);
+        assertEquals(AudioRouteProfile.STREAM_MUSIC, changed.volumeStream);
+        assertEquals(base.echoCancellation, changed.echoCancellation);
+        assertFalse(changed.noiseSuppression);
+        assertEquals(base.autoGainControl, changed.autoGainControl);
+        assertEquals(base, base.with(null, null, null, null, null));
+        assertNotEquals(base, changed);
+    }
+
+    @Test
+    public void namesRoundTrip() {
+        for (int mode : new int[] { AudioRouteProfile.MODE_NORMAL, AudioRouteProfile.MODE_IN_COMMUNICATION }) {
+            assertEquals(mode, AudioRouteProfile.parseMode(AudioRouteProfile.modeName(mode)));
+        }
+        for (int stream : new int[] { AudioRouteProfile.STREAM_VOICE_CALL, AudioRouteProfile.STREAM_MUSIC }) {
+            assertEquals(stream, AudioRouteProfile.parseStream(AudioRouteProfile.streamName(stream)));
+        }
+        assertEquals(-1, AudioRouteProfile.parseMode("ringtone"));
+        assertEquals(-1, AudioRouteProfile.parseStream("alarm"));
+    }
+}
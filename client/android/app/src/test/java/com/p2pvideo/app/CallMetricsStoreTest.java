@@ -0,0 +1,176 @@
+package com.p2pvideo.app;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CallMetricsStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static CallMetricsStore.Sample sample(long timestamp) {
+        CallMetricsStore.Sample sample = new CallMetricsStore.Sample();
+        sample.timestamp = timestamp;
+        sample.callId = 42;
+        sample.bitrateKbps = 1200;
+        sample.rttMs = 80;
+        sample.audioRoute = CallMetricsStore.routeCode("bluetooth");
+        return sample;
+    }
+
+    private static int count(CallMetricsStore store) throws IOException {
+        int[] n = {0};
+        store.read(0, 0, Long.MAX_VALUE, s -> {
+            n[0]++;
+            return true;
+        });
+        return n[0];
+    }
+
+    @Test
+    public void roundTripsAllFields() throws IOException {
+        CallMetricsStore store = new CallMetricsStore(folder.getRoot());
+        CallMetricsStore.Sample written = sample(1000);
+        written.packetLossPct = 1.5f;
+        written.jitterMs = 12;
+        written.cpuPct = 35;
+        written.batteryLevelPct = 80;
+        written.batteryCurrentMa = -450;
+        written.decodeFps = 29.5f;
+        written.thermalStatus = 2;
+        store.append(written);
+
+        CallMetricsStore.Sample[] read = new CallMetricsStore.Sample[1];
+        store.read(42, 0, Long.MAX_VALUE, s -> {
+            read[0] = s;
+            return false;
+        });
+        assertEquals(1000, read[0].timestamp);
+        assertEquals(42, read[0].callId);
+        assertEquals(1200, read[0].bitrateKbps, 0);
+        assertEquals(1.5f, read[0].packetLossPct, 0);
+        assertEquals(80, read[0].rttMs, 0);
+        assertEquals(12, read[0].jitterMs, 0);
+        assertEquals(35, read[0].cpuPct, 0);
+        assertEquals(80, read[0].batteryLevelPct, 0);
+        assertEquals(-450, read[0].batteryCurrentMa, 0);
+        assertEquals(29.5f, read[0].decodeFps, 0);
+        assertEquals(2, read[0].thermalStatus);
+        assertEquals("bluetooth", CallMetricsStore.routeName(read[0].audioRoute));
+        store.close();
+    }
+
+    @Test
+    public void filtersByCallAndTime() throws IOException {
+        CallMetricsStore store = new CallMetricsStore(folder.getRoot());
+        for (int i = 0; i < 10; i++) {
+            CallMetricsStore.Sample s = sample(i);
+            s.callId = i < 5 ? 1 : 2;
+            store.append(s);
+        }
+        int[] n = {0};
+        store.read(2, 6, 9, s -> {
+            assertEquals(2, s.callId);
+            n[0]++;
+            return true;
+        });
+        assertEquals(3, n[0]);
+        store.close();
+    }
+
+    @Test
+    public void recoversAfterTornRecord() throws IOException {
+        CallMetricsStore store = new CallMetricsStore(folder.getRoot(), 100, 4);
+        for (int i = 0; i < 10; i++) {
+            store.append(sample(i));
+        }
+        // Simulate a crash halfway through the 11th record: body written, no checksum
+        store.close();
+        File segment = folder.getRoot().listFiles()[0];
+        try (RandomAccessFile raw = new RandomAccessFile(segment, "rw")) {
+            raw.seek(CallMetricsStore.HEADER_SIZE + 10L * CallMetricsStore.RECORD_SIZE + 8);
+            raw.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        }
+
+        CallMetricsStore reopened = new CallMetricsStore(folder.getRoot(), 100, 4);
+        assertEquals(10, reopened.getRecoveredRecords());
+        assertEquals(10, count(reopened));
+
+        reopened.append(sample(10));
+        long[] last = {-1};
+        reopened.read(0, 0, Long.MAX_VALUE, s -> {
+            last[0] = s.timestamp;
+            return true;
+        });
+        assertEquals(11, count(reopened));
+        assertEquals(10, last[0]);
+        reopened.close();
+    }
+
+    @Test
+    public void recoversWithoutClose() throws IOException {
+        CallMetricsStore store = new CallMetricsStore(folder.getRoot(), 100, 4);
+        for (int i = 0; i < 25; i++) {
+            store.append(sample(i));
+        }
+        // No close(): the mapped pages are all the new instance gets
+        CallMetricsStore reopened = new CallMetricsStore(folder.getRoot(), 100, 4);
+        assertEquals(25, reopened.getRecoveredRecords());
+        reopened.close();
+    }
+
+    @Test
+    public void rollsSegmentsAndStaysUnderCap() throws IOException {
+        CallMetricsStore store = new CallMetricsStore(folder.getRoot(), 50, 3);
+        for (int i = 0; i < 1000; i++) {
+            store.append(sample(i));
+        }
+        assertTrue(store.getSizeBytes() <= store.getMaxBytes());
+        assertEquals(3, folder.getRoot().list().length);
+
+        // Only the newest records survive, still in order
+        long[] previous = {-1};
+        store.read(0, 0, Long.MAX_VALUE, s -> {
+            assertTrue(s.timestamp > previous[0]);
+            previous[0] = s.timestamp;
+            return true;
+        });
+        assertEquals(999, previous[0]);
+        assertEquals(1000 - 850, count(store));
+        store.close();
+    }
+
+    /**
+     * Several hours at one sample per second stay within the size cap and
+     * keep the newest samples, in order. Speed is measured by
+     * CallMetricsStoreBenchmark.
+     */
+    @Test
+    public void longCallStaysWithinTheCap() throws IOException {
+        CallMetricsStore store = new CallMetricsStore(folder.getRoot());
+        CallMetricsStore.Sample s = sample(0);
+        int records = 200_000;
+        for (int i = 0; i < records; i++) {
+            s.timestamp = i;
+            store.append(s);
+        }
+        assertTrue(store.getSizeBytes() <= store.getMaxBytes());
+
+        long[] previous = {-1};
+        store.read(0, 0, Long.MAX_VALUE, read -> {
+            assertTrue(read.timestamp > previous[0]);
+            assertEquals(42, read.callId);
+            previous[0] = read.timestamp;
+            return true;
+        });
+        assertEquals(records - 1, previous[0]);
+        store.close();
+    }
+}
@@ -0,0 +1,145 @@
+package com.p2pvideo.app;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class CallSessionTest {
+
+    @After
+    public void tearDown() {
+        CallSession.endActive();
+    }
+
+    @Test
+    public void tracksJoinsAndLeavesInOrder() {
+        CallSession session = new CallSession();
+        assertTrue(session.join("a", "Ana", 1));
+        assertTrue(session.join("b", "Ben", 2));
+        assertTrue(session.join("a", "Ana", 3));
+
+        CallSession.Snapshot snapshot = session.snapshot();
+        assertEquals(2, snapshot.participants.size());
+        assertEquals("a", snapshot.participants.get(0).id);
+        assertEquals(1, snapshot.participants.get(0).joinedAt);
+
+        assertTrue(session.leave("a"));
+        assertFalse(session.leave("a"));
+        assertEquals("b", session.snapshot().participants.get(0).id);
+    }
+
+    @Test
+    public void rejectsJoinWhenFull() {
+        CallSession session = new CallSession();
+        for (int i = 0; i < CallSession.MAX_PARTICIPANTS; i++) {
+            assertTrue(session.join("p" + i, null, i));
+        }
+        assertFalse(session.join("extra", null, 99));
+        assertEquals(CallSession.MAX_PARTICIPANTS, session.snapshot().participants.size());
+    }
+
+    @Test
+    public void metricUpdatesKeepSummaryVersion() {
+        CallSession session = new CallSession();
+        session.join("a", null, 0);
+        session.recordStats("a", 50, 5, 0);
+        long summary = session.snapshot().summaryVersion;
+        long version = session.snapshot().version;
+
+        session.recordStats("a", 60, 5, 0);
+        assertEquals(summary, session.snapshot().summaryVersion);
+        assertTrue(session.snapshot().version > version);
+
+        // Smoothed loss crosses the poor threshold on the second bad sample
+        session.recordStats("a", 60, 5, 20);
+        session.recordStats("a", 60, 5, 20);
+        CallSession.Snapshot snapshot = session.snapshot();
+        assertEquals(CallTelemetry.QUALITY_POOR, snapshot.aggregateQuality);
+        assertEquals(1, snapshot.poorParticipants);
+        assertTrue(snapshot.summaryVersion > summary);
+    }
+
+    @Test
+    public void aggregateIsWorstKnownQuality() {
+        CallSession session = new CallSession();
+        session.join("a", null, 0);
+        session.join("b", null, 0);
+        assertEquals(CallTelemetry.QUALITY_UNKNOWN, session.snapshot().aggregateQuality);
+
+        session.recordStats("a", 40, Double.NaN, 0);
+        assertEquals(CallTelemetry.QUALITY_GOOD, session.snapshot().aggregateQuality);
+        session.recordStats("b", 200, Double.NaN, 0);
+        assertEquals(CallTelemetry.QUALITY_FAIR, session.snapshot().aggregateQuality);
+        assertNull(session.recordStats("missing", 10, 1, 0));
+    }
+
+    @Test
+    public void listenersSeeEveryChangeOnce() {
+        CallSession session = new CallSession();
+        List<Long> versions = new ArrayList<>();
+        session.addListener((previous, current) -> {
+            assertEquals(previous.version + 1, current.version);
+            versions.add(current.version);
+        });
+        session.join("a", null, 0);
+        session.setAudioMuted(true);
+        session.setAudioMuted(true);
+        session.leave("b");
+        assertEquals(2, versions.size());
+        assertTrue(session.snapshot().audioMuted);
+    }
+
+    @Test
+    public void concurrentJoinsAreAllApplied() throws Exception {
+        CallSession session = new CallSession();
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger notified = new AtomicInteger();
+        session.addListener((previous, current) -> notified.incrementAndGet());
+
+        Thread[] threads = new Thread[CallSession.MAX_PARTICIPANTS];
+        for (int i = 0; i < threads.length; i++) {
+            String id = "p" + i;
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                session.join(id, null, 0);
+                for (int n = 0; n < 200; n++) {
+                    session.recordStats(id, 50 + n % 10, 5, 0);
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        CallSession.Snapshot snapshot = session.snapshot();
+        assertEquals(CallSession.MAX_PARTICIPANTS, snapshot.participants.size());
+        assertEquals(snapshot.version, notified.get());
+    }
+
+    @Test
+    public void endedSessionIgnoresUpdates() {
+        CallSession session = CallSession.begin();
+        assertSame(session, CallSession.getActive());
+        session.end();
+        assertNull(CallSession.getActive());
+        assertFalse(session.join("a", null, 0));
+
+        CallSession first = CallSession.begin();
+        CallSession second = CallSession.begin();
+        assertTrue(first.isEnded());
+        first.end();
+        assertSame(second, CallSession.getActive());
+    }
+}
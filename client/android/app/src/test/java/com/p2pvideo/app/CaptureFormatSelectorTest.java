@@ -0,0 +1,55 @@
+package com.p2pvideo.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class CaptureFormatSelectorTest {
+
+    private static final int[][] SIZES = {
+        {1920, 1080}, {1440, 1080}, {1280, 720}, {960, 720}, {864, 480}, {720, 480}, {640, 480}, {640, 360}, {320, 240}
+    };
+    private static final int[][] FPS_RANGES = {{15, 15}, {7, 30}, {30, 30}};
+
+    @Test
+    public void keepsSupportedSizes() {
+        CaptureFormatSelector.Format format = CaptureFormatSelector.select(SIZES, FPS_RANGES, 1280, 720, 30);
+        assertEquals(1280, format.width);
+        assertEquals(720, format.height);
+        assertEquals(30, format.frameRate);
+        assertTrue(format.exact);
+    }
+
+    @Test
+    public void coversUnsupportedSizesWithTheSameShape() {
+        // 854x480 isn't a camera size; 864x480 is the nearest 16:9 covering it
+        CaptureFormatSelector.Format format = CaptureFormatSelector.select(SIZES, FPS_RANGES, 854, 480, 24);
+        assertEquals(864, format.width);
+        assertEquals(480, format.height);
+        // 7-30 contains 24, so the camera can run at the requested rate
+        assertEquals(24, format.frameRate);
+        assertFalse(format.exact);
+
+        // Larger than anything 16:9: the largest 16:9 rather than a 4:3 size
+        format = CaptureFormatSelector.select(SIZES, FPS_RANGES, 3840, 2160, 30);
+        assertEquals(1920, format.width);
+        assertEquals(1080, format.height);
+    }
+
+    @Test
+    public void keepsTheTargetOrientation() {
+        CaptureFormatSelector.Format format = CaptureFormatSelector.select(SIZES, FPS_RANGES, 720, 1280, 30);
+        assertEquals(720, format.width);
+        assertEquals(1280, format.height);
+    }
+
+    @Test
+    public void fallsBackToNearestArea() {
+        int[][] sizes = {{640, 480}, {320, 240}};
+        CaptureFormatSelector.Format format = CaptureFormatSelector.select(sizes, new int[0][], 640, 360, 30);
+        assertEquals(640, format.width);
+        assertEquals(480, format.height);
+        assertEquals(30, format.frameRate);
+        assertNull(CaptureFormatSelector.select(new int[0][], FPS_RANGES, 640, 360, 30));
+    }
+}
@@ -0,0 +1,138 @@
+package com.p2pvideo.app;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Runs FrameDiffEngine over synthetic RGBA frames.
+ */
+public class FrameDiffEngineTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 200;
+    private static final int BPP = 4;
+    // Padded like a real ImageReader plane
+    private static final int ROW_STRIDE = WIDTH * BPP + 64;
+
+    private static ByteBuffer frame(int seed) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(ROW_STRIDE * HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH * BPP; x++) {
+                buffer.put(y * ROW_STRIDE + x, (byte) (x * 31 + y * 17 + seed));
+            }
+        }
+        return buffer;
+    }
+
+    private static void fill(ByteBuffer buffer, int left, int top, int right, int bottom, byte value) {
+        for (int y = top; y < bottom; y++) {
+            for (int x = left * BPP; x < right * BPP; x++) {
+                buffer.put(y * ROW_STRIDE + x, value);
+            }
+        }
+    }
+
+    @Test
+    public void firstFrameIsChanged() {
+        FrameDiffEngine engine = new FrameDiffEngine(WIDTH, HEIGHT, BPP);
+        assertTrue(engine.process(frame(0), ROW_STRIDE));
+        assertEquals(engine.getTileCount(), engine.getChangedTileCount());
+        assertArrayEquals(new int[] {0, 0, WIDTH, HEIGHT}, engine.getDirtyRect());
+    }
+
+    @Test
+    public void identicalFrameIsSkipped() {
+        FrameDiffEngine engine = new FrameDiffEngine(WIDTH, HEIGHT, BPP);
+        engine.process(frame(0), ROW_STRIDE);
+        assertFalse(engine.process(frame(0), ROW_STRIDE));
+        assertEquals(0, engine.getChangedTileCount());
+        assertNull(engine.getDirtyRect());
+    }
+
+    @Test
+    public void rowPaddingIsIgnored() {
+        FrameDiffEngine engine = new FrameDiffEngine(WIDTH, HEIGHT, BPP);
+        ByteBuffer buffer = frame(0);
+        engine.process(buffer, ROW_STRIDE);
+        buffer.put(WIDTH * BPP + 10, (byte) 0x7f);
+        assertFalse(engine.process(buffer, ROW_STRIDE));
+    }
+
+    @Test
+    public void singlePixelChangeMarksOneTile() {
+        FrameDiffEngine engine = new FrameDiffEngine(WIDTH, HEIGHT, BPP);
+        ByteBuffer buffer = frame(0);
+        engine.process(buffer, ROW_STRIDE);
+
+        // Pixel (130, 70) lies in tile (2, 1)
+        buffer.put(70 * ROW_STRIDE + 130 * BPP + 1, (byte) 0x55);
+        assertTrue(engine.process(buffer, ROW_STRIDE));
+        assertEquals(1, engine.getChangedTileCount());
+        assertTrue(engine.isTileChanged(2, 1));
+        assertFalse(engine.isTileChanged(1, 1));
+        assertArrayEquals(new int[] {128, 64, 192, 128}, engine.getDirtyRect());
+    }
+
+    @Test
+    public void dirtyRectCoversAllChangedTilesAndClampsToFrame() {
+        FrameDiffEngine engine = new FrameDiffEngine(WIDTH, HEIGHT, BPP);
+        ByteBuffer buffer = frame(0);
+        engine.process(buffer, ROW_STRIDE);
+
+        fill(buffer, 10, 10, 20, 20, (byte) 1);
+        fill(buffer, WIDTH - 4, HEIGHT - 4, WIDTH, HEIGHT, (byte) 1);
+        assertTrue(engine.process(buffer, ROW_STRIDE));
+        assertEquals(2, engine.getChangedTileCount());
+        assertArrayEquals(new int[] {0, 0, WIDTH, HEIGHT}, engine.getDirtyRect());
+    }
+
+    @Test
+    public void resetForcesNextFrame() {
+        FrameDiffEngine engine = new FrameDiffEngine(WIDTH, HEIGHT, BPP);
+        engine.process(frame(0), ROW_STRIDE);
+        engine.reset();
+        assertTrue(engine.process(frame(0), ROW_STRIDE));
+    }
+
+    @Test
+    public void partialTilesAndOddWidthsAreHashed() {
+        // 101 px is not a multiple of the tile size or of 8 bytes per row
+        int width = 101;
+        int height = 37;
+        int stride = width * 3;
+        FrameDiffEngine engine = new FrameDiffEngine(width, height, 3, 16);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(stride * height);
+        engine.process(buffer, stride);
+
+        buffer.put(stride * height - 1, (byte) 9);
+        assertTrue(engine.process(buffer, stride));
+        assertTrue(engine.isTileChanged(6, 2));
+        assertEquals(1, engine.getChangedTileCount());
+    }
+
+    /**
+     * A slide that stays up for ten seconds at 30 fps with a blinking caret
+     * should forward a few frames, not three hundred.
+     */
+    @Test
+    public void staticSlideSkipsMostFrames() {
+        FrameDiffEngine engine = new FrameDiffEngine(WIDTH, HEIGHT, BPP);
+        ByteBuffer slide = frame(3);
+        int forwarded = 0;
+        int frames = 300;
+        for (int i = 0; i < frames; i++) {
+            // Caret toggles twice a second
+            boolean caretOn = (i / 15) % 2 == 0;
+            fill(slide, 40, 40, 42, 56, caretOn ? (byte) 0 : (byte) 0xff);
+            if (engine.process(slide, ROW_STRIDE)) {
+                forwarded++;
+                assertTrue(i == 0 || engine.getChangedTileCount() == 1);
+            }
+        }
+        assertEquals(20, forwarded);
+        assertTrue(forwarded * 10 <= frames);
+    }
+}
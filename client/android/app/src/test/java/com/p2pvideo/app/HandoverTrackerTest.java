@@ -0,0 +1,69 @@
+package com.p2pvideo.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class HandoverTrackerTest {
+
+    @Test
+    public void firstNetworkIsNotAHandover() {
+        HandoverTracker tracker = new HandoverTracker();
+        assertNull(tracker.onDefaultNetwork("100", "wifi", 0));
+        assertNull(tracker.onDefaultNetwork("100", "wifi", 10));
+        assertEquals(0, tracker.getHandovers());
+        assertFalse(tracker.isRecovering());
+        assertEquals(-1, tracker.onMediaResumed(20));
+    }
+
+    @Test
+    public void timesRecoveryFromTheLoss() {
+        HandoverTracker tracker = new HandoverTracker();
+        tracker.onDefaultNetwork("100", "wifi", 0);
+
+        HandoverTracker.Handover lost = tracker.onLost("100", 1000);
+        assertTrue(lost.lost);
+        assertEquals("wifi", lost.from);
+        assertEquals(HandoverTracker.NONE, tracker.getTransport());
+
+        HandoverTracker.Handover handover = tracker.onDefaultNetwork("200", "cellular", 3000);
+        assertFalse(handover.lost);
+        assertEquals("wifi", handover.from);
+        assertEquals("cellular", handover.to);
+        assertEquals(1, tracker.getHandovers());
+
+        assertEquals(2500, tracker.onMediaResumed(3500));
+        assertEquals(2500, tracker.getLastRecoveryMs());
+        assertEquals(1, tracker.getRecoveryHistogram().getCount());
+        assertEquals(-1, tracker.onMediaResumed(4000));
+    }
+
+    @Test
+    public void losingAnotherNetworkIsIgnored() {
+        HandoverTracker tracker = new HandoverTracker();
+        tracker.onDefaultNetwork("100", "wifi", 0);
+        // Make-before-break: cellular becomes default, then Wi-Fi goes
+        HandoverTracker.Handover handover = tracker.onDefaultNetwork("200", "cellular", 500);
+        assertEquals("wifi", handover.from);
+        assertNull(tracker.onLost("100", 800));
+        assertEquals("cellular", tracker.getTransport());
+        assertEquals(100, tracker.onMediaResumed(600));
+    }
+
+    @Test
+    public void reportsOnlyMeaningfulCapabilityChanges() {
+        HandoverTracker tracker = new HandoverTracker();
+        assertFalse(tracker.onCapabilities("100", "wifi", 50000, 20000, false, true));
+        tracker.onDefaultNetwork("100", "wifi", 0);
+
+        assertTrue(tracker.onCapabilities("100", "wifi", 50000, 20000, false, false));
+        assertFalse(tracker.onCapabilities("100", "wifi", 55000, 21000, false, false));
+        assertTrue(tracker.onCapabilities("100", "wifi", 55000, 21000, false, true));
+        assertTrue(tracker.onCapabilities("100", "wifi", 20000, 21000, false, true));
+        assertTrue(tracker.onCapabilities("100", "wifi", 20000, 21000, true, true));
+
+        // A new default network always reports its first capabilities
+        tracker.onDefaultNetwork("200", "cellular", 10);
+        assertTrue(tracker.onCapabilities("200", "cellular", 20000, 21000, true, true));
+    }
+}
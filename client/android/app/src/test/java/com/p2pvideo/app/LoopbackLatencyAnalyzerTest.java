@@ -0,0 +1,67 @@
+package com.p2pvideo.app;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LoopbackLatencyAnalyzerTest {
+    private static final int SAMPLE_RATE = 48000;
+    private static final int INTERVAL = SAMPLE_RATE / 2;
+
+    private static float[] loopback(float[] pulse, int pulses, int delayFrames, float gain, float noise) {
+        float[] recording = new float[pulses * INTERVAL];
+        Random random = new Random(7);
+        for (int i = 0; i < recording.length; i++) {
+            recording[i] = (random.nextFloat() * 2f - 1f) * noise;
+        }
+        for (int p = 0; p < pulses; p++) {
+            int at = p * INTERVAL + delayFrames;
+            for (int i = 0; i < pulse.length && at + i < recording.length; i++) {
+                recording[at + i] += pulse[i] * gain;
+            }
+        }
+        return recording;
+    }
+
+    @Test
+    public void findsDelayThroughNoise() {
+        float[] pulse = LoopbackLatencyAnalyzer.generatePulse(512, 1);
+        // 120 ms round trip, pulse at a tenth of its level in noise
+        float[] recording = loopback(pulse, 4, 5760, 0.1f, 0.02f);
+
+        LoopbackLatencyAnalyzer.Result result =
+            LoopbackLatencyAnalyzer.analyze(recording, pulse, INTERVAL, 4, SAMPLE_RATE);
+        assertEquals(4, result.validPulses);
+        assertEquals(120.0, result.medianLatencyMs, 0.01);
+        assertEquals(result.minLatencyMs, result.maxLatencyMs, 0.01);
+    }
+
+    @Test
+    public void silenceHasNoValidPulses() {
+        float[] pulse = LoopbackLatencyAnalyzer.generatePulse(512, 1);
+        LoopbackLatencyAnalyzer.Result result =
+            LoopbackLatencyAnalyzer.analyze(new float[3 * INTERVAL], pulse, INTERVAL, 3, SAMPLE_RATE);
+        assertEquals(0, result.validPulses);
+        assertTrue(Double.isNaN(result.medianLatencyMs));
+    }
+
+    @Test
+    public void noiseAloneIsRejected() {
+        float[] pulse = LoopbackLatencyAnalyzer.generatePulse(512, 1);
+        float[] recording = loopback(pulse, 3, 4800, 0f, 0.2f);
+        LoopbackLatencyAnalyzer.Result result =
+            LoopbackLatencyAnalyzer.analyze(recording, pulse, INTERVAL, 3, SAMPLE_RATE);
+        assertEquals(0, result.validPulses);
+        for (double confidence : result.confidences) {
+            assertTrue(confidence < LoopbackLatencyAnalyzer.MIN_CONFIDENCE);
+        }
+    }
+
+    @Test
+    public void pulseIsDeterministic() {
+        assertArrayEquals(LoopbackLatencyAnalyzer.generatePulse(64, 3),
+            LoopbackLatencyAnalyzer.generatePulse(64, 3), 0f);
+    }
+}
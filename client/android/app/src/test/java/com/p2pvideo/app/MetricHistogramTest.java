@@ -0,0 +1,73 @@
+package com.p2pvideo.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class MetricHistogramTest {
+
+    private static MetricHistogram rtt() {
+        return new MetricHistogram("rttMs", new double[] {50, 100, 200, 500}, 4);
+    }
+
+    @Test
+    public void quantilesUseBucketBounds() {
+        MetricHistogram histogram = rtt();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(40);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(180);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(50, histogram.quantile(0.5), 0);
+        assertEquals(180, histogram.quantile(0.95), 0);
+    }
+
+    @Test
+    public void valuesAboveLastBoundReportMax() {
+        MetricHistogram histogram = rtt();
+        histogram.record(900);
+        assertEquals(900, histogram.quantile(0.5), 0);
+    }
+
+    @Test
+    public void recentMeanCoversOnlyTheRing() {
+        MetricHistogram histogram = rtt();
+        assertTrue(Double.isNaN(histogram.recentMean(3)));
+        histogram.record(1000);
+        histogram.record(10);
+        histogram.record(20);
+        histogram.record(30);
+        histogram.record(40);
+        assertEquals(35, histogram.recentMean(2), 1e-9);
+        assertEquals(25, histogram.recentMean(10), 1e-9);
+    }
+
+    @Test
+    public void nanIsIgnored() {
+        MetricHistogram histogram = rtt();
+        histogram.record(Double.NaN);
+        assertEquals(0, histogram.getCount());
+        assertTrue(Double.isNaN(histogram.quantile(0.5)));
+    }
+
+    @Test
+    public void concurrentWritersLoseNoSamples() throws InterruptedException {
+        MetricHistogram histogram = rtt();
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    histogram.record(i % 300);
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertEquals(200_000, histogram.getCount());
+        assertEquals(299, histogram.quantile(1.0), 0);
+    }
+}
@@ -0,0 +1,111 @@
+package com.p2pvideo.app;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+/**
+ * Checks the batch layout that nativeEventBus.js decodes.
+ */
+public class NativeEventEncoderTest {
+
+    private static void writeFrame(NativeEventEncoder encoder, int size, long pts) {
+        assertTrue(encoder.begin(NativeEventSchema.ENCODED_FRAME, 1234));
+        encoder.putInt(size).putLong(pts).putInt(1).putInt(2);
+        encoder.end();
+    }
+
+    @Test
+    public void batchLayoutMatchesSchema() {
+        NativeEventEncoder encoder = new NativeEventEncoder(1024);
+        writeFrame(encoder, 5000, 33_333L);
+        assertTrue(encoder.begin(NativeEventSchema.FRAME_DIFF, 1240));
+        encoder.putInt(3).putInt(60).putInt(1);
+        encoder.end();
+
+        ByteBuffer batch = ByteBuffer.wrap(encoder.finish()).order(ByteOrder.LITTLE_ENDIAN);
+        int frameSize = NativeEventEncoder.RECORD_HEADER_SIZE + NativeEventSchema.ENCODED_FRAME.getPayloadSize();
+        int diffSize = NativeEventEncoder.RECORD_HEADER_SIZE + NativeEventSchema.FRAME_DIFF.getPayloadSize();
+        assertEquals(NativeEventEncoder.BATCH_HEADER_SIZE + frameSize + diffSize, batch.limit());
+
+        assertEquals(0, batch.getInt(0));
+        assertEquals(2, batch.getShort(4));
+        assertEquals(0, batch.getShort(6));
+
+        int record = NativeEventEncoder.BATCH_HEADER_SIZE;
+        assertEquals(NativeEventSchema.ENCODED_FRAME.id, batch.getShort(record));
+        assertEquals(NativeEventSchema.ENCODED_FRAME.getPayloadSize(), batch.getShort(record + 2));
+        assertEquals(1234, batch.getInt(record + 4));
+        int payload = record + NativeEventEncoder.RECORD_HEADER_SIZE;
+        assertEquals(5000, batch.getInt(payload));
+        assertEquals(33_333L, batch.getLong(payload + 4));
+        assertEquals(1, batch.getInt(payload + 12));
+        assertEquals(2, batch.getInt(payload + 16));
+
+        record += frameSize;
+        assertEquals(NativeEventSchema.FRAME_DIFF.id, batch.getShort(record));
+        assertEquals(60, batch.getInt(record + NativeEventEncoder.RECORD_HEADER_SIZE + 4));
+    }
+
+    @Test
+    public void finishStartsNextBatch() {
+        NativeEventEncoder encoder = new NativeEventEncoder(1024);
+        writeFrame(encoder, 1, 1);
+        encoder.finish();
+        assertTrue(encoder.isEmpty());
+
+        writeFrame(encoder, 2, 2);
+        ByteBuffer batch = ByteBuffer.wrap(encoder.finish()).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(1, batch.getInt(0));
+        assertEquals(1, batch.getShort(4));
+    }
+
+    @Test
+    public void fullBatchDropsAndCounts() {
+        int frameSize = NativeEventEncoder.RECORD_HEADER_SIZE + NativeEventSchema.ENCODED_FRAME.getPayloadSize();
+        NativeEventEncoder encoder = new NativeEventEncoder(NativeEventEncoder.BATCH_HEADER_SIZE + frameSize * 2);
+        writeFrame(encoder, 1, 1);
+        writeFrame(encoder, 2, 2);
+        assertFalse(encoder.begin(NativeEventSchema.ENCODED_FRAME, 0));
+        assertFalse(encoder.begin(NativeEventSchema.ENCODED_FRAME, 0));
+
+        ByteBuffer batch = ByteBuffer.wrap(encoder.finish()).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(2, batch.getShort(4));
+        assertEquals(2, batch.getShort(6));
+        assertEquals(2, encoder.getTotalDropped());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void wrongFieldKindIsRejected() {
+        NativeEventEncoder encoder = new NativeEventEncoder(1024);
+        encoder.begin(NativeEventSchema.ENCODED_FRAME, 0);
+        encoder.putInt(1).putInt(2);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void incompleteRecordIsRejected() {
+        NativeEventEncoder encoder = new NativeEventEncoder(1024);
+        encoder.begin(NativeEventSchema.FRAME_DIFF, 0);
+        encoder.putInt(1);
+        encoder.end();
+    }
+
+    @Test
+    public void abortedRecordLeavesNoTrace() {
+        NativeEventEncoder encoder = new NativeEventEncoder(1024);
+        writeFrame(encoder, 100, 0);
+        encoder.begin(NativeEventSchema.FRAME_DIFF, 0);
+        encoder.putInt(1);
+        encoder.abort();
+        writeFrame(encoder, 200, 33_000);
+
+        ByteBuffer batch = ByteBuffer.wrap(encoder.finish()).order(ByteOrder.LITTLE_ENDIAN);
+        int frameSize = NativeEventEncoder.RECORD_HEADER_SIZE + NativeEventSchema.ENCODED_FRAME.getPayloadSize();
+        assertEquals(NativeEventEncoder.BATCH_HEADER_SIZE + frameSize * 2, batch.limit());
+        assertEquals(2, batch.getShort(4));
+        assertEquals(200, batch.getInt(NativeEventEncoder.BATCH_HEADER_SIZE + frameSize + NativeEventEncoder.RECORD_HEADER_SIZE));
+    }
+}
@@ -0,0 +1,32 @@
+package com.p2pvideo.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class PipAspectRatioTest {
+
+    @Test
+    public void reducesVideoSizes() {
+        PipAspectRatio landscape = PipAspectRatio.fromVideoSize(1280, 720);
+        assertEquals(16, landscape.width);
+        assertEquals(9, landscape.height);
+        assertEquals("3:4", PipAspectRatio.fromVideoSize(480, 640).toString());
+    }
+
+    @Test
+    public void clampsToSystemLimits() {
+        assertEquals(PipAspectRatio.WIDEST, PipAspectRatio.fromVideoSize(3840, 1080));
+        assertEquals(PipAspectRatio.TALLEST, PipAspectRatio.fromVideoSize(400, 2000));
+        assertNull(PipAspectRatio.fromVideoSize(0, 720));
+        assertNull(PipAspectRatio.fromVideoSize(1280, -1));
+    }
+
+    @Test
+    public void smallSizeChangesAreClose() {
+        PipAspectRatio base = PipAspectRatio.fromVideoSize(1280, 720);
+        assertTrue(PipAspectRatio.fromVideoSize(1280, 718).isCloseTo(base));
+        assertFalse(PipAspectRatio.fromVideoSize(720, 1280).isCloseTo(base));
+        assertFalse(base.isCloseTo(null));
+    }
+}
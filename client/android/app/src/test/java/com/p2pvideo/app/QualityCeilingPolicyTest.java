@@ -0,0 +1,111 @@
+package com.p2pvideo.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class QualityCeilingPolicyTest {
+
+    private static QualityCeilingPolicy.Reading cool() {
+        QualityCeilingPolicy.Reading reading = new QualityCeilingPolicy.Reading();
+        reading.thermalStatus = QualityCeilingPolicy.THERMAL_NONE;
+        reading.headroom = 0.4f;
+        reading.drainPctPerHour = 10;
+        reading.batteryPct = 80;
+        return reading;
+    }
+
+    @Test
+    public void startsUncapped() {
+        QualityCeilingPolicy policy = new QualityCeilingPolicy();
+        assertFalse(policy.evaluate(cool()));
+        assertEquals(0, policy.getLevel());
+        assertEquals(1080, policy.getCeiling().maxHeight);
+    }
+
+    @Test
+    public void stepsDownImmediately() {
+        QualityCeilingPolicy policy = new QualityCeilingPolicy();
+        QualityCeilingPolicy.Reading hot = cool();
+        hot.thermalStatus = QualityCeilingPolicy.THERMAL_SEVERE;
+        assertTrue(policy.evaluate(hot));
+        assertEquals(3, policy.getLevel());
+        assertEquals("thermalSevere", policy.getLastReason());
+    }
+
+    @Test
+    public void headroomActsBeforeThrottling() {
+        QualityCeilingPolicy policy = new QualityCeilingPolicy();
+        QualityCeilingPolicy.Reading warm = cool();
+        warm.headroom = 0.9f;
+        assertTrue(policy.evaluate(warm));
+        assertEquals(1, policy.getLevel());
+        assertEquals("headroomWarn", policy.getLastReason());
+    }
+
+    @Test
+    public void batterySignalsIgnoredWhileCharging() {
+        QualityCeilingPolicy policy = new QualityCeilingPolicy();
+        QualityCeilingPolicy.Reading low = cool();
+        low.batteryPct = 10;
+        low.drainPctPerHour = 40;
+        low.charging = true;
+        assertFalse(policy.evaluate(low));
+
+        low.charging = false;
+        assertTrue(policy.evaluate(low));
+        assertEquals(2, policy.getLevel());
+        assertEquals("batteryLow", policy.getLastReason());
+    }
+
+    @Test
+    public void stepsUpOneLevelAfterStableReadings() {
+        QualityCeilingPolicy policy = new QualityCeilingPolicy();
+        QualityCeilingPolicy.Reading hot = cool();
+        hot.thermalStatus = QualityCeilingPolicy.THERMAL_SEVERE;
+        policy.evaluate(hot);
+
+        for (int i = 0; i < 5; i++) {
+            assertFalse(policy.evaluate(cool()));
+        }
+        assertTrue(policy.evaluate(cool()));
+        assertEquals(2, policy.getLevel());
+        assertEquals("recovered", policy.getLastReason());
+    }
+
+    @Test
+    public void doesNotFlapAroundThreshold() {
+        QualityCeilingPolicy policy = new QualityCeilingPolicy();
+        QualityCeilingPolicy.Reading reading = cool();
+        reading.headroom = 0.86f;
+        assertTrue(policy.evaluate(reading));
+        assertEquals(1, policy.getLevel());
+
+        // Just under the step-down threshold but inside the hysteresis band
+        reading.headroom = 0.8f;
+        for (int i = 0; i < 20; i++) {
+            assertFalse(policy.evaluate(reading));
+        }
+        assertEquals(1, policy.getLevel());
+    }
+
+    @Test
+    public void spikeResetsRecovery() {
+        QualityCeilingPolicy policy = new QualityCeilingPolicy();
+        QualityCeilingPolicy.Reading warm = cool();
+        warm.thermalStatus = QualityCeilingPolicy.THERMAL_MODERATE;
+        policy.evaluate(warm);
+
+        for (int i = 0; i < 5; i++) {
+            policy.evaluate(cool());
+        }
+        QualityCeilingPolicy.Reading blip = cool();
+        blip.headroom = 0.9f;
+        assertFalse(policy.evaluate(blip));
+        for (int i = 0; i < 5; i++) {
+            assertFalse(policy.evaluate(cool()));
+        }
+        assertTrue(policy.evaluate(cool()));
+        assertEquals(1, policy.getLevel());
+    }
+}
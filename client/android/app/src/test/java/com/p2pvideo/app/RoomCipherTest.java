@@ -0,0 +1,85 @@
+package com.p2pvideo.app;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+import org.junit.Test;
+
+public class RoomCipherTest {
+
+    private static byte[] unhex(String hex) {
+        byte[] out = new byte[hex.length() / 2];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return out;
+    }
+
+    @Test
+    public void derivesTheSameKeyAsCryptoJs() throws Exception {
+        // CryptoJS.PBKDF2('room-123pw', salt, {keySize: 256/32, iterations: 10000}).toString()
+        byte[] key = RoomCipher.pbkdf2("room-123pw".getBytes(StandardCharsets.UTF_8),
+            RoomCipher.SALT.getBytes(StandardCharsets.UTF_8), RoomCipher.ITERATIONS, RoomCipher.KEY_BYTES);
+        assertEquals("9613dbab08e7cd875f5353e3f67f47359fb0a16727d1ecb612088dc13d938434", RoomCipher.hex(key));
+    }
+
+    @Test
+    public void matchesCryptoJsAesOutput() throws Exception {
+        RoomCipher cipher = RoomCipher.derive("room-123", "pw");
+        // CryptoJS.AES.encrypt(json, key, {salt: Hex.parse('0102030405060708')}).toString()
+        assertEquals("U2FsdGVkX18BAgMEBQYHCHkhDEYS8pKgNlpjFuazVpPBhYoy7C+7Y9+f01VR/b63",
+            cipher.encrypt("{\"type\":\"offer\",\"sdp\":\"v=0\"}", unhex("0102030405060708")));
+        // CryptoJS.AES.encrypt('héllo ✓', key).toString(), random salt
+        assertEquals("héllo ✓", cipher.decrypt("U2FsdGVkX1/IBh+c4NaXmUy6f7PTwzqCbn85NK9rsa0="));
+    }
+
+    @Test
+    public void roundTripsBothFormats() throws Exception {
+        RoomCipher cipher = RoomCipher.derive("room-123", null);
+        String plaintext = CryptoBenchmark.payload(300);
+        String legacy = cipher.encrypt(plaintext);
+        String gcm = cipher.encryptGcm(plaintext);
+        assertTrue(gcm.startsWith(RoomCipher.GCM_PREFIX));
+        assertNotEquals(gcm, cipher.encryptGcm(plaintext));
+        assertEquals(plaintext, cipher.decrypt(legacy));
+        assertEquals(plaintext, cipher.decrypt(gcm));
+    }
+
+    @Test
+    public void rejectsOtherRoomsAndTampering() throws Exception {
+        RoomCipher cipher = RoomCipher.derive("room-123", "pw");
+        RoomCipher other = RoomCipher.derive("room-123", "other");
+        String gcm = cipher.encryptGcm("secret");
+        try {
+            other.decrypt(gcm);
+            fail("decrypted with the wrong key");
+        } catch (GeneralSecurityException expected) {
+        }
+
+        char[] chars = gcm.toCharArray();
+        int last = chars.length - 2;
+        chars[last] = chars[last] == 'A' ? 'B' : 'A';
+        try {
+            cipher.decrypt(new String(chars));
+            fail("accepted a tampered message");
+        } catch (GeneralSecurityException expected) {
+        }
+
+        try {
+            cipher.decrypt("not base64!");
+            fail("accepted garbage");
+        } catch (GeneralSecurityException expected) {
+        }
+    }
+
+    @Test
+    public void hkdfMatchesRfc5869() throws Exception {
+        // RFC 5869 test case 1
+        byte[] okm = RoomCipher.hkdf(unhex("0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b"),
+            unhex("000102030405060708090a0b0c"), unhex("f0f1f2f3f4f5f6f7f8f9"), 42);
+        assertEquals("3cb25f25faacd57a90434f64d0362f2a2d2d0a90cf1a5a4c5db02d56ecc4c5bf34007208d5b887185865",
+            RoomCipher.hex(okm));
+    }
+}
@@ -0,0 +1,129 @@
+package com.p2pvideo.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ScreenShareGovernorTest {
+    private static final int MAX_BITRATE = 2_500_000;
+    private static final int LOWEST = ScreenShareGovernor.LEVELS.length - 1;
+    private static final int BACKED_UP = ScreenShareGovernor.BACKPRESSURE_QUEUE_DEPTH;
+
+    @Test
+    public void stepsDownOnSustainedBackpressure() {
+        ScreenShareGovernor governor = new ScreenShareGovernor(MAX_BITRATE);
+        for (int level = 1; level <= LOWEST; level++) {
+            assertTrue(governor.evaluate(BACKED_UP, 0));
+            assertEquals(level, governor.getLevelIndex());
+            assertEquals("backpressure", governor.getLastReason());
+        }
+        // Nowhere lower to go
+        governor.evaluate(BACKED_UP, 0);
+        assertEquals(LOWEST, governor.getLevelIndex());
+    }
+
+    @Test
+    public void droppedFramesCountAsBackpressure() {
+        ScreenShareGovernor governor = new ScreenShareGovernor(MAX_BITRATE);
+        assertTrue(governor.evaluate(0, 4));
+        assertEquals(1, governor.getLevelIndex());
+        // The same total again means nothing new was dropped
+        governor.evaluate(0, 4);
+        assertEquals(1, governor.getLevelIndex());
+    }
+
+    @Test
+    public void staysDownInsideTheHysteresisWindow() {
+        ScreenShareGovernor governor = new ScreenShareGovernor(MAX_BITRATE);
+        governor.evaluate(BACKED_UP, 0);
+        assertEquals(1, governor.getLevelIndex());
+
+        for (int i = 1; i < ScreenShareGovernor.HEALTHY_TICKS_TO_STEP_UP; i++) {
+            governor.evaluate(0, 0);
+            assertEquals(1, governor.getLevelIndex());
+        }
+        assertTrue(governor.evaluate(0, 0));
+        assertEquals(0, governor.getLevelIndex());
+        assertEquals("recovered", governor.getLastReason());
+    }
+
+    @Test
+    public void backpressureRestartsTheHysteresis() {
+        ScreenShareGovernor governor = new ScreenShareGovernor(MAX_BITRATE);
+        governor.evaluate(BACKED_UP, 0);
+        for (int i = 1; i < ScreenShareGovernor.HEALTHY_TICKS_TO_STEP_UP; i++) {
+            governor.evaluate(0, 0);
+        }
+        governor.evaluate(BACKED_UP, 0);
+        assertEquals(2, governor.getLevelIndex());
+
+        for (int i = 1; i < ScreenShareGovernor.HEALTHY_TICKS_TO_STEP_UP; i++) {
+            governor.evaluate(0, 0);
+        }
+        assertEquals(2, governor.getLevelIndex());
+        governor.evaluate(0, 0);
+        assertEquals(1, governor.getLevelIndex());
+    }
+
+    @Test
+    public void needsHeadroomToStepUp() {
+        ScreenShareGovernor governor = new ScreenShareGovernor(MAX_BITRATE);
+        governor.evaluate(BACKED_UP, 0);
+        // Covers level 0's minimum but not the step-up headroom above it
+        governor.setBandwidthEstimate((long) (ScreenShareGovernor.LEVELS[0].minBitrate * 1.1 / 0.8));
+        for (int i = 0; i < 3 * ScreenShareGovernor.HEALTHY_TICKS_TO_STEP_UP; i++) {
+            governor.evaluate(0, 0);
+        }
+        assertEquals(1, governor.getLevelIndex());
+    }
+
+    @Test
+    public void neverRecoversAboveTheCap() {
+        ScreenShareGovernor governor = new ScreenShareGovernor(MAX_BITRATE);
+        assertTrue(governor.setQualityCap(3));
+        assertEquals(3, governor.getLevelIndex());
+        assertEquals("capped", governor.getLastReason());
+
+        for (int i = 0; i < 3 * ScreenShareGovernor.HEALTHY_TICKS_TO_STEP_UP; i++) {
+            governor.evaluate(0, 0);
+            assertTrue(governor.getLevelIndex() >= 3);
+        }
+        // Conditions can still push it below the cap
+        governor.evaluate(BACKED_UP, 0);
+        assertEquals(4, governor.getLevelIndex());
+
+        // Already below where the cap held it, so lifting it changes nothing
+        assertFalse(governor.setQualityCap(0));
+        assertEquals(4, governor.getLevelIndex());
+    }
+
+    @Test
+    public void liftingTheCapRestoresTheLevel() {
+        ScreenShareGovernor governor = new ScreenShareGovernor(MAX_BITRATE);
+        governor.evaluate(BACKED_UP, 0);
+        governor.setQualityCap(2);
+        assertTrue(governor.setQualityCap(0));
+        assertEquals(1, governor.getLevelIndex());
+        assertEquals("uncapped", governor.getLastReason());
+    }
+
+    @Test
+    public void bitrateHasAFloor() {
+        ScreenShareGovernor governor = new ScreenShareGovernor(MAX_BITRATE);
+        governor.setBandwidthEstimate(10_000);
+        for (int i = 0; i < 10; i++) {
+            governor.evaluate(0, 0);
+        }
+        assertEquals(LOWEST, governor.getLevelIndex());
+        assertEquals(ScreenShareGovernor.MIN_TARGET_BITRATE, governor.getTargetBitrate());
+    }
+
+    @Test
+    public void onlyTheCapAppliesWhenNotAdaptive() {
+        ScreenShareGovernor governor = new ScreenShareGovernor(MAX_BITRATE, false);
+        assertFalse(governor.evaluate(BACKED_UP, 10));
+        assertEquals(0, governor.getLevelIndex());
+        assertTrue(governor.setQualityCap(2));
+        assertEquals(2, governor.getLevelIndex());
+    }
+}
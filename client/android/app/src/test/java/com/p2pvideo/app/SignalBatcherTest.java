@@ -0,0 +1,135 @@
+package com.p2pvideo.app;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Inflater;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SignalBatcherTest {
+
+    private ScheduledExecutorService executor;
+    private SignalBatcher batcher;
+    private final BlockingQueue<JSONArray> sent = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        batcher = new SignalBatcher(executor, (event, args) -> sent.add(new JSONArray().put(event).put(args.opt(0))));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private void onExecutor(Runnable task) throws Exception {
+        executor.submit(task).get();
+    }
+
+    private static JSONObject candidate(int n) throws Exception {
+        return new JSONObject().put("type", "candidate")
+            .put("candidate", new JSONObject().put("candidate", "candidate:" + n + " 1 udp 2122260223 192.0.2.1 5000" + n + " typ host"));
+    }
+
+    @Test
+    public void candidatesWithinTheWindowShareOneMessage() throws Exception {
+        JSONObject routing = new JSONObject().put("to", "peer");
+        onExecutor(() -> {
+            try {
+                for (int i = 0; i < 3; i++) {
+                    batcher.queue("answerCall", routing, "signal", candidate(i), "candidate", 0);
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        JSONArray message = sent.poll(1, TimeUnit.SECONDS);
+        assertNotNull(message);
+        assertEquals("answerCall", message.getString(0));
+        JSONObject payload = message.getJSONObject(1);
+        assertEquals("peer", payload.getString("to"));
+        JSONArray batch = payload.getJSONObject("signal").getJSONArray("batch");
+        assertEquals(3, batch.length());
+        assertNull(sent.poll(2 * SignalBatcher.WINDOW_MS, TimeUnit.MILLISECONDS));
+        assertEquals(1, batcher.getMessagesSent());
+    }
+
+    @Test
+    public void offersFlushHeldCandidatesInOrder() throws Exception {
+        JSONObject routing = new JSONObject().put("userToCall", "peer").put("from", "me");
+        JSONObject offer = new JSONObject().put("type", "offer").put("sdp", "v=0");
+        onExecutor(() -> {
+            try {
+                batcher.queue("callUser", routing, "signalData", candidate(1), "candidate", 0);
+                batcher.queue("callUser", routing, "signalData", offer, "offer", 0);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        // Sent at once, without waiting for the window
+        JSONArray message = sent.poll(0, TimeUnit.MILLISECONDS);
+        assertNotNull(message);
+        JSONArray batch = message.getJSONObject(1).getJSONObject("signalData").getJSONArray("batch");
+        assertEquals("candidate", batch.getJSONObject(0).getString("type"));
+        assertEquals("offer", batch.getJSONObject(1).getString("type"));
+    }
+
+    @Test
+    public void singleSignalsKeepTheirShape() throws Exception {
+        JSONObject answer = new JSONObject().put("type", "answer").put("sdp", "v=0");
+        JSONArray one = new JSONArray().put(answer);
+        assertSame(answer, batcher.pack(one));
+        assertEquals("ciphertext", batcher.pack(new JSONArray().put("ciphertext")));
+    }
+
+    @Test
+    public void largeSdpIsCompressed() throws Exception {
+        StringBuilder sdp = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            sdp.append("a=rtpmap:").append(96 + i).append(" VP8/90000\r\na=rtcp-fb:").append(96 + i).append(" nack\r\n");
+        }
+        JSONArray signals = new JSONArray().put(new JSONObject().put("type", "offer").put("sdp", sdp.toString()));
+        JSONObject packed = (JSONObject) batcher.pack(signals);
+        assertEquals(SignalBatcher.VERSION, packed.getInt("v"));
+
+        Inflater inflater = new Inflater();
+        inflater.setInput(Base64.getDecoder().decode(packed.getString("z")));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[1024];
+        while (!inflater.finished()) {
+            out.write(chunk, 0, inflater.inflate(chunk));
+        }
+        assertEquals(signals.toString(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+        assertTrue(batcher.getSentChars() < batcher.getRawChars());
+
+        // Ciphertext is never worth compressing
+        StringBuilder cipher = new StringBuilder();
+        for (int i = 0; i < 600; i++) {
+            cipher.append((char) ('A' + (i * 7919) % 26));
+        }
+        assertEquals(cipher.toString(), batcher.pack(new JSONArray().put(cipher.toString())));
+    }
+
+    @Test
+    public void timesSetupFromFirstOffer() {
+        assertEquals(-1, batcher.markConnected(100));
+        batcher.markOfferReceived(1000);
+        batcher.markOfferReceived(1500);
+        assertEquals(800, batcher.markConnected(1800));
+        assertEquals(800, batcher.getLastSetupMs());
+        assertEquals(1, batcher.getSetupHistogram().getCount());
+    }
+}
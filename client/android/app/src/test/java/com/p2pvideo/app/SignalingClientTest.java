@@ -0,0 +1,272 @@
+package com.p2pvideo.app;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs the client against a stand-in for the socket.io server: a plain
+ * ServerSocket that does the WebSocket upgrade and lets each test script
+ * the Engine.IO side.
+ */
+public class SignalingClientTest {
+    private static final long TIMEOUT_S = 5;
+
+    private ServerSocket server;
+    private SignalingClient client;
+    private final BlockingQueue<String> states = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> closeReasons = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new ServerSocket(0);
+        server.setSoTimeout((int) TimeUnit.SECONDS.toMillis(TIMEOUT_S));
+        client = new SignalingClient("http://127.0.0.1:" + server.getLocalPort(),
+            new JSONObject().put("token", "t"), new SignalingClient.Listener() {
+                @Override
+                public void onStateChanged(int state, String reason) {
+                    states.add(SignalingClient.stateName(state));
+                    if (state == SignalingClient.STATE_WAITING) {
+                        closeReasons.add(reason);
+                    }
+                }
+
+                @Override
+                public void onEvent(String event, JSONArray args) {
+                    events.add(event + args);
+                }
+            });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.stop();
+        server.close();
+    }
+
+    @Test
+    public void connectsAndExchangesEvents() throws Exception {
+        client.start();
+        Connection connection = accept(25_000, 20_000);
+
+        connection.send("42[\"me\",\"s1\"]");
+        assertEquals("me[\"s1\"]", events.poll(TIMEOUT_S, TimeUnit.SECONDS));
+        assertEquals("s1", client.getSid());
+        assertTrue(client.getLastConnectMs() >= 0);
+
+        client.emit("joinRoom", new JSONArray().put("room-123"));
+        assertEquals("42[\"joinRoom\",\"room-123\"]", connection.receive());
+
+        connection.send("2");
+        assertEquals("3", connection.receive());
+    }
+
+    @Test
+    public void reconnectsAndFlushesBufferedEvents() throws Exception {
+        client.start();
+        Connection first = accept(25_000, 20_000);
+        first.drop();
+        awaitState("waiting");
+
+        client.emit("answerCall", new JSONArray().put(new JSONObject().put("to", "peer")));
+        Connection second = accept(25_000, 20_000);
+        assertEquals("42[\"answerCall\",{\"to\":\"peer\"}]", second.receive());
+        assertEquals(1, client.getReconnects());
+        assertEquals(0, client.getBuffered());
+    }
+
+    @Test
+    public void networkChangeReplacesAHealthyConnection() throws Exception {
+        client.start();
+        accept(25_000, 20_000);
+        client.reconnectOnNetworkChange();
+        // No backoff: the next connection arrives well inside the first delay
+        long startedAt = System.nanoTime();
+        accept(25_000, 20_000);
+        assertTrue(System.nanoTime() - startedAt < TimeUnit.MILLISECONDS.toNanos(SignalingClient.RECONNECT_DELAY_MS));
+    }
+
+    @Test
+    public void missedPingsDropTheConnection() throws Exception {
+        client.start();
+        // Never pinged: the client gives up after pingInterval + pingTimeout
+        accept(100, 100);
+        awaitState("waiting");
+        accept(25_000, 20_000);
+    }
+
+    @Test
+    public void negativeFrameLengthDropsTheConnection() throws Exception {
+        client.start();
+        Connection connection = accept(25_000, 20_000);
+        // 64-bit length with the top bit set
+        connection.sendRaw(new byte[] {(byte) 0x81, 127, (byte) 0x80, 0, 0, 0, 0, 0, 0, 1});
+        assertEquals("Invalid frame length", closeReasons.poll(TIMEOUT_S, TimeUnit.SECONDS));
+        accept(25_000, 20_000);
+    }
+
+    @Test
+    public void serverDisconnectIsNotRetried() throws Exception {
+        client.start();
+        Connection connection = accept(25_000, 20_000);
+        connection.send("41");
+        awaitState("idle");
+        assertEquals(SignalingClient.STATE_IDLE, client.getState());
+    }
+
+    @Test
+    public void backoffFollowsSocketIoClient() {
+        assertEquals(1000, SignalingClient.backoffDelayMs(0, 0.0));
+        // 0.25: even tenth, shortened by 12.5%
+        assertEquals(1750, SignalingClient.backoffDelayMs(1, 0.25));
+        // 0.15: odd tenth, lengthened by 7.5%
+        assertEquals(4300, SignalingClient.backoffDelayMs(2, 0.15));
+        assertEquals(SignalingClient.RECONNECT_DELAY_MAX_MS, SignalingClient.backoffDelayMs(40, 0.99));
+    }
+
+    @Test
+    public void endpointUsesWebSocketTransport() throws Exception {
+        assertEquals("wss://signal.example.com/socket.io/?EIO=4&transport=websocket",
+            SignalingClient.endpointFor("https://signal.example.com").toString());
+        assertEquals("ws://10.0.2.2:5000/socket.io/?EIO=4&transport=websocket",
+            SignalingClient.endpointFor("http://10.0.2.2:5000/").toString());
+    }
+
+    private void awaitState(String expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_S);
+        while (System.nanoTime() < deadline) {
+            String state = states.poll(100, TimeUnit.MILLISECONDS);
+            if (expected.equals(state)) {
+                return;
+            }
+        }
+        fail("Never reached " + expected);
+    }
+
+    /**
+     * Accepts the next connection and completes the Engine.IO and Socket.IO
+     * handshakes with the given heartbeat settings.
+     */
+    private Connection accept(long pingInterval, long pingTimeout) throws Exception {
+        Connection connection = new Connection(server.accept());
+        connection.send("0{\"sid\":\"e1\",\"upgrades\":[],\"pingInterval\":" + pingInterval
+            + ",\"pingTimeout\":" + pingTimeout + ",\"maxPayload\":1000000}");
+        assertEquals("40{\"token\":\"t\"}", connection.receive());
+        connection.send("40{\"sid\":\"s1\"}");
+        awaitState("connected");
+        return connection;
+    }
+
+    private static final class Connection {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setSoTimeout((int) TimeUnit.SECONDS.toMillis(TIMEOUT_S));
+            in = new BufferedInputStream(socket.getInputStream());
+            out = socket.getOutputStream();
+
+            String key = null;
+            for (String line = readLine(); !line.isEmpty(); line = readLine()) {
+                if (line.toLowerCase().startsWith("sec-websocket-key:")) {
+                    key = line.substring(line.indexOf(':') + 1).trim();
+                }
+            }
+            assertNotNull(key);
+            out.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + WebSocketClient.acceptFor(key) + "\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            for (int b = in.read(); b != '\n'; b = in.read()) {
+                if (b < 0) {
+                    throw new EOFException();
+                }
+                if (b != '\r') {
+                    line.append((char) b);
+                }
+            }
+            return line.toString();
+        }
+
+        // Server frames are unmasked
+        void send(String text) throws IOException {
+            byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+            assertTrue(payload.length < 126);
+            out.write(0x81);
+            out.write(payload.length);
+            out.write(payload);
+            out.flush();
+        }
+
+        void sendRaw(byte[] frame) throws IOException {
+            out.write(frame);
+            out.flush();
+        }
+
+        /**
+         * Next text message from the client, skipping control frames.
+         */
+        String receive() throws IOException {
+            while (true) {
+                int first = in.read();
+                int second = in.read();
+                if (first < 0 || second < 0) {
+                    throw new EOFException();
+                }
+                assertTrue("client frames must be masked", (second & 0x80) != 0);
+                int length = second & 0x7F;
+                if (length == 126) {
+                    length = (in.read() << 8) | in.read();
+                }
+                byte[] mask = readBytes(4);
+                byte[] payload = readBytes(length);
+                for (int i = 0; i < payload.length; i++) {
+                    payload[i] ^= mask[i & 3];
+                }
+                if ((first & 0x0F) == 0x1) {
+                    return new String(payload, StandardCharsets.UTF_8);
+                }
+            }
+        }
+
+        private byte[] readBytes(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int n = in.read(bytes, read, length - read);
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                read += n;
+            }
+            return bytes;
+        }
+
+        void drop() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.p2pvideo.app;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class SocketIoPacketTest {
+
+    @Test
+    public void decodesEngineOpenAndPing() throws Exception {
+        SocketIoPacket open = SocketIoPacket.decode("0{\"sid\":\"abc\",\"pingInterval\":25000,\"pingTimeout\":20000}");
+        assertEquals(SocketIoPacket.ENGINE_OPEN, open.engineType);
+        assertEquals(25000, ((JSONObject) open.data).getLong("pingInterval"));
+
+        SocketIoPacket ping = SocketIoPacket.decode("2");
+        assertEquals(SocketIoPacket.ENGINE_PING, ping.engineType);
+        assertNull(ping.data);
+    }
+
+    @Test
+    public void decodesEventsWithNamespaceAndAck() throws Exception {
+        SocketIoPacket event = SocketIoPacket.decode("42[\"callUser\",{\"from\":\"x\"},3]");
+        assertTrue(event.isEvent());
+        assertEquals("callUser", event.eventName());
+        JSONArray args = event.eventArgs();
+        assertEquals(2, args.length());
+        assertEquals("x", args.getJSONObject(0).getString("from"));
+        assertEquals(-1, event.ackId);
+
+        SocketIoPacket namespaced = SocketIoPacket.decode("42/admin,12[\"me\",\"id\"]");
+        assertEquals("/admin", namespaced.namespace);
+        assertEquals(12, namespaced.ackId);
+        assertEquals("me", namespaced.eventName());
+
+        SocketIoPacket connect = SocketIoPacket.decode("40{\"sid\":\"s1\"}");
+        assertEquals(SocketIoPacket.SOCKET_CONNECT, connect.socketType);
+        assertFalse(connect.isEvent());
+    }
+
+    @Test
+    public void rejectsMalformedPackets() {
+        assertNull(SocketIoPacket.decode(""));
+        assertNull(SocketIoPacket.decode("9"));
+        assertNull(SocketIoPacket.decode("4"));
+        assertNull(SocketIoPacket.decode("42[\"unterminated"));
+    }
+
+    @Test
+    public void encodesConnectAndEvents() throws Exception {
+        assertEquals("40", SocketIoPacket.encodeConnect(null));
+        assertEquals("40{\"token\":\"t\"}", SocketIoPacket.encodeConnect(new JSONObject().put("token", "t")));
+        String encoded = SocketIoPacket.encodeEvent("joinRoom", new JSONArray().put("room-123"));
+        assertEquals("42[\"joinRoom\",\"room-123\"]", encoded);
+        assertEquals("joinRoom", SocketIoPacket.decode(encoded).eventName());
+    }
+}
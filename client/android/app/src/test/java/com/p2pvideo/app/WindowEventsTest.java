@@ -0,0 +1,26 @@
+package com.p2pvideo.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class WindowEventsTest {
+
+    @Test
+    public void buildsPayloads() {
+        assertEquals("{\"isInPipMode\":true}", WindowEvents.pipModeChanged(true));
+        assertEquals("{\"action\":\"hangup\"}", WindowEvents.pipAction("hangup"));
+        assertEquals("{\"duration\":\"01:02:03\"}", WindowEvents.callServiceEnded("01:02:03"));
+    }
+
+    @Test
+    public void missingDurationIsEmpty() {
+        assertEquals("{\"duration\":\"\"}", WindowEvents.callServiceEnded(null));
+    }
+
+    @Test
+    public void escapesStrings() {
+        assertEquals("\"a\\\"b\\\\c\\u000a\"",
+            WindowEvents.appendQuoted(new StringBuilder(), "a\"b\\c\n").toString());
+    }
+}
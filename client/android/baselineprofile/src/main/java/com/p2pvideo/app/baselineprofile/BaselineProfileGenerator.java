@@ -0,0 +1,34 @@
+package com.p2pvideo.app.baselineprofile;
+
+import androidx.benchmark.macro.junit4.BaselineProfileRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import kotlin.Unit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Generates the Baseline Profile for :app from the cold start to
+ * join-ready journey, covering bridge creation, plugin registration and the
+ * first page load. Run with :app:generateBaselineProfile; the result is
+ * written to app/src/release/generated/baselineProfiles and should be
+ * checked in.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BaselineProfileGenerator {
+
+    @Rule
+    public BaselineProfileRule baselineProfileRule = new BaselineProfileRule();
+
+    @Test
+    public void generate() {
+        baselineProfileRule.collect(JoinJourney.PACKAGE_NAME, scope -> {
+            JoinJourney.grantPermissions(scope);
+            scope.pressHome();
+            JoinJourney.launchAndAwaitJoinReady(scope);
+            return Unit.INSTANCE;
+        });
+    }
+}
@@ -0,0 +1,40 @@
+package com.p2pvideo.app.baselineprofile;
+
+import androidx.benchmark.macro.MacrobenchmarkScope;
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.Until;
+
+/**
+ * The cold-start journey both the profile generator and the benchmarks run:
+ * launch into the lobby and wait until it can join a call.
+ */
+final class JoinJourney {
+    static final String PACKAGE_NAME = "com.p2pvideo.app";
+
+    // Trace sections emitted by MainActivity and StartupTrace in :app
+    static final String COLD_START_SECTION = "coldStartToJoinReady";
+    static final String ON_CREATE_SECTION = "MainActivity.onCreate";
+
+    private static final long JOIN_READY_TIMEOUT_MS = 30_000;
+
+    private JoinJourney() {
+    }
+
+    /**
+     * The lobby asks for camera and microphone on launch; grant them up front
+     * so no permission dialog sits in the measured path.
+     */
+    static void grantPermissions(MacrobenchmarkScope scope) {
+        scope.getDevice().executeShellCommand("pm grant " + PACKAGE_NAME + " android.permission.CAMERA");
+        scope.getDevice().executeShellCommand("pm grant " + PACKAGE_NAME + " android.permission.RECORD_AUDIO");
+    }
+
+    static void launchAndAwaitJoinReady(MacrobenchmarkScope scope) {
+        scope.startActivityAndWait();
+        // The join button switches to "Joined" once the server has assigned an id
+        if (!scope.getDevice().wait(Until.hasObject(By.textContains("Joined")), JOIN_READY_TIMEOUT_MS)) {
+            throw new AssertionError("Lobby was not ready to join within " + JOIN_READY_TIMEOUT_MS
+                + "ms; is the signaling server reachable?");
+        }
+    }
+}
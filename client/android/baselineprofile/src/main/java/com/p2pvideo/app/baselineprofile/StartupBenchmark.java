@@ -0,0 +1,66 @@
+package com.p2pvideo.app.baselineprofile;
+
+import androidx.benchmark.macro.BaselineProfileMode;
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.TraceSectionMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import java.util.Arrays;
+
+import kotlin.Unit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Cold start with and without the Baseline Profile.
+ *
+ * timeToInitialDisplayMs is time to first frame; timeToFullDisplayMs ends at
+ * reportFullyDrawn, which MainActivity calls at join-ready, and the
+ * coldStartToJoinReady section measures the same span from inside the app.
+ * The profile should bring both down clearly against the None run.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+    private static final int ITERATIONS = 10;
+
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    @Test
+    public void coldStartWithoutProfile() {
+        measure(new CompilationMode.None());
+    }
+
+    @Test
+    public void coldStartWithBaselineProfile() {
+        measure(new CompilationMode.Partial(BaselineProfileMode.Require));
+    }
+
+    private void measure(CompilationMode compilationMode) {
+        benchmarkRule.measureRepeated(
+            JoinJourney.PACKAGE_NAME,
+            Arrays.asList(
+                new StartupTimingMetric(),
+                new TraceSectionMetric(JoinJourney.ON_CREATE_SECTION),
+                new TraceSectionMetric(JoinJourney.COLD_START_SECTION)
+            ),
+            compilationMode,
+            StartupMode.COLD,
+            ITERATIONS,
+            scope -> {
+                JoinJourney.grantPermissions(scope);
+                scope.pressHome();
+                return Unit.INSTANCE;
+            },
+            scope -> {
+                JoinJourney.launchAndAwaitJoinReady(scope);
+                return Unit.INSTANCE;
+            }
+        );
+    }
+}
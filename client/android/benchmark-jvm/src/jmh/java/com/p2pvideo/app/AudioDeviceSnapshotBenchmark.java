@@ -0,0 +1,79 @@
+package com.p2pvideo.app;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Snapshot rebuilds in AudioRoutingPlugin.publishSnapshot, which run after
+ * every burst of device callbacks (Bluetooth connects report several).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AudioDeviceSnapshotBenchmark {
+
+    private final AudioDeviceSnapshot.Builder builder = new AudioDeviceSnapshot.Builder();
+    private AudioDeviceSnapshot withHeadset;
+    private AudioDeviceSnapshot withoutHeadset;
+    private boolean headsetConnected;
+
+    @Setup
+    public void setup() {
+        withoutHeadset = addDevices(builder.reset(), false).build(AudioDeviceSnapshot.EMPTY);
+        withHeadset = addDevices(builder.reset(), true).build(withoutHeadset);
+    }
+
+    private static AudioDeviceSnapshot.Builder addDevices(AudioDeviceSnapshot.Builder builder, boolean headset) {
+        builder.addDevice(1, AudioDeviceSnapshot.TYPE_BUILTIN_EARPIECE, "Pixel 8")
+            .addDevice(2, AudioDeviceSnapshot.TYPE_BUILTIN_SPEAKER, "Pixel 8")
+            .addDevice(3, AudioDeviceSnapshot.TYPE_BLUETOOTH_A2DP, "Pixel Buds Pro");
+        if (headset) {
+            builder.addDevice(4, AudioDeviceSnapshot.TYPE_BLUETOOTH_SCO, "Pixel Buds Pro")
+                .addDevice(5, AudioDeviceSnapshot.TYPE_USB_HEADSET, "USB-C Headset")
+                .setBluetoothHeadsetConnected(true);
+        }
+        return builder;
+    }
+
+    /**
+     * Callback burst that ends with the same devices: the previous snapshot
+     * is kept.
+     */
+    @Benchmark
+    public AudioDeviceSnapshot rebuildUnchanged() {
+        return addDevices(builder.reset(), true).build(withHeadset);
+    }
+
+    /**
+     * Headset plugged in or out: a new snapshot is built.
+     */
+    @Benchmark
+    public AudioDeviceSnapshot rebuildChanged() {
+        headsetConnected = !headsetConnected;
+        return addDevices(builder.reset(), headsetConnected)
+            .build(headsetConnected ? withoutHeadset : withHeadset);
+    }
+
+    @Benchmark
+    public void diff(Blackhole bh) {
+        List<AudioDeviceSnapshot.Device> added = withHeadset.addedSince(withoutHeadset);
+        List<Integer> removed = withoutHeadset.removedSince(withHeadset);
+        bh.consume(added);
+        bh.consume(removed);
+    }
+}
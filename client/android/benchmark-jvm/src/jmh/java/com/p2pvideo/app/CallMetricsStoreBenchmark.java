@@ -0,0 +1,62 @@
+package com.p2pvideo.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Appending one per-second call sample, including segment rollover.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallMetricsStoreBenchmark {
+
+    private File dir;
+    private CallMetricsStore store;
+    private final CallMetricsStore.Sample sample = new CallMetricsStore.Sample();
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("call-metrics").toFile();
+        store = new CallMetricsStore(dir);
+        sample.callId = 1;
+        sample.bitrateKbps = 1200;
+        sample.rttMs = 80;
+        sample.audioRoute = CallMetricsStore.routeCode("bluetooth");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public void append() throws IOException {
+        sample.timestamp++;
+        store.append(sample);
+    }
+}
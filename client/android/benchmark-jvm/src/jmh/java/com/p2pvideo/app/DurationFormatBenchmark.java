@@ -0,0 +1,50 @@
+package com.p2pvideo.app;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The notification duration text, rebuilt every second of a call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DurationFormatBenchmark {
+
+    // 0:59, 59:59 and 2:03:04
+    @Param({"59000", "3599000", "7384000"})
+    public long elapsedMillis;
+
+    private final StringBuilder out = new StringBuilder(8);
+
+    @Benchmark
+    public StringBuilder appendDuration() {
+        out.setLength(0);
+        return DurationFormat.appendDuration(out, elapsedMillis);
+    }
+
+    /**
+     * The String.format equivalent, for scale.
+     */
+    @Benchmark
+    public String stringFormat() {
+        long seconds = elapsedMillis / 1000;
+        long hours = seconds / 3600;
+        return hours > 0
+            ? String.format("%02d:%02d:%02d", hours, seconds / 60 % 60, seconds % 60)
+            : String.format("%02d:%02d", seconds / 60 % 60, seconds % 60);
+    }
+}
@@ -0,0 +1,64 @@
+package com.p2pvideo.app;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-frame cost of the screen-share diff, on RGBA frames in a direct
+ * buffer like the ones ImageReader hands to FrameDiffStage.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameDiffEngineBenchmark {
+
+    @Param({"720", "1080"})
+    public int height;
+
+    private FrameDiffEngine engine;
+    private ByteBuffer frame;
+    private int rowStride;
+    private int counter;
+
+    @Setup
+    public void setup() {
+        int width = height * 16 / 9;
+        // ImageReader pads rows; 64-byte alignment is typical
+        rowStride = (width * 4 + 63) & ~63;
+        frame = ByteBuffer.allocateDirect(rowStride * height);
+        for (int i = 0; i < frame.capacity(); i++) {
+            frame.put(i, (byte) (i * 31));
+        }
+        engine = new FrameDiffEngine(width, height, 4);
+        engine.process(frame, rowStride);
+    }
+
+    @Benchmark
+    public boolean staticFrame() {
+        return engine.process(frame, rowStride);
+    }
+
+    /**
+     * One pixel changes per frame, like a blinking cursor.
+     */
+    @Benchmark
+    public boolean cursorBlink() {
+        frame.put(rowStride * 10 + 40, (byte) counter++);
+        return engine.process(frame, rowStride);
+    }
+}
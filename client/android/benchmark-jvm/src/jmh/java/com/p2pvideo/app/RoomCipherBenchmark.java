@@ -0,0 +1,73 @@
+package com.p2pvideo.app;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end signal encryption: the room key derivation once per call, then
+ * every signal through the CryptoJS-compatible and the AES-GCM format.
+ * Crypto.benchmark runs the same operations on the device through
+ * CryptoBenchmark, next to the page's CryptoJS timings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoomCipherBenchmark {
+
+    // A trickled candidate and a full offer
+    @Param({"200", "2000"})
+    public int payloadChars;
+
+    private RoomCipher cipher;
+    private String plaintext;
+    private String encrypted;
+    private String encryptedGcm;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        cipher = RoomCipher.derive("benchmark-room", "benchmark-password");
+        plaintext = CryptoBenchmark.payload(payloadChars);
+        encrypted = cipher.encrypt(plaintext);
+        encryptedGcm = cipher.encryptGcm(plaintext);
+    }
+
+    @Benchmark
+    public RoomCipher derive() throws GeneralSecurityException {
+        return RoomCipher.derive("benchmark-room", "benchmark-password");
+    }
+
+    @Benchmark
+    public String encrypt() throws GeneralSecurityException {
+        return cipher.encrypt(plaintext);
+    }
+
+    @Benchmark
+    public String decrypt() throws GeneralSecurityException {
+        return cipher.decrypt(encrypted);
+    }
+
+    @Benchmark
+    public String encryptGcm() throws GeneralSecurityException {
+        return cipher.encryptGcm(plaintext);
+    }
+
+    @Benchmark
+    public String decryptGcm() throws GeneralSecurityException {
+        return cipher.decrypt(encryptedGcm);
+    }
+}
@@ -0,0 +1,45 @@
+package com.p2pvideo.app;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Payloads MainActivity serializes for Bridge.triggerWindowJSEvent. The
+ * JSObject-based events and the binary NativeEventBus are measured on
+ * device in :benchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WindowEventsBenchmark {
+
+    public String duration = "01:02:03";
+    public boolean inPip = true;
+
+    @Benchmark
+    public String pipModeChanged() {
+        return WindowEvents.pipModeChanged(inPip);
+    }
+
+    @Benchmark
+    public String pipAction() {
+        return WindowEvents.pipAction("hangup");
+    }
+
+    @Benchmark
+    public String callServiceEnded() {
+        return WindowEvents.callServiceEnded(duration);
+    }
+}
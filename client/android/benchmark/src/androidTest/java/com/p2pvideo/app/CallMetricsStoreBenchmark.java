@@ -0,0 +1,66 @@
+package com.p2pvideo.app;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Sample appends against the device's flash storage, where segment
+ * creation and page faults cost more than on a desktop.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CallMetricsStoreBenchmark {
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private File dir;
+    private CallMetricsStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = new File(InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir(),
+            "call-metrics-benchmark");
+        deleteDir();
+        store = new CallMetricsStore(dir);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        deleteDir();
+    }
+
+    private void deleteDir() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void append() throws IOException {
+        CallMetricsStore.Sample sample = new CallMetricsStore.Sample();
+        sample.callId = 1;
+        sample.bitrateKbps = 1200;
+        sample.rttMs = 80;
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            sample.timestamp++;
+            store.append(sample);
+        }
+    }
+}
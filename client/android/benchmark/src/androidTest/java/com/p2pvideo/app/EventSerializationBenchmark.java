@@ -0,0 +1,73 @@
+package com.p2pvideo.app;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.getcapacitor.JSObject;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Cost of getting one event to the page: the JSON strings and JSObjects
+ * MainActivity passes to triggerWindowJSEvent / notifyListeners, against a
+ * record in a NativeEventBus batch.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EventSerializationBenchmark {
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    @Test
+    public void windowEventPipAction() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            WindowEvents.pipAction("hangup");
+        }
+    }
+
+    @Test
+    public void pipProfileJson() {
+        PipPerformanceProfile profile = new PipPerformanceProfile();
+        BenchmarkState state = benchmarkRule.getState();
+        boolean inPip = false;
+        while (state.keepRunning()) {
+            inPip = !inPip;
+            profile.begin(inPip).toString();
+        }
+    }
+
+    /**
+     * What an encoded frame would cost as a listener event.
+     */
+    @Test
+    public void encodedFrameJson() {
+        BenchmarkState state = benchmarkRule.getState();
+        long ptsUs = 0;
+        while (state.keepRunning()) {
+            JSObject event = new JSObject();
+            event.put("size", 18_000);
+            event.put("ptsUs", ptsUs += 33_333);
+            event.put("flags", 0);
+            event.put("queueDepth", 1);
+            event.toString();
+        }
+    }
+
+    @Test
+    public void encodedFrameBinary() {
+        NativeEventEncoder encoder = new NativeEventEncoder(16 * 1024);
+        BenchmarkState state = benchmarkRule.getState();
+        long ptsUs = 0;
+        while (state.keepRunning()) {
+            encoder.begin(NativeEventSchema.ENCODED_FRAME, 0);
+            encoder.putInt(18_000).putLong(ptsUs += 33_333).putInt(0).putInt(1).end();
+            if (encoder.getRecordCount() == 64) {
+                encoder.finish();
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Camera Capture
+ * Helpers backed by the app's CameraCapture plugin (CameraCapturePlugin.java):
+ * opens cameras at a size they support exactly so the WebView never scales
+ * frames, says whether the other camera can be kept open during a call,
+ * and records switch latency and capture fps. In a browser they fall back
+ * to ideal constraints and a single open camera.
+ */
+
+const nativePlugin = () => window.Capacitor?.Plugins?.CameraCapture;
+
+let concurrentFrontBack = null;
+
+const openTrack = async (video) => {
+    const newStream = await navigator.mediaDevices.getUserMedia({ video, audio: false });
+    return newStream.getVideoTracks()[0];
+};
+
+/**
+ * Opens a video track facing 'user' or 'environment' (or the camera
+ * deviceId, if given) at quality's size and frame rate.
+ * @returns {Promise<MediaStreamTrack>}
+ */
+export async function openCamera(facing, quality, deviceId = null) {
+    const source = deviceId ? { deviceId: { exact: deviceId } } : { facingMode: facing };
+    const format = await nativePlugin()?.selectCaptureFormat({
+        facing,
+        width: quality.width,
+        height: quality.height,
+        frameRate: quality.frameRate
+    }).catch(err => null);
+    if (format) {
+        try {
+            return await openTrack({
+                ...source,
+                width: { exact: format.width },
+                height: { exact: format.height },
+                frameRate: { ideal: format.frameRate }
+            });
+        } catch (err) {
+            // The WebView's capturer may list sizes differently; retry loosely
+            if (err.name !== 'OverconstrainedError') throw err;
+        }
+    }
+    return openTrack({
+        ...source,
+        width: { ideal: quality.width },
+        height: { ideal: quality.height },
+        frameRate: { ideal: quality.frameRate }
+    });
+}
+
+/**
+ * Whether the front and back cameras can stream at the same time, so the
+ * one not in use can stay open for an instant switch.
+ */
+export async function canKeepAlternateWarm() {
+    if (concurrentFrontBack === null) {
+        const plugin = nativePlugin();
+        concurrentFrontBack = plugin
+            ? await plugin.getCameras().then(result => result.concurrentFrontBack).catch(() => false)
+            : false;
+    }
+    return concurrentFrontBack;
+}
+
+/**
+ * Resolves with the ms from startedAt to the next frame video presents.
+ */
+export function nextFrameDelay(video, startedAt) {
+    return new Promise(resolve => {
+        if (video?.requestVideoFrameCallback) {
+            video.requestVideoFrameCallback(() => resolve(performance.now() - startedAt));
+        } else {
+            resolve(performance.now() - startedAt);
+        }
+    });
+}
+
+export function recordCameraSwitch(ms, warm) {
+    nativePlugin()?.recordSwitch({ ms, warm }).catch(err => {});
+}
+
+export function recordCaptureFps(fps) {
+    nativePlugin()?.recordCaptureFps({ fps }).catch(err => {});
+}
@@ -1,20 +1,99 @@
 import CryptoJS from 'crypto-js';
 
+const SALT = 'p2p-video-chat-secure-salt-2024';
+const ITERATIONS = 10000;
+// AES-GCM messages (CryptoPlugin / RoomCipher.java); everything else is CryptoJS
+const GCM_PREFIX = 'g1:';
+const GCM_INFO = 'p2p-e2e-aes-gcm-v1';
+
 /**
  * End-to-End Encryption Layer
  * Adds an additional encryption layer on top of WebRTC DTLS
  */
 export class E2EEncryption {
-    constructor(roomID, password = null) {
+    constructor(roomID, password = null, key = null) {
         // Derive encryption key from room ID and optional password
         const baseKey = roomID + (password || '');
-        const salt = 'p2p-video-chat-secure-salt-2024';
         
-        // Use PBKDF2 to derive a strong key
-        this.key = CryptoJS.PBKDF2(baseKey, salt, {
+        // Use PBKDF2 to derive a strong key, unless create() already has
+        this.key = key || CryptoJS.PBKDF2(baseKey, SALT, {
             keySize: 256/32,
-            iterations: 10000
+            iterations: ITERATIONS
         }).toString();
+        this.gcmKey = null;
+    }
+
+    /**
+     * Derives the key without blocking the UI: natively in the app
+     * (CryptoPlugin), else through WebCrypto, else CryptoJS as before.
+     * All three give the same key.
+     * @returns {Promise<E2EEncryption|NativeE2EEncryption>}
+     */
+    static async create(roomID, password = null) {
+        const plugin = window.Capacitor?.Plugins?.Crypto;
+        if (plugin) {
+            try {
+                const { keyId } = await plugin.deriveKey({ roomId: roomID, password: password || '' });
+                return new NativeE2EEncryption(plugin, keyId);
+            } catch (error) {
+                console.log('Native key derivation failed, using JS:', error);
+            }
+        }
+        if (globalThis.crypto?.subtle) {
+            try {
+                const encoder = new TextEncoder();
+                const baseKey = await crypto.subtle.importKey(
+                    'raw', encoder.encode(roomID + (password || '')), 'PBKDF2', false, ['deriveBits']);
+                const bits = await crypto.subtle.deriveBits(
+                    { name: 'PBKDF2', hash: 'SHA-256', salt: encoder.encode(SALT), iterations: ITERATIONS },
+                    baseKey, 256);
+                return new E2EEncryption(roomID, password, toHex(new Uint8Array(bits)));
+            } catch (error) {
+                console.log('WebCrypto key derivation failed, using CryptoJS:', error);
+            }
+        }
+        return new E2EEncryption(roomID, password);
+    }
+
+    /**
+     * Encrypt several signals at once (same interface as NativeE2EEncryption)
+     * @param {object[]} signals
+     * @returns {Promise<string[]>}
+     */
+    async encryptSignals(signals) {
+        return signals.map(signal => this.encryptSignal(signal));
+    }
+
+    /**
+     * Decrypt several signals, in either message format
+     * @param {string[]} messages
+     * @returns {Promise<object[]>}
+     */
+    async decryptSignals(messages) {
+        const signals = [];
+        for (const message of messages) {
+            signals.push(typeof message === 'string' && message.startsWith(GCM_PREFIX)
+                ? JSON.parse(await this.decryptGcm(message))
+                : this.decryptSignal(message));
+        }
+        return signals;
+    }
+
+    async decryptGcm(message) {
+        if (!this.gcmKey) {
+            const encoder = new TextEncoder();
+            const roomKey = await crypto.subtle.importKey('raw', fromHex(this.key), 'HKDF', false, ['deriveKey']);
+            this.gcmKey = await crypto.subtle.deriveKey(
+                { name: 'HKDF', hash: 'SHA-256', salt: encoder.encode(SALT), info: encoder.encode(GCM_INFO) },
+                roomKey, { name: 'AES-GCM', length: 256 }, false, ['decrypt']);
+        }
+        const data = Uint8Array.from(atob(message.slice(GCM_PREFIX.length)), c => c.charCodeAt(0));
+        const plaintext = await crypto.subtle.decrypt(
+            { name: 'AES-GCM', iv: data.slice(0, 12) }, this.gcmKey, data.slice(12));
+        return new TextDecoder().decode(plaintext);
+    }
+
+    release() {
     }
     
     /**
@@ -72,6 +151,85 @@ export class E2EEncryption {
     }
 }
 
+/**
+ * E2E encryption through CryptoPlugin: the key stays native and each batch
+ * is one bridge call, run off the UI thread. Messages are in the CryptoJS
+ * format unless format is 'gcm', so web peers can read them.
+ */
+export class NativeE2EEncryption {
+    constructor(plugin, keyId, format = 'cryptojs') {
+        this.plugin = plugin;
+        this.keyId = keyId;
+        this.format = format;
+    }
+
+    async encryptSignals(signals) {
+        const { items } = await this.plugin.encrypt({
+            keyId: this.keyId,
+            format: this.format,
+            items: signals.map(signal => JSON.stringify(signal))
+        });
+        return items;
+    }
+
+    async decryptSignals(messages) {
+        const { items } = await this.plugin.decrypt({ keyId: this.keyId, items: messages });
+        return items.map(jsonStr => {
+            if (!jsonStr) {
+                throw new Error('Decryption failed - wrong key or corrupted data');
+            }
+            return JSON.parse(jsonStr);
+        });
+    }
+
+    release() {
+        this.plugin.releaseKey({ keyId: this.keyId }).catch(err => {});
+    }
+}
+
+const toHex = (bytes) => Array.from(bytes, byte => byte.toString(16).padStart(2, '0')).join('');
+
+const fromHex = (hex) => Uint8Array.from(hex.match(/../g), pair => parseInt(pair, 16));
+
+// Same stand-in signal as CryptoBenchmark.payload()
+const benchmarkPayload = (payloadChars) => {
+    let sdp = '';
+    for (let i = 0; sdp.length < payloadChars; i++) {
+        sdp += `a=candidate:${i} 1 udp 2122260223 192.0.2.${i % 255} ${50000 + i} typ host\\r\\n`;
+    }
+    return `{"type":"offer","sdp":"${sdp}"}`;
+};
+
+/**
+ * Times the CryptoJS path and, in the app, CryptoPlugin.benchmark with the
+ * same parameters. Blocks the UI while CryptoJS runs; for a debug screen.
+ * @returns {Promise<{cryptojs: object, native: object|null}>}
+ */
+export const benchmarkE2E = async ({ iterations = 200, payloadChars = 2000 } = {}) => {
+    let startedAt = performance.now();
+    const e2e = new E2EEncryption('benchmark-room', 'benchmark-password');
+    const deriveMs = performance.now() - startedAt;
+
+    const plaintext = benchmarkPayload(payloadChars);
+    const messages = [];
+    startedAt = performance.now();
+    for (let i = 0; i < iterations; i++) {
+        messages.push(e2e.encryptMessage(plaintext));
+    }
+    const encryptUs = (performance.now() - startedAt) * 1000 / iterations;
+    startedAt = performance.now();
+    for (const message of messages) {
+        e2e.decryptMessage(message);
+    }
+    const decryptUs = (performance.now() - startedAt) * 1000 / iterations;
+
+    const plugin = window.Capacitor?.Plugins?.Crypto;
+    return {
+        cryptojs: { iterations, payloadChars: plaintext.length, deriveMs, encryptUs, decryptUs },
+        native: plugin ? await plugin.benchmark({ iterations, payloadChars }) : null
+    };
+};
+
 /**
  * Generate a secure random room password
  * @returns {string} 16-character password
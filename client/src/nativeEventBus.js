@@ -0,0 +1,133 @@
+/**
+ * Native Event Bus
+ * Receives batched binary events from the Android app over a MessagePort.
+ * See NativeEventBus.java / NativeEventEncoder.java for the wire format.
+ */
+
+// Must match NativeEventBus.HANDSHAKE
+const HANDSHAKE = 'p2pvideo-event-bus';
+
+const READERS = {
+    int32: (view, offset) => view.getInt32(offset, true),
+    float32: (view, offset) => view.getFloat32(offset, true),
+    int64: (view, offset) => Number(view.getBigInt64(offset, true)),
+    float64: (view, offset) => view.getFloat64(offset, true)
+};
+
+export class NativeEventBus {
+    constructor() {
+        this.port = null;
+        this.types = new Map();
+        this.handlers = new Map();
+        this.lastSequence = -1;
+        this.stats = { batches: 0, records: 0, dropped: 0, missedBatches: 0 };
+    }
+
+    /**
+     * Connect to the native side. Resolves false when not running in the
+     * Android app or the WebView lacks MessagePort support.
+     */
+    async connect() {
+        const plugin = window.Capacitor?.Plugins?.NativeEventBus;
+        if (!plugin) return false;
+
+        const portReady = new Promise(resolve => {
+            const onMessage = (event) => {
+                if (event.data === HANDSHAKE && event.ports && event.ports[0]) {
+                    window.removeEventListener('message', onMessage);
+                    resolve(event.ports[0]);
+                }
+            };
+            window.addEventListener('message', onMessage);
+        });
+
+        let schema;
+        try {
+            schema = await plugin.connect();
+        } catch (err) {
+            return false;
+        }
+        this.schema = schema;
+        this.types.clear();
+        for (const type of schema.types) {
+            // One reusable object per type; handlers must copy what they keep
+            const fields = type.fields.map(f => ({ name: f.name, offset: f.offset, read: READERS[f.kind] }));
+            this.types.set(type.id, { name: type.name, size: type.size, fields, record: { timestamp: 0 } });
+        }
+
+        // The port message can land before or after the plugin call resolves
+        this.port = await portReady;
+        this.port.onmessage = (event) => this.handleBatch(event.data);
+        return true;
+    }
+
+    /**
+     * handler(record) is called for every record of the named type. The
+     * record object is reused between calls.
+     */
+    on(typeName, handler) {
+        if (!this.handlers.has(typeName)) {
+            this.handlers.set(typeName, []);
+        }
+        this.handlers.get(typeName).push(handler);
+        return () => {
+            const list = this.handlers.get(typeName);
+            list.splice(list.indexOf(handler), 1);
+        };
+    }
+
+    handleBatch(data) {
+        const buffer = typeof data === 'string' ? base64ToArrayBuffer(data) : data;
+        const view = new DataView(buffer);
+        const sequence = view.getUint32(0, true);
+        const count = view.getUint16(4, true);
+
+        if (this.lastSequence >= 0 && sequence !== this.lastSequence + 1) {
+            this.stats.missedBatches += sequence - this.lastSequence - 1;
+        }
+        this.lastSequence = sequence;
+        this.stats.batches++;
+        this.stats.records += count;
+        this.stats.dropped += view.getUint16(6, true);
+
+        let offset = this.schema.batchHeaderSize;
+        for (let i = 0; i < count; i++) {
+            const typeId = view.getUint16(offset, true);
+            const size = view.getUint16(offset + 2, true);
+            const type = this.types.get(typeId);
+            const handlers = type && this.handlers.get(type.name);
+
+            if (handlers && handlers.length) {
+                const record = type.record;
+                record.timestamp = view.getUint32(offset + 4, true);
+                const payload = offset + this.schema.recordHeaderSize;
+                for (const field of type.fields) {
+                    record[field.name] = field.read(view, payload + field.offset);
+                }
+                for (const handler of handlers) {
+                    handler(record);
+                }
+            }
+            offset += this.schema.recordHeaderSize + size;
+        }
+    }
+
+    async disconnect() {
+        if (this.port) {
+            this.port.close();
+            this.port = null;
+        }
+        await window.Capacitor?.Plugins?.NativeEventBus?.disconnect();
+    }
+}
+
+function base64ToArrayBuffer(base64) {
+    const binary = atob(base64);
+    const bytes = new Uint8Array(binary.length);
+    for (let i = 0; i < binary.length; i++) {
+        bytes[i] = binary.charCodeAt(i);
+    }
+    return bytes.buffer;
+}
+
+export default NativeEventBus;
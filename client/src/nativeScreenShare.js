@@ -0,0 +1,147 @@
+/**
+ * Native Screen Share
+ * Turns the Android screen encoder (ScreenCapture.startNativeCapture) into a
+ * MediaStreamTrack: encoded frames arrive over a MessagePort, are decoded
+ * with WebCodecs and written to a MediaStreamTrackGenerator, whose track can
+ * be sent with replaceTrack like any other.
+ * See ScreenFramePort.java for the wire format.
+ */
+
+// Must match ScreenFramePort.HANDSHAKE
+const HANDSHAKE = 'p2pvideo-screen-frames';
+const HEADER_SIZE = 16;
+// MediaCodec.BUFFER_FLAG_KEY_FRAME / BUFFER_FLAG_CODEC_CONFIG
+const FLAG_KEY_FRAME = 1;
+const FLAG_CODEC_CONFIG = 2;
+
+export const isNativeScreenShareSupported = () =>
+    typeof window.VideoDecoder === 'function' &&
+    typeof window.EncodedVideoChunk === 'function' &&
+    typeof window.MediaStreamTrackGenerator === 'function';
+
+/**
+ * Starts the native capture and resolves with { stream, track, info, stop }.
+ * options are passed on to startNativeCapture (width, height, fps, bitrate).
+ */
+export async function startNativeScreenShare(ScreenCapture, options = {}) {
+    let onMessage;
+    const portReady = new Promise(resolve => {
+        onMessage = (event) => {
+            if (event.data === HANDSHAKE && event.ports && event.ports[0]) {
+                window.removeEventListener('message', onMessage);
+                resolve(event.ports[0]);
+            }
+        };
+        window.addEventListener('message', onMessage);
+    });
+
+    let info;
+    try {
+        info = await ScreenCapture.startNativeCapture({ ...options, codec: 'h264', transport: 'page' });
+    } catch (err) {
+        window.removeEventListener('message', onMessage);
+        throw err;
+    }
+    // The port message can land before or after the plugin call resolves
+    const port = await portReady;
+
+    const generator = new MediaStreamTrackGenerator({ kind: 'video' });
+    const writer = generator.writable.getWriter();
+    let handled = 0;
+    let decoder = null;
+    let codecConfig = null;
+    let waitingForKeyFrame = true;
+    let stopped = false;
+
+    // Tell the encoder this frame is done with, so it can send the next one
+    const answer = () => {
+        handled++;
+        port.postMessage(String(handled));
+    };
+
+    const createDecoder = () => {
+        decoder = new VideoDecoder({
+            output: (frame) => {
+                writer.write(frame).catch(() => frame.close());
+                answer();
+            },
+            error: (err) => {
+                console.error('Screen share decoder error:', err);
+                if (stopped) return;
+                // Start over from the next key frame
+                decoder = null;
+                waitingForKeyFrame = true;
+                if (codecConfig) createDecoder();
+                port.postMessage('keyframe');
+            }
+        });
+        decoder.configure({ codec: avcCodecString(codecConfig), optimizeForLatency: true });
+    };
+
+    port.onmessage = ({ data }) => {
+        const view = new DataView(data);
+        const size = view.getInt32(0, true);
+        const timestamp = Number(view.getBigInt64(4, true));
+        const flags = view.getInt32(12, true);
+        const payload = new Uint8Array(data, HEADER_SIZE, size);
+
+        if (flags & FLAG_CODEC_CONFIG) {
+            // SPS/PPS; sent again after every encoder reconfigure
+            codecConfig = payload;
+            if (decoder && decoder.state !== 'closed') {
+                decoder.configure({ codec: avcCodecString(codecConfig), optimizeForLatency: true });
+            } else {
+                createDecoder();
+            }
+            waitingForKeyFrame = true;
+            answer();
+            return;
+        }
+
+        const key = (flags & FLAG_KEY_FRAME) !== 0;
+        if (stopped || !decoder || (waitingForKeyFrame && !key)) {
+            answer();
+            return;
+        }
+        waitingForKeyFrame = false;
+
+        // MediaCodec sends SPS/PPS once, ahead of the first key frame; the
+        // decoder wants them in front of every key frame it starts from
+        decoder.decode(new EncodedVideoChunk({
+            type: key ? 'key' : 'delta',
+            timestamp,
+            data: key ? concat(codecConfig, payload) : payload
+        }));
+    };
+
+    const stop = async () => {
+        if (stopped) return;
+        stopped = true;
+        port.close();
+        if (decoder && decoder.state !== 'closed') decoder.close();
+        writer.close().catch(() => {});
+        generator.stop();
+        await ScreenCapture.stopNativeCapture().catch(() => {});
+    };
+
+    return { stream: new MediaStream([generator]), track: generator, info, stop };
+}
+
+/**
+ * avc1.PPCCLL from the SPS: profile, constraint flags and level.
+ */
+function avcCodecString(config) {
+    // Skip the Annex B start code (00 00 01 or 00 00 00 01) and the NAL header
+    const start = config[2] === 1 ? 3 : 4;
+    const hex = (value) => value.toString(16).padStart(2, '0');
+    return 'avc1.' + hex(config[start + 1]) + hex(config[start + 2]) + hex(config[start + 3]);
+}
+
+function concat(first, second) {
+    const joined = new Uint8Array(first.length + second.length);
+    joined.set(first, 0);
+    joined.set(second, first.length);
+    return joined;
+}
+
+export default startNativeScreenShare;
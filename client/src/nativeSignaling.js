@@ -0,0 +1,139 @@
+/**
+ * Native Signaling
+ * A socket.io-client lookalike backed by the app's native Socket.IO client
+ * (SignalingClient.java), which keeps its connection and heartbeat while
+ * the WebView is throttled in the background. Covers the part of the
+ * socket API App.vue uses: on(), emit() and disconnect(), plus sendSignal()
+ * which batches ICE candidates natively (SignalBatcher.java).
+ */
+
+// Must match SignalBatcher.VERSION
+const SIGNAL_BATCH_VERSION = 1;
+
+class NativeSignalingSocket {
+    constructor(plugin, url, token) {
+        this.plugin = plugin;
+        this.handlers = new Map();
+        this.id = null;
+        this.connected = false;
+        this.listenerHandles = [
+            plugin.addListener('signalingEvent', ({ event, args }) => this.dispatch(event, args || [])),
+            plugin.addListener('signalingState', (status) => {
+                const wasConnected = this.connected;
+                this.connected = status.state === 'connected';
+                this.id = status.id || null;
+                if (this.connected && !wasConnected) this.dispatch('connect', []);
+                if (!this.connected && wasConnected) this.dispatch('disconnect', [status.reason]);
+            })
+        ];
+        // Emits issued before this resolves are queued natively
+        plugin.connect({ url, token }).catch(err => this.dispatch('connect_error', [err]));
+    }
+
+    on(event, handler) {
+        if (!this.handlers.has(event)) {
+            this.handlers.set(event, []);
+        }
+        this.handlers.get(event).push(handler);
+        return this;
+    }
+
+    off(event, handler) {
+        const list = this.handlers.get(event);
+        if (list) {
+            if (handler) {
+                list.splice(list.indexOf(handler) >>> 0, 1);
+            } else {
+                this.handlers.delete(event);
+            }
+        }
+        return this;
+    }
+
+    emit(event, ...args) {
+        this.plugin.emit({ event, args }).catch(err => this.dispatch('error', [{ message: err.message }]));
+        return this;
+    }
+
+    /**
+     * Sends { ...routing, [signalKey]: signal } as event, batched natively
+     * with neighbouring candidates. kind is the plaintext signal's type.
+     */
+    sendSignal(event, routing, signalKey, signal, kind) {
+        this.plugin.queueSignal({ event, routing, signalKey, signal, kind })
+            .catch(err => this.dispatch('error', [{ message: err.message }]));
+        return this;
+    }
+
+    /**
+     * Call setup timing: 'offerReceived' (callee) or 'connected'.
+     */
+    markCallSetup(phase) {
+        this.plugin.markCallSetup({ phase }).catch(err => {});
+    }
+
+    disconnect() {
+        for (const handle of this.listenerHandles) {
+            Promise.resolve(handle).then(h => h.remove());
+        }
+        this.listenerHandles = [];
+        this.handlers.clear();
+        this.connected = false;
+        this.plugin.disconnect().catch(err => {});
+        return this;
+    }
+
+    dispatch(event, args) {
+        const list = this.handlers.get(event);
+        if (!list) return;
+        for (const handler of list.slice()) {
+            handler(...args);
+        }
+    }
+}
+
+/**
+ * Returns a native-backed socket when running in the Android app, or null
+ * so the caller falls back to io().
+ */
+export function createNativeSocket(url, token) {
+    const plugin = window.Capacitor?.Plugins?.Signaling;
+    if (!plugin) return null;
+    return new NativeSignalingSocket(plugin, url, token);
+}
+
+/**
+ * The signals in a received signal payload: a single signal as before, or
+ * a batch from a native sender, possibly compressed.
+ */
+export async function unpackSignals(payload) {
+    if (!payload || typeof payload !== 'object' || payload.v !== SIGNAL_BATCH_VERSION) {
+        return [payload];
+    }
+    if (Array.isArray(payload.batch)) {
+        return payload.batch;
+    }
+    if (typeof payload.z === 'string') {
+        const bytes = Uint8Array.from(atob(payload.z), c => c.charCodeAt(0));
+        const stream = new Blob([bytes]).stream().pipeThrough(new DecompressionStream('deflate'));
+        return JSON.parse(await new Response(stream).text());
+    }
+    return [];
+}
+
+// Decompression is async; the chain keeps signals in arrival order
+let signalChain = Promise.resolve();
+
+/**
+ * Unpacks payload and calls handler(signal) for each signal, after every
+ * earlier payload has been handled. decode (e.g. decryption) may be async
+ * and gets the whole batch at once.
+ */
+export function receiveSignals(payload, handler, decode = signals => signals) {
+    signalChain = signalChain
+        .then(() => unpackSignals(payload))
+        .then(decode)
+        .then(signals => signals.forEach(signal => handler(signal)))
+        .catch(err => console.log('Failed to unpack signals:', err));
+    return signalChain;
+}
@@ -389,6 +389,17 @@ io.on("connection", (socket) => {
         socket.to(roomID).emit("callEnded");
     });
     
+    // 5. Receive constraints (e.g. the peer is showing us in a PiP thumbnail)
+    socket.on("videoConstraints", (data) => {
+        if (!data || !socket.rooms.has(data.roomID)) {
+            return;
+        }
+        socket.to(data.roomID).emit("videoConstraints", {
+            maxHeight: Number(data.maxHeight) || null,
+            maxFps: Number(data.maxFps) || null
+        });
+    });
+    
     // Handle disconnect
     socket.on("disconnect", () => {
         const duration = Date.now() - connectionTime;